@@ -48,6 +48,7 @@ import org.apache.commons.httpclient.util.EncodingUtil;
 import org.apache.commons.httpclient.util.ExceptionUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.zaproxy.zap.network.HttpSenderMetrics;
 
 /*
  * Forked class...
@@ -61,6 +62,8 @@ import org.apache.commons.logging.LogFactory;
  *  - Remove use of reflection to call Socket.shutdownOutput() in shutdownOutput(), not needed by minimum Java version targeted.
  *  - Add @Deprecated annotations to deprecated methods (by JavaDoc deprecated tag).
  *  - Change method tunnelCreated() to also create the tunnel if requested by calling code.
+ *  - Record the connections opened in open() for the target host, even if proxied (the secure connections to the target
+ *    host are recorded by the socket factory, along with the TLS handshake).
  * 
  */
 /**
@@ -725,10 +728,14 @@ public class HttpConnection {
                 } else {
                     socketFactory = this.protocolInUse.getSocketFactory();
                 }
+                long start = System.nanoTime();
                 this.socket = socketFactory.createSocket(
                             host, port, 
                             localAddress, 0,
                             this.params);
+                if (!usingSecureSocket) {
+                    HttpSenderMetrics.getDefault().recordConnect(hostName, portNumber, System.nanoTime() - start);
+                }
             }
 
             /*
@@ -72,6 +72,7 @@ import org.apache.commons.logging.LogFactory;
  *  - Added the public modifier to the class.
  *  - Establish a tunnel if the request has a connection upgrade.
  *  - Use neutral Locale when converting to lower case.
+ *  - Allow to open connections, establishing the tunnel through the proxy, ahead of the requests (#openConnection).
  */
 /**
  * Handles the process of executing a method including authentication, redirection and retries.
@@ -602,6 +603,29 @@ public class HttpMethodDirector {
         }
     }
 
+    /**
+     * Opens the given connection, establishing the tunnel through the proxy, if secure, as done before the execution of the
+     * methods. Allows to open the connections ahead of the methods that will use them.
+     *
+     * @param connection the connection to open, obtained from the connection manager for the host configuration.
+     * @return {@code true} if the connection was opened, {@code false} if the proxy did not establish the tunnel.
+     * @throws IOException if an error occurred while opening the connection.
+     */
+    public boolean openConnection(HttpConnection connection) throws IOException {
+        this.conn = connection;
+        try {
+            if (!this.conn.isOpen()) {
+                this.conn.open();
+            }
+            if (this.conn.isProxied() && this.conn.isSecure() && !this.conn.isTransparent()) {
+                return executeConnect();
+            }
+            return true;
+        } finally {
+            this.conn = null;
+        }
+    }
+
     /**
      * Fake response
      * @param method
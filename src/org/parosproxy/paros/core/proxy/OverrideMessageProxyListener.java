@@ -76,4 +76,18 @@ public interface OverrideMessageProxyListener extends ArrangeableProxyListener {
      */
     boolean onHttpResponseReceived(HttpMessage msg);
 
+    /**
+     * Tells whether or not the listener requires the full response body of the given message, to be able to override it.
+     * <p>
+     * Called with just the response header set. Default implementation returns {@code true}.
+     *
+     * @param msg the {@code HttpMessage} with the response header
+     * @return {@code true} if the full response body is required, {@code false} otherwise
+     * @since TODO add version
+     * @see ProxyListener#isFullResponseBodyRequired(HttpMessage)
+     */
+    default boolean isFullResponseBodyRequired(HttpMessage msg) {
+        return true;
+    }
+
 }
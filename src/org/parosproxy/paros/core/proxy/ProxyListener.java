@@ -23,6 +23,7 @@
 // ZAP: 2012/06/17 Documented the interface.
 // ZAP: 2012/12/27 Extend from ArrangeableListener.
 // ZAP: 2016/09/22 JavaDoc tweaks
+// ZAP: 2018/10/24 Allow to declare if the full response body is required.
 package org.parosproxy.paros.core.proxy;
 
 import org.parosproxy.paros.network.HttpMessage;
@@ -93,4 +94,22 @@ public interface ProxyListener extends ArrangeableProxyListener {
     // ZAP: Added the JavaDoc.
     boolean onHttpResponseReceive(HttpMessage msg);
 
+    /**
+     * Tells whether or not the listener requires the full response body of the given message, when notified through
+     * {@link #onHttpResponseReceive(HttpMessage)}.
+     * <p>
+     * If none of the listeners require the full response body the proxy might stream the body to the client while it's being
+     * received from the server, in which case the listener is notified with just the (possibly truncated) captured body.
+     * <p>
+     * Called with just the response header set. Default implementation returns {@code true}.
+     *
+     * @param msg the {@code HttpMessage} with the response header
+     * @return {@code true} if the full response body is required, {@code false} otherwise
+     * @since TODO add version
+     * @see HttpMessage#isResponseBodyTruncated()
+     */
+    default boolean isFullResponseBodyRequired(HttpMessage msg) {
+        return true;
+    }
+
 }
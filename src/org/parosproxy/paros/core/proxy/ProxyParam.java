@@ -36,6 +36,10 @@
 // ZAP: 2017/09/26 Use helper methods to read the configurations.
 // ZAP: 2017/11/20 Use default value when reading "reverseProxy.ip".
 // ZAP: 2018/02/14 Remove unnecessary boxing / unboxing
+// ZAP: 2018/10/22 Allow to configure the size of the proxy's worker thread pool.
+// ZAP: 2018/10/23 Allow to configure the upstream connection pool.
+// ZAP: 2018/10/24 Allow to stream the responses.
+// ZAP: 2018/10/26 Allow to serialize the messages per host.
 
 package org.parosproxy.paros.core.proxy;
 
@@ -89,6 +93,69 @@ public class ProxyParam extends AbstractParam {
      */
     private static final String ALWAYS_DECODE_GZIP = "proxy.decodeGzip";
 
+    /**
+     * The configuration key to save/load the option {@link #threadPoolSize}.
+     */
+    private static final String THREAD_POOL_SIZE = PROXY_BASE_KEY + ".threadPoolSize";
+
+    /**
+     * The default number of threads used to process the connections accepted by the proxy, before reusing idle threads.
+     * 
+     * @see #getThreadPoolSize()
+     */
+    public static final int DEFAULT_THREAD_POOL_SIZE = 500;
+
+    /**
+     * The configuration key to save/load the option {@link #upstreamMaxConnectionsPerHost}.
+     */
+    private static final String UPSTREAM_MAX_CONNECTIONS_PER_HOST = PROXY_BASE_KEY + ".upstreamMaxConnectionsPerHost";
+
+    /**
+     * The default maximum number of upstream connections per host.
+     * 
+     * @see #getUpstreamMaxConnectionsPerHost()
+     */
+    public static final int DEFAULT_UPSTREAM_MAX_CONNECTIONS_PER_HOST = 1000;
+
+    /**
+     * The configuration key to save/load the option {@link #upstreamIdleTimeoutInSecs}.
+     */
+    private static final String UPSTREAM_IDLE_TIMEOUT = PROXY_BASE_KEY + ".upstreamIdleTimeoutInSecs";
+
+    /**
+     * The default time, in seconds, that an upstream connection can be idle before being closed.
+     * 
+     * @see #getUpstreamIdleTimeoutInSecs()
+     */
+    public static final int DEFAULT_UPSTREAM_IDLE_TIMEOUT = 30;
+
+    /**
+     * The configuration key to save/load the option {@link #streamResponses}.
+     */
+    private static final String STREAM_RESPONSES = PROXY_BASE_KEY + ".streamResponses";
+
+    /**
+     * The configuration key to save/load the option {@link #streamCaptureLimit}.
+     */
+    private static final String STREAM_CAPTURE_LIMIT = PROXY_BASE_KEY + ".streamCaptureLimit";
+
+    /**
+     * The default maximum number of bytes of a streamed response body that are kept in the message, 1 MiB.
+     * 
+     * @see #getStreamCaptureLimit()
+     */
+    public static final int DEFAULT_STREAM_CAPTURE_LIMIT = 1024 * 1024;
+
+    private static final String STREAM_BYPASS_CONTENT_TYPES = PROXY_BASE_KEY + ".streamBypassContentTypes";
+    private static final String ALL_STREAM_BYPASS_CONTENT_TYPES_KEY = STREAM_BYPASS_CONTENT_TYPES + ".contentType";
+
+    private static final String[] DEFAULT_STREAM_BYPASS_CONTENT_TYPES = { "audio/", "video/", "application/octet-stream" };
+
+    /**
+     * The configuration key to save/load the option {@link #serializeScope}.
+     */
+    private static final String SERIALIZE_SCOPE = PROXY_BASE_KEY + ".serializeScope";
+
     private String proxyIp = "localhost";
     private int proxyPort = 8080;
     private int proxySSLPort = 8443;
@@ -128,6 +195,53 @@ public class ProxyParam extends AbstractParam {
 
     private String[] securityProtocolsEnabled;
 
+    /**
+     * The number of threads used to process the connections accepted by the proxy, before reusing idle threads.
+     * <p>
+     * Default is {@value #DEFAULT_THREAD_POOL_SIZE}.
+     */
+    private int threadPoolSize = DEFAULT_THREAD_POOL_SIZE;
+
+    /**
+     * The maximum number of connections to a target host, shared by all the connections accepted by the proxy.
+     * <p>
+     * Default is {@value #DEFAULT_UPSTREAM_MAX_CONNECTIONS_PER_HOST}.
+     */
+    private int upstreamMaxConnectionsPerHost = DEFAULT_UPSTREAM_MAX_CONNECTIONS_PER_HOST;
+
+    /**
+     * The time, in seconds, that an upstream connection can be idle before being closed.
+     * <p>
+     * Default is {@value #DEFAULT_UPSTREAM_IDLE_TIMEOUT}.
+     */
+    private int upstreamIdleTimeoutInSecs = DEFAULT_UPSTREAM_IDLE_TIMEOUT;
+
+    /**
+     * Flag that controls whether or not the response bodies are streamed to the client while being received from the server.
+     * <p>
+     * Default is {@code false}.
+     */
+    private boolean streamResponses;
+
+    /**
+     * The maximum number of bytes of a streamed response body that are kept in the message.
+     * <p>
+     * Default is {@value #DEFAULT_STREAM_CAPTURE_LIMIT}.
+     */
+    private int streamCaptureLimit = DEFAULT_STREAM_CAPTURE_LIMIT;
+
+    /**
+     * The (prefixes of the) content types whose streamed response bodies are not kept in the message.
+     */
+    private String[] streamBypassContentTypes = DEFAULT_STREAM_BYPASS_CONTENT_TYPES;
+
+    /**
+     * The scope of the serialization of the messages, when the proxy is serializing.
+     * <p>
+     * Default is {@link SerializeScope#GLOBAL}.
+     */
+    private SerializeScope serializeScope = SerializeScope.GLOBAL;
+
     public ProxyParam() {
     }
 
@@ -163,6 +277,44 @@ public class ProxyParam extends AbstractParam {
         loadSecurityProtocolsEnabled();
 
         behindNat = getBoolean(PROXY_BEHIND_NAT, false);
+
+        threadPoolSize = getInt(THREAD_POOL_SIZE, DEFAULT_THREAD_POOL_SIZE);
+        if (threadPoolSize <= 0) {
+            threadPoolSize = DEFAULT_THREAD_POOL_SIZE;
+        }
+
+        upstreamMaxConnectionsPerHost = getInt(UPSTREAM_MAX_CONNECTIONS_PER_HOST, DEFAULT_UPSTREAM_MAX_CONNECTIONS_PER_HOST);
+        if (upstreamMaxConnectionsPerHost <= 0) {
+            upstreamMaxConnectionsPerHost = DEFAULT_UPSTREAM_MAX_CONNECTIONS_PER_HOST;
+        }
+        upstreamIdleTimeoutInSecs = getInt(UPSTREAM_IDLE_TIMEOUT, DEFAULT_UPSTREAM_IDLE_TIMEOUT);
+
+        streamResponses = getBoolean(STREAM_RESPONSES, false);
+        streamCaptureLimit = getInt(STREAM_CAPTURE_LIMIT, DEFAULT_STREAM_CAPTURE_LIMIT);
+        if (streamCaptureLimit < 0) {
+            streamCaptureLimit = DEFAULT_STREAM_CAPTURE_LIMIT;
+        }
+        loadStreamBypassContentTypes();
+
+        serializeScope = SerializeScope.GLOBAL;
+        String scope = getString(SERIALIZE_SCOPE, SerializeScope.GLOBAL.name());
+        try {
+            serializeScope = SerializeScope.valueOf(scope);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Unknown serialize scope [" + scope + "], using " + serializeScope + " instead.");
+        }
+    }
+
+    private void loadStreamBypassContentTypes() {
+        if (((HierarchicalConfiguration) getConfig()).configurationsAt(STREAM_BYPASS_CONTENT_TYPES).isEmpty()) {
+            streamBypassContentTypes = DEFAULT_STREAM_BYPASS_CONTENT_TYPES;
+            return;
+        }
+        List<Object> contentTypes = getConfig().getList(ALL_STREAM_BYPASS_CONTENT_TYPES_KEY);
+        streamBypassContentTypes = new String[contentTypes.size()];
+        for (int i = 0; i < streamBypassContentTypes.length; i++) {
+            streamBypassContentTypes[i] = contentTypes.get(i).toString();
+        }
     }
 
     public String getProxyIp() {
@@ -448,4 +600,236 @@ public class ProxyParam extends AbstractParam {
         this.behindNat = behindNat;
         getConfig().setProperty(PROXY_BEHIND_NAT, behindNat);
     }
+
+    /**
+     * Gets the number of threads used to process the connections accepted by the proxy, before reusing idle threads.
+     * <p>
+     * The connections accepted while all threads are busy are not queued, more threads are created to process them.
+     *
+     * @return the number of threads, always greater than zero.
+     * @since TODO add version
+     * @see #setThreadPoolSize(int)
+     */
+    public int getThreadPoolSize() {
+        return threadPoolSize;
+    }
+
+    /**
+     * Sets the number of threads used to process the connections accepted by the proxy, before reusing idle threads.
+     * <p>
+     * The new size is applied the next time the proxy is started.
+     *
+     * @param threadPoolSize the number of threads.
+     * @throws IllegalArgumentException if {@code threadPoolSize} is not greater than zero.
+     * @since TODO add version
+     * @see #getThreadPoolSize()
+     */
+    public void setThreadPoolSize(int threadPoolSize) {
+        if (threadPoolSize <= 0) {
+            throw new IllegalArgumentException("Parameter threadPoolSize must be greater than zero.");
+        }
+        this.threadPoolSize = threadPoolSize;
+        getConfig().setProperty(THREAD_POOL_SIZE, threadPoolSize);
+    }
+
+    /**
+     * Gets the maximum number of connections to a target host, shared by all the connections accepted by the proxy.
+     *
+     * @return the maximum number of connections per host, always greater than zero.
+     * @since TODO add version
+     * @see #setUpstreamMaxConnectionsPerHost(int)
+     */
+    public int getUpstreamMaxConnectionsPerHost() {
+        return upstreamMaxConnectionsPerHost;
+    }
+
+    /**
+     * Sets the maximum number of connections to a target host, shared by all the connections accepted by the proxy.
+     * <p>
+     * The new value is applied the next time the proxy is started.
+     *
+     * @param maxConnections the maximum number of connections per host.
+     * @throws IllegalArgumentException if {@code maxConnections} is not greater than zero.
+     * @since TODO add version
+     * @see #getUpstreamMaxConnectionsPerHost()
+     */
+    public void setUpstreamMaxConnectionsPerHost(int maxConnections) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("Parameter maxConnections must be greater than zero.");
+        }
+        this.upstreamMaxConnectionsPerHost = maxConnections;
+        getConfig().setProperty(UPSTREAM_MAX_CONNECTIONS_PER_HOST, maxConnections);
+    }
+
+    /**
+     * Gets the time, in seconds, that an upstream connection can be idle before being closed.
+     *
+     * @return the idle timeout, in seconds, zero or negative if the idle connections are not closed.
+     * @since TODO add version
+     * @see #setUpstreamIdleTimeoutInSecs(int)
+     */
+    public int getUpstreamIdleTimeoutInSecs() {
+        return upstreamIdleTimeoutInSecs;
+    }
+
+    /**
+     * Sets the time, in seconds, that an upstream connection can be idle before being closed.
+     * <p>
+     * The new value is applied the next time the proxy is started.
+     *
+     * @param idleTimeout the idle timeout, in seconds, zero or negative to not close the idle connections.
+     * @since TODO add version
+     * @see #getUpstreamIdleTimeoutInSecs()
+     */
+    public void setUpstreamIdleTimeoutInSecs(int idleTimeout) {
+        this.upstreamIdleTimeoutInSecs = idleTimeout;
+        getConfig().setProperty(UPSTREAM_IDLE_TIMEOUT, idleTimeout);
+    }
+
+    /**
+     * Tells whether or not the response bodies are streamed to the client while being received from the server.
+     * <p>
+     * The responses are streamed only if none of the proxy listeners require the full response body, and if the response
+     * does not need to be decoded.
+     *
+     * @return {@code true} if the responses are streamed, {@code false} otherwise.
+     * @since TODO add version
+     * @see #setStreamResponses(boolean)
+     * @see ProxyListener#isFullResponseBodyRequired(org.parosproxy.paros.network.HttpMessage)
+     */
+    public boolean isStreamResponses() {
+        return streamResponses;
+    }
+
+    /**
+     * Sets whether or not the response bodies are streamed to the client while being received from the server.
+     *
+     * @param streamResponses {@code true} if the responses should be streamed, {@code false} otherwise.
+     * @since TODO add version
+     * @see #isStreamResponses()
+     */
+    public void setStreamResponses(boolean streamResponses) {
+        this.streamResponses = streamResponses;
+        getConfig().setProperty(STREAM_RESPONSES, streamResponses);
+    }
+
+    /**
+     * Gets the maximum number of bytes of a streamed response body that are kept in the message (for example, shown in the
+     * History and passively scanned).
+     * <p>
+     * Just the start of the bodies larger than the limit is kept, the messages are marked as having the response body
+     * truncated.
+     *
+     * @return the maximum number of bytes kept, zero or positive.
+     * @since TODO add version
+     * @see #setStreamCaptureLimit(int)
+     */
+    public int getStreamCaptureLimit() {
+        return streamCaptureLimit;
+    }
+
+    /**
+     * Sets the maximum number of bytes of a streamed response body that are kept in the message.
+     *
+     * @param streamCaptureLimit the maximum number of bytes kept.
+     * @throws IllegalArgumentException if {@code streamCaptureLimit} is negative.
+     * @since TODO add version
+     * @see #getStreamCaptureLimit()
+     */
+    public void setStreamCaptureLimit(int streamCaptureLimit) {
+        if (streamCaptureLimit < 0) {
+            throw new IllegalArgumentException("Parameter streamCaptureLimit must not be negative.");
+        }
+        this.streamCaptureLimit = streamCaptureLimit;
+        getConfig().setProperty(STREAM_CAPTURE_LIMIT, streamCaptureLimit);
+    }
+
+    /**
+     * Gets the (prefixes of the) content types whose streamed response bodies are not kept in the message, for example,
+     * {@code video/}.
+     *
+     * @return the content types, never {@code null}.
+     * @since TODO add version
+     * @see #setStreamBypassContentTypes(String[])
+     */
+    public String[] getStreamBypassContentTypes() {
+        return Arrays.copyOf(streamBypassContentTypes, streamBypassContentTypes.length);
+    }
+
+    /**
+     * Sets the (prefixes of the) content types whose streamed response bodies are not kept in the message.
+     *
+     * @param contentTypes the content types, might be empty.
+     * @throws IllegalArgumentException if {@code contentTypes} is {@code null} or contains {@code null} or empty elements.
+     * @since TODO add version
+     * @see #getStreamBypassContentTypes()
+     */
+    public void setStreamBypassContentTypes(String[] contentTypes) {
+        if (contentTypes == null) {
+            throw new IllegalArgumentException("Parameter contentTypes must not be null.");
+        }
+        for (String contentType : contentTypes) {
+            if (contentType == null || contentType.isEmpty()) {
+                throw new IllegalArgumentException("The parameter contentTypes must not contain null or empty elements.");
+            }
+        }
+
+        ((HierarchicalConfiguration) getConfig()).clearTree(STREAM_BYPASS_CONTENT_TYPES);
+        // Keep the (possibly empty) list, to not fallback to the defaults.
+        getConfig().setProperty(STREAM_BYPASS_CONTENT_TYPES, "");
+        for (int i = 0; i < contentTypes.length; ++i) {
+            getConfig().setProperty(ALL_STREAM_BYPASS_CONTENT_TYPES_KEY + "(" + i + ")", contentTypes[i]);
+        }
+
+        this.streamBypassContentTypes = Arrays.copyOf(contentTypes, contentTypes.length);
+    }
+
+    /**
+     * Gets the scope of the serialization of the messages, used when the proxy is serializing (for example, while stepping
+     * through breakpoints).
+     *
+     * @return the scope of the serialization, never {@code null}.
+     * @since TODO add version
+     * @see #setSerializeScope(SerializeScope)
+     * @see ProxyServer#isSerialize()
+     */
+    public SerializeScope getSerializeScope() {
+        return serializeScope;
+    }
+
+    /**
+     * Sets the scope of the serialization of the messages.
+     *
+     * @param serializeScope the scope of the serialization.
+     * @throws IllegalArgumentException if {@code serializeScope} is {@code null}.
+     * @since TODO add version
+     * @see #getSerializeScope()
+     */
+    public void setSerializeScope(SerializeScope serializeScope) {
+        if (serializeScope == null) {
+            throw new IllegalArgumentException("Parameter serializeScope must not be null.");
+        }
+        this.serializeScope = serializeScope;
+        getConfig().setProperty(SERIALIZE_SCOPE, serializeScope.name());
+    }
+
+    /**
+     * The scope of the serialization of the messages.
+     *
+     * @since TODO add version
+     * @see ProxyParam#getSerializeScope()
+     */
+    public enum SerializeScope {
+
+        /**
+         * All messages are processed one at a time.
+         */
+        GLOBAL,
+
+        /**
+         * The messages to the same host (scheme, host name and port) are processed one at a time, the messages to other hosts
+         * are processed in parallel.
+         */
+        HOST
+    }
 }
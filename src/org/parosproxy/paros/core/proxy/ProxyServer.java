@@ -34,6 +34,8 @@
 // ZAP: 2016/09/22 JavaDoc tweaks
 // ZAP: 2016/11/08 Tweak how exception's message is checked to show a specific error/info message
 // ZAP: 2017/03/15 Disable API by default and allow thread name to be set
+// ZAP: 2018/10/22 Process the accepted connections with a pool of reusable threads.
+// ZAP: 2018/10/23 Share the upstream connections between all the accepted connections.
 
 package org.parosproxy.paros.core.proxy;
 
@@ -49,6 +51,12 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import org.apache.commons.httpclient.URI;
@@ -58,6 +66,7 @@ import org.parosproxy.paros.network.ConnectionParam;
 import org.parosproxy.paros.network.HttpUtil;
 import org.parosproxy.paros.view.View;
 import org.zaproxy.zap.PersistentConnectionListener;
+import org.zaproxy.zap.network.PooledHttpConnectionManager;
 
 public class ProxyServer implements Runnable {
 
@@ -81,6 +90,30 @@ public class ProxyServer implements Runnable {
     private static Logger log = Logger.getLogger(ProxyServer.class);
     private String threadName = "ZAP-ProxyServer";
 
+    /**
+     * The time, in seconds, that idle threads of the {@link #proxyThreadPool} are kept alive.
+     */
+    private static final int PROXY_THREAD_KEEP_ALIVE_SECS = 60;
+
+    /**
+     * The maximum number of upstream connections, for all hosts.
+     */
+    private static final int MAX_UPSTREAM_CONNECTIONS = 20000;
+
+    /**
+     * The pool of threads that process the accepted connections, created when the server is started.
+     * 
+     * @see #execute(ProxyThread)
+     */
+    private ThreadPoolExecutor proxyThreadPool;
+
+    /**
+     * The upstream connections, shared by all the accepted connections. Lazily created, discarded when the server is stopped.
+     * 
+     * @see #getUpstreamConnectionManager()
+     */
+    private PooledHttpConnectionManager upstreamConnectionManager;
+
     /**
      * @return Returns the enableCacheProcessing.
      */
@@ -207,6 +240,7 @@ public class ProxyServer implements Runnable {
             return -1;
         }
 
+        proxyThreadPool = createProxyThreadPool(proxyParam.getThreadPoolSize());
         thread.start();
 
         return proxySocket.getLocalPort();
@@ -249,9 +283,92 @@ public class ProxyServer implements Runnable {
 
         proxySocket = null;
 
+        if (proxyThreadPool != null) {
+            // Let the connections already accepted to be processed.
+            proxyThreadPool.shutdown();
+            proxyThreadPool = null;
+        }
+
+        if (upstreamConnectionManager != null) {
+            upstreamConnectionManager.shutdown();
+            upstreamConnectionManager = null;
+        }
+
         return true;
     }
 
+    /**
+     * Gets the connection manager of the upstream connections, shared by all the connections accepted by this server.
+     * <p>
+     * Created with the limits defined in the proxy parameters and the timeouts of the connection parameters, the upstream
+     * connections are closed when the server is stopped. The timeouts are updated by the senders that use the connection
+     * manager, each of which keeps the upstream connections it obtained while its client connection is open.
+     *
+     * @return the upstream connection manager, never {@code null}.
+     * @since TODO add version
+     * @see ProxyParam#getUpstreamMaxConnectionsPerHost()
+     * @see ProxyParam#getUpstreamIdleTimeoutInSecs()
+     */
+    public synchronized PooledHttpConnectionManager getUpstreamConnectionManager() {
+        if (upstreamConnectionManager == null) {
+            int maxPerHost = proxyParam.getUpstreamMaxConnectionsPerHost();
+            upstreamConnectionManager = new PooledHttpConnectionManager(
+                    maxPerHost,
+                    Math.max(maxPerHost, MAX_UPSTREAM_CONNECTIONS),
+                    proxyParam.getUpstreamIdleTimeoutInSecs());
+            int timeout = (int) TimeUnit.SECONDS.toMillis(connectionParam.getTimeoutInSecs());
+            upstreamConnectionManager.getParams().setSoTimeout(timeout);
+            upstreamConnectionManager.getParams().setConnectionTimeout(timeout);
+        }
+        return upstreamConnectionManager;
+    }
+
+    /**
+     * Creates the pool of threads that process the accepted connections.
+     * <p>
+     * The threads are created on demand and reused for the following connections. The connections are never queued, a
+     * connection might be kept open for a long time (for example, keep-alive or tunnelled connections), so if all threads
+     * are busy a new thread is created, even if that exceeds the given size. Idle threads are terminated after
+     * {@value #PROXY_THREAD_KEEP_ALIVE_SECS} seconds.
+     *
+     * @param size the number of threads created before reusing the idle ones.
+     * @return the pool of threads, never {@code null}.
+     */
+    private static ThreadPoolExecutor createProxyThreadPool(int size) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                size,
+                Integer.MAX_VALUE,
+                PROXY_THREAD_KEEP_ALIVE_SECS,
+                TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                new ProxyThreadFactory());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Executes the given proxy process with one of the threads of the pool.
+     * <p>
+     * If the server is not running (and so there's no pool) the process is executed with a new thread.
+     *
+     * @param process the proxy process that will be executed.
+     */
+    void execute(ProxyThread process) {
+        ThreadPoolExecutor pool = proxyThreadPool;
+        if (pool != null) {
+            try {
+                pool.execute(process);
+                return;
+            } catch (RejectedExecutionException e) {
+                // The server was stopped in the meantime, process it anyway.
+                if (log.isDebugEnabled()) {
+                    log.debug("Proxy thread pool shutdown, using a new thread.");
+                }
+            }
+        }
+        new ProxyThreadFactory().newThread(process).start();
+    }
+
     @Override
     public void run() {
 
@@ -471,5 +588,20 @@ public class ProxyServer implements Runnable {
 	public boolean isEnableApi() {
 		return enableApi;
 	}
-    
+
+    /**
+     * The {@code ThreadFactory} of the threads that process the connections accepted by the proxy.
+     */
+    private static class ProxyThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger THREAD_NUMBER = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ZAP-ProxyThread-" + THREAD_NUMBER.getAndIncrement());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    }
 }
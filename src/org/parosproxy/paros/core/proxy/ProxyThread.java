@@ -75,14 +75,18 @@
 // ZAP: 2017/09/22 Check if first message received is a SSL/TLS handshake and tweak exception message.
 // ZAP: 2017/10/02 Improve error handling when checking if SSL/TLS handshake.
 // ZAP: 2018/01/29 Fix API issues with pconn connections
+// ZAP: 2018/10/22 Run in a thread of the proxy server's pool instead of a new thread.
+// ZAP: 2018/10/23 Use the upstream connections shared by all proxy threads.
+// ZAP: 2018/10/24 Allow to stream the responses to the client, keeping the start of the body.
+// ZAP: 2018/10/26 Allow to serialize the messages per host, instead of globally.
+// ZAP: 2018/11/17 Decode the responses without intermediate streams and limit the decoded size.
+// ZAP: 2018/11/19 Resolve the target domain with the shared DNS cache.
 
 package org.parosproxy.paros.core.proxy;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.Socket;
@@ -91,15 +95,13 @@ import java.net.SocketTimeoutException;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
 import java.util.Vector;
-import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
 
 import javax.net.ssl.SSLException;
 
 import org.apache.commons.httpclient.HttpException;
+import org.apache.commons.httpclient.URIException;
 import org.apache.commons.lang.exception.ExceptionUtils;
 import org.apache.log4j.Logger;
 import org.ice4j.TransportAddress;
@@ -108,6 +110,7 @@ import org.parosproxy.paros.Constant;
 import org.parosproxy.paros.db.RecordHistory;
 import org.parosproxy.paros.model.Model;
 import org.parosproxy.paros.network.ConnectionParam;
+import org.parosproxy.paros.network.HttpBody;
 import org.parosproxy.paros.network.HttpHeader;
 import org.parosproxy.paros.network.HttpInputStream;
 import org.parosproxy.paros.network.HttpMalformedHeaderException;
@@ -116,13 +119,18 @@ import org.parosproxy.paros.network.HttpOutputStream;
 import org.parosproxy.paros.network.HttpRequestHeader;
 import org.parosproxy.paros.network.HttpResponseHeader;
 import org.parosproxy.paros.network.HttpSender;
+import org.parosproxy.paros.network.HttpStatusCode;
 import org.parosproxy.paros.network.HttpUtil;
 import org.parosproxy.paros.security.MissingRootCertificateException;
 import org.zaproxy.zap.PersistentConnectionListener;
 import org.zaproxy.zap.ZapGetMethod;
 import org.zaproxy.zap.extension.api.API;
+import org.zaproxy.zap.model.SessionStructure;
+import org.zaproxy.zap.network.DnsCache;
+import org.zaproxy.zap.network.HttpContentDecoder;
 import org.zaproxy.zap.network.HttpRequestBody;
 import org.zaproxy.zap.network.HttpRequestConfig;
+import org.zaproxy.zap.network.HttpResponseBodyStreamer;
 
 
 public class ProxyThread implements Runnable {
@@ -141,7 +149,10 @@ public class ProxyThread implements Runnable {
      */
     private static final HttpRequestConfig EXCLUDED_REQ_CONFIG = HttpRequestConfig.builder().setNotifyListeners(false).build();
 
-	// change httpSender to static to be shared among proxies to reuse keep-alive connections
+    /**
+     * The size of the buffer used to stream the response bodies.
+     */
+    private static final int STREAM_BUFFER_SIZE = 8192;
 
 	protected ProxyServer parentServer = null;
 	protected ProxyParam proxyParam = null;
@@ -154,13 +165,31 @@ public class ProxyThread implements Runnable {
 	protected ProxyThread originProcess = this;
 	
 	private HttpSender 		httpSender = null;
-	private Object semaphore = this;
 	
 	// ZAP: New attribute to allow for skipping disconnect
 	private boolean keepSocketOpen = false;
+
+	/**
+	 * The configurations used to send the (excluded) messages when streaming the responses.
+	 * <p>
+	 * Lazily initialised.
+	 * 
+	 * @see #getStreamingRequestConfig(boolean)
+	 */
+	private HttpRequestConfig streamingRequestConfig;
+	private HttpRequestConfig excludedStreamingRequestConfig;
+
+	/**
+	 * Flag that indicates whether or not the response of the current message was already streamed to the client.
+	 */
+	private boolean responseStreamed;
 	
-	private static Object semaphoreSingleton = new Object();
-	private static int id = 1;
+	/**
+	 * The locks used to serialize the messages, shared by all proxy threads.
+	 * 
+	 * @see #getSerializationKey(HttpMessage)
+	 */
+	private static final SerializationLocks serializationLocks = new SerializationLocks();
     
     private static Vector<Thread> proxyThreadList = new Vector<>();
 
@@ -201,15 +230,13 @@ public class ProxyThread implements Runnable {
 			// ZAP: Log exceptions
 			log.warn(e.getMessage(), e);
 		}
-
-		thread = new Thread(this, "ZAP-ProxyThread-" + id++); // ZAP: Set the name of the thread.
-		thread.setDaemon(true);
-		thread.setPriority(Thread.NORM_PRIORITY-1);
 	}
 
+	/**
+	 * Starts processing the connection, in a thread of the parent proxy server.
+	 */
 	public void start() {
-		thread.start();
-        
+		parentServer.execute(this);
 	}
 	
 	/**
@@ -265,6 +292,7 @@ public class ProxyThread implements Runnable {
 
 	@Override
 	public void run() {
+		thread = Thread.currentThread();
         proxyThreadList.add(thread);
 		boolean isSecure = false;
 		HttpRequestHeader firstHeader = null;
@@ -483,15 +511,12 @@ public class ProxyThread implements Runnable {
           
 //            System.out.println("send required: " + msg.getRequestHeader().getURI().toString());
             
-			if (parentServer.isSerialize()) {
-			    semaphore = semaphoreSingleton;
-			} else {
-			    semaphore = this;
-			}
-			
 			boolean send = true;
 			boolean excluded = parentServer.excludeUrl(msg.getRequestHeader().getURI());
-			synchronized (semaphore) {
+			boolean streamResponses = proxyParam.isStreamResponses();
+			responseStreamed = false;
+			SerializationLocks.Permit permit = serializationLocks.acquire(getSerializationKey(msg));
+			try {
 			    
 				if (!excluded) {
 					if (notifyOverrideListenersRequestSend(msg)) {
@@ -507,16 +532,24 @@ public class ProxyThread implements Runnable {
 //			        first so streaming feature was disabled		        
 //					getHttpSender().sendAndReceive(msg, httpOut, buffer);
 					if (excluded) {
-						getHttpSender().sendAndReceive(msg, EXCLUDED_REQ_CONFIG);
+						getHttpSender().sendAndReceive(
+								msg,
+								streamResponses ? getStreamingRequestConfig(true) : EXCLUDED_REQ_CONFIG);
 					} else if (send) {
 					    if (msg.getResponseHeader().isEmpty()) {
 					    	// Normally the response is empty.
 					    	// The only reason it wont be is if a script or other ext has deliberately 'hijacked' this request
 					    	// We dont jsut set send=false as this then means it wont appear in the History tab
-					    	getHttpSender().sendAndReceive(msg);
+					    	if (streamResponses) {
+					    		getHttpSender().sendAndReceive(msg, getStreamingRequestConfig(false));
+					    	} else {
+					    		getHttpSender().sendAndReceive(msg);
+					    	}
 					    }
 
-						decodeResponseIfNeeded(msg);
+					    if (!responseStreamed) {
+					    	decodeResponseIfNeeded(msg);
+					    }
 
 			             if (!notifyOverrideListenersResponseReceived(msg)) {
                             if (!notifyListenerResponseReceive(msg)) {
@@ -532,6 +565,9 @@ public class ProxyThread implements Runnable {
 //			    	System.out.println("HttpException");
 			    	throw e;
 			    } catch (SocketTimeoutException e) {
+			    	if (responseStreamed) {
+			    		throw e;
+			    	}
 					String message = Constant.messages.getString(
 							"proxy.error.readtimeout",
 							msg.getRequestHeader().getURI(),
@@ -543,6 +579,10 @@ public class ProxyThread implements Runnable {
 						notifyListenerResponseReceive(msg);
 					}
 			    } catch (IOException e) {
+			    	if (responseStreamed) {
+			    		// Part of the response was already forwarded, nothing more can be done.
+			    		throw e;
+			    	}
 			    	setErrorResponse(msg, BAD_GATEWAY_RESPONSE_STATUS, e);
 
 					if (!excluded) {
@@ -553,7 +593,9 @@ public class ProxyThread implements Runnable {
 			    }
 
 				try {
-					writeHttpResponse(msg, httpOut);
+					if (!responseStreamed) {
+						writeHttpResponse(msg, httpOut);
+					}
 				} catch (IOException e) {
 					StringBuilder strBuilder = new StringBuilder(200);
 					strBuilder.append("Failed to write/forward the HTTP response to the client: ");
@@ -563,7 +605,9 @@ public class ProxyThread implements Runnable {
 					}
 					log.warn(strBuilder.toString());
 				}
-			}	// release semaphore
+			} finally {
+				permit.release();
+			}
 			
 			ZapGetMethod method = (ZapGetMethod) msg.getUserObject();			
 			keepSocketOpen = notifyPersistentConnectionListener(msg, inSocket, method);
@@ -575,42 +619,67 @@ public class ProxyThread implements Runnable {
 		
     }
 
-	private FilterInputStream buildStreamDecoder(String encoding, ByteArrayInputStream bais) throws IOException {
-		if (encoding.equalsIgnoreCase(HttpHeader.DEFLATE)) {
-			return new InflaterInputStream(bais, new Inflater(true));
-		} else {
-			return new GZIPInputStream(bais);
+	/**
+	 * Gets the key used to serialize the given message, according to the serialize scope.
+	 *
+	 * @param msg the message being proxied.
+	 * @return the key, or {@code null} if the proxy is not serializing the messages.
+	 * @see ProxyParam#getSerializeScope()
+	 */
+	private String getSerializationKey(HttpMessage msg) {
+		if (!parentServer.isSerialize()) {
+			return null;
+		}
+
+		if (proxyParam.getSerializeScope() == ProxyParam.SerializeScope.HOST) {
+			try {
+				return SessionStructure.getHostName(msg.getRequestHeader().getURI());
+			} catch (URIException e) {
+				log.debug("Failed to obtain the host, serializing globally: " + e.getMessage());
+			}
 		}
+		return SerializationLocks.GLOBAL_KEY;
 	}
 
 	private void decodeResponseIfNeeded(HttpMessage msg) {
 		String encoding = msg.getResponseHeader().getHeader(HttpHeader.CONTENT_ENCODING);
 		if (proxyParam.isAlwaysDecodeGzip() && encoding != null && !encoding.equalsIgnoreCase(HttpHeader.IDENTITY)) {
-			encoding = Pattern.compile("^x-", Pattern.CASE_INSENSITIVE).matcher(encoding).replaceAll("");
-			if (!encoding.equalsIgnoreCase(HttpHeader.DEFLATE) && !encoding.equalsIgnoreCase(HttpHeader.GZIP)) {
+			if (!HttpContentDecoder.isSupported(encoding)) {
 				log.warn("Unsupported content encoding method: " + encoding);
 				return;
 			}
-            // Uncompress content
-            try (ByteArrayInputStream bais = new ByteArrayInputStream(msg.getResponseBody().getBytes());
-                 FilterInputStream fis = buildStreamDecoder(encoding, bais);
-				 BufferedInputStream bis = new BufferedInputStream(fis);
-				 ByteArrayOutputStream out = new ByteArrayOutputStream();) {
-				int readLength;
-				byte[] readBuffer = new byte[1024];
-				while ((readLength = bis.read(readBuffer, 0,1024)) != -1) {
-					out.write(readBuffer, 0, readLength);
-				}
-				msg.setResponseBody(out.toByteArray());
-				msg.getResponseHeader().setHeader(HttpHeader.CONTENT_ENCODING, null);
-				if (msg.getResponseHeader().getHeader(HttpHeader.CONTENT_LENGTH) != null) {
-					msg.getResponseHeader().setHeader(HttpHeader.CONTENT_LENGTH, Integer.toString(out.size()));
-				}
+			try {
+				HttpContentDecoder.decodeResponseBody(msg, connectionParam.getMaxDecodedBodySize());
 			} catch (IOException e) {
 				log.error("Unable to uncompress gzip content: " + e.getMessage(), e);
 			}
-        }
-    }
+		}
+	}
+
+	/**
+	 * Gets the configuration to send the messages while streaming the responses to the client.
+	 *
+	 * @param excluded {@code true} if the messages are excluded from the proxy, {@code false} otherwise.
+	 * @return the configuration with the response body streamer.
+	 * @see ResponseBodyStreamer
+	 */
+	private HttpRequestConfig getStreamingRequestConfig(boolean excluded) {
+		if (excluded) {
+			if (excludedStreamingRequestConfig == null) {
+				excludedStreamingRequestConfig = HttpRequestConfig.builder(EXCLUDED_REQ_CONFIG)
+						.setResponseBodyStreamer(new ResponseBodyStreamer(true))
+						.build();
+			}
+			return excludedStreamingRequestConfig;
+		}
+
+		if (streamingRequestConfig == null) {
+			streamingRequestConfig = HttpRequestConfig.builder()
+					.setResponseBodyStreamer(new ResponseBodyStreamer(false))
+					.build();
+		}
+		return streamingRequestConfig;
+	}
 
 	private boolean isConnectionClose(HttpMessage msg) {
 		
@@ -785,7 +854,7 @@ public class ProxyThread implements Runnable {
                     return true;
                 }
 
-                if (isProxyAddress(InetAddress.getByName(targetDomain))) {
+                if (isProxyAddress(DnsCache.getDefault().getByName(targetDomain))) {
                     return true;
                 }
             }
@@ -901,7 +970,12 @@ public class ProxyThread implements Runnable {
 	protected HttpSender getHttpSender() {
 
 	    if (httpSender == null) {
-		    httpSender = new HttpSender(connectionParam, true, HttpSender.PROXY_INITIATOR);
+			// Reuse the keep-alive connections of all the proxy threads.
+			httpSender = new HttpSender(
+					connectionParam,
+					true,
+					HttpSender.PROXY_INITIATOR,
+					parentServer.getUpstreamConnectionManager());
 		}
 
 	    return httpSender;
@@ -956,6 +1030,115 @@ public class ProxyThread implements Runnable {
 //        return false;
         
     }
-    
 
+    /**
+     * A {@link HttpResponseBodyStreamer} that forwards the response to the client while it's being received from the server.
+     * <p>
+     * The response is streamed only if it would not be decoded and if none of the listeners require the full response body.
+     * The sender does not stream the response if it has {@link org.zaproxy.zap.network.HttpSenderListener HttpSenderListener}s,
+     * which might change it.
+     * Keeps in the message up to {@link ProxyParam#getStreamCaptureLimit() capture limit} bytes of the body, unless the
+     * content type is to be {@link ProxyParam#getStreamBypassContentTypes() bypassed}.
+     */
+    private class ResponseBodyStreamer implements HttpResponseBodyStreamer {
+
+        private final boolean excluded;
+
+        ResponseBodyStreamer(boolean excluded) {
+            this.excluded = excluded;
+        }
+
+        @Override
+        public boolean isStreamable(HttpMessage message) {
+            if (!proxyParam.isStreamResponses() || !hasResponseBody(message)) {
+                return false;
+            }
+
+            String encoding = message.getResponseHeader().getHeader(HttpHeader.CONTENT_ENCODING);
+            if (proxyParam.isAlwaysDecodeGzip() && encoding != null && !encoding.equalsIgnoreCase(HttpHeader.IDENTITY)) {
+                return false;
+            }
+
+            if (excluded) {
+                return true;
+            }
+            return !isFullResponseBodyRequired(message);
+        }
+
+        private boolean hasResponseBody(HttpMessage message) {
+            if (HttpRequestHeader.HEAD.equals(message.getRequestHeader().getMethod())) {
+                return false;
+            }
+            int statusCode = message.getResponseHeader().getStatusCode();
+            return statusCode >= HttpStatusCode.OK && statusCode != HttpStatusCode.NO_CONTENT
+                    && statusCode != HttpStatusCode.NOT_MODIFIED;
+        }
+
+        private boolean isFullResponseBodyRequired(HttpMessage message) {
+            for (OverrideMessageProxyListener listener : parentServer.getOverrideMessageProxyListeners()) {
+                try {
+                    if (listener.isFullResponseBodyRequired(message)) {
+                        return true;
+                    }
+                } catch (Exception e) {
+                    log.error("An error occurred while notifying listener:", e);
+                    return true;
+                }
+            }
+            for (ProxyListener listener : parentServer.getListenerList()) {
+                try {
+                    if (listener.isFullResponseBodyRequired(message)) {
+                        return true;
+                    }
+                } catch (Exception e) {
+                    log.error("An error occurred while notifying listener:", e);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void stream(HttpMessage message, InputStream body) throws IOException {
+            HttpResponseHeader responseHeader = message.getResponseHeader();
+            int contentLength = responseHeader.getContentLength();
+            if (contentLength == -1) {
+                // The (chunked) body is forwarded as is, the client needs to know where it ends.
+                responseHeader.setHeader(HttpHeader.CONNECTION, HttpHeader._CLOSE);
+            }
+
+            responseStreamed = true;
+            httpOut.write(responseHeader);
+
+            HttpBody capturedBody = message.getResponseBody();
+            int captureLimit = isBypassContentType(responseHeader) ? 0 : proxyParam.getStreamCaptureLimit();
+
+            byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+            int len;
+            while ((len = body.read(buffer)) != -1) {
+                httpOut.write(buffer, len);
+                int captureLength = Math.min(len, captureLimit - capturedBody.length());
+                if (captureLength > 0) {
+                    capturedBody.append(buffer, captureLength);
+                }
+                if (captureLength < len) {
+                    message.setResponseBodyTruncated(true);
+                }
+            }
+        }
+
+        private boolean isBypassContentType(HttpResponseHeader responseHeader) {
+            String contentType = responseHeader.getHeader(HttpHeader.CONTENT_TYPE);
+            if (contentType == null) {
+                return false;
+            }
+            contentType = contentType.trim().toLowerCase(Locale.ROOT);
+            for (String bypassContentType : proxyParam.getStreamBypassContentTypes()) {
+                if (contentType.startsWith(bypassContentType.toLowerCase(Locale.ROOT))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
 }
@@ -0,0 +1,123 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.core.proxy;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.zaproxy.zap.utils.Stats;
+
+/**
+ * The locks used to serialize the proxied messages, one lock per key (for example, per host).
+ * <p>
+ * The messages with the same key are processed one at a time, in the order they acquired the lock, while the messages with
+ * different keys are processed in parallel. The locks are discarded once no longer in use.
+ * <p>
+ * The time waiting for the locks is recorded in the {@link Stats}, per site if the key is not the {@link #GLOBAL_KEY}.
+ */
+class SerializationLocks {
+
+    /**
+     * The key that serializes all messages.
+     */
+    static final String GLOBAL_KEY = "";
+
+    static final String STATS_SERIALIZED = "stats.proxy.serialize.messages";
+    static final String STATS_WAIT_TIME = "stats.proxy.serialize.waittime";
+
+    private static final Permit NO_OP_PERMIT = () -> {};
+
+    private final Map<String, KeyLock> locks = new ConcurrentHashMap<>();
+
+    /**
+     * Acquires the lock of the given key, waiting if held by other thread.
+     *
+     * @param key the key of the lock, {@code null} if the message should not be serialized.
+     * @return the permit to release the lock, never {@code null}.
+     */
+    Permit acquire(String key) {
+        if (key == null) {
+            return NO_OP_PERMIT;
+        }
+
+        KeyLock keyLock = locks.compute(key, (k, lock) -> {
+            KeyLock l = lock != null ? lock : new KeyLock();
+            l.users++;
+            return l;
+        });
+
+        long start = System.nanoTime();
+        keyLock.lock.lock();
+        recordWaitTime(key, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        return () -> {
+            keyLock.lock.unlock();
+            locks.computeIfPresent(key, (k, lock) -> --lock.users == 0 ? null : lock);
+        };
+    }
+
+    /**
+     * Gets the number of threads holding or waiting for the lock of the given key.
+     *
+     * @param key the key of the lock.
+     * @return the number of threads using the lock, zero if none.
+     */
+    int getUsers(String key) {
+        KeyLock keyLock = locks.get(key);
+        return keyLock != null ? keyLock.users : 0;
+    }
+
+    private static void recordWaitTime(String key, long waitTime) {
+        if (GLOBAL_KEY.equals(key)) {
+            Stats.incCounter(STATS_SERIALIZED);
+            Stats.incCounter(STATS_WAIT_TIME, waitTime);
+        } else {
+            Stats.incCounter(key, STATS_SERIALIZED);
+            Stats.incCounter(key, STATS_WAIT_TIME, waitTime);
+        }
+    }
+
+    /**
+     * A permit to release an acquired lock.
+     */
+    @FunctionalInterface
+    interface Permit {
+
+        /**
+         * Releases the lock.
+         */
+        void release();
+    }
+
+    private static class KeyLock {
+
+        /**
+         * The lock, fair to keep the order of the messages.
+         */
+        private final ReentrantLock lock = new ReentrantLock(true);
+
+        /**
+         * The number of threads holding or waiting for the lock, changed only while computing the map's entry.
+         */
+        private volatile int users;
+    }
+}
@@ -34,6 +34,7 @@
 // ZAP: 2016/06/15 Add VariantHeader based on the current scan options
 // ZAP: 2017/10/31 Use ExtensionLoader.getExtension(Class).
 // ZAP: 2018/09/12 Make the addition of a query parameter optional.
+// ZAP: 2018/11/29 Use the input vectors shared by the plugins that scan the same message.
 package org.parosproxy.paros.core.scanner;
 
 import java.util.ArrayList;
@@ -56,6 +57,22 @@ public abstract class AbstractAppParamPlugin extends AbstractAppPlugin {
     private Variant variant = null;    
     private ExtensionScript extension;
 
+    /**
+     * The input vectors of the message, shared with other plugins, might be {@code null}.
+     * 
+     * @see #setInputVectors(InputVectors)
+     */
+    private InputVectors inputVectors;
+
+    /**
+     * Sets the input vectors of the message being scanned, shared with the other plugins that scan the same message.
+     *
+     * @param inputVectors the input vectors, might be {@code null}.
+     */
+    void setInputVectors(InputVectors inputVectors) {
+        this.inputVectors = inputVectors;
+    }
+
     @Override
     public void scan() {
         ScannerParam scanOptions = this.getParent().getScannerParam();
@@ -167,8 +184,18 @@ public abstract class AbstractAppParamPlugin extends AbstractAppPlugin {
             // ZAP: Removed unnecessary cast.
             variant = listVariant.get(i);
             try {
-                variant.setMessage(msg);
-                scanVariant();
+                InputVectors.ParsedVariant parsedVariant = null;
+                if (inputVectors != null) {
+                    parsedVariant = inputVectors.getVariant(variant, msg, this::isToExclude);
+                }
+
+                if (parsedVariant != null) {
+                    variant = parsedVariant.getVariant();
+                    scanVariant(parsedVariant);
+                } else {
+                    variant.setMessage(msg);
+                    scanVariant(null);
+                }
 
             } catch (Exception e) {
                 logger.error("Error occurred while scanning with variant " + variant.getClass().getCanonicalName(), e);
@@ -184,13 +211,16 @@ public abstract class AbstractAppParamPlugin extends AbstractAppPlugin {
 
     /**
      * Scan the current message using the current Variant
+     * 
+     * @param parsedVariant the shared variant, with the excluded parameters, or {@code null} if not shared.
      */
-    private void scanVariant() {
+    private void scanVariant(InputVectors.ParsedVariant parsedVariant) {
         for (int i = 0; i < variant.getParamList().size() && !isStop(); i++) {
             // ZAP: Removed unnecessary cast.
             originalPair = variant.getParamList().get(i);
             
-            if (!isToExclude(originalPair)) {
+            boolean excluded = parsedVariant != null ? parsedVariant.isExcluded(i) : isToExclude(originalPair);
+            if (!excluded) {
                 
                 // We need to use a fresh copy of the original message
                 // for further analysis inside all plugins
@@ -82,10 +82,22 @@
 // ZAP: 2017/12/29 Provide means to validate the redirections.
 // ZAP: 2018/01/01 Update initialisation of PluginStats.
 // ZAP: 2018/11/14 Log alert count when completed.
+// ZAP: 2018/11/17 Allow to decode the responses.
+// ZAP: 2018/11/19 Pin the addresses of the host while scanning.
+// ZAP: 2018/11/22 Allow to coalesce identical requests.
+// ZAP: 2018/11/24 Pre-warm the connections to the host before scanning.
+// ZAP: 2018/11/26 Run the tests in a bounded pool of reusable threads, instead of polling for a free thread.
+// ZAP: 2018/11/27 Run the tests in the threads shared by all hosts of the scan, limited per host.
+// ZAP: 2018/11/28 Cache the messages scanned, to not read them from the database for each plugin.
+// ZAP: 2018/11/29 Share the input vectors of the messages scanned with the plugins.
+// ZAP: 2018/11/30 Allow to scan the nodes in batches, running all plugins against each batch.
+// ZAP: 2018/12/03 Count the maximum rule duration from the time the tests run, when scanning the nodes in batches.
+// ZAP: 2018/12/04 Remove the messages of each batch from the cache once scanned.
 
 package org.parosproxy.paros.core.scanner;
 
 import java.io.IOException;
+import java.net.UnknownHostException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -94,11 +106,15 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.httpclient.URI;
+import org.apache.commons.httpclient.URIException;
 import org.apache.log4j.Logger;
 import org.parosproxy.paros.Constant;
-import org.parosproxy.paros.common.ThreadPool;
 import org.parosproxy.paros.db.DatabaseException;
 import org.parosproxy.paros.model.HistoryReference;
 import org.parosproxy.paros.network.ConnectionParam;
@@ -111,21 +127,65 @@ import org.zaproxy.zap.extension.ruleconfig.RuleConfigParam;
 import org.zaproxy.zap.model.SessionStructure;
 import org.zaproxy.zap.model.StructuralNode;
 import org.zaproxy.zap.model.TechSet;
+import org.zaproxy.zap.network.DnsCache;
 import org.zaproxy.zap.network.HttpRedirectionValidator;
+import org.zaproxy.zap.network.HttpRequestCoalescer;
 import org.zaproxy.zap.network.HttpRequestConfig;
 import org.zaproxy.zap.users.User;
+import org.zaproxy.zap.utils.BoundedPausableThreadPoolExecutor;
+import org.zaproxy.zap.utils.Stats;
 
 public class HostProcess implements Runnable {
 
     private static final Logger log = Logger.getLogger(HostProcess.class);
     private static final DecimalFormat decimalFormat = new java.text.DecimalFormat("###0.###");
+
+    /**
+     * The key of the statistic with the number of requests saved by coalescing identical requests.
+     */
+    private static final String STATS_REQUESTS_SAVED = "stats.ascan.requests.saved";
+
+    /**
+     * The time, in milliseconds, the responses are kept to answer identical requests.
+     */
+    private static final long COALESCED_RESPONSES_TTL = 2000;
+
+    /**
+     * The maximum size, in bytes, of the messages cached.
+     */
+    private static final long MESSAGE_CACHE_MAX_SIZE = 16 * 1024 * 1024;
     
     private List<StructuralNode> startNodes = null;
     private boolean isStop = false;
     private PluginFactory pluginFactory;
     private ScannerParam scannerParam = null;
     private HttpSender httpSender = null;
-    private ThreadPool threadPool = null;
+    /**
+     * The executor of the tests, shared by all hosts of the scan.
+     */
+    private final BoundedPausableThreadPoolExecutor threadPool;
+
+    /**
+     * The maximum number of tests of this host queued or running at the same time.
+     */
+    private final int maxNumberOfThreads;
+
+    /**
+     * The slots of the tests of this host, limits the tests of this host queued or running in the shared threads.
+     */
+    private final Semaphore testSlots;
+
+    /**
+     * The number of tests of this host running.
+     */
+    private final AtomicInteger runningTests = new AtomicInteger();
+
+    /**
+     * Tells whether or not the host is being prepared for the scan, before running the plugins.
+     * 
+     * @see #isInitialising()
+     */
+    private volatile boolean initialising = true;
     private Scanner parentScanner = null;
     private String hostAndPort = "";
     private Analyser analyser = null;
@@ -135,6 +195,11 @@ public class HostProcess implements Runnable {
     private RuleConfigParam ruleConfigParam;
     private String stopReason = null;
 
+    /**
+     * The number of connections to open to the host before scanning, limited by the number of threads.
+     */
+    private final int prewarmConnections;
+
     /**
      * A {@code Map} from plugin IDs to corresponding {@link PluginStats}.
      * 
@@ -152,6 +217,20 @@ public class HostProcess implements Runnable {
      */
     private int requestCount;
 
+    /**
+     * The messages scanned, read once from the database and given to all plugins.
+     * <p>
+     * Accessed just by the thread of the {@code HostProcess}.
+     */
+    private final MessageCache messageCache = new MessageCache(MESSAGE_CACHE_MAX_SIZE);
+
+    /**
+     * The coalescer of identical requests, {@code null} if not coalescing.
+     * 
+     * @see ScannerParam#isCoalesceRequests()
+     */
+    private final HttpRequestCoalescer requestCoalescer;
+
     /**
      * The count of alerts raised during the scan.
      */
@@ -239,8 +318,10 @@ public class HostProcess implements Runnable {
         httpSender = new HttpSender(connectionParam, true, HttpSender.ACTIVE_SCANNER_INITIATOR);
         httpSender.setUser(this.user);
         httpSender.setRemoveUserDefinedAuthHeaders(true);
+        httpSender.setDecodeResponseBody(scannerParam.isDecodeResponseBody());
+        requestCoalescer = scannerParam.isCoalesceRequests() ? new HttpRequestCoalescer(COALESCED_RESPONSES_TTL) : null;
+        httpSender.setRequestCoalescer(requestCoalescer);
         
-        int maxNumberOfThreads;
         if (scannerParam.getHandleAntiCSRFTokens()) {
             // Single thread if handling anti CSRF tokens, otherwise token requests might get out of step
             maxNumberOfThreads = 1;
@@ -249,7 +330,9 @@ public class HostProcess implements Runnable {
             maxNumberOfThreads = scannerParam.getThreadPerHost();
         }
         
-        threadPool = new ThreadPool(maxNumberOfThreads, "ZAP-ActiveScanner-");
+        threadPool = parentScanner.getTestsExecutor();
+        testSlots = new Semaphore(maxNumberOfThreads);
+        prewarmConnections = Math.min(connectionParam.getPrewarmConnections(), maxNumberOfThreads);
         this.techSet = TechSet.AllTech;
     }
 
@@ -278,6 +361,15 @@ public class HostProcess implements Runnable {
         getAnalyser().stop();
     }
 
+    /**
+     * Tells whether or not the host is being prepared for the scan, that is, it has not yet started to run the plugins.
+     *
+     * @return {@code true} if the host is being prepared, {@code false} otherwise.
+     */
+    boolean isInitialising() {
+        return initialising;
+    }
+
     /**
      * Main execution method
      */
@@ -285,16 +377,13 @@ public class HostProcess implements Runnable {
     public void run() {
         log.debug("HostProcess.run");
 
+        String pinnedHost = null;
         try {
             hostProcessStartTime = System.currentTimeMillis();
+            pinnedHost = pinHostAddresses();
+            prewarmConnections();
 
-            // Initialise plugin factory to report the state of the plugins ASAP.
-            pluginFactory.reset();
-            synchronized (mapPluginStats) {
-                for (Plugin plugin : pluginFactory.getPending()) {
-                    mapPluginStats.put(plugin.getId(), new PluginStats(plugin.getName()));
-                }
-            }
+            initPluginStats();
 
             for (StructuralNode startNode : startNodes) {
                 traverse(startNode, true, node -> {
@@ -312,7 +401,13 @@ public class HostProcess implements Runnable {
             }
 
             logScanInfo();
+            initialising = false;
             
+            int nodeBatchSize = scannerParam.getNodeBatchSize();
+            if (nodeBatchSize > 0) {
+                runPluginsInNodeBatches(nodeBatchSize);
+            }
+
             Plugin plugin;
             
             while (!isStop() && pluginFactory.existPluginToRun()) {
@@ -333,14 +428,66 @@ public class HostProcess implements Runnable {
                     Util.sleep(1000);
                 }
             }
-            threadPool.waitAllThreadComplete(300000);
+            waitAllTestsComplete(300000);
         } catch (Exception e) {
             log.error("An error occurred while active scanning:", e);
             stop();
         } finally {
+            messageCache.clear();
             notifyHostProgress(null);
             notifyHostComplete();
+            initialising = false;
             getHttpSender().shutdown();
+            DnsCache.getDefault().unpin(pinnedHost);
+        }
+    }
+
+    /**
+     * Pins the addresses of the host being scanned, so that all the messages are sent to the same addresses.
+     *
+     * @return the name of the host pinned, or {@code null} if not pinned.
+     * @see DnsCache#pin(String)
+     */
+    private String pinHostAddresses() {
+        try {
+            String host = new URI(hostAndPort, true).getHost();
+            DnsCache.getDefault().pin(host);
+            return host;
+        } catch (URIException e) {
+            log.debug("Failed to extract the host from " + hostAndPort + ": " + e.getMessage());
+        } catch (UnknownHostException e) {
+            log.debug("Failed to resolve the host of " + hostAndPort + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Opens the connections to the host ahead of the scan, if enabled, so that the first requests do not all pay the cost
+     * of opening them.
+     *
+     * @see HttpSender#prewarmConnections(URI, int)
+     */
+    private void prewarmConnections() {
+        if (prewarmConnections <= 0) {
+            return;
+        }
+        try {
+            int open = httpSender.prewarmConnections(new URI(hostAndPort, true), prewarmConnections);
+            log.debug("Pre-warmed " + open + " connection(s) to " + hostAndPort);
+        } catch (URIException | IllegalArgumentException e) {
+            log.debug("Failed to pre-warm the connections to " + hostAndPort + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Initialises the plugin factory and the stats of the plugins, to report the state of the plugins ASAP.
+     */
+    void initPluginStats() {
+        pluginFactory.reset();
+        synchronized (mapPluginStats) {
+            for (Plugin plugin : pluginFactory.getPending()) {
+                mapPluginStats.put(plugin.getId(), new PluginStats(plugin.getName()));
+            }
         }
     }
 
@@ -372,22 +519,94 @@ public class HostProcess implements Runnable {
         log.info(strBuilder.toString());
     }
 
-    private void processPlugin(final Plugin plugin) {
-        mapPluginStats.get(plugin.getId()).start();
+    /**
+     * Runs the plugins against the nodes in batches, that is, all the plugins ready to run (those whose dependencies have
+     * completed) scan a batch of nodes before moving to the next batch, instead of each plugin scanning all the nodes in turn.
+     * <p>
+     * Scanning the same nodes with all plugins in a row keeps the messages and their input vectors in the cache while needed.
+     * Returns once all plugins completed or the scan was stopped.
+     *
+     * @param nodeBatchSize the number of nodes in each batch.
+     * @see ScannerParam#getNodeBatchSize()
+     */
+    private void runPluginsInNodeBatches(int nodeBatchSize) {
+        while (!isStop() && pluginFactory.existPluginToRun()) {
+            checkPause();
+            if (isStop()) {
+                break;
+            }
 
-        if (nodeInScopeCount == 0) {
-            pluginSkipped(plugin, Constant.messages.getString("ascan.progress.label.skipped.reason.nonodes"));
-            pluginCompleted(plugin);
+            List<Plugin> appPlugins = new ArrayList<>();
+            boolean pluginsReady = false;
+            Plugin plugin;
+            while ((plugin = pluginFactory.nextPlugin()) != null) {
+                pluginsReady = true;
+                plugin.setDelayInMs(this.scannerParam.getDelayInMs());
+                plugin.setTechSet(this.techSet);
+                if (plugin instanceof AbstractAppPlugin) {
+                    if (startPlugin(plugin)) {
+                        appPlugins.add(plugin);
+                    }
+                } else {
+                    processPlugin(plugin);
+                }
+            }
+
+            if (!pluginsReady) {
+                // waiting for dependency - no test ready yet
+                Util.sleep(1000);
+                continue;
+            }
+
+            scanNodeBatches(appPlugins, nodeBatchSize);
+        }
+    }
+
+    /**
+     * Scans the nodes in batches with the given plugins, all plugins scan a batch before moving to the next batch.
+     *
+     * @param plugins the plugins, already started.
+     * @param nodeBatchSize the number of nodes in each batch.
+     */
+    void scanNodeBatches(List<Plugin> plugins, int nodeBatchSize) {
+        if (plugins.isEmpty()) {
             return;
-        } else if (!plugin.targets(techSet)) {
-            pluginSkipped(plugin, Constant.messages.getString("ascan.progress.label.skipped.reason.techs"));
-            pluginCompleted(plugin);
+        }
+
+        try {
+            int nodeCount = messagesIdsToAppScan.size();
+            for (int start = 0; start < nodeCount; start += nodeBatchSize) {
+                List<Integer> batch = messagesIdsToAppScan.subList(start, Math.min(start + nodeBatchSize, nodeCount));
+                for (Plugin plugin : plugins) {
+                    for (int messageId : batch) {
+                        checkPause();
+
+                        if (isStop()) {
+                            return;
+                        }
+                        if (isSkipped(plugin)) {
+                            break;
+                        }
+
+                        scanMessage(plugin, messageId);
+                    }
+                }
+                // The plugins copied the messages, no longer needed.
+                batch.forEach(messageCache::remove);
+            }
+            waitAllTestsComplete(600000);
+        } finally {
+            for (Plugin plugin : plugins) {
+                pluginCompleted(plugin);
+            }
+        }
+    }
+
+    private void processPlugin(final Plugin plugin) {
+        if (!startPlugin(plugin)) {
             return;
         }
 
-        log.info("start host " + hostAndPort + " | " + plugin.getCodeName()
-                + " strength " + plugin.getAttackStrength() + " threshold " + plugin.getAlertThreshold());
-        
         if (plugin instanceof AbstractHostPlugin) {
             checkPause();
 
@@ -408,13 +627,37 @@ public class HostProcess implements Runnable {
 
                     scanMessage(plugin, messageId);
                 }
-                threadPool.waitAllThreadComplete(600000);
+                waitAllTestsComplete(600000);
             } finally {
                 pluginCompleted(plugin);
             }
         }
     }
 
+    /**
+     * Starts the given plugin, skipping it if there are no nodes to scan or if it does not target the technologies.
+     *
+     * @param plugin the plugin to start.
+     * @return {@code true} if the plugin should scan the nodes, {@code false} if it was skipped (and completed).
+     */
+    private boolean startPlugin(Plugin plugin) {
+        mapPluginStats.get(plugin.getId()).start();
+
+        if (nodeInScopeCount == 0) {
+            pluginSkipped(plugin, Constant.messages.getString("ascan.progress.label.skipped.reason.nonodes"));
+            pluginCompleted(plugin);
+            return false;
+        } else if (!plugin.targets(techSet)) {
+            pluginSkipped(plugin, Constant.messages.getString("ascan.progress.label.skipped.reason.techs"));
+            pluginCompleted(plugin);
+            return false;
+        }
+
+        log.info("start host " + hostAndPort + " | " + plugin.getCodeName()
+                + " strength " + plugin.getAttackStrength() + " threshold " + plugin.getAlertThreshold());
+        return true;
+    }
+
     private void traverse(StructuralNode node, boolean incRelatedSiblings, TraverseAction action) {
         if (node == null || isStop()) {
             return;
@@ -479,29 +722,14 @@ public class HostProcess implements Runnable {
      */
     private boolean scanMessage(Plugin plugin, int messageId) {
         Plugin test;
-        HistoryReference historyReference;
-        HttpMessage msg;
-
-        try {
-            historyReference = new HistoryReference(messageId, true);
-            msg = historyReference.getHttpMessage();
-        } catch (HttpMalformedHeaderException | DatabaseException e) {
-            log.warn("Failed to read message with ID [" + messageId + "], cause: " + e.getMessage());
+        HttpMessage msg = getMessage(plugin, messageId);
+        if (msg == null) {
             return false;
         }
 
         try {
-            // Ensure the temporary nodes, added automatically to Sites tree, have a response.
-            // The scanners might base the logic/attacks on the state of the response (e.g. status code).
-            if (msg.getResponseHeader().isEmpty()) {
-                msg = msg.cloneRequest();
-                if (!obtainResponse(historyReference, msg)) {
-                    return false;
-                }
-            }
-
             if (log.isDebugEnabled()) {
-                log.debug("scanSingleNode node plugin=" + plugin.getName() + " node=" + historyReference.getURI().toString());
+                log.debug("scanSingleNode node plugin=" + plugin.getName() + " node=" + msg.getRequestHeader().getURI().toString());
             }
 
             test = plugin.getClass().getDeclaredConstructor().newInstance();
@@ -516,30 +744,162 @@ public class HostProcess implements Runnable {
             test.setDefaultAlertThreshold(plugin.getAlertThreshold());
             test.setDefaultAttackStrength(plugin.getAttackStrength());
             test.setTechSet(getTechSet());
-            test.init(msg, this);
+            // The AbstractPlugin copies the message, others might change it.
+            test.init(test instanceof AbstractPlugin ? msg : msg.cloneAll(), this);
+            if (test instanceof AbstractAppParamPlugin) {
+                ((AbstractAppParamPlugin) test).setInputVectors(messageCache.getInputVectors(messageId));
+            }
             notifyHostProgress(plugin.getName() + ": " + msg.getRequestHeader().getURI().toString());
 
         } catch (Exception e) {
-            log.error(e.getMessage() + " " + historyReference.getURI().toString(), e);
+            log.error(e.getMessage() + " " + msg.getRequestHeader().getURI().toString(), e);
             return false;
         }
 
-        Thread thread;
-        do {
-			if (this.isStop()) {
-				return false;
-			}
-            thread = threadPool.getFreeThreadAndRun(test);
-            if (thread == null) {
-                Util.sleep(200);
-            }
-            
-        } while (thread == null);
+        try {
+            do {
+                if (this.isStop()) {
+                    return false;
+                }
+            } while (!testSlots.tryAcquire(200, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        if (!executeTest(test)) {
+            testSlots.release();
+            return false;
+        }
 
         mapPluginStats.get(plugin.getId()).incProgress();
         return true;
     }
 
+    /**
+     * Adds the given message to the messages to be scanned by the {@link AbstractAppPlugin}s, without reading it from the
+     * database.
+     * <p>
+     * Allows to scan messages without a database, for testing purposes.
+     *
+     * @param messageId the ID of the message.
+     * @param msg the message, with the response.
+     */
+    void addMessageToScan(int messageId, HttpMessage msg) {
+        messagesIdsToAppScan.add(messageId);
+        messageCache.put(messageId, msg);
+        nodeInScopeCount = messagesIdsToAppScan.size();
+    }
+
+    /**
+     * Gets the message with the given ID, from the cache or the database.
+     * <p>
+     * The message read from the database, with the response obtained if it had none, is cached for the other plugins.
+     *
+     * @param plugin the plugin that will scan the message, to record the cache hit.
+     * @param messageId the ID of the message.
+     * @return the message, which must not be modified, or {@code null} if it could not be read or obtained.
+     */
+    private HttpMessage getMessage(Plugin plugin, int messageId) {
+        PluginStats pluginStats = mapPluginStats.get(plugin.getId());
+        HttpMessage msg = messageCache.get(messageId);
+        if (msg != null) {
+            pluginStats.incMessageCacheHits();
+            return msg;
+        }
+        pluginStats.incMessageCacheMisses();
+
+        HistoryReference historyReference;
+        try {
+            historyReference = new HistoryReference(messageId, true);
+            msg = historyReference.getHttpMessage();
+        } catch (HttpMalformedHeaderException | DatabaseException e) {
+            log.warn("Failed to read message with ID [" + messageId + "], cause: " + e.getMessage());
+            return null;
+        }
+
+        // Ensure the temporary nodes, added automatically to Sites tree, have a response.
+        // The scanners might base the logic/attacks on the state of the response (e.g. status code).
+        if (msg.getResponseHeader().isEmpty()) {
+            msg = msg.cloneRequest();
+            if (!obtainResponse(historyReference, msg)) {
+                return null;
+            }
+        }
+
+        messageCache.put(messageId, msg);
+        return msg;
+    }
+
+    /**
+     * Queues the given test in the shared threads, releasing its slot once completed.
+     *
+     * @param test the test to execute.
+     * @return {@code true} if the test was queued, {@code false} if stopped or interrupted while waiting.
+     */
+    private boolean executeTest(Plugin test) {
+        PluginStats pluginStats = mapPluginStats.get(test.getId());
+        Runnable task = () -> {
+            runningTests.incrementAndGet();
+            pluginStats.testStarted();
+            try {
+                test.run();
+            } finally {
+                pluginStats.testFinished();
+                runningTests.decrementAndGet();
+                testSlots.release();
+            }
+        };
+        try {
+            do {
+                if (this.isStop()) {
+                    return false;
+                }
+            } while (!threadPool.execute(task, 200, TimeUnit.MILLISECONDS));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RejectedExecutionException e) {
+            log.warn("Failed to run the test: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Waits, at most the given time, until all the tests of this host are completed.
+     *
+     * @param waitInMillis the number of milliseconds to wait.
+     */
+    private void waitAllTestsComplete(long waitInMillis) {
+        try {
+            if (testSlots.tryAcquire(maxNumberOfThreads, waitInMillis, TimeUnit.MILLISECONDS)) {
+                testSlots.release(maxNumberOfThreads);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the number of tests of this host waiting for a free thread.
+     *
+     * @return the number of tests queued.
+     * @since TODO add version
+     */
+    public int getQueuedTestCount() {
+        return Math.max(0, maxNumberOfThreads - testSlots.availablePermits() - runningTests.get());
+    }
+
+    /**
+     * Gets the ratio of the threads allowed for this host that are running tests.
+     *
+     * @return the ratio, between {@code 0} and {@code 1}.
+     * @since TODO add version
+     */
+    public double getThreadUtilisation() {
+        return (double) runningTests.get() / maxNumberOfThreads;
+    }
+
     private boolean obtainResponse(HistoryReference hRef, HttpMessage message) {
         try {
             getHttpSender().sendAndReceive(message);
@@ -698,6 +1058,14 @@ public class HostProcess implements Runnable {
         long diffTimeMillis = System.currentTimeMillis() - hostProcessStartTime;
         String diffTimeString = decimalFormat.format(diffTimeMillis / 1000.0) + "s";
         log.info("completed host " + hostAndPort + " in " + diffTimeString + " with " + getAlertCount() + " alert(s) raised.");
+        if (requestCoalescer != null) {
+            int requestsSaved = requestCoalescer.getRequestsSaved();
+            log.info("saved " + requestsSaved + " request(s) to host " + hostAndPort + " by coalescing identical requests.");
+            requestCoalescer.clear();
+            if (requestsSaved > 0) {
+                Stats.incCounter(hostAndPort, STATS_REQUESTS_SAVED, requestsSaved);
+            }
+        }
         parentScanner.notifyHostComplete(hostAndPort);
     }
 
@@ -905,12 +1273,18 @@ public class HostProcess implements Runnable {
             return true;
         
         } else if (this.scannerParam.getMaxRuleDurationInMins() > 0 && plugin.getTimeStarted() != null) {
-        	long endtime = System.currentTimeMillis();
-        	if (plugin.getTimeFinished() != null) {
-        		endtime = plugin.getTimeFinished().getTime();
+        	long duration;
+        	if (this.scannerParam.getNodeBatchSize() > 0 && pluginStats != null) {
+        		// The plugins start at the same time and share the threads, count just the time its tests run.
+        		duration = pluginStats.getRunTime();
+        	} else {
+        		long endtime = System.currentTimeMillis();
+        		if (plugin.getTimeFinished() != null) {
+        			endtime = plugin.getTimeFinished().getTime();
+        		}
+        		duration = endtime - plugin.getTimeStarted().getTime();
         	}
-        	if (endtime - plugin.getTimeStarted().getTime() > 
-        			TimeUnit.MINUTES.toMillis(this.scannerParam.getMaxRuleDurationInMins())) {
+        	if (duration > TimeUnit.MINUTES.toMillis(this.scannerParam.getMaxRuleDurationInMins())) {
         	    this.pluginSkipped(plugin,
         	            Constant.messages.getString("ascan.progress.label.skipped.reason.maxRule"));
             	return true;
@@ -1130,6 +1504,17 @@ public class HostProcess implements Runnable {
         }
     }
 
+    /**
+     * Gets the count of requests not sent, answered with the response of identical requests.
+     *
+     * @return the count of requests saved, zero if not coalescing the requests.
+     * @since TODO add version
+     * @see ScannerParam#isCoalesceRequests()
+     */
+    public int getRequestsSavedCount() {
+        return requestCoalescer != null ? requestCoalescer.getRequestsSaved() : 0;
+    }
+
     /**
      * Gets the stats of the {@code Plugin} with the given ID.
      *
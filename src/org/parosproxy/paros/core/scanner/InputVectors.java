@@ -0,0 +1,128 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.core.scanner;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import org.parosproxy.paros.network.HttpMessage;
+
+/**
+ * The input vectors of a message, that is, the {@link Variant}s with the parameters of the message, parsed once and shared
+ * by all the plugins that scan the message.
+ * <p>
+ * Just the variants that are not changed when setting the parameters are shared, the others (for example, the variants
+ * implemented by scripts) are parsed by each plugin.
+ * <p>
+ * Thread-safe.
+ */
+class InputVectors {
+
+    /**
+     * The variants that do not change their state after parsing the message.
+     */
+    private static final Set<Class<? extends Variant>> SHAREABLE_VARIANTS = new HashSet<>(
+            Arrays.asList(
+                    VariantCookie.class,
+                    VariantDdnPath.class,
+                    VariantDirectWebRemotingQuery.class,
+                    VariantFormQuery.class,
+                    VariantHeader.class,
+                    VariantJSONQuery.class,
+                    VariantMultipartFormParameters.class,
+                    VariantODataFilterQuery.class,
+                    VariantODataIdQuery.class,
+                    VariantURLPath.class,
+                    VariantURLQuery.class,
+                    VariantUserDefined.class,
+                    VariantXMLQuery.class));
+
+    private final Map<Class<? extends Variant>, ParsedVariant> variants = new ConcurrentHashMap<>();
+
+    /**
+     * Tells whether or not the given variant can be shared.
+     *
+     * @param variant the variant to check.
+     * @return {@code true} if the variant can be shared, {@code false} otherwise.
+     */
+    static boolean isShareable(Variant variant) {
+        return SHAREABLE_VARIANTS.contains(variant.getClass());
+    }
+
+    /**
+     * Gets the variant of the same type as the given one, already parsed.
+     * <p>
+     * If not yet parsed, the given variant is parsed with the given message and shared.
+     *
+     * @param variant the variant to parse, if not yet parsed.
+     * @param msg the message to parse.
+     * @param excluded the predicate to check if a parameter is excluded from the scan.
+     * @return the parsed variant, or {@code null} if the variant can not be shared.
+     * @see #isShareable(Variant)
+     */
+    ParsedVariant getVariant(Variant variant, HttpMessage msg, Predicate<NameValuePair> excluded) {
+        if (!isShareable(variant)) {
+            return null;
+        }
+        return variants.computeIfAbsent(variant.getClass(), k -> {
+            variant.setMessage(msg);
+            return new ParsedVariant(variant, excluded);
+        });
+    }
+
+    /**
+     * A variant with the message already parsed, along with which of its parameters are excluded from the scan.
+     * <p>
+     * The variant must not be changed, just used to set the parameters in the messages.
+     */
+    static class ParsedVariant {
+
+        private final Variant variant;
+        private final boolean[] excluded;
+
+        ParsedVariant(Variant variant, Predicate<NameValuePair> excluded) {
+            this.variant = variant;
+            List<NameValuePair> params = variant.getParamList();
+            this.excluded = new boolean[params.size()];
+            for (int i = 0; i < params.size(); i++) {
+                this.excluded[i] = excluded.test(params.get(i));
+            }
+        }
+
+        Variant getVariant() {
+            return variant;
+        }
+
+        /**
+         * Tells whether or not the parameter at the given index is excluded from the scan.
+         *
+         * @param index the index of the parameter.
+         * @return {@code true} if the parameter is excluded, {@code false} otherwise.
+         */
+        boolean isExcluded(int index) {
+            return excluded[index];
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.core.scanner;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.parosproxy.paros.network.HttpMessage;
+
+/**
+ * A cache of the messages scanned by a {@link HostProcess}, to not read them from the database for each plugin.
+ * <p>
+ * The messages are kept up to a maximum size, in bytes, of their headers and bodies. When full, the least recently used
+ * messages are evicted. The messages should be scanned in batches that fit in the cache (see
+ * {@link ScannerParam#getNodeBatchSize()}), all the plugins scan the messages of a batch before moving to the next one, and
+ * the messages {@link #remove(int) removed} once the batch is completed.
+ * <p>
+ * The messages cached must not be modified, the plugins get a copy of them. The {@link InputVectors} of the messages are
+ * also kept, to be shared by the plugins.
+ * <p>
+ * Not thread-safe.
+ */
+class MessageCache {
+
+    private final long maxSize;
+    private final Map<Integer, CachedMessage> messages;
+    private long size;
+
+    /**
+     * Constructs a {@code MessageCache} with the given maximum size.
+     *
+     * @param maxSize the maximum size of the messages cached, in bytes.
+     */
+    MessageCache(long maxSize) {
+        this.maxSize = maxSize;
+        this.messages = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Gets the message with the given ID.
+     *
+     * @param id the ID of the message.
+     * @return the message, or {@code null} if not cached.
+     */
+    HttpMessage get(int id) {
+        CachedMessage cachedMessage = messages.get(id);
+        return cachedMessage != null ? cachedMessage.message : null;
+    }
+
+    /**
+     * Gets the input vectors of the message with the given ID.
+     *
+     * @param id the ID of the message.
+     * @return the input vectors, or {@code null} if the message is not cached.
+     */
+    InputVectors getInputVectors(int id) {
+        CachedMessage cachedMessage = messages.get(id);
+        return cachedMessage != null ? cachedMessage.inputVectors : null;
+    }
+
+    /**
+     * Adds the given message, if not larger than the maximum size.
+     *
+     * @param id the ID of the message.
+     * @param message the message to cache.
+     */
+    void put(int id, HttpMessage message) {
+        long messageSize = sizeOf(message);
+        if (messageSize > maxSize || messages.containsKey(id)) {
+            return;
+        }
+
+        Iterator<CachedMessage> it = messages.values().iterator();
+        while (size + messageSize > maxSize) {
+            size -= it.next().size;
+            it.remove();
+        }
+
+        // Trim the bodies now, for the copies to share them as is.
+        message.getRequestBody().getBytes();
+        message.getResponseBody().getBytes();
+
+        messages.put(id, new CachedMessage(message, messageSize));
+        size += messageSize;
+    }
+
+    /**
+     * Removes the message with the given ID, if cached.
+     *
+     * @param id the ID of the message.
+     */
+    void remove(int id) {
+        CachedMessage cachedMessage = messages.remove(id);
+        if (cachedMessage != null) {
+            size -= cachedMessage.size;
+        }
+    }
+
+    private static long sizeOf(HttpMessage message) {
+        return message.getRequestHeader().toString().length()
+                + message.getRequestBody().length()
+                + message.getResponseHeader().toString().length()
+                + message.getResponseBody().length();
+    }
+
+    /**
+     * Gets the number of messages cached.
+     *
+     * @return the number of messages.
+     */
+    int getCount() {
+        return messages.size();
+    }
+
+    /**
+     * Gets the size of the messages cached.
+     *
+     * @return the size, in bytes.
+     */
+    long getSize() {
+        return size;
+    }
+
+    /**
+     * Removes all the messages.
+     */
+    void clear() {
+        messages.clear();
+        size = 0;
+    }
+
+    private static class CachedMessage {
+
+        private final HttpMessage message;
+        private final long size;
+        private final InputVectors inputVectors;
+
+        CachedMessage(HttpMessage message, long size) {
+            this.message = message;
+            this.size = size;
+            this.inputVectors = new InputVectors();
+        }
+    }
+}
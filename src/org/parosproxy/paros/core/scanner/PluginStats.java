@@ -32,8 +32,13 @@ public class PluginStats {
     private int messageCount;
     private int alertCount;
     private int progress;
+    private int messageCacheHits;
+    private int messageCacheMisses;
     private boolean skipped;
     private String skippedReason;
+    private int runningTests;
+    private long runningSince;
+    private long runTime;
 
     /**
      * Constructs a {@code PluginStats}.
@@ -167,6 +172,73 @@ public class PluginStats {
         this.progress++;
     }
 
+    /**
+     * Gets the ratio of the messages to scan that were read from the cache, instead of the database.
+     *
+     * @return the ratio, between {@code 0} and {@code 1}, zero if no messages were read.
+     * @since TODO add version
+     */
+    public double getMessageCacheHitRate() {
+        int total = messageCacheHits + messageCacheMisses;
+        if (total == 0) {
+            return 0;
+        }
+        return (double) messageCacheHits / total;
+    }
+
+    /**
+     * Increments the count of messages to scan read from the cache.
+     */
+    void incMessageCacheHits() {
+        messageCacheHits++;
+    }
+
+    /**
+     * Increments the count of messages to scan read from the database.
+     */
+    void incMessageCacheMisses() {
+        messageCacheMisses++;
+    }
+
+    /**
+     * Notifies that a test of the plugin started to run.
+     *
+     * @see #testFinished()
+     */
+    synchronized void testStarted() {
+        if (runningTests++ == 0) {
+            runningSince = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Notifies that a test of the plugin finished running.
+     *
+     * @see #testStarted()
+     */
+    synchronized void testFinished() {
+        if (--runningTests == 0) {
+            runTime += System.currentTimeMillis() - runningSince;
+        }
+    }
+
+    /**
+     * Gets the time that the tests of the plugin were running, in milliseconds.
+     * <p>
+     * The time is counted once while several tests run at the same time, and it does not include the time the plugin was
+     * waiting for other plugins, for example, when scanning the nodes in batches.
+     *
+     * @return the time the tests were running.
+     * @since TODO add version
+     * @see ScannerParam#getNodeBatchSize()
+     */
+    public synchronized long getRunTime() {
+        if (runningTests > 0) {
+            return runTime + System.currentTimeMillis() - runningSince;
+        }
+        return runTime;
+    }
+
     /**
      * Sets the scan progress of the plugin.
      *
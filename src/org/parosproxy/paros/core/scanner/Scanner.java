@@ -44,6 +44,8 @@
 // ZAP: 2017/06/29 Remove code duplication in scan()
 // ZAP: 2018/02/09 Check also its excluded URLs when scanning a context (Issue 4368).
 // ZAP: 2018/04/19 Added support for publishing events
+// ZAP: 2018/11/26 Run the host processes in a bounded pool of reusable threads, instead of polling for a free thread.
+// ZAP: 2018/11/27 Share the threads of the tests by all hosts, starting more hosts while there are idle threads.
 
 package org.parosproxy.paros.core.scanner;
 
@@ -59,11 +61,15 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
 import org.parosproxy.paros.Constant;
-import org.parosproxy.paros.common.ThreadPool;
 import org.parosproxy.paros.control.Control;
 import org.parosproxy.paros.model.Model;
 import org.parosproxy.paros.model.SiteNode;
@@ -79,6 +85,7 @@ import org.zaproxy.zap.model.StructuralSiteNode;
 import org.zaproxy.zap.model.Target;
 import org.zaproxy.zap.model.TechSet;
 import org.zaproxy.zap.users.User;
+import org.zaproxy.zap.utils.BoundedPausableThreadPoolExecutor;
 
 
 
@@ -96,7 +103,28 @@ public class Scanner implements Runnable {
 	private ScanPolicy scanPolicy;
 	private RuleConfigParam ruleConfigParam;
 	private boolean isStop = false;
-	private ThreadPool pool = null;
+	private BoundedPausableThreadPoolExecutor pool = null;
+
+	/**
+	 * The threads that run the tests of all hosts, the thread budget of the scan.
+	 * 
+	 * @see #getTestsExecutor()
+	 */
+	private BoundedPausableThreadPoolExecutor testsPool = null;
+
+	/**
+	 * The number of hosts scanned at the same time, more hosts are scanned while there are idle threads.
+	 */
+	private int hostsPerScan;
+
+	/**
+	 * The number of threads that each host can use.
+	 */
+	private int threadsPerHost;
+
+	private final ReentrantLock hostProcessesLock = new ReentrantLock();
+	private final Condition hostProcessCompleted = hostProcessesLock.newCondition();
+	private final List<HostProcess> runningHostProcesses = new ArrayList<>();
 	private Target target = null;
 	private long startTimeMillis = 0;
     private List<Pattern> excludeUrls = null;
@@ -110,7 +138,7 @@ public class Scanner implements Runnable {
 	// ZAP: Added scanner pause option
 	private boolean pause = false;
 	
-	private List<HostProcess> hostProcesses = new ArrayList<>();
+	private List<HostProcess> hostProcesses = new CopyOnWriteArrayList<>();
 
     /**
      * Constructs a {@code Scanner}, with no rules' configurations.
@@ -141,7 +169,11 @@ public class Scanner implements Runnable {
 	    this.scannerParam = scannerParam;
 	    this.scanPolicy = scanPolicy;
 	    this.ruleConfigParam = ruleConfigParam;
-	    pool = new ThreadPool(scannerParam.getHostPerScan());
+	    hostsPerScan = Math.max(1, scannerParam.getHostPerScan());
+	    threadsPerHost = scannerParam.getHandleAntiCSRFTokens() ? 1 : Math.max(1, scannerParam.getThreadPerHost());
+	    int threadsPerScan = hostsPerScan * Math.max(1, scannerParam.getThreadPerHost());
+	    testsPool = new BoundedPausableThreadPoolExecutor(threadsPerScan, threadsPerScan, "ZAP-ActiveScanner-");
+	    pool = new BoundedPausableThreadPoolExecutor(threadsPerScan, 0, "ZAP-ActiveScanner-Host-");
 	    
 	  //ZAP: Load all scanner hooks from extensionloader. 
 	    Control.getSingleton().getExtensionLoader().hookScannerHook(this);
@@ -171,6 +203,8 @@ public class Scanner implements Runnable {
             log.info("scanner stopped");
     
             isStop = true;
+            // Let the paused tests run, they finish promptly once stopped.
+            testsPool.resume();
             
             ActiveScanEventPublisher.publishScanEvent(
                     ScanEventPublisher.SCAN_STOPPED_EVENT, this.getId());
@@ -206,18 +240,20 @@ public class Scanner implements Runnable {
 //	    while (pool.isAllThreadComplete()) {
 //	        Util.sleep(4000);
 //	    }
-            pool.waitAllThreadComplete(0);
+            pool.awaitTasksCompleted(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             log.error("An error occurred while active scanning:", e);
         } finally {
+            pool.shutdown();
+            testsPool.shutdown();
             notifyScannerComplete();
         }
 	}
 	
 	public void scan(Target target) {
 
-	    Thread thread = null;
-
         this.setScanChildren(target.isRecurse());
         this.setJustScanInScope(target.isInScopeOnly());
 
@@ -235,11 +271,7 @@ public class Scanner implements Runnable {
 		            hostProcess.setUser(this.user);
 		            hostProcess.setTechSet(this.techSet);
 		            this.hostProcesses.add(hostProcess);
-		            do { 
-		                thread = pool.getFreeThreadAndRun(hostProcess);
-		                if (thread == null) Util.sleep(500);
-		            } while (thread == null && !isStop());
-		            if (thread != null) {
+		            if (startHostProcess(hostProcess)) {
 			            notifyHostNewScan(hostAndPort, hostProcess);
 		            }
 		        }
@@ -264,8 +296,9 @@ public class Scanner implements Runnable {
 		    	// Now start them all off
 		    	for (Entry<String, HostProcess> pmSet : processMap.entrySet()) {
 		            this.hostProcesses.add(pmSet.getValue());
-		            thread = pool.getFreeThreadAndRun(pmSet.getValue());
-		            notifyHostNewScan(pmSet.getKey(), pmSet.getValue());
+		            if (startHostProcess(pmSet.getValue())) {
+		                notifyHostNewScan(pmSet.getKey(), pmSet.getValue());
+		            }
 		    	}
 		    }
 	    } else if (target.getContext() != null || target.isInScopeOnly()){
@@ -291,17 +324,102 @@ public class Scanner implements Runnable {
             	hostProcess.setUser(this.user);
             	hostProcess.setTechSet(this.techSet);
             	this.hostProcesses.add(hostProcess);
-            	do {
-            		thread = pool.getFreeThreadAndRun(hostProcess);
-            		if (thread == null) Util.sleep(500);
-            	} while (thread == null && !isStop());
-            	if (thread != null) {
+            	if (startHostProcess(hostProcess)) {
             		notifyHostNewScan(hostAndPort, hostProcess);
             	}
             }
 	    }
 	}
 
+	/**
+	 * Starts the given host process, waiting until it can be started.
+	 *
+	 * @param hostProcess the host process to start.
+	 * @return {@code true} if the host process was started, {@code false} if the scan was stopped while waiting.
+	 * @see #canStartHostProcess()
+	 */
+	private boolean startHostProcess(HostProcess hostProcess) {
+	    hostProcessesLock.lock();
+	    try {
+	        while (!canStartHostProcess()) {
+	            if (isStop()) {
+	                return false;
+	            }
+	            // Idle threads are not signalled, check them periodically.
+	            hostProcessCompleted.await(500, TimeUnit.MILLISECONDS);
+	        }
+	        if (isStop()) {
+	            return false;
+	        }
+	        runningHostProcesses.add(hostProcess);
+	    } catch (InterruptedException e) {
+	        Thread.currentThread().interrupt();
+	        return false;
+	    } finally {
+	        hostProcessesLock.unlock();
+	    }
+
+	    try {
+	        pool.execute(() -> {
+	            try {
+	                hostProcess.run();
+	            } finally {
+	                hostProcessCompleted(hostProcess);
+	            }
+	        });
+	        return true;
+	    } catch (RejectedExecutionException e) {
+	        log.warn("Failed to start the scan of the host: " + e.getMessage());
+	        hostProcessCompleted(hostProcess);
+	    }
+	    return false;
+	}
+
+	/**
+	 * Tells whether or not a host process can be started.
+	 * <p>
+	 * The hosts are started while fewer than the hosts per scan are running, more hosts are started while the threads of the
+	 * tests would otherwise be idle, that is, when the running hosts are already running the plugins and there are idle
+	 * threads for another host.
+	 * <p>
+	 * Should be called with the {@link #hostProcessesLock} held.
+	 *
+	 * @return {@code true} if a host process can be started, {@code false} otherwise.
+	 */
+	private boolean canStartHostProcess() {
+	    if (runningHostProcesses.size() < hostsPerScan) {
+	        return true;
+	    }
+	    if (runningHostProcesses.size() >= pool.getMaximumPoolSize()) {
+	        return false;
+	    }
+	    for (HostProcess hostProcess : runningHostProcesses) {
+	        if (hostProcess.isInitialising()) {
+	            return false;
+	        }
+	    }
+	    return testsPool.getIdleThreadCount() >= threadsPerHost;
+	}
+
+	private void hostProcessCompleted(HostProcess hostProcess) {
+	    hostProcessesLock.lock();
+	    try {
+	        runningHostProcesses.remove(hostProcess);
+	        hostProcessCompleted.signalAll();
+	    } finally {
+	        hostProcessesLock.unlock();
+	    }
+	}
+
+	/**
+	 * Gets the executor of the tests, shared by all hosts.
+	 *
+	 * @return the executor of the tests.
+	 */
+	BoundedPausableThreadPoolExecutor getTestsExecutor() {
+	    return testsPool;
+	}
+
 	public boolean isStop() {
 	    
 	    return isStop;
@@ -404,12 +522,14 @@ public class Scanner implements Runnable {
 	// ZAP: support pause and notify parent
 	public void pause() {
 		this.pause = true;
+		testsPool.pause();
         ActiveScanEventPublisher.publishScanEvent(
                 ScanEventPublisher.SCAN_PAUSED_EVENT, this.getId());
 	}
 	
 	public void resume () {
 		this.pause = false;
+		testsPool.resume();
         ActiveScanEventPublisher.publishScanEvent(
                 ScanEventPublisher.SCAN_RESUMED_EVENT, this.getId());
 	}
@@ -46,6 +46,9 @@
 // ZAP: 2017/09/26 Use helper methods to read the configurations.
 // ZAP: 2018/02/14 Remove unnecessary boxing / unboxing
 // ZAP: 2018/09/12 Make the addition of a query parameter optional.
+// ZAP: 2018/11/17 Allow to decode the responses of the scanned messages.
+// ZAP: 2018/11/22 Allow to coalesce identical requests.
+// ZAP: 2018/11/30 Allow to scan the nodes in batches, with all plugins.
 
 package org.parosproxy.paros.core.scanner;
 
@@ -111,6 +114,30 @@ public class ScannerParam extends AbstractParam {
      */
     private static final String SCAN_ADD_QUERY_PARAM = ACTIVE_SCAN_BASE_KEY + ".addQueryParam";
 
+    /**
+     * Configuration key to write/read the {@code decodeResponseBody} flag.
+     * 
+     * @since TODO add version
+     * @see #decodeResponseBody
+     */
+    private static final String DECODE_RESPONSE_BODY = ACTIVE_SCAN_BASE_KEY + ".decodeResponseBody";
+
+    /**
+     * Configuration key to write/read the {@code coalesceRequests} flag.
+     * 
+     * @since TODO add version
+     * @see #coalesceRequests
+     */
+    private static final String COALESCE_REQUESTS = ACTIVE_SCAN_BASE_KEY + ".coalesceRequests";
+
+    /**
+     * Configuration key to write/read the {@code nodeBatchSize}.
+     * 
+     * @since TODO add version
+     * @see #nodeBatchSize
+     */
+    private static final String NODE_BATCH_SIZE = ACTIVE_SCAN_BASE_KEY + ".nodeBatchSize";
+
     // ZAP: Configuration constants
     public static final int TARGET_QUERYSTRING = 1;
     public static final int TARGET_POSTDATA = 1 << 1;
@@ -179,6 +206,40 @@ public class ScannerParam extends AbstractParam {
      */
     private boolean addQueryParam;
 
+    /**
+     * Flag that indicates if the content encoded (for example, gzip) responses should be decoded.
+     * <p>
+     * Default value is {@code false}.
+     * 
+     * @since TODO add version
+     * @see #isDecodeResponseBody()
+     * @see #setDecodeResponseBody(boolean)
+     */
+    private boolean decodeResponseBody;
+
+    /**
+     * Flag that indicates if the identical {@code GET} and {@code HEAD} requests should be coalesced.
+     * <p>
+     * Default value is {@code false}.
+     * 
+     * @since TODO add version
+     * @see #isCoalesceRequests()
+     * @see #setCoalesceRequests(boolean)
+     */
+    private boolean coalesceRequests;
+
+    /**
+     * The number of nodes scanned by all plugins before moving on to the next nodes, zero to scan all nodes with each plugin
+     * in turn.
+     * <p>
+     * Default value is {@code 0}.
+     * 
+     * @since TODO add version
+     * @see #getNodeBatchSize()
+     * @see #setNodeBatchSize(int)
+     */
+    private int nodeBatchSize;
+
     // ZAP: Excluded Parameters
     private final List<ScannerParamFilter> excludedParams = new ArrayList<>();
     private final Map<Integer, List<ScannerParamFilter>> excludedParamsMap = new HashMap<>();
@@ -235,6 +296,12 @@ public class ScannerParam extends AbstractParam {
 
         this.addQueryParam = getBoolean(SCAN_ADD_QUERY_PARAM, false);
 
+        this.decodeResponseBody = getBoolean(DECODE_RESPONSE_BODY, false);
+
+        this.coalesceRequests = getBoolean(COALESCE_REQUESTS, false);
+
+        this.nodeBatchSize = Math.max(0, getInt(NODE_BATCH_SIZE, 0));
+
         // Parse the parameters that need to be excluded
         // ------------------------------------------------
         try {
@@ -626,4 +693,82 @@ public class ScannerParam extends AbstractParam {
         getConfig().setProperty(SCAN_ADD_QUERY_PARAM, this.addQueryParam);
     }
 
+    /**
+     * Tells whether or not the content encoded (for example, gzip) responses of the scanned messages should be decoded.
+     *
+     * @return {@code true} if the responses should be decoded, {@code false} otherwise
+     * @since TODO add version
+     * @see #setDecodeResponseBody(boolean)
+     */
+    public boolean isDecodeResponseBody() {
+        return decodeResponseBody;
+    }
+
+    /**
+     * Sets whether or not the content encoded (for example, gzip) responses of the scanned messages should be decoded.
+     *
+     * @param decodeResponseBody {@code true} if the responses should be decoded, {@code false} otherwise
+     * @since TODO add version
+     * @see #isDecodeResponseBody()
+     * @see org.parosproxy.paros.network.ConnectionParam#setMaxDecodedBodySize(int)
+     */
+    public void setDecodeResponseBody(boolean decodeResponseBody) {
+        this.decodeResponseBody = decodeResponseBody;
+        getConfig().setProperty(DECODE_RESPONSE_BODY, this.decodeResponseBody);
+    }
+
+    /**
+     * Tells whether or not the identical {@code GET} and {@code HEAD} requests should be coalesced.
+     * <p>
+     * The identical requests sent at the same time, or shortly after, are sent just once with the response copied to the
+     * others.
+     *
+     * @return {@code true} if the requests should be coalesced, {@code false} otherwise
+     * @since TODO add version
+     * @see #setCoalesceRequests(boolean)
+     */
+    public boolean isCoalesceRequests() {
+        return coalesceRequests;
+    }
+
+    /**
+     * Sets whether or not the identical {@code GET} and {@code HEAD} requests should be coalesced.
+     *
+     * @param coalesceRequests {@code true} if the requests should be coalesced, {@code false} otherwise
+     * @since TODO add version
+     * @see #isCoalesceRequests()
+     */
+    public void setCoalesceRequests(boolean coalesceRequests) {
+        this.coalesceRequests = coalesceRequests;
+        getConfig().setProperty(COALESCE_REQUESTS, this.coalesceRequests);
+    }
+
+    /**
+     * Gets the number of nodes scanned by all plugins before moving on to the next nodes.
+     * <p>
+     * Scanning the nodes in batches completes the results of each node earlier and reuses the messages and their input
+     * vectors while still cached. The plugins that depend on others still run after those have scanned all nodes. The
+     * {@link #getMaxRuleDurationInMins() maximum rule duration} is counted from the time the tests of each plugin run, not
+     * from when it started.
+     *
+     * @return the number of nodes, zero if all nodes are scanned with each plugin in turn
+     * @since TODO add version
+     * @see #setNodeBatchSize(int)
+     */
+    public int getNodeBatchSize() {
+        return nodeBatchSize;
+    }
+
+    /**
+     * Sets the number of nodes scanned by all plugins before moving on to the next nodes.
+     *
+     * @param nodeBatchSize the number of nodes, zero (or negative) to scan all nodes with each plugin in turn
+     * @since TODO add version
+     * @see #getNodeBatchSize()
+     */
+    public void setNodeBatchSize(int nodeBatchSize) {
+        this.nodeBatchSize = Math.max(0, nodeBatchSize);
+        getConfig().setProperty(NODE_BATCH_SIZE, this.nodeBatchSize);
+    }
+
 }
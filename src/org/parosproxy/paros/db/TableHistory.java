@@ -37,6 +37,35 @@ public interface TableHistory extends DatabaseListener {
 	RecordHistory write(long sessionId, int histType,
 			HttpMessage msg) throws HttpMalformedHeaderException, DatabaseException;
 
+	/**
+	 * Writes the given messages, as a single batch if supported by the implementation.
+	 * <p>
+	 * Unlike {@link #write(long, int, HttpMessage)} the records are not read back, just the IDs are returned. If the batch
+	 * fails none of the messages should have been written, allowing the caller to write them individually.
+	 * <p>
+	 * Default implementation writes the messages one by one.
+	 *
+	 * @param sessionId the ID of the session of the messages
+	 * @param histTypes the history types of the messages
+	 * @param msgs the messages to write
+	 * @return the history IDs of the written messages, in the same order
+	 * @throws IllegalArgumentException if {@code histTypes} and {@code msgs} have different lengths
+	 * @throws HttpMalformedHeaderException if a message has a malformed header
+	 * @throws DatabaseException if an error occurred while writing the messages
+	 * @since TODO add version
+	 */
+	default int[] write(long sessionId, int[] histTypes, HttpMessage[] msgs)
+			throws HttpMalformedHeaderException, DatabaseException {
+		if (histTypes.length != msgs.length) {
+			throw new IllegalArgumentException("Parameters histTypes and msgs must have the same length.");
+		}
+		int[] historyIds = new int[msgs.length];
+		for (int i = 0; i < msgs.length; i++) {
+			historyIds[i] = write(sessionId, histTypes[i], msgs[i]).getHistoryId();
+		}
+		return historyIds;
+	}
+
 	/**
 	 * Gets all the history record IDs of the given session.
 	 *
@@ -38,6 +38,7 @@
 // ZAP: 2016/05/27 Change to use HistoryReference to obtain the temporary types
 // ZAP: 2016/08/30 Issue 2836: Change to delete temporary history types in batches to prevent out-of-memory-exception(s)
 // ZAP: 2018/02/14 Remove unnecessary boxing / unboxing
+// ZAP: 2018/10/25 Allow to write messages in batches.
 
 package org.parosproxy.paros.db.paros;
 
@@ -269,41 +270,93 @@ public class ParosTableHistory extends ParosAbstractTable implements TableHistor
 	public synchronized RecordHistory write(long sessionId, int histType, HttpMessage msg) throws HttpMalformedHeaderException, DatabaseException {
 	    
 	    try {
-			String reqHeader = "";
-			byte[] reqBody = new byte[0];
-			String resHeader = "";
-			byte[] resBody = reqBody;
-			String method = "";
-			String uri = "";
-			int statusCode = 0;
-			String note = msg.getNote();
-			
-			if (!msg.getRequestHeader().isEmpty()) {
-			    reqHeader = msg.getRequestHeader().toString();
-			    reqBody = msg.getRequestBody().getBytes();
-			    method = msg.getRequestHeader().getMethod();
-			    uri = msg.getRequestHeader().getURI().toString();
+			setInsertParameters(sessionId, histType, msg);
+			psInsert.executeUpdate();
+			return read(getLastInsertedId());
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		}
+	    
+	}
+
+	@Override
+	public synchronized int[] write(long sessionId, int[] histTypes, HttpMessage[] msgs) throws HttpMalformedHeaderException, DatabaseException {
+		if (histTypes.length != msgs.length) {
+			throw new IllegalArgumentException("Parameters histTypes and msgs must have the same length.");
+		}
+		if (msgs.length == 0) {
+			return new int[0];
+		}
+
+		try {
+			try {
+				for (int i = 0; i < msgs.length; i++) {
+					setInsertParameters(sessionId, histTypes[i], msgs[i]);
+					psInsert.addBatch();
+				}
+			} catch (SQLException e) {
+				// Do not write any of the messages.
+				psInsert.clearBatch();
+				throw e;
+			}
+
+			// Single transaction, the batch might fail after inserting some of the messages.
+			Connection conn = psInsert.getConnection();
+			boolean autoCommit = conn.getAutoCommit();
+			conn.setAutoCommit(false);
+			try {
+				psInsert.executeBatch();
+				conn.commit();
+			} catch (SQLException e) {
+				psInsert.clearBatch();
+				conn.rollback();
+				throw e;
+			} finally {
+				conn.setAutoCommit(autoCommit);
 			}
 
-			if (!msg.getResponseHeader().isEmpty()) {
-			    resHeader = msg.getResponseHeader().toString();
-			    resBody = msg.getResponseBody().getBytes();
-			    statusCode = msg.getResponseHeader().getStatusCode();
+			// The IDs are sequential, the writes are synchronised.
+			int lastId = getLastInsertedId();
+			int[] historyIds = new int[msgs.length];
+			for (int i = 0; i < historyIds.length; i++) {
+				historyIds[i] = lastId - historyIds.length + 1 + i;
 			}
-			
-			//return write(sessionId, histType, msg.getTimeSentMillis(), msg.getTimeElapsedMillis(), method, uri, statusCode, reqHeader, reqBody, resHeader, resBody, msg.getTag());
-			return write(sessionId, histType, msg.getTimeSentMillis(), msg.getTimeElapsedMillis(), method, uri, statusCode, reqHeader, reqBody, resHeader, resBody, null, note, msg.isResponseFromTargetHost());
+			return historyIds;
 		} catch (SQLException e) {
 			throw new DatabaseException(e);
 		}
-	    
+	}
+
+	private void setInsertParameters(long sessionId, int histType, HttpMessage msg) throws SQLException {
+		String reqHeader = "";
+		byte[] reqBody = new byte[0];
+		String resHeader = "";
+		byte[] resBody = reqBody;
+		String method = "";
+		String uri = "";
+		int statusCode = 0;
+		String note = msg.getNote();
+		
+		if (!msg.getRequestHeader().isEmpty()) {
+		    reqHeader = msg.getRequestHeader().toString();
+		    reqBody = msg.getRequestBody().getBytes();
+		    method = msg.getRequestHeader().getMethod();
+		    uri = msg.getRequestHeader().getURI().toString();
+		}
+
+		if (!msg.getResponseHeader().isEmpty()) {
+		    resHeader = msg.getResponseHeader().toString();
+		    resBody = msg.getResponseBody().getBytes();
+		    statusCode = msg.getResponseHeader().getStatusCode();
+		}
+		
+		setInsertParameters(sessionId, histType, msg.getTimeSentMillis(), msg.getTimeElapsedMillis(), method, uri, statusCode, reqHeader, reqBody, resHeader, resBody, null, note, msg.isResponseFromTargetHost());
 	}
 	
-	private synchronized RecordHistory write(long sessionId, int histType, long timeSentMillis, int timeElapsedMillis,
+	private void setInsertParameters(long sessionId, int histType, long timeSentMillis, int timeElapsedMillis,
 	        String method, String uri, int statusCode,
 	        String reqHeader, byte[] reqBody, String resHeader, byte[] resBody, String tag, String note, boolean responseFromTargetHost) 
-	        		throws HttpMalformedHeaderException, SQLException, DatabaseException {
-
+	        		throws SQLException {
 		//ZAP: Allow the request and response body sizes to be user-specifiable as far as possible
 		if (reqBody.length > this.configuredrequestbodysize) {
 			throw new SQLException("The actual Request Body length "+ reqBody.length + " is greater than the configured request body length "+ this.configuredrequestbodysize);
@@ -346,23 +399,14 @@ public class ParosTableHistory extends ParosAbstractTable implements TableHistor
         ++currentIdx;
         
         psInsert.setBoolean(currentIdx, responseFromTargetHost);
-        
-        psInsert.executeUpdate();
-				
-		/*
-        String sql = "INSERT INTO HISTORY ("
-        		+ REQHEADER + "," + REQBODY + "," + RESHEADER + "," + RESBODY +
-				") VALUES ('"+ reqHeader + "','" + reqBody + "','" + resHeader + "','" + resBody + "'); CALL IDENTITY();";
-		Statement stmt = mConn.createStatement();
-		stmt.executeQuery(sql);
-		ResultSet rs = stmt.getResultSet();
-		*/
-		
+	}
+
+	private int getLastInsertedId() throws SQLException {
 		try (ResultSet rs = psGetIdLastInsert.executeQuery()) {
 			rs.next();
 			int id = rs.getInt(1);
             lastInsertedIndex = id;
-			return read(id);
+			return id;
 		}
 	}
 	
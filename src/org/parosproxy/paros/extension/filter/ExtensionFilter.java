@@ -39,6 +39,7 @@
 // ZAP: 2016/06/28 Do not start the timer thread if no filter is enabled
 // ZAP: 2017/04/07 Added getUIName()
 // ZAP: 2017/12/28 Add deprecated annotation and JavaDoc tag.
+// ZAP: 2018/10/24 Implement isFullResponseBodyRequired(HttpMessage).
 
 package org.parosproxy.paros.extension.filter;
 
@@ -241,6 +242,19 @@ public class ExtensionFilter extends ExtensionAdaptor implements ProxyListener {
         return true;
     }
 
+    @Override
+    public boolean isFullResponseBodyRequired(HttpMessage httpMessage) {
+        if (Control.getSingleton().getMode() == Control.Mode.safe) {
+            return false;
+        }
+        for (Filter filter : filterFactory.getAllFilter()) {
+            if (filter.isEnabled()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Destroy every filter during extension destroy.
      */
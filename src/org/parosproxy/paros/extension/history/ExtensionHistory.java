@@ -85,6 +85,7 @@
 // ZAP: 2018/01/29 Add getter to expose historyReferencesTable of History tab (Issue 4000).
 // ZAP: 2018/02/14 Remove unnecessary boxing / unboxing
 // ZAP: 2018/03/12 Use the same help page in request editors.
+// ZAP: 2018/10/25 Persist the pending proxied messages before changing the session and on destroy.
 
 package org.parosproxy.paros.extension.history;
 
@@ -753,6 +754,9 @@ public class ExtensionHistory extends ExtensionAdaptor implements SessionChanged
 	
 	@Override
 	public void sessionAboutToChange(final Session session) {
+		if (proxyListener != null) {
+			proxyListener.flush();
+		}
 		sessionChanging = true;
 
 		if (getView() == null || EventQueue.isDispatchThread()) {
@@ -782,6 +786,13 @@ public class ExtensionHistory extends ExtensionAdaptor implements SessionChanged
 		return Constant.PAROS_TEAM;
 	}
 
+	@Override
+	public void destroy() {
+		if (proxyListener != null) {
+			proxyListener.stop();
+		}
+	}
+
 	public boolean isShowJustInScope() {
 		return showJustInScope;
 	}
@@ -0,0 +1,297 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.extension.history;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.log4j.Logger;
+import org.parosproxy.paros.model.HistoryReference;
+import org.parosproxy.paros.model.Session;
+import org.parosproxy.paros.network.HttpMessage;
+import org.zaproxy.zap.utils.Stats;
+
+/**
+ * A writer of {@code HttpMessage}s to the session, persists the messages in batches in a dedicated thread.
+ * <p>
+ * The messages are queued, up to a maximum, after which the callers wait for the queue to have space. The writer thread takes
+ * the queued messages, persists them in a single batch and then notifies the callbacks, with the in-memory messages.
+ *
+ * @since TODO add version
+ * @see HistoryReference#create(Session, int[], HttpMessage[])
+ */
+public class HistoryBatchWriter {
+
+    /**
+     * The default maximum number of messages queued.
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    /**
+     * The default maximum number of messages persisted in a single batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 100;
+
+    private static final Logger LOGGER = Logger.getLogger(HistoryBatchWriter.class);
+
+    private static final String STATS_BATCHES = "stats.history.batches";
+    private static final String STATS_MESSAGES = "stats.history.batches.messages";
+
+    /**
+     * The entry that signals the writer thread to stop.
+     */
+    private static final Entry STOP = new Entry(null, 0, null, null);
+
+    private final String name;
+    private final BlockingQueue<Entry> queue;
+    private final int batchSize;
+
+    private final Object pendingLock = new Object();
+    private int pending;
+
+    private Thread writerThread;
+
+    /**
+     * Constructs a {@code HistoryBatchWriter} with the given name and default queue and batch sizes.
+     *
+     * @param name the name of the writer, used in the name of the writer thread.
+     */
+    public HistoryBatchWriter(String name) {
+        this(name, DEFAULT_QUEUE_SIZE, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructs a {@code HistoryBatchWriter} with the given name, queue and batch sizes.
+     *
+     * @param name the name of the writer, used in the name of the writer thread.
+     * @param queueSize the maximum number of messages queued.
+     * @param batchSize the maximum number of messages persisted in a single batch.
+     * @throws IllegalArgumentException if {@code queueSize} or {@code batchSize} are not greater than zero.
+     */
+    public HistoryBatchWriter(String name, int queueSize, int batchSize) {
+        if (queueSize <= 0) {
+            throw new IllegalArgumentException("Parameter queueSize must be greater than zero.");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Parameter batchSize must be greater than zero.");
+        }
+        this.name = name;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Queues the given message to be persisted.
+     * <p>
+     * The message should not be changed afterwards, it's persisted and passed to the callback as is. If the queue is full the
+     * caller waits for space, if interrupted while waiting the message is persisted in the calling thread.
+     *
+     * @param session the session of the message.
+     * @param historyType the type of the message.
+     * @param message the message to persist.
+     * @param callback the callback notified once the message is persisted, might be {@code null}.
+     */
+    public void write(Session session, int historyType, HttpMessage message, Callback callback) {
+        Entry entry = new Entry(session, historyType, message, callback);
+        synchronized (this) {
+            if (writerThread == null) {
+                writerThread = new Thread(this::processQueue, "ZAP-HistoryWriter-" + name);
+                writerThread.setDaemon(true);
+                writerThread.start();
+            }
+            incPending(1);
+        }
+
+        try {
+            queue.put(entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.debug("Interrupted while queueing the message, persisting in the calling thread.");
+            write(Collections.singletonList(entry));
+        }
+    }
+
+    /**
+     * Waits until all the queued messages are persisted.
+     * <p>
+     * The callbacks might still be executing after this method returns.
+     */
+    public void flush() {
+        synchronized (pendingLock) {
+            while (pending > 0) {
+                try {
+                    pendingLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the writer, after persisting all the queued messages.
+     * <p>
+     * The messages written afterwards start a new writer thread.
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            thread = writerThread;
+            if (thread == null) {
+                return;
+            }
+            writerThread = null;
+        }
+
+        try {
+            // Not interrupted, the database might not handle it well.
+            queue.put(STOP);
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void processQueue() {
+        List<Entry> entries = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                entries.add(queue.take());
+            } catch (InterruptedException e) {
+                LOGGER.warn("Interrupted while waiting for messages, stopping.");
+                return;
+            }
+            queue.drainTo(entries, batchSize - 1);
+
+            boolean stop = entries.remove(STOP);
+            if (!entries.isEmpty()) {
+                write(entries);
+                entries.clear();
+            }
+            if (stop) {
+                // Persist the messages queued while stopping.
+                queue.drainTo(entries);
+                if (!entries.isEmpty()) {
+                    write(entries);
+                }
+                return;
+            }
+        }
+    }
+
+    private void write(List<Entry> entries) {
+        int start = 0;
+        while (start < entries.size()) {
+            Session session = entries.get(start).session;
+            int end = start + 1;
+            while (end < entries.size() && entries.get(end).session == session) {
+                end++;
+            }
+            write(session, entries.subList(start, end));
+            start = end;
+        }
+    }
+
+    private void write(Session session, List<Entry> entries) {
+        int[] historyTypes = new int[entries.size()];
+        HttpMessage[] messages = new HttpMessage[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            historyTypes[i] = entries.get(i).historyType;
+            messages[i] = entries.get(i).message;
+        }
+
+        HistoryReference[] historyReferences;
+        try {
+            historyReferences = HistoryReference.create(session, historyTypes, messages);
+            Stats.incCounter(STATS_BATCHES);
+            Stats.incCounter(STATS_MESSAGES, messages.length);
+        } catch (Exception e) {
+            LOGGER.debug("Failed to persist the messages in batch, persisting one by one: " + e.getMessage());
+            historyReferences = new HistoryReference[messages.length];
+            for (int i = 0; i < messages.length; i++) {
+                try {
+                    historyReferences[i] = new HistoryReference(session, historyTypes[i], messages[i]);
+                } catch (Exception ex) {
+                    LOGGER.warn(ex.getMessage(), ex);
+                }
+            }
+        } finally {
+            incPending(-entries.size());
+        }
+
+        for (int i = 0; i < historyReferences.length; i++) {
+            Callback callback = entries.get(i).callback;
+            if (historyReferences[i] != null && callback != null) {
+                try {
+                    callback.persisted(historyReferences[i], messages[i]);
+                } catch (Exception e) {
+                    LOGGER.error("An error occurred while notifying the callback:", e);
+                }
+            }
+        }
+    }
+
+    private void incPending(int delta) {
+        synchronized (pendingLock) {
+            pending += delta;
+            if (pending == 0) {
+                pendingLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * A callback notified once a message is persisted.
+     *
+     * @since TODO add version
+     */
+    @FunctionalInterface
+    public interface Callback {
+
+        /**
+         * Called, in the writer thread, once the message is persisted.
+         * <p>
+         * Should not block, the following messages are persisted only after all the callbacks of the batch are notified.
+         *
+         * @param historyReference the {@code HistoryReference} of the persisted message.
+         * @param message the (in-memory) message persisted.
+         */
+        void persisted(HistoryReference historyReference, HttpMessage message);
+    }
+
+    private static class Entry {
+
+        private final Session session;
+        private final int historyType;
+        private final HttpMessage message;
+        private final Callback callback;
+
+        Entry(Session session, int historyType, HttpMessage message, Callback callback) {
+            this.session = session;
+            this.historyType = historyType;
+            this.message = message;
+            this.callback = callback;
+        }
+    }
+}
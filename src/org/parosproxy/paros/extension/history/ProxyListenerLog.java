@@ -31,6 +31,8 @@
 // ZAP: 2016/05/30 Issue 2494: ZAP Proxy is not showing the HTTP CONNECT Request in history tab
 // ZAP: 2018/03/14 Publish event when href added
 // ZAP: 2018/04/11 Log the message synchronously to avoid following listeners to change it before being persisted.
+// ZAP: 2018/10/24 Implement isFullResponseBodyRequired(HttpMessage).
+// ZAP: 2018/10/25 Persist the messages asynchronously, in batches.
 
 package org.parosproxy.paros.extension.history;
  
@@ -40,12 +42,10 @@ import org.apache.log4j.Logger;
 import org.parosproxy.paros.Constant;
 import org.parosproxy.paros.core.proxy.ConnectRequestProxyListener;
 import org.parosproxy.paros.core.proxy.ProxyListener;
-import org.parosproxy.paros.db.DatabaseException;
 import org.parosproxy.paros.extension.ViewDelegate;
 import org.parosproxy.paros.model.HistoryReference;
 import org.parosproxy.paros.model.Model;
 import org.parosproxy.paros.network.HttpHeader;
-import org.parosproxy.paros.network.HttpMalformedHeaderException;
 import org.parosproxy.paros.network.HttpMessage;
 import org.parosproxy.paros.network.HttpStatusCode;
 import org.parosproxy.paros.view.View;
@@ -67,6 +67,11 @@ public class ProxyListenerLog implements ProxyListener, ConnectRequestProxyListe
 	private Model model = null;
 	private boolean isFirstAccess = true;
 	private ExtensionHistory extension = null;
+
+	/**
+	 * The writer of the proxied messages, persists them without delaying the proxy.
+	 */
+	private final HistoryBatchWriter historyWriter = new HistoryBatchWriter("Proxy");
 	
 	public ProxyListenerLog(Model model, ViewDelegate view, ExtensionHistory extension) {
 	    this.model = model;
@@ -118,18 +123,17 @@ public class ProxyListenerLog implements ProxyListener, ConnectRequestProxyListe
                 return true;
             }
 		}
-		final int finalType = type;
-		final HistoryReference href = createHistoryReference(msg, type);
-		Thread t = new Thread(new Runnable() {
-		    @Override
-		    public void run() {
-		        createAndAddMessage(href, finalType);
-		    }
-		});
-		t.start();
+		// Persist a copy, the following listeners might change the message.
+		historyWriter.write(model.getSession(), type, new HttpMessage(msg), this::createAndAddMessage);
 				
 		return true;
 	}
+
+	@Override
+	public boolean isFullResponseBodyRequired(HttpMessage msg) {
+		// Persists whatever body is captured.
+		return false;
+	}
 	    
     public boolean isSkipImage(HttpHeader header) {
 		if (header.isImage() && !model.getOptionsParam().getViewParam().isProcessImages()) {
@@ -140,55 +144,46 @@ public class ProxyListenerLog implements ProxyListener, ConnectRequestProxyListe
 				
 	}
     
-    private void createAndAddMessage(HistoryReference historyRef, int type) {
-        if (historyRef == null || (type != HistoryReference.TYPE_PROXIED && type != HistoryReference.TYPE_HIDDEN)) {
-            return;
-        }
-
+    private void createAndAddMessage(HistoryReference historyRef, HttpMessage message) {
         extension.addHistory(historyRef);
 
-        try {
-            addToSiteMap(historyRef, historyRef.getHttpMessage());
-        } catch (HttpMalformedHeaderException | DatabaseException e) {
-            log.warn("Failed to add the message to Sites tree:", e);
-        }
-        
-        ProxyListenerLogEventPublisher.getPublisher().publishHrefAddedEvent(historyRef);
-    }
-
-    private HistoryReference createHistoryReference(HttpMessage message, int type) {
-        try {
-            return new HistoryReference(model.getSession(), type, message);
-        } catch (Exception e) {
-            // ZAP: Log exceptions
-            log.warn(e.getMessage(), e);
-        }
-        return null;
+        addToSiteMap(historyRef, message);
     }
 
     private void addToSiteMap(final HistoryReference ref, final HttpMessage msg) {
         if (View.isInitialised() && !EventQueue.isDispatchThread()) {
-            try {
-                EventQueue.invokeAndWait(new Runnable() {
-                    @Override
-                    public void run() {
-                        addToSiteMap(ref, msg);
-                    }
-                });
-            } catch (Exception e) {
-            	// ZAP: Log exceptions
-            	log.warn(e.getMessage(), e);
-            }
+            // Do not wait, the writer would not persist the following messages in the meantime.
+            EventQueue.invokeLater(() -> addToSiteMap(ref, msg));
             return;
         }
 
-        SessionStructure.addPath(model.getSession(), ref, msg);
+        try {
+            SessionStructure.addPath(model.getSession(), ref, msg);
+        } catch (Exception e) {
+            log.warn("Failed to add the message to Sites tree:", e);
+        }
         if (isFirstAccess && !Constant.isLowMemoryOptionSet()) {
             isFirstAccess = false;
             if (View.isInitialised()) {
                 view.getSiteTreePanel().expandRoot();
             }
         }
+
+        ProxyListenerLogEventPublisher.getPublisher().publishHrefAddedEvent(ref);
+    }
+
+    /**
+     * Waits until all the messages already received are persisted.
+     */
+    void flush() {
+        historyWriter.flush();
+    }
+
+    /**
+     * Stops the writer of the messages, after persisting the messages already received.
+     */
+    void stop() {
+        historyWriter.stop();
     }
 
     @Override
@@ -197,15 +192,10 @@ public class ProxyListenerLog implements ProxyListener, ConnectRequestProxyListe
             return;
         }
 
-        Thread t = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                HistoryReference historyRef = createHistoryReference(connectMessage, HistoryReference.TYPE_PROXY_CONNECT);
-                if (historyRef != null) {
-                    extension.addHistory(historyRef);
-                }
-            }
-        });
-        t.start();
+        historyWriter.write(
+                model.getSession(),
+                HistoryReference.TYPE_PROXY_CONNECT,
+                new HttpMessage(connectMessage),
+                (historyRef, message) -> extension.addHistory(historyRef));
     }
 }
@@ -55,6 +55,7 @@
 // ZAP: 2017/07/04 Notify when a HistoryReference is deleted.
 // ZAP: 2017/08/18 Add TYPE_FUZZER_TEMPORARY.
 // ZAP: 2018/02/14 Remove unnecessary boxing / unboxing
+// ZAP: 2018/10/25 Allow to create HistoryReferences in batches.
 
 package org.parosproxy.paros.model;
 
@@ -371,6 +372,46 @@ public class HistoryReference {
 	}
 	
 	
+	/**
+	 * Constructs a {@code HistoryReference} for a message just persisted, with the given ID.
+	 *
+	 * @param sessionId the ID of the session of the message.
+	 * @param historyId the ID of the persisted message.
+	 * @param historyType the type of the message.
+	 * @param msg the message persisted.
+	 */
+	private HistoryReference(long sessionId, int historyId, int historyType, HttpMessage msg) {
+		this.icons =  new ArrayList<>();
+		this.clearIfManual = new ArrayList<>();
+		build(sessionId, historyId, historyType, msg);
+	}
+
+	/**
+	 * Creates {@code HistoryReference}s for the given messages, persisting them to the database in a single batch.
+	 * <p>
+	 * Unlike {@link #HistoryReference(Session, int, HttpMessage)} nothing is read back from the database, new messages do not
+	 * have tags nor alerts yet.
+	 *
+	 * @param session the session of the messages.
+	 * @param historyTypes the types of the messages.
+	 * @param msgs the messages to persist.
+	 * @return the {@code HistoryReference}s of the messages, in the same order.
+	 * @throws IllegalArgumentException if {@code historyTypes} and {@code msgs} have different lengths.
+	 * @throws HttpMalformedHeaderException if a message has a malformed header.
+	 * @throws DatabaseException if an error occurred while persisting the messages.
+	 * @since TODO add version
+	 * @see TableHistory#write(long, int[], HttpMessage[])
+	 */
+	public static HistoryReference[] create(Session session, int[] historyTypes, HttpMessage[] msgs)
+			throws HttpMalformedHeaderException, DatabaseException {
+		int[] historyIds = staticTableHistory.write(session.getSessionId(), historyTypes, msgs);
+		HistoryReference[] historyReferences = new HistoryReference[msgs.length];
+		for (int i = 0; i < msgs.length; i++) {
+			historyReferences[i] = new HistoryReference(session.getSessionId(), historyIds[i], historyTypes[i], msgs[i]);
+		}
+		return historyReferences;
+	}
+
 	/**
 	 * 
 	 * @return whether the icon has to be cleaned when being manually visited or not.
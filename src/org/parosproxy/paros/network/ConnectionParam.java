@@ -43,6 +43,12 @@
 // ZAP: 2017/09/26 Use helper methods to read the configurations.
 // ZAP: 2018/02/14 Remove unnecessary boxing / unboxing
 // ZAP: 2018/08/10 Set the default user agent to HttpRequestHeader (Issue 4846).
+// ZAP: 2018/10/30 Allow to keep big bodies in temporary files.
+// ZAP: 2018/11/17 Allow to limit the size of decoded bodies.
+// ZAP: 2018/11/19 Apply the DNS TTLs to the shared DNS cache and allow to set the TTL of failed queries.
+// ZAP: 2018/11/21 Add options of the host governor.
+// ZAP: 2018/11/24 Add option to pre-warm the connections to the scanned hosts.
+// ZAP: 2018/12/02 Add options to limit the messages sent asynchronously.
 
 package org.parosproxy.paros.network;
 
@@ -58,7 +64,9 @@ import org.apache.commons.httpclient.HttpState;
 import org.apache.log4j.Logger;
 import org.parosproxy.paros.common.AbstractParam;
 import org.zaproxy.zap.extension.api.ZapApiIgnore;
+import org.zaproxy.zap.network.DnsCache;
 import org.zaproxy.zap.network.DomainMatcher;
+import org.zaproxy.zap.network.HostGovernor;
 
 public class ConnectionParam extends AbstractParam {
 
@@ -113,6 +121,18 @@ public class ConnectionParam extends AbstractParam {
 	 */
 	private static final String DNS_TTL_SUCCESSFUL_QUERIES_KEY = CONNECTION_BASE_KEY + ".dnsTtlSuccessfulQueries";
 
+	/**
+	 * The default TTL (in seconds) of failed DNS queries.
+	 * 
+	 * @since TODO add version
+	 */
+	public static final int DNS_DEFAULT_TTL_FAILED_QUERIES = 10;
+
+	/**
+	 * The configuration key for TTL of failed DNS queries.
+	 */
+	private static final String DNS_TTL_FAILED_QUERIES_KEY = CONNECTION_BASE_KEY + ".dnsTtlFailedQueries";
+
 	/**
 	 * The default connection timeout (in seconds).
 	 * 
@@ -120,6 +140,60 @@ public class ConnectionParam extends AbstractParam {
 	 */
 	public static final int DEFAULT_TIMEOUT = 20;
 
+	/**
+	 * The configuration key to save/load the option {@link #bodySpillThreshold}.
+	 */
+	private static final String BODY_SPILL_THRESHOLD_KEY = CONNECTION_BASE_KEY + ".bodySpillThreshold";
+
+	/**
+	 * The configuration key to save/load the option {@link #maxDecodedBodySize}.
+	 */
+	private static final String MAX_DECODED_BODY_SIZE_KEY = CONNECTION_BASE_KEY + ".maxDecodedBodySize";
+
+	/**
+	 * The configuration key to save/load the option {@link #governorEnabled}.
+	 */
+	private static final String GOVERNOR_ENABLED_KEY = CONNECTION_BASE_KEY + ".governor.enabled";
+
+	/**
+	 * The configuration key to save/load the option {@link #governorMaxConcurrentRequests}.
+	 */
+	private static final String GOVERNOR_MAX_CONCURRENT_REQUESTS_KEY = CONNECTION_BASE_KEY + ".governor.maxConcurrentRequests";
+
+	/**
+	 * The configuration key to save/load the option {@link #governorMaxRequestsPerSecond}.
+	 */
+	private static final String GOVERNOR_MAX_REQUESTS_PER_SECOND_KEY = CONNECTION_BASE_KEY + ".governor.maxRequestsPerSecond";
+
+	/**
+	 * The configuration key to save/load the option {@link #prewarmConnections}.
+	 */
+	private static final String PREWARM_CONNECTIONS_KEY = CONNECTION_BASE_KEY + ".prewarmConnections";
+
+	/**
+	 * The configuration key to save/load the option {@link #asyncMaxThreads}.
+	 */
+	private static final String ASYNC_MAX_THREADS_KEY = CONNECTION_BASE_KEY + ".async.maxThreads";
+
+	/**
+	 * The default maximum number of threads of a sender to send the messages asynchronously.
+	 * 
+	 * @see #getAsyncMaxThreads()
+	 */
+	public static final int DEFAULT_ASYNC_MAX_THREADS = 100;
+
+	/**
+	 * The configuration key to save/load the option {@link #asyncMaxQueuedRequests}.
+	 */
+	private static final String ASYNC_MAX_QUEUED_REQUESTS_KEY = CONNECTION_BASE_KEY + ".async.maxQueuedRequests";
+
+	/**
+	 * The default maximum number of messages of a sender waiting for a thread to be sent asynchronously.
+	 * 
+	 * @see #getAsyncMaxQueuedRequests()
+	 */
+	public static final int DEFAULT_ASYNC_MAX_QUEUED_REQUESTS = 10000;
+
     private boolean useProxyChain;
 	private String proxyChainName = "";
 	private int proxyChainPort = 8080;
@@ -147,6 +221,63 @@ public class ConnectionParam extends AbstractParam {
 	 */
 	private int dnsTtlSuccessfulQueries = DNS_DEFAULT_TTL_SUCCESSFUL_QUERIES;
 
+	/**
+	 * The TTL (in seconds) of failed DNS queries.
+	 */
+	private int dnsTtlFailedQueries = DNS_DEFAULT_TTL_FAILED_QUERIES;
+
+	/**
+	 * The size, in bytes, above which the HTTP bodies are kept in temporary files.
+	 * <p>
+	 * Default is zero, the bodies are always kept in memory.
+	 */
+	private int bodySpillThreshold;
+
+	/**
+	 * The maximum size, in bytes, of the decoded (for example, gunzipped) HTTP bodies.
+	 * <p>
+	 * Default is zero, the size is not limited.
+	 */
+	private int maxDecodedBodySize;
+
+	/**
+	 * Flag that indicates whether or not the requests per host are limited by the {@link HostGovernor}.
+	 * <p>
+	 * Default is {@code false}.
+	 */
+	private boolean governorEnabled;
+
+	/**
+	 * The maximum number of concurrent requests per host allowed by the {@link HostGovernor}.
+	 */
+	private int governorMaxConcurrentRequests = HostGovernor.DEFAULT_MAX_CONCURRENT_REQUESTS;
+
+	/**
+	 * The maximum number of requests per second per host allowed by the {@link HostGovernor}, zero if not limited.
+	 */
+	private int governorMaxRequestsPerSecond;
+
+	/**
+	 * The number of connections opened to each host, before the active scanner and the spider start sending requests.
+	 * <p>
+	 * Default is zero, the connections are not pre-warmed.
+	 */
+	private int prewarmConnections;
+
+	/**
+	 * The maximum number of threads of a sender to send the messages asynchronously.
+	 * <p>
+	 * Default is {@value #DEFAULT_ASYNC_MAX_THREADS}.
+	 */
+	private int asyncMaxThreads = DEFAULT_ASYNC_MAX_THREADS;
+
+	/**
+	 * The maximum number of messages of a sender waiting for a thread to be sent asynchronously.
+	 * <p>
+	 * Default is {@value #DEFAULT_ASYNC_MAX_QUEUED_REQUESTS}.
+	 */
+	private int asyncMaxQueuedRequests = DEFAULT_ASYNC_MAX_QUEUED_REQUESTS;
+
 	/**
      * @return Returns the httpStateEnabled.
      */
@@ -179,6 +310,10 @@ public class ConnectionParam extends AbstractParam {
 
 		dnsTtlSuccessfulQueries = getInt(DNS_TTL_SUCCESSFUL_QUERIES_KEY, DNS_DEFAULT_TTL_SUCCESSFUL_QUERIES);
 		Security.setProperty(DNS_TTL_SUCCESSFUL_QUERIES_SECURITY_PROPERTY, Integer.toString(dnsTtlSuccessfulQueries));
+		DnsCache.getDefault().setTtl(dnsTtlSuccessfulQueries);
+
+		dnsTtlFailedQueries = getInt(DNS_TTL_FAILED_QUERIES_KEY, DNS_DEFAULT_TTL_FAILED_QUERIES);
+		DnsCache.getDefault().setNegativeTtl(dnsTtlFailedQueries);
 
 		useProxyChain = getBoolean(USE_PROXY_CHAIN_KEY, false);
 		useProxyChainAuth = getBoolean(USE_PROXY_CHAIN_AUTH_KEY, false);
@@ -219,6 +354,31 @@ public class ConnectionParam extends AbstractParam {
 		HttpRequestHeader.setDefaultUserAgent(defaultUserAgent);
         
         loadSecurityProtocolsEnabled();
+
+		bodySpillThreshold = getInt(BODY_SPILL_THRESHOLD_KEY, 0);
+		HttpBody.setSpillThreshold(bodySpillThreshold);
+
+		maxDecodedBodySize = getInt(MAX_DECODED_BODY_SIZE_KEY, 0);
+
+		governorMaxConcurrentRequests = getInt(
+				GOVERNOR_MAX_CONCURRENT_REQUESTS_KEY,
+				HostGovernor.DEFAULT_MAX_CONCURRENT_REQUESTS);
+		if (governorMaxConcurrentRequests <= 0) {
+			governorMaxConcurrentRequests = HostGovernor.DEFAULT_MAX_CONCURRENT_REQUESTS;
+		}
+		HostGovernor.getDefault().setMaxConcurrentRequests(governorMaxConcurrentRequests);
+		governorMaxRequestsPerSecond = getInt(GOVERNOR_MAX_REQUESTS_PER_SECOND_KEY, 0);
+		HostGovernor.getDefault().setMaxRequestsPerSecond(governorMaxRequestsPerSecond);
+		governorEnabled = getBoolean(GOVERNOR_ENABLED_KEY, false);
+		HostGovernor.getDefault().setEnabled(governorEnabled);
+
+		prewarmConnections = Math.max(0, getInt(PREWARM_CONNECTIONS_KEY, 0));
+
+		asyncMaxThreads = getInt(ASYNC_MAX_THREADS_KEY, DEFAULT_ASYNC_MAX_THREADS);
+		if (asyncMaxThreads <= 0) {
+			asyncMaxThreads = DEFAULT_ASYNC_MAX_THREADS;
+		}
+		asyncMaxQueuedRequests = Math.max(0, getInt(ASYNC_MAX_QUEUED_REQUESTS_KEY, DEFAULT_ASYNC_MAX_QUEUED_REQUESTS));
 	}
 	
 	private void updateOptions() {
@@ -783,7 +943,255 @@ public class ConnectionParam extends AbstractParam {
 		}
 
 		dnsTtlSuccessfulQueries = ttl;
+		DnsCache.getDefault().setTtl(ttl);
 		getConfig().setProperty(DNS_TTL_SUCCESSFUL_QUERIES_KEY, ttl);
 	}
 
+	/**
+	 * Gets the TTL (in seconds) of failed DNS queries.
+	 *
+	 * @return the TTL in seconds
+	 * @since TODO add version
+	 * @see #setDnsTtlFailedQueries(int)
+	 */
+	public int getDnsTtlFailedQueries() {
+		return dnsTtlFailedQueries;
+	}
+
+	/**
+	 * Sets the TTL (in seconds) of failed DNS queries.
+	 * <p>
+	 * Some values have special meaning:
+	 * <ul>
+	 * <li>Negative number, cache forever;</li>
+	 * <li>Zero, disables caching;</li>
+	 * <li>Positive number, the number of seconds the failed DNS queries will be cached.</li>
+	 * </ul>
+	 *
+	 * @param ttl the TTL in seconds
+	 * @since TODO add version
+	 * @see #getDnsTtlFailedQueries()
+	 * @see DnsCache
+	 */
+	public void setDnsTtlFailedQueries(int ttl) {
+		if (dnsTtlFailedQueries == ttl) {
+			return;
+		}
+
+		dnsTtlFailedQueries = ttl;
+		DnsCache.getDefault().setNegativeTtl(ttl);
+		getConfig().setProperty(DNS_TTL_FAILED_QUERIES_KEY, ttl);
+	}
+
+	/**
+	 * Gets the size above which the HTTP bodies are kept in temporary files, instead of in memory.
+	 *
+	 * @return the threshold, in bytes, zero or negative if the bodies are always kept in memory.
+	 * @since TODO add version
+	 * @see #setBodySpillThreshold(int)
+	 */
+	public int getBodySpillThreshold() {
+		return bodySpillThreshold;
+	}
+
+	/**
+	 * Sets the size above which the HTTP bodies are kept in temporary files, instead of in memory.
+	 *
+	 * @param threshold the threshold, in bytes, zero or negative to always keep the bodies in memory.
+	 * @since TODO add version
+	 * @see #getBodySpillThreshold()
+	 * @see HttpBody#setSpillThreshold(int)
+	 */
+	public void setBodySpillThreshold(int threshold) {
+		bodySpillThreshold = threshold;
+		HttpBody.setSpillThreshold(threshold);
+		getConfig().setProperty(BODY_SPILL_THRESHOLD_KEY, threshold);
+	}
+
+	/**
+	 * Gets the maximum size of the decoded HTTP bodies.
+	 * <p>
+	 * The bodies that would exceed the size are kept encoded.
+	 *
+	 * @return the maximum size, in bytes, zero or negative if not limited.
+	 * @since TODO add version
+	 * @see #setMaxDecodedBodySize(int)
+	 * @see org.zaproxy.zap.network.HttpContentDecoder
+	 */
+	public int getMaxDecodedBodySize() {
+		return maxDecodedBodySize;
+	}
+
+	/**
+	 * Sets the maximum size of the decoded HTTP bodies.
+	 *
+	 * @param size the maximum size, in bytes, zero or negative to not limit the size.
+	 * @since TODO add version
+	 * @see #getMaxDecodedBodySize()
+	 */
+	public void setMaxDecodedBodySize(int size) {
+		maxDecodedBodySize = size;
+		getConfig().setProperty(MAX_DECODED_BODY_SIZE_KEY, size);
+	}
+
+	/**
+	 * Tells whether or not the requests per host are limited by the {@link HostGovernor}, adjusting the limits from how the
+	 * hosts are coping.
+	 *
+	 * @return {@code true} if the requests are limited, {@code false} otherwise.
+	 * @since TODO add version
+	 * @see #setGovernorEnabled(boolean)
+	 */
+	public boolean isGovernorEnabled() {
+		return governorEnabled;
+	}
+
+	/**
+	 * Sets whether or not the requests per host are limited by the {@link HostGovernor}.
+	 * <p>
+	 * Applies to all the requests sent, for example, by the proxy, the spider and the active scanner.
+	 *
+	 * @param enabled {@code true} if the requests should be limited, {@code false} otherwise.
+	 * @since TODO add version
+	 * @see #isGovernorEnabled()
+	 */
+	public void setGovernorEnabled(boolean enabled) {
+		governorEnabled = enabled;
+		HostGovernor.getDefault().setEnabled(enabled);
+		getConfig().setProperty(GOVERNOR_ENABLED_KEY, enabled);
+	}
+
+	/**
+	 * Gets the maximum number of concurrent requests per host, allowed by the {@link HostGovernor}.
+	 *
+	 * @return the maximum number of concurrent requests.
+	 * @since TODO add version
+	 * @see #setGovernorMaxConcurrentRequests(int)
+	 */
+	public int getGovernorMaxConcurrentRequests() {
+		return governorMaxConcurrentRequests;
+	}
+
+	/**
+	 * Sets the maximum number of concurrent requests per host, allowed by the {@link HostGovernor}.
+	 *
+	 * @param maxConcurrentRequests the maximum number of concurrent requests, must be greater than zero.
+	 * @throws IllegalArgumentException if the given value is not greater than zero.
+	 * @since TODO add version
+	 * @see #getGovernorMaxConcurrentRequests()
+	 */
+	public void setGovernorMaxConcurrentRequests(int maxConcurrentRequests) {
+		HostGovernor.getDefault().setMaxConcurrentRequests(maxConcurrentRequests);
+		governorMaxConcurrentRequests = maxConcurrentRequests;
+		getConfig().setProperty(GOVERNOR_MAX_CONCURRENT_REQUESTS_KEY, maxConcurrentRequests);
+	}
+
+	/**
+	 * Gets the maximum number of requests per second per host, allowed by the {@link HostGovernor}.
+	 *
+	 * @return the maximum number of requests per second, zero if not limited.
+	 * @since TODO add version
+	 * @see #setGovernorMaxRequestsPerSecond(int)
+	 */
+	public int getGovernorMaxRequestsPerSecond() {
+		return governorMaxRequestsPerSecond;
+	}
+
+	/**
+	 * Sets the maximum number of requests per second per host, allowed by the {@link HostGovernor}.
+	 *
+	 * @param maxRequestsPerSecond the maximum number of requests per second, zero or negative to not limit.
+	 * @since TODO add version
+	 * @see #getGovernorMaxRequestsPerSecond()
+	 */
+	public void setGovernorMaxRequestsPerSecond(int maxRequestsPerSecond) {
+		governorMaxRequestsPerSecond = Math.max(0, maxRequestsPerSecond);
+		HostGovernor.getDefault().setMaxRequestsPerSecond(governorMaxRequestsPerSecond);
+		getConfig().setProperty(GOVERNOR_MAX_REQUESTS_PER_SECOND_KEY, governorMaxRequestsPerSecond);
+	}
+
+	/**
+	 * Gets the number of connections opened to each host, before the active scanner and the spider start sending requests.
+	 *
+	 * @return the number of connections, zero if not pre-warmed.
+	 * @since TODO add version
+	 * @see #setPrewarmConnections(int)
+	 * @see HttpSender#prewarmConnections(org.apache.commons.httpclient.URI, int)
+	 */
+	public int getPrewarmConnections() {
+		return prewarmConnections;
+	}
+
+	/**
+	 * Sets the number of connections opened to each host, before the active scanner and the spider start sending requests.
+	 * <p>
+	 * The number of connections is further limited by the number of threads used to send the requests.
+	 *
+	 * @param prewarmConnections the number of connections, zero or negative to not pre-warm.
+	 * @since TODO add version
+	 * @see #getPrewarmConnections()
+	 */
+	public void setPrewarmConnections(int prewarmConnections) {
+		this.prewarmConnections = Math.max(0, prewarmConnections);
+		getConfig().setProperty(PREWARM_CONNECTIONS_KEY, this.prewarmConnections);
+	}
+
+	/**
+	 * Gets the maximum number of threads of a sender to send the messages asynchronously, that is, the maximum number of
+	 * messages in flight.
+	 *
+	 * @return the maximum number of threads, always greater than zero.
+	 * @since TODO add version
+	 * @see #setAsyncMaxThreads(int)
+	 * @see HttpSender#sendAndReceiveAsync(HttpMessage, org.zaproxy.zap.network.HttpRequestConfig)
+	 */
+	public int getAsyncMaxThreads() {
+		return asyncMaxThreads;
+	}
+
+	/**
+	 * Sets the maximum number of threads of a sender to send the messages asynchronously.
+	 * <p>
+	 * The new value applies to the senders that did not yet send messages asynchronously.
+	 *
+	 * @param maxThreads the maximum number of threads.
+	 * @throws IllegalArgumentException if {@code maxThreads} is not greater than zero.
+	 * @since TODO add version
+	 * @see #getAsyncMaxThreads()
+	 */
+	public void setAsyncMaxThreads(int maxThreads) {
+		if (maxThreads <= 0) {
+			throw new IllegalArgumentException("Parameter maxThreads must be greater than zero.");
+		}
+		this.asyncMaxThreads = maxThreads;
+		getConfig().setProperty(ASYNC_MAX_THREADS_KEY, maxThreads);
+	}
+
+	/**
+	 * Gets the maximum number of messages of a sender waiting for a thread to be sent asynchronously, the following messages
+	 * are rejected.
+	 *
+	 * @return the maximum number of messages waiting, zero if the messages do not wait.
+	 * @since TODO add version
+	 * @see #setAsyncMaxQueuedRequests(int)
+	 * @see #getAsyncMaxThreads()
+	 */
+	public int getAsyncMaxQueuedRequests() {
+		return asyncMaxQueuedRequests;
+	}
+
+	/**
+	 * Sets the maximum number of messages of a sender waiting for a thread to be sent asynchronously.
+	 * <p>
+	 * The new value applies to the senders that did not yet send messages asynchronously.
+	 *
+	 * @param maxQueuedRequests the maximum number of messages waiting, zero or negative if the messages should not wait.
+	 * @since TODO add version
+	 * @see #getAsyncMaxQueuedRequests()
+	 */
+	public void setAsyncMaxQueuedRequests(int maxQueuedRequests) {
+		this.asyncMaxQueuedRequests = Math.max(0, maxQueuedRequests);
+		getConfig().setProperty(ASYNC_MAX_QUEUED_REQUESTS_KEY, this.asyncMaxQueuedRequests);
+	}
+
 }
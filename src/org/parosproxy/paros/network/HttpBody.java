@@ -24,14 +24,22 @@
 // ZAP: 2016/05/18 Always use charset set when changing the HTTP body
 // ZAP: 2016/10/18 Attempt to determine the charset when setting a String with unknown charset
 // ZAP: 2017/02/01 Allow to set whether or not the charset should be determined.
+// ZAP: 2018/10/29 Grow the byte array geometrically when appending and compact it only when needed.
+// ZAP: 2018/10/30 Allow to keep the contents of big bodies in a temporary file.
+// ZAP: 2018/11/25 Allow to share the contents with other bodies until modified.
+// ZAP: 2018/12/03 Allow to share the contents concurrently, without modifying the other body.
+// ZAP: 2018/12/04 Do not expose the contents shared with other bodies.
 
 package org.parosproxy.paros.network;
 
+import java.io.IOException;
+import java.lang.ref.SoftReference;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.nio.charset.StandardCharsets;
 import java.nio.charset.UnsupportedCharsetException;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -57,8 +65,51 @@ public abstract class HttpBody {
 	 * The limit for the initial capacity, prevents allocating a bigger array when the Content-Length is wrong.
 	 */
 	public static final int LIMIT_INITIAL_CAPACITY = 128000;
+
+	private static final byte[] EMPTY_BODY = new byte[0];
+
+	/**
+	 * The size of the contents above which the appended contents are kept in a temporary file, zero or negative if never.
+	 * 
+	 * @see #setSpillThreshold(int)
+	 */
+	private static volatile int spillThreshold;
 	
+	/**
+	 * The contents of the body, might be bigger than the {@link #length} to allow for cheaper appends.
+	 * <p>
+	 * The bytes after the {@link #pos} are always zero. Empty if the contents were spilled to a temporary file.
+	 * 
+	 * @see #getBytes()
+	 * @see #spilledContents
+	 */
 	private byte[] body;
+
+	/**
+	 * The length of the body, never bigger than the length of the {@link #body}, unless spilled.
+	 */
+	private int length;
+
+	/**
+	 * The contents of the body kept in a temporary file, {@code null} if kept in {@link #body}.
+	 */
+	private SpilledContents spilledContents;
+
+	/**
+	 * The spilled contents last read into memory, might be {@code null} or cleared.
+	 * 
+	 * @see #getBytes()
+	 */
+	private SoftReference<byte[]> spilledBytes;
+
+	/**
+	 * Flag that indicates whether or not the {@link #body} is shared with other bodies, in which case it's copied before
+	 * being modified in place.
+	 * 
+	 * @see #setSharedBody(HttpBody)
+	 */
+	private final AtomicBoolean shared = new AtomicBoolean();
+
 	private int pos;
     private String cachedString;
 	private Charset charset;
@@ -80,6 +131,7 @@ public abstract class HttpBody {
 	 */
 	public HttpBody(int capacity) {
 		body = new byte[Math.max(Math.min(capacity, LIMIT_INITIAL_CAPACITY), 0)];
+		length = body.length;
 	}
 
 	/**
@@ -130,11 +182,55 @@ public abstract class HttpBody {
 			return;
 		}
 		cachedString = null;
+		releaseSpilledContents();
 		
 		body = new byte[contents.length];
 		System.arraycopy(contents, 0, body, 0, contents.length);
+		shared.set(false);
 		
 		pos = body.length;
+		length = body.length;
+	}
+
+	/**
+	 * Sets the contents of the given body as the contents of this body.
+	 * <p>
+	 * The contents are shared between both bodies until either is modified, making the copy cheap. The given body is not
+	 * changed, other than being flagged as shared, so it can be copied by several threads at the same time, as long as it's
+	 * not modified meanwhile.
+	 *
+	 * @param other the body whose contents are copied.
+	 */
+	void setSharedBody(HttpBody other) {
+		cachedString = null;
+		releaseSpilledContents();
+
+		if (other.spilledContents != null) {
+			byte[] bytes = other.spilledBytes != null ? other.spilledBytes.get() : null;
+			// The bytes cached are never modified by the other body.
+			body = bytes != null ? bytes : other.readSpilledContents();
+			shared.set(bytes != null);
+		} else if (other.body.length != other.length) {
+			body = Arrays.copyOf(other.body, other.length);
+			shared.set(false);
+		} else {
+			body = other.body;
+			shared.set(true);
+			other.shared.set(true);
+		}
+
+		pos = body.length;
+		length = body.length;
+	}
+
+	/**
+	 * Copies the {@link #body}, if shared, so that it can be modified in place.
+	 */
+	private void ensureNotShared() {
+		if (shared.get()) {
+			body = body.clone();
+			shared.set(false);
+		}
 	}
 	
 	/**
@@ -153,14 +249,17 @@ public abstract class HttpBody {
 		}
 		
 		cachedString = null;
+		releaseSpilledContents();
 		if (charset == null && isDetermineCharset()) {
 			// Attempt to determine the charset to avoid data loss.
 			charset = determineCharset(contents);
 		}
 		
 		body = contents.getBytes(getCharsetImpl());
+		shared.set(false);
 		
 		pos = body.length;
+		length = body.length;
 	}
 
 	/**
@@ -239,13 +338,46 @@ public abstract class HttpBody {
 		}
 		
 		int len = Math.min(contents.length, length);
-		if (pos + len > body.length) {
-			byte[] newBody = new byte[pos + len];
+		int newPos = pos + len;
+		if (spilledContents == null && spillThreshold > 0 && newPos > spillThreshold) {
+			spill();
+		}
+
+		if (spilledContents != null) {
+			try {
+				spilledContents.write(contents, 0, len, pos);
+				pos = newPos;
+				if (pos > this.length) {
+					this.length = pos;
+				}
+				spilledBytes = null;
+				cachedString = null;
+				return;
+			} catch (IOException e) {
+				log.warn("Failed to write to the temporary file, keeping the contents in memory: " + e.getMessage());
+				body = readSpilledContents();
+				releaseSpilledContents();
+			}
+		}
+
+		if (newPos > body.length) {
+			// Grow geometrically, the unused bytes are discarded when the contents are obtained.
+			int newCapacity = body.length + (body.length >> 1);
+			if (newCapacity < newPos) {
+				newCapacity = newPos;
+			}
+			byte[] newBody = new byte[newCapacity];
 			System.arraycopy(body, 0, newBody, 0, pos);
 			body = newBody;
+			shared.set(false);
+		} else {
+			ensureNotShared();
 		}
 		System.arraycopy(contents, 0, body, pos, len);
-		pos += len;
+		pos = newPos;
+		if (pos > this.length) {
+			this.length = pos;
+		}
 		
         cachedString = null;
 	}
@@ -311,7 +443,15 @@ public abstract class HttpBody {
 	 * @see #getBytes()
 	 */
 	protected String createString(Charset charset) {
-		return new String(getBytes(), 0, getPos(), charset != null ? charset : getCharsetImpl());
+		Charset stringCharset = charset != null ? charset : getCharsetImpl();
+		if (spilledContents != null) {
+			try {
+				return stringCharset.decode(spilledContents.map(pos)).toString();
+			} catch (IOException e) {
+				log.warn("Failed to map the temporary file: " + e.getMessage());
+			}
+		}
+		return new String(getBytes(), 0, getPos(), stringCharset);
 	}
 
 	/**
@@ -332,12 +472,28 @@ public abstract class HttpBody {
 	 * Gets the contents of the body as an array of bytes.
 	 * <p>
 	 * The returned array of bytes mustn't be modified. Is returned a reference instead of a copy to avoid more memory
-	 * allocations.
+	 * allocations. The contents shared with other bodies are copied first, so that those are not affected if the array is
+	 * modified nonetheless.
 	 * 
 	 * @return a reference to the content of this body as {@code byte[]}.
 	 * @since 1.4.0
 	 */
 	public byte[] getBytes() {
+		if (spilledContents != null) {
+			byte[] bytes = spilledBytes != null ? spilledBytes.get() : null;
+			if (bytes == null) {
+				bytes = readSpilledContents();
+				spilledBytes = new SoftReference<>(bytes);
+			}
+			return bytes;
+		}
+
+		if (body.length != length) {
+			body = Arrays.copyOf(body, length);
+			shared.set(false);
+		} else {
+			ensureNotShared();
+		}
 		return body;
 	}
 
@@ -347,7 +503,7 @@ public abstract class HttpBody {
 	 * @return the current length of the body.
 	 */
 	public int length() {
-		return body.length;
+		return length;
 	}
 
 	/**
@@ -356,20 +512,117 @@ public abstract class HttpBody {
 	 * @param length the new length to set.
 	 */
 	public void setLength(int length) {
-		if (length < 0 || body.length == length) {
+		if (length < 0 || this.length == length) {
 			return;
 		}
 
-		int oldPos = pos;
-		pos = Math.min(pos, length);
+		if (spilledContents != null) {
+			if (length < pos) {
+				try {
+					spilledContents.truncate(length);
+				} catch (IOException e) {
+					log.warn("Failed to truncate the temporary file, keeping the contents in memory: " + e.getMessage());
+					body = Arrays.copyOf(readSpilledContents(), length);
+					releaseSpilledContents();
+				}
+				pos = length;
+				cachedString = null;
+			}
+			spilledBytes = null;
+			this.length = length;
+			return;
+		}
 
-		byte[] newBody = new byte[length];
-		System.arraycopy(body, 0, newBody, 0, pos);
-		body = newBody;
-		
-		if (oldPos > pos) {
+		if (length < pos) {
+			ensureNotShared();
+			Arrays.fill(body, length, pos, (byte) 0);
+			pos = length;
 			cachedString = null;
 		}
+
+		if (length > body.length) {
+			body = Arrays.copyOf(body, length);
+			shared.set(false);
+		}
+		this.length = length;
+	}
+	
+	/**
+	 * Moves the contents of the body to a temporary file.
+	 * <p>
+	 * The contents are kept in memory if an error occurs.
+	 */
+	private void spill() {
+		SpilledContents contents = null;
+		try {
+			contents = SpilledContents.create();
+			contents.write(body, 0, pos, 0);
+			spilledContents = contents;
+			body = EMPTY_BODY;
+			shared.set(false);
+		} catch (IOException e) {
+			log.warn("Failed to move the contents to a temporary file, keeping them in memory: " + e.getMessage());
+			if (contents != null) {
+				contents.release();
+			}
+		}
+	}
+
+	/**
+	 * Reads the spilled contents into a new array of {@link #length} bytes.
+	 * 
+	 * @return the contents, never {@code null}.
+	 */
+	private byte[] readSpilledContents() {
+		byte[] bytes = new byte[length];
+		try {
+			spilledContents.read(bytes, pos);
+		} catch (IOException e) {
+			log.error("Failed to read the contents from the temporary file: " + e.getMessage(), e);
+		}
+		return bytes;
+	}
+
+	private void releaseSpilledContents() {
+		if (spilledContents != null) {
+			spilledContents.release();
+			spilledContents = null;
+			spilledBytes = null;
+		}
+	}
+
+	/**
+	 * Tells whether or not the contents of the body are kept in a temporary file.
+	 *
+	 * @return {@code true} if the contents are in a temporary file, {@code false} otherwise.
+	 */
+	boolean isSpilled() {
+		return spilledContents != null;
+	}
+
+	/**
+	 * Gets the size of the contents above which the appended contents are kept in a temporary file, instead of in memory.
+	 *
+	 * @return the threshold, in bytes, zero or negative if the contents are always kept in memory.
+	 * @since TODO add version
+	 * @see #setSpillThreshold(int)
+	 */
+	public static int getSpillThreshold() {
+		return spillThreshold;
+	}
+
+	/**
+	 * Sets the size of the contents above which the appended contents are kept in a temporary file, instead of in memory.
+	 * <p>
+	 * Applies to the contents appended afterwards, for example, while reading a big response. The contents are read back
+	 * into memory when {@link #getBytes() obtained as bytes}, and kept while there's enough memory.
+	 *
+	 * @param threshold the threshold, in bytes, zero or negative to always keep the contents in memory.
+	 * @since TODO add version
+	 * @see ConnectionParam#setBodySpillThreshold(int)
+	 */
+	public static void setSpillThreshold(int threshold) {
+		spillThreshold = threshold;
 	}
 	
     /**
@@ -432,7 +685,7 @@ public abstract class HttpBody {
     
 	@Override
 	public int hashCode() {
-		return 31 + Arrays.hashCode(body);
+		return 31 + Arrays.hashCode(getBytes());
 	}
 
 	@Override
@@ -447,7 +700,7 @@ public abstract class HttpBody {
 			return false;
 		}
 		HttpBody otherBody = (HttpBody) object;
-		if (!Arrays.equals(body, otherBody.body)) {
+		if (!Arrays.equals(getBytes(), otherBody.getBytes())) {
 			return false;
 		}
 		return true;
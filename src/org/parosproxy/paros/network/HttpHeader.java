@@ -38,17 +38,28 @@
 // ZAP: 2017/03/02 Issue 3226: Added API Key and Nonce headers
 // ZAP: 2018/02/06 Make the lower/upper case changes locale independent (Issue 4327).
 // ZAP: 2018/04/24 Add JSON Content-Type.
+// ZAP: 2018/10/27 Parse the header in a single pass, without regular expressions.
+// ZAP: 2018/10/28 Keep the header fields in an ordered list and build the header string only when needed.
+// ZAP: 2018/11/25 Allow to copy the header sharing the header fields until modified.
+// ZAP: 2018/12/03 Return a copy of the header values and allow to copy the header concurrently.
 
 package org.parosproxy.paros.network;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
 
 public abstract class HttpHeader implements java.io.Serializable {
 
@@ -113,12 +124,45 @@ public abstract class HttpHeader implements java.io.Serializable {
     protected static final String p_STATUS_CODE = "(\\d{3})";
     protected static final String p_REASON_PHRASE = "(" + p_TEXT + ")";
     protected String mStartLine;
+    /**
+     * The header fields as string, built from {@link #fields} when needed.
+     * <p>
+     * Might be {@code null}, use {@link #getHeadersAsString()} instead.
+     */
     protected String mMsgHeader;
     protected boolean mMalformedHeader;
+    /**
+     * The header fields, by normalised name.
+     * <p>
+     * Might be shared with copies of this header, not to be modified directly.
+     */
     protected Hashtable<String, Vector<String>> mHeaderFields;
     protected int mContentLength;
     protected String mLineDelimiter;
     protected String mVersion;
+
+    /**
+     * The header fields, in the order they were parsed/added.
+     */
+    private List<Field> fields;
+
+    /**
+     * Flag that indicates whether or not the {@link #fields} and {@link #mHeaderFields} are shared with a copy of this
+     * header, in which case they are copied before being modified.
+     * <p>
+     * Atomic, it's also set by the threads copying this header.
+     *
+     * @see #HttpHeader(HttpHeader)
+     * @see #ensureFieldsNotShared()
+     */
+    private transient AtomicBoolean fieldsShared = new AtomicBoolean();
+
+    /**
+     * The normalised names of common headers, to avoid normalising them on each lookup.
+     * 
+     * @see #normalisedHeaderName(String)
+     */
+    private static final Map<String, String> NORMALISED_NAMES = new HashMap<>();
     // ZAP: added CORS headers
     public static final String ACCESS_CONTROL_ALLOW_ORIGIN = "Access-Control-Allow-Origin";
 	public static final String ACCESS_CONTROL_ALLOW_HEADERS = "Access-Control-Allow-Headers";
@@ -136,10 +180,68 @@ public abstract class HttpHeader implements java.io.Serializable {
 	public static final String X_CSRFTOKEN = "X-CsrfToken";
 	public static final String X_XSRF_TOKEN = "X-Xsrf-Token";
 
+    static {
+        String[] commonHeaders = {
+                CONTENT_LENGTH, TRANSFER_ENCODING, CONTENT_ENCODING, CONTENT_TYPE, PROXY_CONNECTION, CONNECTION,
+                AUTHORIZATION, LOCATION, IF_MODIFIED_SINCE, IF_NONE_MATCH, USER_AGENT, ACCEPT_ENCODING, CACHE_CONTROL,
+                PRAGMA, REFERER, X_ZAP_REQUESTID, X_SECURITY_PROXY, COOKIE, SET_COOKIE, SET_COOKIE2, PROXY_AUTHORIZATION,
+                "Host", "Accept", "Date", "Server" };
+        for (String header : commonHeaders) {
+            NORMALISED_NAMES.put(header, header.toUpperCase(Locale.ROOT));
+        }
+    }
+
     public HttpHeader() {
         init();
     }
 
+    /**
+     * Constructs a {@code HttpHeader} with the contents of the given header.
+     * <p>
+     * The header fields are shared between both headers until either is modified, making the copy cheap. The given header
+     * can be copied by several threads at the same time, as long as it's not modified meanwhile.
+     *
+     * @param header the header to copy.
+     */
+    HttpHeader(HttpHeader header) {
+        mStartLine = header.mStartLine;
+        mMsgHeader = header.mMsgHeader;
+        mMalformedHeader = header.mMalformedHeader;
+        mContentLength = header.mContentLength;
+        mLineDelimiter = header.mLineDelimiter;
+        mVersion = header.mVersion;
+        fields = header.fields;
+        mHeaderFields = header.mHeaderFields;
+        fieldsShared.set(true);
+        header.fieldsShared.set(true);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        fieldsShared = new AtomicBoolean();
+    }
+
+    /**
+     * Copies the header fields, if shared, so that they can be modified.
+     */
+    private void ensureFieldsNotShared() {
+        if (!fieldsShared.get()) {
+            return;
+        }
+
+        List<Field> newFields = new ArrayList<>(fields.size());
+        for (Field field : fields) {
+            newFields.add(new Field(field.name, field.value));
+        }
+        Hashtable<String, Vector<String>> newHeaderFields = new Hashtable<>();
+        for (Entry<String, Vector<String>> entry : mHeaderFields.entrySet()) {
+            newHeaderFields.put(entry.getKey(), new Vector<>(entry.getValue()));
+        }
+        fields = newFields;
+        mHeaderFields = newHeaderFields;
+        fieldsShared.set(false);
+    }
+
     /**
      * Construct a HttpHeader from a given String.
      *
@@ -155,6 +257,8 @@ public abstract class HttpHeader implements java.io.Serializable {
      */
     private void init() {
         mHeaderFields = new Hashtable<>();
+        fields = new ArrayList<>();
+        fieldsShared.set(false);
         mStartLine = "";
         mMsgHeader = "";
         mMalformedHeader = false;
@@ -197,7 +301,7 @@ public abstract class HttpHeader implements java.io.Serializable {
      * @return the header value. null if not found.
      */
     public String getHeader(String name) {
-        Vector<String> v = getHeaders(name);
+        Vector<String> v = mHeaderFields.get(normalisedHeaderName(name));
         if (v == null) {
             return null;
         }
@@ -209,21 +313,20 @@ public abstract class HttpHeader implements java.io.Serializable {
      * Get headers with the name. Multiple value can be returned.
      *
      * @param name
-     * @return a vector holding the value as string.
+     * @return a copy of the values, {@code null} if none. Changes to the returned vector do not change the header.
      */
     public Vector<String> getHeaders(String name) {
-        return mHeaderFields.get(normalisedHeaderName(name));
+        Vector<String> values = mHeaderFields.get(normalisedHeaderName(name));
+        if (values == null) {
+            return null;
+        }
+        return new Vector<>(values);
     }
 
     public List<HttpHeaderField> getHeaders() {
-        List<HttpHeaderField> headerFields = new ArrayList<>();
-        String[] headers = mMsgHeader.split(Pattern.quote(mLineDelimiter));
-
-        for (int i = 0; i < headers.length; ++i) {
-            String[] headerField = headers[i].split(":", 2);
-            if (headerField.length == 2) {
-                headerFields.add(new HttpHeaderField(headerField[0].trim(), headerField[1].trim()));
-            }
+        List<HttpHeaderField> headerFields = new ArrayList<>(fields.size());
+        for (Field field : fields) {
+            headerFields.add(new HttpHeaderField(field.name.trim(), String.valueOf(field.value).trim()));
         }
         return headerFields;
     }
@@ -236,7 +339,9 @@ public abstract class HttpHeader implements java.io.Serializable {
      * @param val
      */
     public void addHeader(String name, String val) {
-        mMsgHeader = mMsgHeader + name + ": " + val + mLineDelimiter;
+        ensureFieldsNotShared();
+        fields.add(new Field(name, val));
+        mMsgHeader = null;
         addInternalHeaderFields(name, val);
     }
 
@@ -248,23 +353,24 @@ public abstract class HttpHeader implements java.io.Serializable {
      * @param value
      */
     public void setHeader(String name, String value) {
-//		int pos = 0;
-//		int crlfpos = 0;
-        Pattern pattern = null;
-
-        if (getHeaders(name) == null && value != null) {
+        ensureFieldsNotShared();
+        if (mHeaderFields.get(normalisedHeaderName(name)) == null && value != null) {
             // header value not found, append to end
             addHeader(name, value);
         } else {
-            pattern = getHeaderRegex(name);
-            Matcher matcher = pattern.matcher(mMsgHeader);
-            if (value == null) {
-                // delete header
-                mMsgHeader = matcher.replaceAll("");
-            } else {
-                // replace header
-                String newString = name + ": " + value + mLineDelimiter;
-                mMsgHeader = matcher.replaceAll(Matcher.quoteReplacement(newString));
+            for (Iterator<Field> it = fields.iterator(); it.hasNext();) {
+                Field field = it.next();
+                if (field.name.trim().equalsIgnoreCase(name)) {
+                    if (value == null) {
+                        // delete header
+                        it.remove();
+                    } else {
+                        // replace header, in place
+                        field.name = name;
+                        field.value = value;
+                    }
+                    mMsgHeader = null;
+                }
             }
 
             // set into hashtable
@@ -272,11 +378,6 @@ public abstract class HttpHeader implements java.io.Serializable {
         }
     }
 
-    private Pattern getHeaderRegex(String name) throws PatternSyntaxException {
-        // Added character quoting to avoid troubles with "-" char or similar
-        return Pattern.compile("^ *\\Q" + name + "\\E *: *[^\\r\\n]*" + mLineDelimiter, Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
-    }
-
     /**
      * Return the HTTP version (eg HTTP/1.0, HTTP/1.1)
      *
@@ -400,33 +501,32 @@ public abstract class HttpHeader implements java.io.Serializable {
             return true;
         }
 
-        // ZAP: Replace all "\n" with "\r\n" to parse correctly
-        String newData = data.replaceAll("(?<!\r)\n", CRLF);
         // ZAP: always use CRLF to comply with HTTP specification
         // even if the data it's not directly used.
         mLineDelimiter = CRLF;
 
-        String[] split = patternCRLF.split(newData);
-        mStartLine = split[0];
+        // ZAP: Accept both "\r\n" and "\n" as line separator, scanning the lines in place.
+        int length = data.length();
+        int lineStart = 0;
+        int lineEnd = lineEnd(data, lineStart, length);
+        mStartLine = data.substring(lineStart, lineEnd);
 
-        String token = null,
-                name = null,
+        String name = null,
                 value = null;
-        int pos = 0;
 
-        StringBuilder sb = new StringBuilder(2048);
-        for (int i = 1; i < split.length; i++) {
-            token = split[i];
-            if (token.equals("")) {
+        for (lineStart = nextLine(data, lineEnd, length); lineStart < length; lineStart = nextLine(data, lineEnd, length)) {
+            lineEnd = lineEnd(data, lineStart, length);
+            if (lineStart == lineEnd) {
                 continue;
             }
 
-            if ((pos = token.indexOf(":")) < 0) {
+            int pos = data.indexOf(':', lineStart);
+            if (pos < 0 || pos >= lineEnd) {
                 mMalformedHeader = true;
                 return false;
             }
-            name = token.substring(0, pos).trim();
-            value = token.substring(pos + 1).trim();
+            name = trimmedSubstring(data, lineStart, pos);
+            value = trimmedSubstring(data, pos + 1, lineEnd);
 
             if (name.equalsIgnoreCase(CONTENT_LENGTH)) {
                 try {
@@ -435,23 +535,68 @@ public abstract class HttpHeader implements java.io.Serializable {
                 }
             }
 
-            /*
-             if (name.equalsIgnoreCase(PROXY_CONNECTION)) {
-             sb.append(name + ": " + _CLOSE + mLineDelimiter);
-             } else if (name.equalsIgnoreCase(CONNECTION)) {
-             sb.append(name + ": " + _CLOSE + mLineDelimiter);
-             } else {
-             */
-            sb.append(name + ": " + value + mLineDelimiter);
-            //}
-
+            fields.add(new Field(name, value));
             addInternalHeaderFields(name, value);
         }
 
-        mMsgHeader = sb.toString();
+        mMsgHeader = null;
         return true;
     }
 
+    /**
+     * Gets the end of the line that starts at the given index, excluding the line separator ({@code "\r\n"} or
+     * {@code "\n"}).
+     *
+     * @param data the data being parsed.
+     * @param start the index where the line starts.
+     * @param length the length of the data.
+     * @return the index where the line ends.
+     */
+    private static int lineEnd(String data, int start, int length) {
+        int end = data.indexOf('\n', start);
+        if (end == -1) {
+            return length;
+        }
+        if (end > start && data.charAt(end - 1) == '\r') {
+            return end - 1;
+        }
+        return end;
+    }
+
+    /**
+     * Gets the start of the line that follows the line that ends at the given index.
+     *
+     * @param data the data being parsed.
+     * @param lineEnd the index where the previous line ends, as returned by {@link #lineEnd(String, int, int)}.
+     * @param length the length of the data.
+     * @return the index where the next line starts, {@code length} if none.
+     */
+    private static int nextLine(String data, int lineEnd, int length) {
+        if (lineEnd < length && data.charAt(lineEnd) == '\r') {
+            return lineEnd + 2;
+        }
+        return lineEnd + 1;
+    }
+
+    /**
+     * Gets the substring, without leading and trailing whitespace, in the given range, creating a single {@code String}.
+     *
+     * @param data the data being parsed.
+     * @param start the start index, inclusive.
+     * @param end the end index, exclusive.
+     * @return the trimmed substring.
+     * @see String#trim()
+     */
+    private static String trimmedSubstring(String data, int start, int end) {
+        while (start < end && data.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && data.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return data.substring(start, end);
+    }
+
     /**
      * Replace the header stored in internal hashtable
      *
@@ -460,7 +605,7 @@ public abstract class HttpHeader implements java.io.Serializable {
      */
     private void replaceInternalHeaderFields(String name, String value) {
         String key = normalisedHeaderName(name);
-        Vector<String> v = getHeaders(key);
+        Vector<String> v = mHeaderFields.get(key);
         if (v == null) {
             v = new Vector<>();
             mHeaderFields.put(key, v);
@@ -482,7 +627,7 @@ public abstract class HttpHeader implements java.io.Serializable {
      */
     private void addInternalHeaderFields(String name, String value) {
         String key = normalisedHeaderName(name);
-        Vector<String> v = getHeaders(key);
+        Vector<String> v = mHeaderFields.get(key);
         if (v == null) {
             v = new Vector<>();
             mHeaderFields.put(key, v);
@@ -504,6 +649,10 @@ public abstract class HttpHeader implements java.io.Serializable {
      * @return the normalised header name.
      */
     private static String normalisedHeaderName(String name) {
+        String normalisedName = NORMALISED_NAMES.get(name);
+        if (normalisedName != null) {
+            return normalisedName;
+        }
         return name.toUpperCase(Locale.ROOT);
     }
 
@@ -521,7 +670,7 @@ public abstract class HttpHeader implements java.io.Serializable {
      */
     @Override
     public String toString() {
-        return getPrimeHeader() + mLineDelimiter + mMsgHeader + mLineDelimiter;
+        return getPrimeHeader() + mLineDelimiter + getHeadersAsString() + mLineDelimiter;
     }
 
     /**
@@ -611,6 +760,13 @@ public abstract class HttpHeader implements java.io.Serializable {
      * @return Eg "Host: www.example.com\r\nUser-agent: some agent\r\n"
      */
     public String getHeadersAsString() {
+        if (mMsgHeader == null) {
+            StringBuilder strBuilder = new StringBuilder(fields.size() * 32);
+            for (Field field : fields) {
+                strBuilder.append(field.name).append(": ").append(field.value).append(mLineDelimiter);
+            }
+            mMsgHeader = strBuilder.toString();
+        }
         return mMsgHeader;
     }
 
@@ -645,4 +801,20 @@ public abstract class HttpHeader implements java.io.Serializable {
         }
         return null;
     }
+
+    /**
+     * A header field, name and value.
+     */
+    private static class Field implements Serializable {
+
+        private static final long serialVersionUID = -7340862374236437391L;
+
+        private String name;
+        private String value;
+
+        Field(String name, String value) {
+            this.name = name;
+            this.value = value;
+        }
+    }
 }
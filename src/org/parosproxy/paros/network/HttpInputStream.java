@@ -22,6 +22,7 @@
 // ZAP: 2012/03/15 Changed to use the classes HttpRequestBody and HttpResponseBody
 //      Added @Override annotation where appropriate.
 // ZAP: 2013/03/03 Issue 546: Remove all template Javadoc comments
+// ZAP: 2018/10/27 Read the header in bulk, directly from the buffer.
 
 package org.parosproxy.paros.network;
 
@@ -29,6 +30,8 @@ import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import javax.net.ssl.SSLSocket;
 
@@ -40,10 +43,11 @@ public class HttpInputStream extends BufferedInputStream {
 	private static Logger log = Logger.getLogger(HttpInputStream.class);
 
 	private static final int	BUFFER_SIZE = 4096;
-	private static final String CRLF = "\r\n";
-	private static final String CRLF2 = CRLF + CRLF;
-	private static final String LF = "\n";
-	private static final String LF2 = LF + LF;
+
+	/**
+	 * The initial size of the buffer used to read the header.
+	 */
+	private static final int HEADER_BUFFER_SIZE = 512;
 
 //	private BufferedInputStream in = null;
 	private byte[] mBuffer = new byte[BUFFER_SIZE];
@@ -71,51 +75,70 @@ public class HttpInputStream extends BufferedInputStream {
 	}
 
     
+	/**
+	 * Reads the HTTP header, up to and including the empty line that ends it, the following bytes (for example, the body) are
+	 * not consumed.
+	 * <p>
+	 * The bytes are scanned directly in the buffer of the stream, a line at a time, and converted to a {@code String} (using
+	 * ISO-8859-1) only once the end of the header is found.
+	 *
+	 * @return the header, or an empty {@code String} if the end of the stream was reached before the end of the header.
+	 * @throws IOException if an error occurred while reading the header.
+	 */
 	public synchronized String readHeader() throws IOException {
-		String msg = "";
-        int		oneByte = -1;
-        boolean eoh = false;
-        StringBuilder sb = new StringBuilder(200);
-        
-        do {
-            oneByte = super.read();
-        	
-        	if (oneByte == -1) {
-        		eoh = true;
-				break;
-        	}
-            sb.append((char) oneByte);
-
-            if (((char) oneByte) == '\n' && isHeaderEnd(sb)) {
-                eoh = true;
-                msg = sb.toString();
-            }
-		} while (!eoh);
-        
-        return msg;
+		byte[] header = new byte[HEADER_BUFFER_SIZE];
+		int length = 0;
+
+		while (true) {
+			if (pos >= count) {
+				// Let the superclass fill the buffer, it's not accessible otherwise.
+				int oneByte = super.read();
+				if (oneByte == -1) {
+					return "";
+				}
+				pos--;
+			}
+
+			byte[] buffer = buf;
+			if (buffer == null) {
+				throw new IOException("Stream closed");
+			}
+
+			int end = pos;
+			while (end < count && buffer[end] != '\n') {
+				end++;
+			}
+			boolean newLine = end < count;
+			if (newLine) {
+				end++;
+			}
+
+			int lineLength = end - pos;
+			if (length + lineLength > header.length) {
+				header = Arrays.copyOf(header, Math.max(header.length * 2, length + lineLength));
+			}
+			System.arraycopy(buffer, pos, header, length, lineLength);
+			length += lineLength;
+			pos = end;
 
+			if (newLine && isHeaderEnd(header, length)) {
+				return new String(header, 0, length, StandardCharsets.ISO_8859_1);
+			}
+		}
 	}
 
 	/**
-	 * Check if the current StringBuilder trailing characters is an HTTP header end (empty CRLF).
-	 * @param sb
-	 * @return true - if end of HTTP header.
+	 * Tells whether or not the given header bytes, ending with a new line, end with an empty line.
+	 *
+	 * @param header the bytes of the header.
+	 * @param length the number of bytes of the header.
+	 * @return {@code true} if it's the end of the header, {@code false} otherwise.
 	 */
-	private static final boolean isHeaderEnd(StringBuilder sb) {
-		int len = sb.length();
-		if (len > 2) {
-			if (LF2.equals(sb.substring(len-2))) {
-				return true;
-			}
+	private static boolean isHeaderEnd(byte[] header, int length) {
+		if (length > 2 && header[length - 2] == '\n') {
+			return true;
 		}
-	
-		if (len > 4) {
-			if (CRLF2.equals(sb.substring(len-4))) {
-				return true;
-			}
-		}
-	
-		return false;
+		return length > 4 && header[length - 2] == '\r' && header[length - 3] == '\n' && header[length - 4] == '\r';
 	}
 
 	/**
@@ -50,6 +50,8 @@
 // ZAP: 2018/03/13 Added toEventData()
 // ZAP: 2018/04/04 Add a copy constructor.
 // ZAP: 2018/08/10 Use non-deprecated HttpRequestHeader constructor (Issue 4846).
+// ZAP: 2018/11/25 Copy the headers and bodies without parsing them, sharing their contents until modified.
+// ZAP: 2018/12/01 Allow to know if the response body is truncated.
 
 package org.parosproxy.paros.network;
 
@@ -121,6 +123,8 @@ public class HttpMessage implements Message {
      */
     private boolean responseFromTargetHost = false;
 
+    private boolean responseBodyTruncated;
+
 
     public HistoryReference getHistoryRef() {
 		return historyRef;
@@ -769,11 +773,9 @@ public class HttpMessage implements Message {
 
     private void copyResponseInto(HttpMessage newMsg) {
         if (!this.getResponseHeader().isEmpty()) {
-            try {
-                newMsg.getResponseHeader().setMessage(this.getResponseHeader().toString());
-            } catch (HttpMalformedHeaderException e) {
-            }
-            newMsg.setResponseBody(this.getResponseBody().getBytes());
+            newMsg.setResponseHeader(new HttpResponseHeader(this.getResponseHeader()));
+            copyBody(this.getResponseBody(), newMsg.getResponseBody());
+            newMsg.getResponseBody().setCharset(newMsg.getResponseHeader().getCharset());
         }
     }
     
@@ -781,6 +783,9 @@ public class HttpMessage implements Message {
      * Clones the request of this message.
      * <p>
      * It returns a new {@code HttpMessage} with a copy of the request header and body, no other state is copied.
+     * <p>
+     * The header fields and the contents of the body are shared with this message until either message modifies them, so
+     * the copies cost memory in proportion to what is changed.
      *
      * @return a new {@code HttpMessage} with the same (contents) request header and body as this one.
      * @see #HttpMessage(HttpMessage)
@@ -793,14 +798,16 @@ public class HttpMessage implements Message {
 
     private void copyRequestInto(HttpMessage newMsg) {
         if (!this.getRequestHeader().isEmpty()) {
-            try {
-                newMsg.getRequestHeader().setMessage(this.getRequestHeader().toString());
-            } catch (HttpMalformedHeaderException e) {
-                log.error(e.getMessage(), e);
-            }
-            newMsg.setRequestBody(this.getRequestBody().getBytes());
+            newMsg.setRequestHeader(new HttpRequestHeader(this.getRequestHeader()));
+            copyBody(this.getRequestBody(), newMsg.getRequestBody());
+            newMsg.getRequestBody().setCharset(newMsg.getRequestHeader().getCharset());
         }
     }
+
+    private static void copyBody(HttpBody from, HttpBody to) {
+        to.setSharedBody(from);
+    }
+
     /**
      * @return Get the elapsed time (time difference) between the request is sent and all response is received.  In millis.
      * The value is zero if the response is not received.
@@ -1056,6 +1063,30 @@ public class HttpMessage implements Message {
     public void setResponseFromTargetHost(final boolean responseFromTargetHost) {
         this.responseFromTargetHost = responseFromTargetHost;
     }
+
+    /**
+     * Tells whether or not the response body is truncated, that is, just the start of the body received was kept.
+     * <p>
+     * For example, the proxy keeps just the start of the large response bodies it streams to the client.
+     *
+     * @return {@code true} if the response body is truncated, {@code false} otherwise.
+     * @since TODO add version
+     * @see #setResponseBodyTruncated(boolean)
+     */
+    public boolean isResponseBodyTruncated() {
+        return responseBodyTruncated;
+    }
+
+    /**
+     * Sets whether or not the response body is truncated.
+     *
+     * @param responseBodyTruncated {@code true} if the response body is truncated, {@code false} otherwise.
+     * @since TODO add version
+     * @see #isResponseBodyTruncated()
+     */
+    public void setResponseBodyTruncated(boolean responseBodyTruncated) {
+        this.responseBodyTruncated = responseBodyTruncated;
+    }
     
     /**
      * Returns a map of data suitable for including in an {@link Event}
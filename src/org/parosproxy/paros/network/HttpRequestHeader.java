@@ -49,6 +49,7 @@
 // ZAP: 2018/02/06 Make the upper case changes locale independent (Issue 4327).
 // ZAP: 2018/08/10 Allow to set the user agent used by default request headers (Issue 4846).
 // ZAP: 2018/11/16 Add Accept header.
+// ZAP: 2018/11/25 Allow to copy the header without parsing it.
 
 package org.parosproxy.paros.network;
 
@@ -166,6 +167,34 @@ public class HttpRequestHeader extends HttpHeader {
         setMessage(data);
     }
 
+    /**
+     * Constructs a {@code HttpRequestHeader} with the contents of the given header, without parsing it.
+     * <p>
+     * The header fields are shared between both headers until either is modified, the sender address is not copied.
+     *
+     * @param header the header to copy.
+     */
+    HttpRequestHeader(HttpRequestHeader header) {
+        super(header);
+        mMethod = header.mMethod;
+        mUri = cloneUri(header.mUri);
+        mHostName = header.mHostName;
+        mHostPort = header.mHostPort;
+        mIsSecure = header.mIsSecure;
+    }
+
+    private static URI cloneUri(URI uri) {
+        if (uri == null) {
+            return null;
+        }
+        try {
+            return (URI) uri.clone();
+        } catch (CloneNotSupportedException e) {
+            // Does not happen, URI is Cloneable.
+            throw new IllegalStateException(e);
+        }
+    }
+
     @Override
     public void clear() {
         super.clear();
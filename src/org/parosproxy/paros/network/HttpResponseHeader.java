@@ -35,6 +35,7 @@
 // ZAP: 2018/02/06 Make the lower/upper case changes locale independent (Issue 4327).
 // ZAP: 2018/07/23 Add CSP headers.
 // ZAP: 2018/08/15 Add Server header.
+// ZAP: 2018/11/25 Allow to copy the header without parsing it.
 
 package org.parosproxy.paros.network;
 
@@ -118,6 +119,20 @@ public class HttpResponseHeader extends HttpHeader {
         super(data);
     }
 
+    /**
+     * Constructs a {@code HttpResponseHeader} with the contents of the given header, without parsing it.
+     * <p>
+     * The header fields are shared between both headers until either is modified.
+     *
+     * @param header the header to copy.
+     */
+    HttpResponseHeader(HttpResponseHeader header) {
+        super(header);
+        mStatusCodeString = header.mStatusCodeString;
+        mStatusCode = header.mStatusCode;
+        mReasonPhrase = header.mReasonPhrase;
+    }
+
     @Override
     public void clear() {
         super.clear();
@@ -75,21 +75,47 @@
 // ZAP: 2018/08/03 Added AUTHENTICATION_HELPER_INITIATOR.
 // ZAP: 2018/09/17 Set the user to messages created for redirections (Issue 2531).
 // ZAP: 2018/10/12 Deprecate getClient(), it exposes implementation details.
+// ZAP: 2018/10/23 Allow to use a connection manager shared with other senders.
+// ZAP: 2018/10/24 Allow to stream the response body.
+// ZAP: 2018/10/30 Read the response body directly into the message.
+// ZAP: 2018/11/17 Allow to decode the response body.
+// ZAP: 2018/11/19 Resolve the hosts of plain HTTP connections with the shared DNS cache.
+// ZAP: 2018/11/20 Allow to send the messages asynchronously.
+// ZAP: 2018/11/21 Limit the requests per host with the host governor.
+// ZAP: 2018/11/22 Allow to coalesce identical requests.
+// ZAP: 2018/11/23 Record the latencies of the requests.
+// ZAP: 2018/11/24 Allow to pre-warm the connections to a host.
+// ZAP: 2018/12/01 Keep the shared connection of each host, to not break connection-based authentication.
+// ZAP: 2018/12/02 Send the asynchronous messages with a pool of threads per sender, with configurable limits.
+// ZAP: 2018/12/03 Tell the host governor the initiator of the requests.
+// ZAP: 2018/12/04 Do not stream the response body if there are listeners or when re-authenticating.
 
 package org.parosproxy.paros.network;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
 import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HostConfiguration;
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.HttpConnectionManager;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.HttpHost;
 import org.apache.commons.httpclient.HttpMethod;
@@ -107,16 +133,24 @@ import org.apache.commons.httpclient.auth.AuthScope;
 import org.apache.commons.httpclient.cookie.CookiePolicy;
 import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
 import org.apache.commons.httpclient.params.HttpClientParams;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.apache.commons.httpclient.params.HttpMethodParams;
 import org.apache.commons.httpclient.protocol.Protocol;
 import org.apache.commons.httpclient.protocol.ProtocolSocketFactory;
 import org.apache.log4j.Logger;
 import org.zaproxy.zap.ZapGetMethod;
 import org.zaproxy.zap.ZapHttpConnectionManager;
+import org.zaproxy.zap.network.CachedDnsProtocolSocketFactory;
+import org.zaproxy.zap.network.HostGovernor;
 import org.zaproxy.zap.network.HttpSenderListener;
 import org.zaproxy.zap.network.ZapCookieSpec;
 import org.zaproxy.zap.network.HttpRedirectionValidator;
+import org.zaproxy.zap.network.HttpContentDecoder;
+import org.zaproxy.zap.network.HttpRequestCoalescer;
 import org.zaproxy.zap.network.HttpRequestConfig;
+import org.zaproxy.zap.network.HttpSenderMetrics;
+import org.zaproxy.zap.network.HttpResponseBodyStreamer;
+import org.zaproxy.zap.network.PinningHttpConnectionManager;
 import org.zaproxy.zap.network.ZapNTLMScheme;
 import org.zaproxy.zap.users.User;
 
@@ -157,6 +191,7 @@ public class HttpSender {
 			Protocol.registerProtocol("https", new Protocol("https",
 					(ProtocolSocketFactory) new SSLConnector(true), 443));
 		}
+		Protocol.registerProtocol("http", new Protocol("http", new CachedDnsProtocolSocketFactory(), 80));
 
 		AuthPolicy.registerAuthScheme(AuthPolicy.NTLM, ZapNTLMScheme.class);
 		CookiePolicy.registerCookieSpec(CookiePolicy.DEFAULT, ZapCookieSpec.class);
@@ -167,12 +202,39 @@ public class HttpSender {
 	private static String userAgent = "";
 	private static final ThreadLocal<Boolean> IN_LISTENER = new ThreadLocal<Boolean>();
 
+	private static final int ASYNC_THREAD_KEEP_ALIVE_SECS = 60;
+
+	/**
+	 * The size of the buffer used to read the response bodies.
+	 */
+	private static final int READ_BUFFER_SIZE = 8192;
+
+	private static final InputStream EMPTY_INPUT_STREAM = new InputStream() {
+
+		@Override
+		public int read() {
+			return -1;
+		}
+	};
+
 	private HttpClient client = null;
 	private HttpClient clientViaProxy = null;
 	private ConnectionParam param = null;
 	private MultiThreadedHttpConnectionManager httpConnManager = null;
 	private MultiThreadedHttpConnectionManager httpConnManagerProxy = null;
+	private MultiThreadedHttpConnectionManager sharedConnManager = null;
+	private PinningHttpConnectionManager pinningConnManager = null;
+
+	/**
+	 * The executor of the messages sent asynchronously, created when needed.
+	 * 
+	 * @see #getAsyncExecutor()
+	 */
+	private ThreadPoolExecutor asyncExecutor;
+
 	private boolean followRedirect = false;
+	private boolean decodeResponseBody;
+	private volatile HttpRequestCoalescer requestCoalescer;
 	private int initiator = -1;
 
 	/*
@@ -201,8 +263,42 @@ public class HttpSender {
 	 * @see HttpMessage#getRequestingUser()
 	 */
 	public HttpSender(ConnectionParam connectionParam, boolean useGlobalState, int initiator) {
+		this(connectionParam, useGlobalState, initiator, null);
+	}
+
+	/**
+	 * Constructs an {@code HttpSender} that uses the given connection manager, shared with other senders.
+	 * <p>
+	 * The shared connection manager is used for all the connections, direct or through the outgoing proxy, and it's not shut
+	 * down by {@link #shutdown()}, the caller is responsible to shut it down when no longer needed. Its connection limits are
+	 * not changed by the sender, while its timeouts are set to the ones of the given {@code ConnectionParam}.
+	 * <p>
+	 * The sender keeps the connection obtained for each host (and outgoing proxy) until shut down, the requests to a host are
+	 * sent through the same connection as required by connection-based authentication schemes (for example, NTLM). Getting a
+	 * connection from the shared connection manager fails, after the timeout of the connections, if none is available.
+	 * <p>
+	 * Refer to {@link #HttpSender(ConnectionParam, boolean, int)} for details on the other parameters.
+	 *
+	 * @param connectionParam the parameters used to setup the connections to target hosts
+	 * @param useGlobalState {@code true} if the messages sent/received should use the global HTTP state, {@code false} if
+	 *			should use a non shared HTTP state
+	 * @param initiator the ID of the initiator of the HTTP messages sent
+	 * @param connectionManager the connection manager shared with other senders, might be {@code null} in which case the
+	 *			sender uses its own connection managers
+	 * @since TODO add version
+	 * @see org.zaproxy.zap.network.PooledHttpConnectionManager
+	 */
+	public HttpSender(
+			ConnectionParam connectionParam,
+			boolean useGlobalState,
+			int initiator,
+			MultiThreadedHttpConnectionManager connectionManager) {
 		this.param = connectionParam;
 		this.initiator = initiator;
+		this.sharedConnManager = connectionManager;
+		if (connectionManager != null) {
+			pinningConnManager = new PinningHttpConnectionManager(connectionManager);
+		}
 
 		client = createHttpClient();
 		clientViaProxy = createHttpClientViaProxy();
@@ -261,6 +357,9 @@ public class HttpSender {
 	}
 
 	private HttpClient createHttpClient() {
+		if (sharedConnManager != null) {
+			return createSharedHttpClient();
+		}
 
 		httpConnManager = new MultiThreadedHttpConnectionManager();
 		setCommonManagerParams(httpConnManager);
@@ -273,9 +372,15 @@ public class HttpSender {
 			return createHttpClient();
 		}
 
-		httpConnManagerProxy = new MultiThreadedHttpConnectionManager();
-		setCommonManagerParams(httpConnManagerProxy);
-		HttpClient clientProxy = new HttpClient(httpConnManagerProxy);
+		HttpClient clientProxy;
+		if (sharedConnManager != null) {
+			// The connections are pooled per host configuration, which includes the proxy.
+			clientProxy = createSharedHttpClient();
+		} else {
+			httpConnManagerProxy = new MultiThreadedHttpConnectionManager();
+			setCommonManagerParams(httpConnManagerProxy);
+			clientProxy = new HttpClient(httpConnManagerProxy);
+		}
 		clientProxy.getHostConfiguration().setProxy(param.getProxyChainName(), param.getProxyChainPort());
 
 		if (param.isUseProxyChainAuth()) {
@@ -285,6 +390,15 @@ public class HttpSender {
 		return clientProxy;
 	}
 	
+	private HttpClient createSharedHttpClient() {
+		setTimeouts(sharedConnManager.getParams());
+
+		HttpClient httpClient = new HttpClient(pinningConnManager);
+		// Do not wait indefinitely for a connection, the shared connections might all be in use.
+		httpClient.getParams().setConnectionManagerTimeout(TimeUnit.SECONDS.toMillis(param.getTimeoutInSecs()));
+		return httpClient;
+	}
+
 	private NTCredentials getNTCredentials(ConnectionParam param) {
 		// NTCredentials credentials = new NTCredentials(
 		// param.getProxyChainUserName(), param.getProxyChainPassword(),
@@ -376,7 +490,107 @@ public class HttpSender {
 		return connectionHeader.getValue().toLowerCase(Locale.ROOT).contains("upgrade");
 	}
 
+	/**
+	 * Opens, ahead of the requests, the given number of connections to the host of the given URI, through the outgoing
+	 * proxy if in use, and keeps them in the pool for the requests sent by this sender.
+	 * <p>
+	 * The first connection is opened alone, for the TLS session to be cached and resumed by the other connections, which
+	 * are then opened in parallel. The connections already open in the pool are counted as pre-warmed.
+	 *
+	 * @param uri the URI of the host.
+	 * @param count the number of connections to open.
+	 * @return the number of connections open, ready to be used.
+	 * @throws IllegalArgumentException if {@code uri} is {@code null} or does not have a valid host.
+	 * @since TODO add version
+	 * @see ConnectionParam#getPrewarmConnections()
+	 */
+	public int prewarmConnections(URI uri, int count) {
+		if (uri == null) {
+			throw new IllegalArgumentException("Parameter uri must not be null.");
+		}
+		if (count <= 0) {
+			return 0;
+		}
+
+		String hostName;
+		try {
+			hostName = uri.getHost();
+		} catch (URIException e) {
+			throw new IllegalArgumentException("Failed to obtain the host of the URI: " + e.getMessage(), e);
+		}
+		HttpClient requestClient = param.isUseProxy(hostName) ? clientViaProxy : client;
+		HostConfiguration hostConfiguration = new HostConfiguration(requestClient.getHostConfiguration());
+		hostConfiguration.setHost(uri);
+		HttpConnectionManager connectionManager = requestClient.getHttpConnectionManager();
+		long timeout = TimeUnit.SECONDS.toMillis(param.getTimeoutInSecs());
+
+		List<HttpConnection> connections = new ArrayList<>(count);
+		try {
+			for (int i = 0; i < count; i++) {
+				connections.add(connectionManager.getConnectionWithTimeout(hostConfiguration, timeout));
+			}
+		} catch (ConnectionPoolTimeoutException e) {
+			log.debug("Pre-warming just " + connections.size() + " connection(s) to " + hostName + ", the pool is full.");
+		}
+
+		try {
+			if (connections.isEmpty() || !openConnection(requestClient, hostConfiguration, connections.get(0))) {
+				return 0;
+			}
+			List<CompletableFuture<Boolean>> opened = new ArrayList<>(connections.size() - 1);
+			for (HttpConnection connection : connections.subList(1, connections.size())) {
+				try {
+					opened.add(
+							CompletableFuture.supplyAsync(
+									() -> openConnection(requestClient, hostConfiguration, connection),
+									getAsyncExecutor()));
+				} catch (RejectedExecutionException e) {
+					opened.add(CompletableFuture.completedFuture(openConnection(requestClient, hostConfiguration, connection)));
+				}
+			}
+			int open = 1;
+			for (CompletableFuture<Boolean> result : opened) {
+				if (result.join()) {
+					open++;
+				}
+			}
+			return open;
+		} finally {
+			for (HttpConnection connection : connections) {
+				connection.releaseConnection();
+			}
+		}
+	}
+
+	private static boolean openConnection(HttpClient client, HostConfiguration hostConfiguration, HttpConnection connection) {
+		HttpMethodDirector director = new HttpMethodDirector(
+				client.getHttpConnectionManager(),
+				hostConfiguration,
+				client.getParams(),
+				client.getState());
+		try {
+			if (director.openConnection(connection)) {
+				return true;
+			}
+			log.debug("The outgoing proxy did not establish the tunnel to " + hostConfiguration.getHost());
+		} catch (IOException e) {
+			log.debug("Failed to pre-warm connection to " + hostConfiguration.getHost() + ": " + e.getMessage());
+		}
+		connection.close();
+		return false;
+	}
+
 	public void shutdown() {
+		synchronized (this) {
+			if (asyncExecutor != null) {
+				// Let the messages already submitted to be sent.
+				asyncExecutor.shutdown();
+				asyncExecutor = null;
+			}
+		}
+		if (pinningConnManager != null) {
+			pinningConnManager.shutdown();
+		}
 		if (httpConnManager != null) {
 			httpConnManager.shutdown();
 		}
@@ -519,6 +733,14 @@ public class HttpSender {
 	}
 
 	private void sendAuthenticated(HttpMessage msg, boolean isFollowRedirect, HttpMethodParams params) throws IOException {
+		sendAuthenticated(msg, isFollowRedirect, params, null);
+	}
+
+	private void sendAuthenticated(
+			HttpMessage msg,
+			boolean isFollowRedirect,
+			HttpMethodParams params,
+			HttpResponseBodyStreamer streamer) throws IOException {
 		// Modify the request message if a 'Requesting User' has been set
 		User forceUser = this.getUser(msg);
 		if (initiator != AUTHENTICATION_INITIATOR && forceUser != null)
@@ -526,7 +748,7 @@ public class HttpSender {
 
 		log.debug("Sending message to: " + msg.getRequestHeader().getURI().toString());
 		// Send the message
-		send(msg, isFollowRedirect, params);
+		send(msg, isFollowRedirect, params, streamer);
 
 		// If there's a 'Requesting User', make sure the response corresponds to an authenticated
 		// session and, if not, attempt a reauthentication and try again
@@ -537,18 +759,44 @@ public class HttpSender {
 					+ ". Authenticating and trying again...");
 			forceUser.queueAuthentication(msg);
 			forceUser.processMessageToMatchUser(msg);
-			send(msg, isFollowRedirect, params);
+			// The response of the first try might have been already streamed, read the new one into the message.
+			send(msg, isFollowRedirect, params, null);
 		} else
 			log.debug("SUCCESSFUL");
 
 	}
 
-	private void send(HttpMessage msg, boolean isFollowRedirect, HttpMethodParams params) throws IOException {
+	private void send(HttpMessage msg, boolean isFollowRedirect, HttpMethodParams params, HttpResponseBodyStreamer streamer)
+			throws IOException {
+		HttpRequestCoalescer coalescer = requestCoalescer;
+		if (coalescer != null && streamer == null && HttpRequestCoalescer.isCoalescable(msg)) {
+			coalescer.send(
+					msg,
+					Arrays.asList(initiator, getUser(msg), isFollowRedirect, params != null ? params.getSoTimeout() : -1),
+					m -> sendRequest(m, isFollowRedirect, params, null));
+			return;
+		}
+		sendRequest(msg, isFollowRedirect, params, streamer);
+	}
+
+	private void sendRequest(
+			HttpMessage msg,
+			boolean isFollowRedirect,
+			HttpMethodParams params,
+			HttpResponseBodyStreamer streamer) throws IOException {
 		HttpMethod method = null;
 		HttpResponseHeader resHeader = null;
+		HostGovernor.Permit permit = HostGovernor.getDefault().acquire(msg, initiator);
+		Exception error = null;
+		long start = System.nanoTime();
+		long timeToFirstByte = -1;
 
 		try {
 			method = runMethod(msg, isFollowRedirect, params);
+			timeToFirstByte = System.nanoTime() - start;
+			if (permit != null) {
+				permit.responseReceived();
+			}
 			// successfully executed;
 			resHeader = HttpMethodHelper.getHttpResponseHeader(method);
 			resHeader.setHeader(HttpHeader.TRANSFER_ENCODING, null); // replaceAll("Transfer-Encoding: chunked\r\n",
@@ -560,7 +808,14 @@ public class HttpSender {
 			// ZAP: Do not read response body for Server-Sent Events stream
 			// ZAP: Moreover do not set content length to zero
 			if (!msg.isEventStream()) {
-				msg.getResponseBody().append(method.getResponseBody());
+				if (streamer != null && streamer.isStreamable(msg)) {
+					streamResponseBody(msg, method, streamer);
+				} else {
+					readResponseBody(msg, method);
+					if (decodeResponseBody) {
+						decodeResponseBody(msg);
+					}
+				}
 			}
 			msg.setResponseFromTargetHost(true);
 
@@ -568,13 +823,90 @@ public class HttpSender {
 			if (method instanceof ZapGetMethod) {
 				msg.setUserObject(method);
 			}
+		} catch (IOException | RuntimeException e) {
+			error = e;
+			throw e;
 		} finally {
 			if (method != null) {
 				method.releaseConnection();
 			}
+			if (permit != null) {
+				permit.release(msg, error);
+			}
+			HttpSenderMetrics.getDefault().recordRequest(msg, initiator, timeToFirstByte, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Decodes the response body of the given message, if content encoded.
+	 * <p>
+	 * The response is kept encoded if malformed or if it would exceed the {@link ConnectionParam#getMaxDecodedBodySize()
+	 * maximum decoded size}.
+	 *
+	 * @param msg the message whose response should be decoded
+	 * @see #setDecodeResponseBody(boolean)
+	 */
+	private void decodeResponseBody(HttpMessage msg) {
+		try {
+			HttpContentDecoder.decodeResponseBody(msg, param.getMaxDecodedBodySize());
+		} catch (IOException e) {
+			log.warn("Failed to decode the response from " + msg.getRequestHeader().getURI() + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads the response body of the given method into the given message.
+	 * <p>
+	 * The body is read directly into the message, instead of being buffered by the method first, which avoids keeping two
+	 * copies of the body in memory and allows big bodies to be kept in temporary files.
+	 *
+	 * @param msg the message being sent
+	 * @param method the method that was executed
+	 * @throws IOException if an error occurred while reading the body
+	 * @see HttpBody#setSpillThreshold(int)
+	 */
+	private static void readResponseBody(HttpMessage msg, HttpMethod method) throws IOException {
+		InputStream body = method.getResponseBodyAsStream();
+		if (body == null) {
+			return;
+		}
+
+		try (InputStream is = body) {
+			HttpBody responseBody = msg.getResponseBody();
+			byte[] buffer = new byte[READ_BUFFER_SIZE];
+			int len;
+			while ((len = is.read(buffer)) != -1) {
+				responseBody.append(buffer, len);
+			}
 		}
 	}
 
+	/**
+	 * Streams the response body of the given method with the given streamer.
+	 *
+	 * @param msg the message being sent
+	 * @param method the method that was executed
+	 * @param streamer the streamer of the response body
+	 * @throws IOException if an error occurred while streaming the body
+	 */
+	private static void streamResponseBody(HttpMessage msg, HttpMethod method, HttpResponseBodyStreamer streamer)
+			throws IOException {
+		InputStream body = method.getResponseBodyAsStream();
+		if (body == null) {
+			streamer.stream(msg, EMPTY_INPUT_STREAM);
+			return;
+		}
+
+		try {
+			streamer.stream(msg, body);
+		} catch (IOException | RuntimeException e) {
+			// Do not read the rest of the body (as closing the stream would), just close the connection.
+			method.abort();
+			throw e;
+		}
+		body.close();
+	}
+
 	private HttpMethod runMethod(HttpMessage msg, boolean isFollowRedirect, HttpMethodParams params) throws IOException {
 		HttpMethod method = null;
 		// no more retry
@@ -601,6 +933,37 @@ public class HttpSender {
 		this.followRedirect = followRedirect;
 	}
 
+	/**
+	 * Sets whether or not the content encoded (for example, gzip) responses should be decoded.
+	 * <p>
+	 * The responses are decoded once read, with the {@code Content-Encoding} header removed. Streamed responses are not
+	 * decoded.
+	 * <p>
+	 * Default is {@code false}.
+	 *
+	 * @param decodeResponseBody {@code true} if the responses should be decoded, {@code false} otherwise.
+	 * @since TODO add version
+	 * @see ConnectionParam#setMaxDecodedBodySize(int)
+	 */
+	public void setDecodeResponseBody(boolean decodeResponseBody) {
+		this.decodeResponseBody = decodeResponseBody;
+	}
+
+	/**
+	 * Sets the coalescer of identical requests.
+	 * <p>
+	 * The identical {@code GET} and {@code HEAD} requests, from the same user, are sent just once with the response copied
+	 * to the others. The listeners are still notified of each message. Streamed responses are not coalesced.
+	 * <p>
+	 * Default is {@code null}, all requests are sent.
+	 *
+	 * @param requestCoalescer the coalescer of the requests, or {@code null} to send all requests.
+	 * @since TODO add version
+	 */
+	public void setRequestCoalescer(HttpRequestCoalescer requestCoalescer) {
+		this.requestCoalescer = requestCoalescer;
+	}
+
 	private void modifyUserAgent(HttpMessage msg) {
 
 		try {
@@ -646,10 +1009,7 @@ public class HttpSender {
 	}
 
 	private void setCommonManagerParams(MultiThreadedHttpConnectionManager mgr) {
-		int timeout = (int) TimeUnit.SECONDS.toMillis(this.param.getTimeoutInSecs());
-		mgr.getParams().setSoTimeout(timeout);
-		mgr.getParams().setConnectionTimeout(timeout);
-		mgr.getParams().setStaleCheckingEnabled(true);
+		setTimeouts(mgr.getParams());
 
 		// Set to arbitrary large values to prevent locking
 		mgr.getParams().setDefaultMaxConnectionsPerHost(10000);
@@ -665,6 +1025,13 @@ public class HttpSender {
 
 	}
 
+	private void setTimeouts(HttpConnectionManagerParams params) {
+		int timeout = (int) TimeUnit.SECONDS.toMillis(this.param.getTimeoutInSecs());
+		params.setSoTimeout(timeout);
+		params.setConnectionTimeout(timeout);
+		params.setStaleCheckingEnabled(true);
+	}
+
 	/*
 	 * Send and receive a HttpMessage.
 	 * 
@@ -907,6 +1274,134 @@ public class HttpSender {
         }
     }
 
+    /**
+     * Sends the request of given HTTP {@code message} asynchronously, with the given configurations.
+     * <p>
+     * The message is sent as with {@link #sendAndReceive(HttpMessage, HttpRequestConfig)}, the listeners are notified, the
+     * user and HTTP state are used and the redirections followed as configured. The messages are sent by a pool of threads of
+     * this sender, which allows the caller to have many messages in flight without managing the threads. The I/O is still
+     * blocking, each message in flight uses one of the threads, the others wait for a thread to be available, up to the
+     * limits defined in the connection options.
+     * <p>
+     * The returned future is completed with the given {@code message}, once the response is received, or exceptionally with
+     * the {@code IOException} thrown while sending, or with a {@code RejectedExecutionException} if too many messages are
+     * already waiting to be sent. Cancelling the future before the message is sent prevents it from being sent.
+     *
+     * @param message the message that will be sent
+     * @param requestConfig the request configurations.
+     * @return the future that is completed once the message is sent and the response received.
+     * @throws IllegalArgumentException if any of the parameters is {@code null}
+     * @since TODO add version
+     * @see #sendAndReceiveAsync(HttpMessage)
+     * @see ConnectionParam#getAsyncMaxThreads()
+     * @see ConnectionParam#getAsyncMaxQueuedRequests()
+     */
+    public CompletableFuture<HttpMessage> sendAndReceiveAsync(HttpMessage message, HttpRequestConfig requestConfig) {
+        if (message == null) {
+            throw new IllegalArgumentException("Parameter message must not be null.");
+        }
+        if (requestConfig == null) {
+            throw new IllegalArgumentException("Parameter requestConfig must not be null.");
+        }
+        return sendAsync(message, () -> sendAndReceive(message, requestConfig));
+    }
+
+    /**
+     * Sends the request of given HTTP {@code message} asynchronously, following the redirections as set to this sender.
+     *
+     * @param message the message that will be sent
+     * @return the future that is completed once the message is sent and the response received.
+     * @throws IllegalArgumentException if the message is {@code null}
+     * @since TODO add version
+     * @see #sendAndReceive(HttpMessage)
+     * @see #sendAndReceiveAsync(HttpMessage, HttpRequestConfig)
+     */
+    public CompletableFuture<HttpMessage> sendAndReceiveAsync(HttpMessage message) {
+        if (message == null) {
+            throw new IllegalArgumentException("Parameter message must not be null.");
+        }
+        return sendAsync(message, () -> sendAndReceive(message));
+    }
+
+    private CompletableFuture<HttpMessage> sendAsync(HttpMessage message, SendTask task) {
+        CompletableFuture<HttpMessage> future = new CompletableFuture<>();
+        // Keep the messages sent by the listeners from being notified to the listeners, as in the calling thread.
+        boolean inListener = IN_LISTENER.get() != null;
+        try {
+            getAsyncExecutor().execute(() -> {
+                if (future.isDone()) {
+                    return;
+                }
+                if (inListener) {
+                    IN_LISTENER.set(true);
+                }
+                try {
+                    task.send();
+                    future.complete(message);
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    IN_LISTENER.remove();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Gets the executor of the messages sent asynchronously, creating it if needed.
+     * <p>
+     * The threads are created on demand, up to the maximum defined in the connection options, and the messages wait for a
+     * thread up to the maximum number of queued requests, the following are rejected.
+     *
+     * @return the executor, never {@code null}.
+     * @see ConnectionParam#getAsyncMaxThreads()
+     * @see ConnectionParam#getAsyncMaxQueuedRequests()
+     */
+    private synchronized ThreadPoolExecutor getAsyncExecutor() {
+        if (asyncExecutor == null) {
+            int maxThreads = param.getAsyncMaxThreads();
+            int maxQueuedRequests = param.getAsyncMaxQueuedRequests();
+            asyncExecutor = new ThreadPoolExecutor(
+                    maxThreads,
+                    maxThreads,
+                    ASYNC_THREAD_KEEP_ALIVE_SECS,
+                    TimeUnit.SECONDS,
+                    maxQueuedRequests > 0
+                            ? new ArrayBlockingQueue<Runnable>(maxQueuedRequests)
+                            : new SynchronousQueue<Runnable>(),
+                    new AsyncThreadFactory());
+            asyncExecutor.allowCoreThreadTimeOut(true);
+        }
+        return asyncExecutor;
+    }
+
+    /**
+     * A task that sends a message.
+     */
+    @FunctionalInterface
+    private interface SendTask {
+
+        void send() throws IOException;
+    }
+
+    /**
+     * The {@code ThreadFactory} of the threads that send the messages asynchronously.
+     */
+    private static class AsyncThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger THREAD_NUMBER = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ZAP-HttpSender-Async-" + THREAD_NUMBER.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
     /**
      * Helper method that sends the request of the given HTTP {@code message} with the given configurations.
      * <p>
@@ -932,7 +1427,7 @@ public class HttpSender {
                 params = new HttpMethodParams();
                 params.setSoTimeout(requestConfig.getSoTimeout());
             }
-            sendAuthenticated(message, false, params);
+            sendAuthenticated(message, false, params, getResponseBodyStreamer(requestConfig));
 
         } finally {
             message.setTimeElapsedMillis((int) (System.currentTimeMillis() - message.getTimeSentMillis()));
@@ -949,6 +1444,21 @@ public class HttpSender {
         }
     }
 
+    /**
+     * Gets the response body streamer of the given request configurations, if the response body can be streamed.
+     * <p>
+     * The response body is not streamed if the listeners are notified, they might change the response after being received.
+     *
+     * @param requestConfig the request configurations.
+     * @return the response body streamer, or {@code null} if the response body should not be streamed.
+     */
+    private static HttpResponseBodyStreamer getResponseBodyStreamer(HttpRequestConfig requestConfig) {
+        if (requestConfig.isNotifyListeners() && IN_LISTENER.get() == null && !listeners.isEmpty()) {
+            return null;
+        }
+        return requestConfig.getResponseBodyStreamer();
+    }
+
     /**
      * Follows redirections using the response of the given {@code message}. The {@code validator} in the given request
      * configuration will be called for each redirection received. After the call to this method the given {@code message} will
@@ -33,15 +33,17 @@
 // ZAP: 2017/04/14 Validate that SSLv2Hello is set in conjunction with at least one SSL/TLS version.
 // ZAP: 2017/09/22 Rely on SNI if the domain is no known when creating the SSL/TLS tunnel.
 // ZAP: 2018/06/08 Don't enable client cert if none set (Issue 4745).
+// ZAP: 2018/11/18 Cache the SSL socket factories of the tunnels, per hostname.
+// ZAP: 2018/11/19 Resolve the hosts with the shared DNS cache.
+// ZAP: 2018/11/23 Record the time of the TLS handshakes.
+// ZAP: 2018/12/03 Record the connections opened and the TLS handshakes of the tunnels for the target host.
 
 package org.parosproxy.paros.network;
 
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.net.SocketAddress;
 import java.net.UnknownHostException;
 import java.security.InvalidKeyException;
 import java.security.KeyManagementException;
@@ -84,6 +86,10 @@ import org.apache.commons.httpclient.protocol.SecureProtocolSocketFactory;
 import org.apache.log4j.Logger;
 import org.parosproxy.paros.security.CachedSslCertifificateServiceImpl;
 import org.parosproxy.paros.security.SslCertificateService;
+import org.zaproxy.zap.network.CachedDnsProtocolSocketFactory;
+import org.zaproxy.zap.network.DnsCache;
+import org.zaproxy.zap.network.HttpSenderMetrics;
+import org.zaproxy.zap.utils.Stats;
 
 import ch.csnc.extension.httpclient.SSLContextManager;
 
@@ -157,6 +163,41 @@ public class SSLConnector implements SecureProtocolSocketFactory {
 	 */
 	private static long timeStampLastStaleCheck;
 
+	/**
+	 * The maximum number of SSL socket factories of the tunnels that are cached.
+	 * 
+	 * @see #tunnelSslSocketFactories
+	 */
+	private static final int MAX_CACHED_TUNNEL_SSL_SOCKET_FACTORIES = 500;
+
+	/**
+	 * The maximum number of SSL/TLS sessions kept by each tunnel SSL context, to allow the clients to resume the sessions.
+	 */
+	private static final int TUNNEL_SESSION_CACHE_SIZE = 100;
+
+	static final String STATS_TUNNEL_FACTORY_HITS = "stats.network.ssl.tunnelfactory.hits";
+	static final String STATS_TUNNEL_FACTORY_MISSES = "stats.network.ssl.tunnelfactory.misses";
+	static final String STATS_TUNNEL_FACTORY_EVICTIONS = "stats.network.ssl.tunnelfactory.evictions";
+
+	/**
+	 * A cache of the SSL socket factories of the tunnels, to not create a new SSL context for each tunnel of the same host and
+	 * allow the clients to resume the SSL/TLS sessions.
+	 * <p>
+	 * The {@code key} is the hostname and the {@code value} the {@link TunnelSslSocketFactory}.
+	 * 
+	 * @see #getTunnelSSLSocketFactory(String)
+	 */
+	private static final LRUMap tunnelSslSocketFactories = new LRUMap(MAX_CACHED_TUNNEL_SSL_SOCKET_FACTORIES) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeLRU(LinkEntry entry) {
+			Stats.incCounter(STATS_TUNNEL_FACTORY_EVICTIONS);
+			return true;
+		}
+	};
+
 	// server related socket factories
 	
 	// ZAP: removed ServerSocketFaktory
@@ -406,8 +447,12 @@ public class SSLConnector implements SecureProtocolSocketFactory {
 				return clientSSLSockFactory.createSocket(hostAddress, port, localAddress, localPort);
 			}
 			try {
-				SSLSocket sslSocket = (SSLSocket) clientSSLSockFactory.createSocket(host, port, localAddress, localPort);
-				sslSocket.startHandshake();
+				SSLSocket sslSocket = (SSLSocket) clientSSLSockFactory.createSocket(
+						connect(host, port, localAddress, localPort, 0),
+						host,
+						port,
+						true);
+				startHandshake(sslSocket, host, port);
 
 				return sslSocket;
 			} catch (SSLException e) {
@@ -415,20 +460,41 @@ public class SSLConnector implements SecureProtocolSocketFactory {
 					throw e;
 				}
 
-				hostAddress = InetAddress.getByName(host);
+				hostAddress = DnsCache.getDefault().getByName(host);
 				cacheMisconfiguredHost(host, port, hostAddress);
 				return clientSSLSockFactory.createSocket(hostAddress, port, localAddress, localPort);
 			}
 		}
-		Socket socket = clientSSLSockFactory.createSocket();
-		SocketAddress localAddr = new InetSocketAddress(localAddress, localPort);
-		socket.bind(localAddr);
-		SocketAddress remoteAddr = new InetSocketAddress(host, port);
-		socket.connect(remoteAddr, timeout);
-		
+		SSLSocket sslSocket = (SSLSocket) clientSSLSockFactory.createSocket(
+				connect(host, port, localAddress, localPort, timeout),
+				host,
+				port,
+				true);
+		// The read timeout is set by the caller, once connected, bound the handshake with the connection timeout.
+		sslSocket.setSoTimeout(timeout);
+		startHandshake(sslSocket, host, port);
+		return sslSocket;
+	}
+
+	private static Socket connect(String host, int port, InetAddress localAddress, int localPort, int timeout)
+			throws IOException {
+		long start = System.nanoTime();
+		Socket socket = CachedDnsProtocolSocketFactory.connect(host, port, localAddress, localPort, timeout);
+		HttpSenderMetrics.getDefault().recordConnect(host, port, System.nanoTime() - start);
 		return socket;
 	}
 
+	private static void startHandshake(SSLSocket sslSocket, String host, int port) throws IOException {
+		long start = System.nanoTime();
+		try {
+			sslSocket.startHandshake();
+		} catch (IOException e) {
+			sslSocket.close();
+			throw e;
+		}
+		HttpSenderMetrics.getDefault().recordTlsHandshake(host, port, System.nanoTime() - start);
+	}
+
 	private static void cacheMisconfiguredHost(String host, int port, InetAddress address) {
 		synchronized (misconfiguredHosts) {
 			if (!misconfiguredHosts.isEmpty()) {
@@ -512,12 +578,13 @@ public class SSLConnector implements SecureProtocolSocketFactory {
 
 		try {
 			SSLSocket socketSSL = (SSLSocket) clientSSLSockFactory.createSocket(socket, host, port, autoClose);
-			socketSSL.startHandshake();
+			// The connection to the outgoing proxy was already recorded for the target host.
+			startHandshake(socketSSL, host, port);
 
 			return socketSSL;
 		} catch (SSLException e) {
 			if (e.getMessage().contains(CONTENTS_UNRECOGNIZED_NAME_EXCEPTION)) {
-				cacheMisconfiguredHost(host, port, InetAddress.getByName(host));
+				cacheMisconfiguredHost(host, port, DnsCache.getDefault().getByName(host));
 			}
 			// Throw the exception anyway because the socket might no longer be usable (e.g. closed). The connection will be 
 			// retried (see HttpMethodDirector#executeWithRetry(HttpMethod) for more information on the retry policy).
@@ -545,32 +612,42 @@ public class SSLConnector implements SecureProtocolSocketFactory {
 		return s;
 	}
 
+	/**
+	 * Gets the SSL socket factory for the tunnel of the given host.
+	 * <p>
+	 * The socket factories are cached per hostname, while the certificate of the host is the same (that is, until the root
+	 * CA certificate is changed). If no hostname is given the certificate is created for the hostname sent by the client
+	 * (SNI), in which case the factory is not cached.
+	 * 
+	 * @param hostname the name of the host, might be {@code null} or empty.
+	 * @return the SSL socket factory for the tunnel.
+	 */
 	// ZAP: added new ServerSocketFaktory with support of dynamic SSL certificates
 	public SSLSocketFactory getTunnelSSLSocketFactory(String hostname) {
-
-		//	SSLServerSocketFactory ssf = null;
-		// set up key manager to do server authentication
-
-		//	KeyStore ks;
 		try {
-			SSLContext ctx = SSLContext.getInstance(SSL);
 			// Normally "SunX509", "IbmX509"...
 			KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
 
-			KeyManager[] keyManagers;
-			if (hostname != null && !hostname.isEmpty()) {
-				initKeyManagerFactoryWithCertForHostname(kmf, hostname);
-				keyManagers = kmf.getKeyManagers();
-			} else {
-				keyManagers = new KeyManager[] { new SniX509KeyManager(kmf) };
+			if (hostname == null || hostname.isEmpty()) {
+				return createTunnelSslSocketFactory(new KeyManager[] { new SniX509KeyManager(kmf) });
 			}
 
-			java.security.SecureRandom x = new java.security.SecureRandom();
-			x.setSeed(System.currentTimeMillis());
-			ctx.init(keyManagers, null, x);
-
-			SSLSocketFactory tunnelSSLFactory = createDecoratedServerSslSocketFactory(ctx.getSocketFactory());
+			// The certificate service caches the key stores, a different key store means a different root CA certificate.
+			KeyStore ks = CachedSslCertifificateServiceImpl.getService().createCertForHost(hostname);
+			synchronized (tunnelSslSocketFactories) {
+				TunnelSslSocketFactory cached = (TunnelSslSocketFactory) tunnelSslSocketFactories.get(hostname);
+				if (cached != null && cached.getKeyStore() == ks) {
+					Stats.incCounter(STATS_TUNNEL_FACTORY_HITS);
+					return cached.getSocketFactory();
+				}
+			}
+			Stats.incCounter(STATS_TUNNEL_FACTORY_MISSES);
 
+			kmf.init(ks, SslCertificateService.PASSPHRASE);
+			SSLSocketFactory tunnelSSLFactory = createTunnelSslSocketFactory(kmf.getKeyManagers());
+			synchronized (tunnelSslSocketFactories) {
+				tunnelSslSocketFactories.put(hostname, new TunnelSslSocketFactory(ks, tunnelSSLFactory));
+			}
 			return tunnelSSLFactory;
 
         } catch (NoSuchAlgorithmException | KeyStoreException
@@ -583,6 +660,32 @@ public class SSLConnector implements SecureProtocolSocketFactory {
         }
 	}
 
+	private static SSLSocketFactory createTunnelSslSocketFactory(KeyManager[] keyManagers)
+			throws NoSuchAlgorithmException, KeyManagementException {
+		SSLContext ctx = SSLContext.getInstance(SSL);
+		java.security.SecureRandom x = new java.security.SecureRandom();
+		x.setSeed(System.currentTimeMillis());
+		ctx.init(keyManagers, null, x);
+		ctx.getServerSessionContext().setSessionCacheSize(TUNNEL_SESSION_CACHE_SIZE);
+
+		return createDecoratedServerSslSocketFactory(ctx.getSocketFactory());
+	}
+
+	/**
+	 * Clears the cache of the SSL socket factories of the tunnels, for example, after changing the root CA certificate.
+	 * <p>
+	 * The factories created with a previous root CA certificate are not used even if not cleared, this just releases them
+	 * sooner.
+	 * 
+	 * @since TODO add version
+	 * @see #getTunnelSSLSocketFactory(String)
+	 */
+	public static void clearTunnelSslSocketFactories() {
+		synchronized (tunnelSslSocketFactories) {
+			tunnelSslSocketFactories.clear();
+		}
+	}
+
 	static void initKeyManagerFactoryWithCertForHostname(KeyManagerFactory keyManagerFactory, String hostname)
 			throws InvalidKeyException, UnrecoverableKeyException, NoSuchAlgorithmException, CertificateException,
 			NoSuchProviderException, SignatureException, KeyStoreException, IOException {
@@ -623,6 +726,28 @@ public class SSLConnector implements SecureProtocolSocketFactory {
 		}
 	}
 
+	/**
+	 * A cached SSL socket factory of a tunnel, along with the key store it was created with.
+	 */
+	private static class TunnelSslSocketFactory {
+
+		private final KeyStore keyStore;
+		private final SSLSocketFactory socketFactory;
+
+		public TunnelSslSocketFactory(KeyStore keyStore, SSLSocketFactory socketFactory) {
+			this.keyStore = keyStore;
+			this.socketFactory = socketFactory;
+		}
+
+		public KeyStore getKeyStore() {
+			return keyStore;
+		}
+
+		public SSLSocketFactory getSocketFactory() {
+			return socketFactory;
+		}
+	}
+
 	private static class MisconfiguredHostCacheEntry {
 
 		private final String host;
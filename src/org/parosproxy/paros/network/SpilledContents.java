@@ -0,0 +1,192 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.network;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The contents of a {@link HttpBody} kept in a temporary file, instead of the heap.
+ * <p>
+ * The file is deleted when the contents are {@link #release() released} or, at the latest, once no longer reachable.
+ */
+final class SpilledContents {
+
+    private static final Logger LOGGER = Logger.getLogger(SpilledContents.class);
+
+    private static final ReferenceQueue<SpilledContents> REFERENCE_QUEUE = new ReferenceQueue<>();
+
+    /**
+     * The cleanups of the contents not yet released, strongly referenced to not be garbage collected before being enqueued.
+     */
+    private static final Set<Cleanup> CLEANUPS = ConcurrentHashMap.newKeySet();
+
+    static {
+        Thread cleaner = new Thread(SpilledContents::cleanUnreachable, "ZAP-HttpBodyCleaner");
+        cleaner.setDaemon(true);
+        cleaner.start();
+    }
+
+    private final FileChannel channel;
+    private final Cleanup cleanup;
+
+    private SpilledContents(File file, FileChannel channel) {
+        this.channel = channel;
+        this.cleanup = new Cleanup(this, file, channel);
+        CLEANUPS.add(cleanup);
+    }
+
+    /**
+     * Creates new empty contents, backed by a new temporary file.
+     *
+     * @return the new contents.
+     * @throws IOException if an error occurred while creating the temporary file.
+     */
+    static SpilledContents create() throws IOException {
+        File file = File.createTempFile("zap-body-", ".tmp");
+        try {
+            @SuppressWarnings("resource")
+            FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+            return new SpilledContents(file, channel);
+        } catch (IOException e) {
+            deleteFile(file);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the given bytes at the given position.
+     *
+     * @param contents the bytes to write.
+     * @param offset the offset in {@code contents}.
+     * @param length the number of bytes to write.
+     * @param position the position in the file.
+     * @throws IOException if an error occurred while writing.
+     */
+    void write(byte[] contents, int offset, int length, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(contents, offset, length);
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Truncates the contents to the given size.
+     *
+     * @param size the new size.
+     * @throws IOException if an error occurred while truncating.
+     */
+    void truncate(long size) throws IOException {
+        channel.truncate(size);
+    }
+
+    /**
+     * Reads the first {@code length} bytes of the contents into the given array.
+     *
+     * @param dest the array where to read the bytes to.
+     * @param length the number of bytes to read.
+     * @throws IOException if an error occurred while reading.
+     */
+    void read(byte[] dest, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(dest, 0, length);
+        long position = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read == -1) {
+                throw new EOFException("Expected " + length + " bytes but read just " + position);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Maps the first {@code length} bytes of the contents into memory, read-only.
+     *
+     * @param length the number of bytes to map.
+     * @return the mapped bytes.
+     * @throws IOException if an error occurred while mapping.
+     */
+    MappedByteBuffer map(int length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    }
+
+    /**
+     * Releases the contents, closing and deleting the temporary file.
+     */
+    void release() {
+        cleanup.clean();
+    }
+
+    private static void cleanUnreachable() {
+        while (true) {
+            try {
+                ((Cleanup) REFERENCE_QUEUE.remove()).clean();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            LOGGER.warn("Failed to delete temporary file: " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Closes the channel and deletes the file of the contents, either explicitly or once the contents are no longer
+     * reachable.
+     */
+    private static class Cleanup extends PhantomReference<SpilledContents> {
+
+        private final File file;
+        private final FileChannel channel;
+
+        Cleanup(SpilledContents contents, File file, FileChannel channel) {
+            super(contents, REFERENCE_QUEUE);
+            this.file = file;
+            this.channel = channel;
+        }
+
+        void clean() {
+            if (!CLEANUPS.remove(this)) {
+                return;
+            }
+            clear();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to close the temporary file: " + e.getMessage());
+            }
+            deleteFile(file);
+        }
+    }
+}
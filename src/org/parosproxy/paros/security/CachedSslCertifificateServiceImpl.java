@@ -20,6 +20,8 @@
 package org.parosproxy.paros.security;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
@@ -27,20 +29,28 @@ import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.SignatureException;
 import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
 
 /**
  * This is an in-memory cache implementation using {@link SslCertificateServiceImpl}.
- * It's not persisting certificates on hard disk.
- * This class is designed to be thread safe.
+ * The certificates are optionally persisted on hard disk, see {@link #setStoreDirectory(Path)}.
+ * This class is designed to be thread safe, the certificates of different hosts are created in parallel while the
+ * certificate of a host is created just once.
  *
  * @author MaWoKi
  */
 public final class CachedSslCertifificateServiceImpl implements SslCertificateService {
 
-	private static final SslCertificateService singleton = new CachedSslCertifificateServiceImpl();
+	private static final Logger LOGGER = Logger.getLogger(CachedSslCertifificateServiceImpl.class);
+
+	private static final CachedSslCertifificateServiceImpl singleton = new CachedSslCertifificateServiceImpl();
 	private final SslCertificateService delegate;
 
 	private CachedSslCertifificateServiceImpl() {
@@ -48,21 +58,94 @@ public final class CachedSslCertifificateServiceImpl implements SslCertificateSe
 		delegate = SslCertificateServiceImpl.getService();
 	}
 
-	private Map<String, KeyStore> cache = new HashMap<>();
+	/**
+	 * The state of the current root CA certificate, replaced when the root CA certificate is initialised.
+	 */
+	private volatile State state = new State(null);
+
+	private Path storeDirectory;
+	private Certificate rootCaCert;
 
 	@Override
-	public synchronized KeyStore createCertForHost(String hostname)
+	public KeyStore createCertForHost(String hostname)
 			throws NoSuchAlgorithmException, InvalidKeyException,
 			CertificateException, NoSuchProviderException, SignatureException,
 			KeyStoreException, IOException, UnrecoverableKeyException {
-		if (this.cache.containsKey(hostname)) {
-			return this.cache.get(hostname);
+		State currentState = this.state;
+		KeyStore ks = currentState.cache.get(hostname);
+		if (ks != null) {
+			return ks;
+		}
+
+		FutureTask<KeyStore> task = new FutureTask<>(() -> loadOrCreateCertForHost(currentState, hostname));
+		FutureTask<KeyStore> pendingTask = currentState.pending.putIfAbsent(hostname, task);
+		if (pendingTask == null) {
+			pendingTask = task;
+			try {
+				task.run();
+			} finally {
+				currentState.pending.remove(hostname, task);
+			}
+		}
+
+		try {
+			return pendingTask.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for the certificate of " + hostname, e);
+		} catch (ExecutionException e) {
+			throw rethrow(e.getCause());
+		}
+	}
+
+	private KeyStore loadOrCreateCertForHost(State currentState, String hostname) throws Exception {
+		KeyStore ks = currentState.store != null ? currentState.store.get(hostname) : null;
+		if (ks == null) {
+			ks = delegate.createCertForHost(hostname);
+			if (currentState.store != null) {
+				currentState.store.put(hostname, ks);
+			}
 		}
-		final KeyStore ks = delegate.createCertForHost(hostname);
-		this.cache.put(hostname, ks);
+		currentState.cache.put(hostname, ks);
 		return ks;
 	}
 
+	private static IOException rethrow(Throwable cause) throws NoSuchAlgorithmException, InvalidKeyException,
+			CertificateException, NoSuchProviderException, SignatureException, KeyStoreException, IOException,
+			UnrecoverableKeyException {
+		if (cause instanceof NoSuchAlgorithmException) {
+			throw (NoSuchAlgorithmException) cause;
+		}
+		if (cause instanceof InvalidKeyException) {
+			throw (InvalidKeyException) cause;
+		}
+		if (cause instanceof CertificateException) {
+			throw (CertificateException) cause;
+		}
+		if (cause instanceof NoSuchProviderException) {
+			throw (NoSuchProviderException) cause;
+		}
+		if (cause instanceof SignatureException) {
+			throw (SignatureException) cause;
+		}
+		if (cause instanceof KeyStoreException) {
+			throw (KeyStoreException) cause;
+		}
+		if (cause instanceof UnrecoverableKeyException) {
+			throw (UnrecoverableKeyException) cause;
+		}
+		if (cause instanceof IOException) {
+			throw (IOException) cause;
+		}
+		if (cause instanceof RuntimeException) {
+			throw (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new IOException(cause);
+	}
+
 	/**
 	 * @return return the current {@link SslCertificateService}
 	 */
@@ -70,11 +153,72 @@ public final class CachedSslCertifificateServiceImpl implements SslCertificateSe
 		return singleton;
 	}
 
+	/**
+	 * Sets the directory where the certificates are persisted, to be reused after restarts.
+	 * <p>
+	 * The certificates are kept per root CA certificate, the certificates of previous root CA certificates are kept until
+	 * {@link #deleteStoredCertificatesOfOtherRootCas() deleted}.
+	 *
+	 * @param directory the directory, or {@code null} to not persist the certificates.
+	 * @since TODO add version
+	 */
+	public static void setStoreDirectory(Path directory) {
+		singleton.setStoreDirectoryImpl(directory);
+	}
+
+	/**
+	 * Deletes the persisted certificates issued by root CA certificates other than the current one, for example, after
+	 * generating a new root CA certificate.
+	 * <p>
+	 * Has no effect if the certificates are not persisted.
+	 *
+	 * @since TODO add version
+	 * @see #setStoreDirectory(Path)
+	 */
+	public static void deleteStoredCertificatesOfOtherRootCas() {
+		CertificateStore store = singleton.state.store;
+		if (store != null) {
+			store.deleteOtherDirectories();
+		}
+	}
+
+	private synchronized void setStoreDirectoryImpl(Path directory) {
+		this.storeDirectory = directory;
+		this.state = new State(createStore());
+	}
+
 	@Override
 	public synchronized void initializeRootCA(KeyStore keystore) throws KeyStoreException,
 			UnrecoverableKeyException, NoSuchAlgorithmException {
-		this.cache.clear();
 		this.delegate.initializeRootCA(keystore);
+		this.rootCaCert = keystore != null ? keystore.getCertificate(ZAPROXY_JKS_ALIAS) : null;
+		this.state = new State(createStore());
+	}
+
+	private CertificateStore createStore() {
+		if (storeDirectory == null || rootCaCert == null) {
+			return null;
+		}
+		try {
+			return new CertificateStore(storeDirectory, rootCaCert);
+		} catch (IOException | GeneralSecurityException e) {
+			LOGGER.warn("Failed to create the store of certificates, the certificates will not be persisted: "
+					+ e.getMessage());
+			return null;
+		}
 	}
 
+	/**
+	 * The certificates created with a root CA certificate.
+	 */
+	private static class State {
+
+		private final Map<String, KeyStore> cache = new ConcurrentHashMap<>();
+		private final Map<String, FutureTask<KeyStore>> pending = new ConcurrentHashMap<>();
+		private final CertificateStore store;
+
+		State(CertificateStore store) {
+			this.store = store;
+		}
+	}
 }
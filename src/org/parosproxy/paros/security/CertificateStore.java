@@ -0,0 +1,189 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.security;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.stream.Stream;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A store of the certificates generated for the hosts, kept in the file system.
+ * <p>
+ * The certificates are kept in a directory named after the fingerprint of the root CA certificate that issued them, the
+ * directories of other root CA certificates are kept until explicitly {@link #deleteOtherDirectories() deleted}.
+ * <p>
+ * The errors are logged and otherwise ignored, the certificates are generated again if not available.
+ */
+class CertificateStore {
+
+    private static final Logger LOGGER = Logger.getLogger(CertificateStore.class);
+
+    private static final String KEY_STORE_TYPE = "JKS";
+    private static final String FILE_EXTENSION = ".jks";
+    private static final String DIRECTORY_NAME_PATTERN = "[0-9a-f]{64}";
+
+    private final Path directory;
+
+    /**
+     * Constructs a {@code CertificateStore} for the certificates issued by the given root CA certificate.
+     *
+     * @param baseDirectory the directory where to keep the certificates of all root CA certificates.
+     * @param rootCaCert the root CA certificate.
+     * @throws IOException if an error occurred while creating the directory.
+     * @throws GeneralSecurityException if an error occurred while computing the fingerprint of the root CA certificate.
+     */
+    CertificateStore(Path baseDirectory, Certificate rootCaCert) throws IOException, GeneralSecurityException {
+        directory = baseDirectory.resolve(fingerprint(rootCaCert));
+        createDirectories(directory);
+    }
+
+    private static String fingerprint(Certificate cert) throws NoSuchAlgorithmException, CertificateEncodingException {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(cert.getEncoded());
+        StringBuilder strBuilder = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            strBuilder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return strBuilder.toString();
+    }
+
+    /**
+     * Deletes the directories with the certificates issued by other root CA certificates.
+     * <p>
+     * Other directories, not named after a fingerprint, are not deleted.
+     */
+    void deleteOtherDirectories() {
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(directory.getParent(), Files::isDirectory)) {
+            for (Path dir : dirs) {
+                if (!directory.equals(dir) && dir.getFileName().toString().matches(DIRECTORY_NAME_PATTERN)) {
+                    delete(dir);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to delete the certificates of previous root CA certificates: " + e.getMessage());
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static void createDirectories(Path dir) throws IOException {
+        if (Files.isDirectory(dir)) {
+            return;
+        }
+        Files.createDirectories(dir);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwx------"));
+        }
+    }
+
+    /**
+     * Gets the certificate of the given host, if stored and still valid.
+     *
+     * @param hostname the name of the host.
+     * @return the key store with the certificate, or {@code null} if not available.
+     */
+    KeyStore get(String hostname) {
+        Path file = getFile(hostname);
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        try (InputStream is = Files.newInputStream(file)) {
+            KeyStore ks = KeyStore.getInstance(KEY_STORE_TYPE);
+            ks.load(is, SslCertificateService.PASSPHRASE);
+            Certificate cert = ks.getCertificate(SslCertificateService.ZAPROXY_JKS_ALIAS);
+            if (!(cert instanceof X509Certificate)) {
+                return null;
+            }
+            ((X509Certificate) cert).checkValidity();
+            return ks;
+        } catch (IOException | GeneralSecurityException e) {
+            LOGGER.debug("Ignoring stored certificate of " + hostname + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stores the certificate of the given host.
+     *
+     * @param hostname the name of the host.
+     * @param keyStore the key store with the certificate.
+     */
+    void put(String hostname, KeyStore keyStore) {
+        Path file = getFile(hostname);
+        try {
+            Path tempFile = Files.createTempFile(directory, "cert", ".tmp");
+            try {
+                try (OutputStream os = Files.newOutputStream(tempFile)) {
+                    keyStore.store(os, SslCertificateService.PASSPHRASE);
+                }
+                move(tempFile, file);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            LOGGER.warn("Failed to store the certificate of " + hostname + ": " + e.getMessage());
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private Path getFile(String hostname) {
+        try {
+            String name = URLEncoder.encode(hostname, StandardCharsets.UTF_8.name()).replace("*", "%2A");
+            return directory.resolve(name + FILE_EXTENSION);
+        } catch (UnsupportedEncodingException e) {
+            // Shouldn't happen, UTF-8 is always supported.
+            throw new RuntimeException(e);
+        }
+    }
+}
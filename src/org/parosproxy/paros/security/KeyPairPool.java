@@ -0,0 +1,147 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.security;
+
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.zaproxy.zap.utils.Stats;
+
+/**
+ * A pool of key pairs, generated in the background to not delay the creation of the certificates.
+ * <p>
+ * A low priority thread keeps the pool full, the key pairs are generated in the calling thread if none is available.
+ * <p>
+ * The number of pooled key pairs and the time to obtain them are recorded in the {@link Stats}.
+ */
+class KeyPairPool {
+
+    static final String STATS_POOLED = "stats.dynssl.keypairs.pooled";
+    static final String STATS_TAKEN = "stats.dynssl.keypairs.taken";
+    static final String STATS_GENERATED_INLINE = "stats.dynssl.keypairs.inline";
+    static final String STATS_WAIT_TIME = "stats.dynssl.keypairs.waittime";
+
+    private static final Logger LOGGER = Logger.getLogger(KeyPairPool.class);
+
+    private final Generator generator;
+    private final BlockingQueue<KeyPair> keyPairs;
+
+    /**
+     * The free slots of the pool, acquired by the refill thread before generating a key pair.
+     */
+    private final Semaphore freeSlots;
+
+    private final Thread refillThread;
+
+    /**
+     * Constructs a {@code KeyPairPool} with the given generator and size, starting to fill the pool.
+     *
+     * @param generator the generator of the key pairs.
+     * @param size the number of key pairs to keep in the pool, must be greater than zero.
+     */
+    KeyPairPool(Generator generator, int size) {
+        this.generator = generator;
+        this.keyPairs = new LinkedBlockingQueue<>(size);
+        this.freeSlots = new Semaphore(size);
+
+        this.refillThread = new Thread(this::refill, "ZAP-KeyPairPool");
+        this.refillThread.setDaemon(true);
+        this.refillThread.setPriority(Thread.MIN_PRIORITY);
+        this.refillThread.start();
+    }
+
+    /**
+     * Takes a key pair from the pool, or generates one if none is available.
+     *
+     * @return the key pair, never {@code null}.
+     * @throws NoSuchAlgorithmException if an error occurred while generating the key pair.
+     */
+    KeyPair take() throws NoSuchAlgorithmException {
+        long start = System.nanoTime();
+        KeyPair keyPair = keyPairs.poll();
+        if (keyPair != null) {
+            Stats.decCounter(STATS_POOLED);
+            freeSlots.release();
+        } else {
+            keyPair = generator.generate();
+            Stats.incCounter(STATS_GENERATED_INLINE);
+        }
+        Stats.incCounter(STATS_TAKEN);
+        Stats.incCounter(STATS_WAIT_TIME, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return keyPair;
+    }
+
+    /**
+     * Gets the number of key pairs in the pool.
+     *
+     * @return the number of key pairs.
+     */
+    int size() {
+        return keyPairs.size();
+    }
+
+    /**
+     * Stops refilling the pool and discards the pooled key pairs.
+     */
+    void shutdown() {
+        refillThread.interrupt();
+        int discarded = keyPairs.size();
+        keyPairs.clear();
+        Stats.decCounter(STATS_POOLED, discarded);
+    }
+
+    private void refill() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                freeSlots.acquire();
+                KeyPair keyPair = generator.generate();
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                keyPairs.put(keyPair);
+                Stats.incCounter(STATS_POOLED);
+            }
+        } catch (InterruptedException e) {
+            // Shutdown.
+        } catch (NoSuchAlgorithmException e) {
+            LOGGER.error("Failed to generate key pairs, the pool will not be refilled: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * A generator of key pairs.
+     */
+    @FunctionalInterface
+    interface Generator {
+
+        /**
+         * Generates a new key pair.
+         *
+         * @return the key pair.
+         * @throws NoSuchAlgorithmException if an error occurred while generating the key pair.
+         */
+        KeyPair generate() throws NoSuchAlgorithmException;
+    }
+}
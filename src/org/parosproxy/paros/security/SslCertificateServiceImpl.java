@@ -21,6 +21,7 @@ package org.parosproxy.paros.security;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
@@ -38,6 +39,7 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.security.interfaces.RSAPrivateKey;
+import java.security.spec.ECGenParameterSpec;
 import java.time.Duration;
 import java.util.Date;
 import java.util.Random;
@@ -82,7 +84,22 @@ public final class SslCertificateServiceImpl implements SslCertificateService {
 
 	private final AtomicLong serial;
 
-	private static final SslCertificateService singleton = new SslCertificateServiceImpl();
+	/**
+	 * The pool of key pairs of the certificates, {@code null} if the key pairs are generated when needed.
+	 */
+	private KeyPairPool keyPairPool;
+
+	/**
+	 * The number of key pairs kept in the pool.
+	 */
+	private int keyPairPoolSize;
+
+	/**
+	 * Flag that indicates whether the certificates use EC (P-256) keys, instead of RSA keys.
+	 */
+	private volatile boolean ecKeys;
+
+	private static final SslCertificateServiceImpl singleton = new SslCertificateServiceImpl();
 
 	private SslCertificateServiceImpl() {
 		Security.addProvider(new BouncyCastleProvider());
@@ -117,7 +134,17 @@ public final class SslCertificateServiceImpl implements SslCertificateService {
     		throw new IllegalArgumentException("Error, 'hostname' is not allowed to be null!");
     	}
 
-    	if (this.caCert == null || this.caPrivKey == null || this.caPubKey == null) {
+    	// Read the root CA consistently, the certificates might be created concurrently with its initialisation.
+    	final X509Certificate caCert;
+    	final PublicKey caPubKey;
+    	final PrivateKey caPrivKey;
+    	synchronized (this) {
+    		caCert = this.caCert;
+    		caPubKey = this.caPubKey;
+    		caPrivKey = this.caPrivKey;
+    	}
+
+    	if (caCert == null || caPrivKey == null || caPubKey == null) {
     		throw new MissingRootCertificateException(this.getClass() + " wasn't initialized! Got to options 'Dynamic SSL Certs' and create one.");
     	}
 
@@ -158,27 +185,115 @@ public final class SslCertificateServiceImpl implements SslCertificateService {
         final KeyStore ks = KeyStore.getInstance("JKS");
         ks.load(null, null);
         final Certificate[] chain = new Certificate[2];
-        chain[1] = this.caCert;
+        chain[1] = caCert;
         chain[0] = cert;
         ks.setKeyEntry(ZAPROXY_JKS_ALIAS, privKey, PASSPHRASE, chain);
         return ks;
     }
 
 	/**
-	 * Generates a 2048 bit RSA key pair using SHA1PRNG.
+	 * Gets a key pair for a certificate, from the pool if in use.
 	 *
 	 * @return the key pair
 	 * @throws NoSuchAlgorithmException if no provider supports the used algorithms.
 	 */
 	private KeyPair createKeyPair() throws NoSuchAlgorithmException {
+		KeyPairPool pool;
+		synchronized (this) {
+			pool = keyPairPool;
+		}
+		if (pool != null) {
+			return pool.take();
+		}
+		return ecKeys ? createEcKeyPair() : createRsaKeyPair();
+	}
+
+	/**
+	 * Generates a 2048 bit RSA key pair using SHA1PRNG.
+	 * <p>
+	 * The random number generator is seeded by itself, the key pairs might be generated concurrently.
+	 *
+	 * @return the key pair
+	 * @throws NoSuchAlgorithmException if no provider supports the used algorithms.
+	 */
+	private static KeyPair createRsaKeyPair() throws NoSuchAlgorithmException {
 		final KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
 		final SecureRandom random  = SecureRandom.getInstance("SHA1PRNG");
-		random.setSeed(Long.toString(System.currentTimeMillis()).getBytes());
 		keyGen.initialize(2048, random);
 		final KeyPair keypair = keyGen.generateKeyPair();
 		return keypair;
 	}
 
+	/**
+	 * Generates an EC key pair, with the curve P-256 (secp256r1).
+	 *
+	 * @return the key pair
+	 * @throws NoSuchAlgorithmException if no provider supports the used algorithms.
+	 */
+	private static KeyPair createEcKeyPair() throws NoSuchAlgorithmException {
+		final KeyPairGenerator keyGen = KeyPairGenerator.getInstance("EC");
+		try {
+			keyGen.initialize(new ECGenParameterSpec("secp256r1"), new SecureRandom());
+		} catch (InvalidAlgorithmParameterException e) {
+			throw new NoSuchAlgorithmException("Curve secp256r1 not supported.", e);
+		}
+		return keyGen.generateKeyPair();
+	}
+
+	/**
+	 * Sets the number of key pairs generated in the background, to be ready for new certificates.
+	 * <p>
+	 * The key pairs are generated when needed if zero or negative.
+	 *
+	 * @param size the number of key pairs to keep ready.
+	 * @since TODO add version
+	 */
+	public static void setKeyPairPoolSize(int size) {
+		synchronized (singleton) {
+			if (singleton.keyPairPoolSize == size) {
+				return;
+			}
+			singleton.keyPairPoolSize = size;
+			singleton.resetKeyPairPool();
+		}
+	}
+
+	/**
+	 * Sets whether or not the certificates use EC keys, with the curve P-256, instead of 2048 bit RSA keys.
+	 * <p>
+	 * EC keys are much faster to generate and use, the certificates are still signed by the root CA certificate. Applies to
+	 * the certificates created afterwards.
+	 *
+	 * @param ecKeys {@code true} to use EC keys, {@code false} to use RSA keys.
+	 * @since TODO add version
+	 */
+	public static void setUseEcKeys(boolean ecKeys) {
+		synchronized (singleton) {
+			if (singleton.ecKeys == ecKeys) {
+				return;
+			}
+			singleton.ecKeys = ecKeys;
+			singleton.resetKeyPairPool();
+		}
+	}
+
+	/**
+	 * Replaces the pool of key pairs, to use the current size and type of keys.
+	 * <p>
+	 * <strong>Note:</strong> Should be called while synchronised on this instance.
+	 */
+	private void resetKeyPairPool() {
+		if (keyPairPool != null) {
+			keyPairPool.shutdown();
+			keyPairPool = null;
+		}
+		if (keyPairPoolSize > 0) {
+			keyPairPool = new KeyPairPool(
+					ecKeys ? SslCertificateServiceImpl::createEcKeyPair : SslCertificateServiceImpl::createRsaKeyPair,
+					keyPairPoolSize);
+		}
+	}
+
 	/**
 	 * @return return the current {@link SslCertificateService}
 	 */
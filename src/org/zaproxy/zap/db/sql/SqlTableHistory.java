@@ -208,7 +208,72 @@ public class SqlTableHistory extends SqlAbstractTable implements TableHistory {
 	 */
 	@Override
 	public RecordHistory write(long sessionId, int histType, HttpMessage msg) throws HttpMalformedHeaderException, DatabaseException {
-	    
+	    validateBodySizes(msg);
+
+	    SqlPreparedStatementWrapper psInsert = null;
+	    try {
+		    psInsert = DbSQL.getSingleton().getPreparedStatement( "history.ps.insertstd");
+		    return read(insert(psInsert, sessionId, histType, msg));
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		} finally {
+			DbSQL.getSingleton().releasePreparedStatement(psInsert);
+		}
+	}
+
+	@Override
+	public int[] write(long sessionId, int[] histTypes, HttpMessage[] msgs) throws HttpMalformedHeaderException, DatabaseException {
+		if (histTypes.length != msgs.length) {
+			throw new IllegalArgumentException("Parameters histTypes and msgs must have the same length.");
+		}
+		if (msgs.length == 0) {
+			return new int[0];
+		}
+		for (HttpMessage msg : msgs) {
+			validateBodySizes(msg);
+		}
+
+		SqlPreparedStatementWrapper psInsert = null;
+		try {
+			psInsert = DbSQL.getSingleton().getPreparedStatement( "history.ps.insertstd");
+			// Not a JDBC batch, the generated IDs would not be obtained reliably in all databases,
+			// but still a single transaction.
+			Connection conn = psInsert.getPs().getConnection();
+			boolean autoCommit = conn.getAutoCommit();
+			conn.setAutoCommit(false);
+			try {
+				int[] historyIds = new int[msgs.length];
+				for (int i = 0; i < msgs.length; i++) {
+					historyIds[i] = insert(psInsert, sessionId, histTypes[i], msgs[i]);
+				}
+				conn.commit();
+				return historyIds;
+			} catch (SQLException e) {
+				conn.rollback();
+				throw e;
+			} finally {
+				conn.setAutoCommit(autoCommit);
+			}
+		} catch (SQLException e) {
+			throw new DatabaseException(e);
+		} finally {
+			DbSQL.getSingleton().releasePreparedStatement(psInsert);
+		}
+	}
+
+	private void validateBodySizes(HttpMessage msg) throws DatabaseException {
+		//ZAP: Allow the request and response body sizes to be user-specifiable as far as possible
+		int reqBodyLength = msg.getRequestHeader().isEmpty() ? 0 : msg.getRequestBody().length();
+		if (reqBodyLength > this.configuredrequestbodysize) {
+			throw new DatabaseException("The actual Request Body length "+ reqBodyLength + " is greater than the configured request body length "+ this.configuredrequestbodysize);
+		}
+		int resBodyLength = msg.getResponseHeader().isEmpty() ? 0 : msg.getResponseBody().length();
+		if (resBodyLength > this.configuredresponsebodysize) {
+			throw new DatabaseException("The actual Response Body length "+ resBodyLength + " is greater than the configured response body length "+ this.configuredresponsebodysize);
+		}
+	}
+
+	private int insert(SqlPreparedStatementWrapper psInsert, long sessionId, int histType, HttpMessage msg) throws SQLException {
 	    String reqHeader = "";
 	    byte[] reqBody = new byte[0];
 	    String resHeader = "";
@@ -231,73 +296,54 @@ public class SqlTableHistory extends SqlAbstractTable implements TableHistory {
             statusCode = msg.getResponseHeader().getStatusCode();
 	    }
 	    
-	    //return write(sessionId, histType, msg.getTimeSentMillis(), msg.getTimeElapsedMillis(), method, uri, statusCode, reqHeader, reqBody, resHeader, resBody, msg.getTag());
-	    return write(sessionId, histType, msg.getTimeSentMillis(), msg.getTimeElapsedMillis(), method, uri, statusCode, reqHeader, reqBody, resHeader, resBody, null, note, msg.isResponseFromTargetHost());
-	    
+	    return insert(psInsert, sessionId, histType, msg.getTimeSentMillis(), msg.getTimeElapsedMillis(), method, uri, statusCode, reqHeader, reqBody, resHeader, resBody, null, note, msg.isResponseFromTargetHost());
 	}
 	
-	private RecordHistory write(long sessionId, int histType, long timeSentMillis, int timeElapsedMillis,
+	private int insert(SqlPreparedStatementWrapper psInsert, long sessionId, int histType, long timeSentMillis, int timeElapsedMillis,
 	        String method, String uri, int statusCode,
-	        String reqHeader, byte[] reqBody, String resHeader, byte[] resBody, String tag, String note, boolean responseFromTargetHost) throws HttpMalformedHeaderException, DatabaseException {
-
-		//ZAP: Allow the request and response body sizes to be user-specifiable as far as possible
-		if (reqBody.length > this.configuredrequestbodysize) {
-			throw new DatabaseException("The actual Request Body length "+ reqBody.length + " is greater than the configured request body length "+ this.configuredrequestbodysize);
+	        String reqHeader, byte[] reqBody, String resHeader, byte[] resBody, String tag, String note, boolean responseFromTargetHost) throws SQLException {
+		psInsert.getPs().setLong(1, sessionId);
+		psInsert.getPs().setInt(2, histType);
+		psInsert.getPs().setLong(3, timeSentMillis);
+		psInsert.getPs().setInt(4, timeElapsedMillis);
+		psInsert.getPs().setString(5, method);
+		psInsert.getPs().setString(6, uri);        
+		psInsert.getPs().setString(7, reqHeader);
+		if (bodiesAsBytes) {
+		    psInsert.getPs().setBytes(8, reqBody);
+		} else {
+		    psInsert.getPs().setString(8, new String(reqBody, StandardCharsets.US_ASCII));
 		}
-		if (resBody.length > this.configuredresponsebodysize) {
-			throw new DatabaseException("The actual Response Body length "+ resBody.length + " is greater than the configured response body length "+ this.configuredresponsebodysize);
+		psInsert.getPs().setString(9, resHeader);
+		if (bodiesAsBytes) {
+		    psInsert.getPs().setBytes(10, resBody);
+		} else {
+		    psInsert.getPs().setString(10, new String(resBody, StandardCharsets.US_ASCII));
 		}
+		psInsert.getPs().setString(11, tag);
 
-		SqlPreparedStatementWrapper psInsert = null;
-	    try {
-		    psInsert = DbSQL.getSingleton().getPreparedStatement( "history.ps.insertstd");
-			psInsert.getPs().setLong(1, sessionId);
-			psInsert.getPs().setInt(2, histType);
-			psInsert.getPs().setLong(3, timeSentMillis);
-			psInsert.getPs().setInt(4, timeElapsedMillis);
-			psInsert.getPs().setString(5, method);
-			psInsert.getPs().setString(6, uri);        
-			psInsert.getPs().setString(7, reqHeader);
-			if (bodiesAsBytes) {
-			    psInsert.getPs().setBytes(8, reqBody);
-			} else {
-			    psInsert.getPs().setString(8, new String(reqBody, StandardCharsets.US_ASCII));
-			}
-			psInsert.getPs().setString(9, resHeader);
-			if (bodiesAsBytes) {
-			    psInsert.getPs().setBytes(10, resBody);
-			} else {
-			    psInsert.getPs().setString(10, new String(resBody, StandardCharsets.US_ASCII));
-			}
-			psInsert.getPs().setString(11, tag);
-
-			// ZAP: Added the statement.
-			int currentIdx = 12;
-			
-			if (isExistStatusCode) {
-			    psInsert.getPs().setInt(currentIdx, statusCode);
-			    // ZAP: Added the statement.
-			    ++currentIdx;
-			}
-			
-			// ZAP: Added the statement.
-			psInsert.getPs().setString(currentIdx, note);
-			++currentIdx;
-			
-			psInsert.getPs().setBoolean(currentIdx, responseFromTargetHost);
-			
-			psInsert.getPs().executeUpdate();
-					
-			try (ResultSet rs = psInsert.getLastInsertedId()) {
-				rs.next();
-				int id = rs.getInt(1);
-			    lastInsertedIndex = id;
-				return read(id);
-			}
-		} catch (SQLException e) {
-			throw new DatabaseException(e);
-		} finally {
-			DbSQL.getSingleton().releasePreparedStatement(psInsert);
+		// ZAP: Added the statement.
+		int currentIdx = 12;
+		
+		if (isExistStatusCode) {
+		    psInsert.getPs().setInt(currentIdx, statusCode);
+		    // ZAP: Added the statement.
+		    ++currentIdx;
+		}
+		
+		// ZAP: Added the statement.
+		psInsert.getPs().setString(currentIdx, note);
+		++currentIdx;
+		
+		psInsert.getPs().setBoolean(currentIdx, responseFromTargetHost);
+		
+		psInsert.getPs().executeUpdate();
+				
+		try (ResultSet rs = psInsert.getLastInsertedId()) {
+			rs.next();
+			int id = rs.getInt(1);
+		    lastInsertedIndex = id;
+			return id;
 		}
 	}
 	
@@ -81,6 +81,7 @@ import org.zaproxy.zap.model.SessionStructure;
 import org.zaproxy.zap.model.SessionUtils;
 import org.zaproxy.zap.model.StructuralNode;
 import org.zaproxy.zap.network.DomainMatcher;
+import org.zaproxy.zap.network.HostGovernor;
 import org.zaproxy.zap.network.HttpRedirectionValidator;
 import org.zaproxy.zap.network.HttpRequestConfig;
 import org.zaproxy.zap.utils.ApiUtils;
@@ -154,6 +155,7 @@ public class CoreAPI extends ApiImplementor implements SessionListener {
 	private static final String VIEW_OPTION_PROXY_EXCLUDED_DOMAINS = "optionProxyExcludedDomains";
 	private static final String VIEW_OPTION_PROXY_EXCLUDED_DOMAINS_ENABLED = "optionProxyExcludedDomainsEnabled";
 	private static final String VIEW_ZAP_HOME_PATH = "zapHomePath";
+	private static final String VIEW_HOST_GOVERNOR_LIMITS = "hostGovernorLimits";
 
 	private static final String VIEW_OPTION_MAXIMUM_ALERT_INSTANCES = "optionMaximumAlertInstances";
 	private static final String VIEW_OPTION_MERGE_RELATED_ALERTS = "optionMergeRelatedAlerts";
@@ -301,6 +303,7 @@ public class CoreAPI extends ApiImplementor implements SessionListener {
 		apiView.setDeprecated(true);
 		this.addApiView(apiView);
 		this.addApiView(new ApiView(VIEW_ZAP_HOME_PATH));
+		this.addApiView(new ApiView(VIEW_HOST_GOVERNOR_LIMITS));
 
 		this.addApiView(new ApiView(VIEW_OPTION_MAXIMUM_ALERT_INSTANCES));
 		this.addApiView(new ApiView(VIEW_OPTION_MERGE_RELATED_ALERTS));
@@ -1021,6 +1024,18 @@ public class CoreAPI extends ApiImplementor implements SessionListener {
 					true);
 		} else if (VIEW_ZAP_HOME_PATH.equals(name)) {
 			result = new ApiResponseElement(name, Constant.getZapHome());
+		} else if (VIEW_HOST_GOVERNOR_LIMITS.equals(name)) {
+			ApiResponseList resultList = new ApiResponseList(name);
+			for (HostGovernor.Limits limits : HostGovernor.getDefault().getLimits()) {
+				Map<String, Object> limitsData = new HashMap<>();
+				limitsData.put("host", limits.getHost());
+				limitsData.put("concurrentRequests", limits.getConcurrentRequests());
+				limitsData.put("inFlightRequests", limits.getInFlightRequests());
+				limitsData.put("requestsPerSecond", limits.getRequestsPerSecond());
+				limitsData.put("latency", limits.getLatency());
+				resultList.addItem(new ApiResponseSet<Object>("limits", limitsData));
+			}
+			result = resultList;
 		} else if (VIEW_OPTION_MAXIMUM_ALERT_INSTANCES.equals(name)) {
 			result = new ApiResponseElement(
 					name,
@@ -133,6 +133,21 @@ public class ActiveScan extends org.parosproxy.paros.core.scanner.Scanner implem
 		return total;
 	}
 	
+	/**
+	 * Gets the count of requests not sent, answered with the response of identical requests.
+	 *
+	 * @return the count of requests saved.
+	 * @since TODO add version
+	 * @see HostProcess#getRequestsSavedCount()
+	 */
+	public int getTotalRequestsSaved() {
+		int total = 0;
+		for (HostProcess process : this.getHostProcesses()) {
+			total += process.getRequestsSavedCount();
+		}
+		return total;
+	}
+
 	public ResponseCountSnapshot getRequestHistory() {
 		if (this.rcHistory.size() > 0) {
 			try {
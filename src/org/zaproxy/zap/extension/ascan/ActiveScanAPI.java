@@ -840,6 +840,7 @@ public class ActiveScanAPI extends ApiImplementor {
 				map.put("progress", Integer.toString(scan.getProgress()));
 				map.put("state", scan.getState().name());
 				map.put("reqCount", Integer.toString(scan.getTotalRequests()));
+				map.put("reqSavedCount", Integer.toString(scan.getTotalRequestsSaved()));
 				map.put("alertCount", Integer.toString(scan.getAlertsIds().size()));
 				resultList.addItem(new ApiResponseSet<String>("scan", map));
 			}
@@ -54,6 +54,16 @@ public class BreakpointMessageHandler2 {
     public void setEnabledBreakpoints(List<BreakpointMessageInterface> breakpoints) {
         this.enabledBreakpoints = breakpoints;
     }
+
+    /**
+     * Tells whether or not there are enabled breakpoints.
+     *
+     * @return {@code true} if there are enabled breakpoints, {@code false} otherwise.
+     * @since TODO add version
+     */
+    public boolean hasEnabledBreakpoints() {
+        return enabledBreakpoints != null && !enabledBreakpoints.isEmpty();
+    }
     
     /**
      * Do not call if in {@link Mode#safe}.
@@ -604,6 +604,27 @@ public class ExtensionBreak extends ExtensionAdaptor implements SessionChangedLi
 	    return breakpointMessageHandler.handleMessageReceivedFromServer(aMessage, mode.equals(Mode.protect));
 	}
 
+	/**
+	 * Tells whether or not the response of the given message might break, that is, the user might need to see (and change)
+	 * the full response.
+	 * <p>
+	 * As the enabled breakpoints might match the response body, not yet available, it's assumed that the response might break
+	 * if there are enabled breakpoints.
+	 *
+	 * @param aMessage the message, with just the response header.
+	 * @return {@code true} if the response might break, {@code false} otherwise.
+	 * @since TODO add version
+	 */
+	public boolean isBreakpointOnResponse(Message aMessage) {
+		if (mode.equals(Mode.safe)) {
+			return false;
+		}
+		if (breakpointMessageHandler.hasEnabledBreakpoints()) {
+			return true;
+		}
+		return breakpointMessageHandler.isBreakpoint(aMessage, false, mode.equals(Mode.protect));
+	}
+
 	/**
 	 * Exposes list of enabled breakpoints.
 	 * 
@@ -89,6 +89,22 @@ public class ProxyListenerBreak implements ProxyListener {
 		
 		return false;
 	}
+
+	@Override
+	public boolean isFullResponseBodyRequired(HttpMessage msg) {
+		if (isSkipImage(msg.getRequestHeader()) || isSkipImage(msg.getResponseHeader())) {
+			return false;
+		}
+
+		if (extension.isInScopeOnly()) {
+			Session session = Model.getSingleton().getSession();
+			if (!session.isInScope(msg.getRequestHeader().getURI().toString())) {
+				return false;
+			}
+		}
+
+		return extension.isBreakpointOnResponse(msg);
+	}
     
     private boolean isSkipImage(HttpHeader header) {
         if (header.isImage() && !model.getOptionsParam().getViewParam().isProcessImages()) {
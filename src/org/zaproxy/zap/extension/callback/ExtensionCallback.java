@@ -242,5 +242,10 @@ public class ExtensionCallback extends ExtensionAdaptor implements
             return true;
         }
 
+        @Override
+        public boolean isFullResponseBodyRequired(HttpMessage msg) {
+            return false;
+        }
+
     }
 }
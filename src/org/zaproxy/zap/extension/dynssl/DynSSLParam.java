@@ -19,10 +19,14 @@
  */
 package org.zaproxy.zap.extension.dynssl;
 
+import java.nio.file.Paths;
 import java.security.KeyStore;
 
 import org.apache.log4j.Logger;
+import org.parosproxy.paros.Constant;
 import org.parosproxy.paros.common.AbstractParam;
+import org.parosproxy.paros.security.CachedSslCertifificateServiceImpl;
+import org.parosproxy.paros.security.SslCertificateServiceImpl;
 
 /**
  * @author MaWoKi
@@ -31,8 +35,48 @@ public class DynSSLParam extends AbstractParam {
 
 	/*default*/ static final String PARAM_ROOT_CA = "dynssl.param.rootca";
 
+	/**
+	 * The configuration key to save/load the option {@link #keyPairPoolSize}.
+	 */
+	private static final String PARAM_KEY_PAIR_POOL_SIZE = "dynssl.param.keyPairPoolSize";
+
+	/**
+	 * The configuration key to save/load the option {@link #ecKeys}.
+	 */
+	private static final String PARAM_EC_KEYS = "dynssl.param.ecKeys";
+
+	/**
+	 * The configuration key to save/load the option {@link #persistCerts}.
+	 */
+	private static final String PARAM_PERSIST_CERTS = "dynssl.param.persistCerts";
+
+	/**
+	 * The name of the directory, in ZAP home, where the certificates generated for the hosts are persisted.
+	 */
+	private static final String CERTS_DIR = "certs";
+
+	/**
+	 * The default number of key pairs generated in the background.
+	 */
+	public static final int DEFAULT_KEY_PAIR_POOL_SIZE = 4;
+
 	private KeyStore rootca = null;
 
+	/**
+	 * The number of key pairs generated in the background, for the certificates of the hosts.
+	 */
+	private int keyPairPoolSize = DEFAULT_KEY_PAIR_POOL_SIZE;
+
+	/**
+	 * Flag that indicates whether the certificates of the hosts use EC keys, instead of RSA keys.
+	 */
+	private boolean ecKeys;
+
+	/**
+	 * Flag that indicates whether the certificates of the hosts are persisted, to be reused after restarts.
+	 */
+	private boolean persistCerts;
+
 	private static final Logger logger = Logger.getLogger(DynSSLParam.class);
 
 	@Override
@@ -41,6 +85,19 @@ public class DynSSLParam extends AbstractParam {
 		if (rootcastr != null) {
 			rootca = createKeyStore(rootcastr);
 		}
+
+		ecKeys = getBoolean(PARAM_EC_KEYS, false);
+		SslCertificateServiceImpl.setUseEcKeys(ecKeys);
+
+		keyPairPoolSize = getInt(PARAM_KEY_PAIR_POOL_SIZE, DEFAULT_KEY_PAIR_POOL_SIZE);
+		SslCertificateServiceImpl.setKeyPairPoolSize(keyPairPoolSize);
+
+		persistCerts = getBoolean(PARAM_PERSIST_CERTS, false);
+		applyPersistCerts(persistCerts);
+	}
+
+	private static void applyPersistCerts(boolean persist) {
+		CachedSslCertifificateServiceImpl.setStoreDirectory(persist ? Paths.get(Constant.getZapHome(), CERTS_DIR) : null);
 	}
 
 	private static KeyStore createKeyStore(String rootcastr) {
@@ -77,5 +134,84 @@ public class DynSSLParam extends AbstractParam {
 		}
 	}
 
+	/**
+	 * Gets the number of key pairs generated in the background, to be ready for the certificates of new hosts.
+	 *
+	 * @return the number of key pairs, zero or negative if generated when needed.
+	 * @since TODO add version
+	 * @see #setKeyPairPoolSize(int)
+	 */
+	public int getKeyPairPoolSize() {
+		return keyPairPoolSize;
+	}
+
+	/**
+	 * Sets the number of key pairs generated in the background, to be ready for the certificates of new hosts.
+	 *
+	 * @param size the number of key pairs, zero or negative to generate them when needed.
+	 * @since TODO add version
+	 * @see #getKeyPairPoolSize()
+	 */
+	public void setKeyPairPoolSize(int size) {
+		keyPairPoolSize = size;
+		SslCertificateServiceImpl.setKeyPairPoolSize(size);
+		getConfig().setProperty(PARAM_KEY_PAIR_POOL_SIZE, size);
+	}
+
+	/**
+	 * Tells whether or not the certificates of the hosts use EC (P-256) keys, instead of RSA keys.
+	 *
+	 * @return {@code true} if EC keys are used, {@code false} otherwise.
+	 * @since TODO add version
+	 * @see #setEcKeys(boolean)
+	 */
+	public boolean isEcKeys() {
+		return ecKeys;
+	}
+
+	/**
+	 * Sets whether or not the certificates of the hosts use EC (P-256) keys, instead of RSA keys.
+	 * <p>
+	 * The certificates are still signed by the root CA certificate.
+	 *
+	 * @param ecKeys {@code true} to use EC keys, {@code false} to use RSA keys.
+	 * @since TODO add version
+	 * @see #isEcKeys()
+	 */
+	public void setEcKeys(boolean ecKeys) {
+		this.ecKeys = ecKeys;
+		SslCertificateServiceImpl.setUseEcKeys(ecKeys);
+		getConfig().setProperty(PARAM_EC_KEYS, ecKeys);
+	}
+
+	/**
+	 * Tells whether or not the certificates of the hosts are persisted, to be reused after restarts.
+	 * <p>
+	 * Default value: {@code false}.
+	 *
+	 * @return {@code true} if the certificates are persisted, {@code false} otherwise.
+	 * @since TODO add version
+	 * @see #setPersistCerts(boolean)
+	 */
+	public boolean isPersistCerts() {
+		return persistCerts;
+	}
+
+	/**
+	 * Sets whether or not the certificates of the hosts are persisted, to be reused after restarts.
+	 * <p>
+	 * The certificates, and their private keys, are kept in the directory {@code certs} of ZAP home, protected with a
+	 * well-known passphrase.
+	 *
+	 * @param persistCerts {@code true} to persist the certificates, {@code false} otherwise.
+	 * @since TODO add version
+	 * @see #isPersistCerts()
+	 */
+	public void setPersistCerts(boolean persistCerts) {
+		this.persistCerts = persistCerts;
+		applyPersistCerts(persistCerts);
+		getConfig().setProperty(PARAM_PERSIST_CERTS, persistCerts);
+	}
+
 }
 
@@ -55,6 +55,7 @@ import org.bouncycastle.openssl.jcajce.JcaMiscPEMGenerator;
 import org.bouncycastle.util.io.pem.PemWriter;
 import org.parosproxy.paros.Constant;
 import org.parosproxy.paros.model.OptionsParam;
+import org.parosproxy.paros.security.CachedSslCertifificateServiceImpl;
 import org.parosproxy.paros.security.SslCertificateService;
 import org.parosproxy.paros.view.AbstractParamPanel;
 import org.zaproxy.zap.utils.FontUtils;
@@ -77,6 +78,13 @@ public class DynamicSSLPanel extends AbstractParamPanel {
 	private JButton bt_save;
 
 	private KeyStore rootca;
+
+	/**
+	 * Flag that indicates whether a new root CA certificate was generated, to delete the certificates persisted for the
+	 * previous one once saved.
+	 */
+	private boolean rootCaGenerated;
+
 	private ExtensionDynSSL extension;
 
 	private static final Logger logger = Logger.getLogger(DynamicSSLPanel.class);
@@ -218,6 +226,10 @@ public class DynamicSSLPanel extends AbstractParamPanel {
 		final DynSSLParam param = options.getParamSet(DynSSLParam.class);
 		param.setRootca(rootca);
 		extension.setRootCa(rootca);
+		if (rootCaGenerated) {
+			CachedSslCertifificateServiceImpl.deleteStoredCertificatesOfOtherRootCas();
+			rootCaGenerated = false;
+		}
 	}
 	
 	@Override
@@ -227,6 +239,7 @@ public class DynamicSSLPanel extends AbstractParamPanel {
 
 	private void setRootca(KeyStore rootca) {
 		this.rootca = rootca;
+		this.rootCaGenerated = false;
 		final StringWriter sw = new StringWriter();
 		if (rootca != null) {
 			try {
@@ -453,6 +466,7 @@ public class DynamicSSLPanel extends AbstractParamPanel {
 		try {
 			final KeyStore newrootca = SslCertificateUtils.createRootCA();
 			setRootca(newrootca);
+			rootCaGenerated = true;
 		} catch (final Exception e) {
 			logger.error("Error while generating Root CA certificate", e);
 		}
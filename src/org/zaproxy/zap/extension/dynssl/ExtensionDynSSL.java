@@ -33,6 +33,7 @@ import org.apache.log4j.Logger;
 import org.parosproxy.paros.Constant;
 import org.parosproxy.paros.extension.ExtensionAdaptor;
 import org.parosproxy.paros.extension.ExtensionHook;
+import org.parosproxy.paros.network.SSLConnector;
 import org.parosproxy.paros.security.CachedSslCertifificateServiceImpl;
 import org.parosproxy.paros.security.SslCertificateService;
 import org.parosproxy.paros.view.View;
@@ -45,7 +46,7 @@ import org.parosproxy.paros.view.View;
 public class ExtensionDynSSL extends ExtensionAdaptor {
 
 	public static final String EXTENSION_ID = "ExtensionDynSSL";
-	
+
 	private DynSSLParam params;
 	private DynamicSSLPanel optionsPanel;
 
@@ -98,6 +99,7 @@ public class ExtensionDynSSL extends ExtensionAdaptor {
 		KeyStore newrootca = SslCertificateUtils.createRootCA();
 		setRootCa(newrootca);
 		getParams().setRootca(newrootca);
+		CachedSslCertifificateServiceImpl.deleteStoredCertificatesOfOtherRootCas();
 		logger.info("New root CA certificate created");
 	}
 
@@ -136,6 +138,7 @@ public class ExtensionDynSSL extends ExtensionAdaptor {
 
 	public void setRootCa(KeyStore rootca) throws UnrecoverableKeyException, KeyStoreException, NoSuchAlgorithmException {
 		CachedSslCertifificateServiceImpl.getService().initializeRootCA(rootca);
+		SSLConnector.clearTunnelSslSocketFactories();
 	}
 	
 	public Certificate getRootCA() throws KeyStoreException {
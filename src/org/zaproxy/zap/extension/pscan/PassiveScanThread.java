@@ -313,6 +313,12 @@ public class PassiveScanThread extends Thread implements ProxyListener, SessionC
 		return true;
 	}
 
+	@Override
+	public boolean isFullResponseBodyRequired(HttpMessage msg) {
+		// Scans whatever body is captured.
+		return false;
+	}
+
 	@Override
 	public void sessionChanged(Session session) {
 		// Reset the currentId
@@ -71,5 +71,15 @@ public class ProxyListenerScript implements ProxyListener {
 	public boolean onHttpResponseReceive(HttpMessage msg) {
 		return invokeProxyScripts(msg, false);
 	}
+
+	@Override
+	public boolean isFullResponseBodyRequired(HttpMessage msg) {
+		for (ScriptWrapper script : extension.getScripts(ExtensionScript.TYPE_PROXY)) {
+			if (script.isEnabled()) {
+				return true;
+			}
+		}
+		return false;
+	}
     
 }
@@ -18,6 +18,7 @@
  */
 package org.zaproxy.zap.extension.stats;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
@@ -39,6 +40,8 @@ import org.zaproxy.zap.extension.api.ApiResponseList;
 import org.zaproxy.zap.extension.api.ApiResponseSet;
 import org.zaproxy.zap.extension.api.ApiView;
 import org.zaproxy.zap.model.SessionStructure;
+import org.zaproxy.zap.network.HttpSenderMetrics;
+import org.zaproxy.zap.network.LatencyHistogram;
 import org.zaproxy.zap.utils.Stats;
 import org.zaproxy.zap.utils.XMLStringUtil;
 
@@ -51,6 +54,8 @@ public class StatsAPI extends ApiImplementor {
 	private static final String VIEW_STATS = "stats";
 	private static final String VIEW_SITE_STATS = "siteStats";
 	private static final String VIEW_ALL_SITES_STATS = "allSitesStats";
+	private static final String VIEW_NETWORK_LATENCIES = "networkLatencies";
+	private static final String VIEW_NETWORK_CONNECTIONS = "networkConnections";
 
 	private static final String PARAM_KEY_PREFIX = "keyPrefix";
 	private static final String PARAM_SITE = "site";
@@ -64,6 +69,8 @@ public class StatsAPI extends ApiImplementor {
 		this.addApiView(new ApiView(VIEW_STATS, null, new String[] { PARAM_KEY_PREFIX }));
 		this.addApiView(new ApiView(VIEW_ALL_SITES_STATS, null, new String[] {PARAM_KEY_PREFIX }));
 		this.addApiView(new ApiView(VIEW_SITE_STATS, new String[] {PARAM_SITE}, new String[] {PARAM_KEY_PREFIX }));
+		this.addApiView(new ApiView(VIEW_NETWORK_LATENCIES));
+		this.addApiView(new ApiView(VIEW_NETWORK_CONNECTIONS));
 	}
 
 	@Override
@@ -75,7 +82,11 @@ public class StatsAPI extends ApiImplementor {
 	public ApiResponse handleApiAction(String name, JSONObject params)
 			throws ApiException {
 		if (ACTION_CLEAR_STATS.equals(name)) {
-			Stats.clear(this.getParam(params, PARAM_KEY_PREFIX, ""));
+			String keyPrefix = this.getParam(params, PARAM_KEY_PREFIX, "");
+			Stats.clear(keyPrefix);
+			if (keyPrefix.isEmpty()) {
+				HttpSenderMetrics.getDefault().clear();
+			}
 			return ApiResponseElement.OK;
 			
 		} else {
@@ -86,6 +97,34 @@ public class StatsAPI extends ApiImplementor {
 	@Override
 	public ApiResponse handleApiView(String name, JSONObject params)
 			throws ApiException {
+		if (VIEW_NETWORK_LATENCIES.equals(name)) {
+			ApiResponseList resultList = new ApiResponseList(name);
+			for (HttpSenderMetrics.HostMetrics metrics : HttpSenderMetrics.getDefault().getHostMetrics()) {
+				String host = metrics.getHost();
+				addLatencies(resultList, host, null, "connect", metrics.getConnect());
+				addLatencies(resultList, host, null, "tlsHandshake", metrics.getTlsHandshake());
+				for (Entry<Integer, LatencyHistogram> entry : metrics.getTimesToFirstByte().entrySet()) {
+					addLatencies(resultList, host, entry.getKey(), "timeToFirstByte", entry.getValue());
+				}
+				for (Entry<Integer, LatencyHistogram> entry : metrics.getTotals().entrySet()) {
+					addLatencies(resultList, host, entry.getKey(), "total", entry.getValue());
+				}
+			}
+			return resultList;
+		}
+		if (VIEW_NETWORK_CONNECTIONS.equals(name)) {
+			ApiResponseList resultList = new ApiResponseList(name);
+			for (HttpSenderMetrics.HostMetrics metrics : HttpSenderMetrics.getDefault().getHostMetrics()) {
+				Map<String, Object> data = new HashMap<>();
+				data.put("host", metrics.getHost());
+				data.put("requests", metrics.getRequests());
+				data.put("connectionsOpened", metrics.getConnectionsOpened());
+				data.put("connectionReuseRatio", metrics.getConnectionReuseRatio());
+				resultList.addItem(new ApiResponseSet<Object>("connections", data));
+			}
+			return resultList;
+		}
+
 		ApiResponse result = null;
 		InMemoryStats memStats = extension.getInMemoryStats();
 		if (memStats == null) {
@@ -131,6 +170,40 @@ public class StatsAPI extends ApiImplementor {
 		return result;
 	}
 	
+	private static void addLatencies(
+			ApiResponseList list,
+			String host,
+			Integer initiator,
+			String type,
+			LatencyHistogram histogram) {
+		if (histogram.getCount() == 0) {
+			return;
+		}
+		Map<String, Object> data = new HashMap<>();
+		data.put("host", host);
+		if (initiator != null) {
+			data.put("initiator", initiator);
+		}
+		data.put("type", type);
+		data.put("count", histogram.getCount());
+		data.put("mean", toMillis(histogram.getMean()));
+		data.put("p50", toMillis(histogram.getPercentile(50)));
+		data.put("p90", toMillis(histogram.getPercentile(90)));
+		data.put("p99", toMillis(histogram.getPercentile(99)));
+		data.put("max", toMillis(histogram.getMax()));
+		list.addItem(new ApiResponseSet<Object>("latencies", data));
+	}
+
+	/**
+	 * Converts the given latency to milliseconds, the unit of the other latencies exposed through the API.
+	 *
+	 * @param micros the latency, in microseconds.
+	 * @return the latency, in milliseconds, with the microseconds as decimal part.
+	 */
+	private static double toMillis(long micros) {
+		return micros / 1000.0;
+	}
+
 	private static class SiteStatsApiResponse extends ApiResponseList {
 
 		private String site;
@@ -0,0 +1,104 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.network;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+
+import org.apache.commons.httpclient.ConnectTimeoutException;
+import org.apache.commons.httpclient.params.HttpConnectionParams;
+import org.apache.commons.httpclient.protocol.ProtocolSocketFactory;
+
+/**
+ * A {@link ProtocolSocketFactory} that resolves the hosts with the {@link DnsCache#getDefault() default DNS cache}.
+ *
+ * @since TODO add version
+ */
+public class CachedDnsProtocolSocketFactory implements ProtocolSocketFactory {
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localAddress, int localPort)
+            throws IOException, UnknownHostException {
+        return connect(host, port, localAddress, localPort, 0);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localAddress, int localPort, HttpConnectionParams params)
+            throws IOException, UnknownHostException, ConnectTimeoutException {
+        if (params == null) {
+            throw new IllegalArgumentException("Parameters may not be null");
+        }
+        return connect(host, port, localAddress, localPort, params.getConnectionTimeout());
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException, UnknownHostException {
+        return connect(host, port, null, 0, 0);
+    }
+
+    /**
+     * Creates a socket connected to the given host, resolved with the {@link DnsCache#getDefault() default DNS cache}.
+     * <p>
+     * The time to connect is not recorded in the {@link HttpSenderMetrics}, the host connected to might be an outgoing proxy,
+     * it is recorded by the callers, which know the target host.
+     *
+     * @param host the name of the host.
+     * @param port the port of the host.
+     * @param localAddress the local address to bind to, might be {@code null}.
+     * @param localPort the local port to bind to, zero for any.
+     * @param timeout the connection timeout, in milliseconds, zero for no timeout.
+     * @return the connected socket.
+     * @throws UnknownHostException if the host could not be resolved.
+     * @throws ConnectTimeoutException if the connection was not established within the timeout.
+     * @throws IOException if an error occurred while connecting.
+     */
+    public static Socket connect(String host, int port, InetAddress localAddress, int localPort, int timeout)
+            throws IOException {
+        InetAddress address = DnsCache.getDefault().getByName(host);
+        Socket socket = new Socket();
+        try {
+            socket.bind(new InetSocketAddress(localAddress, localPort));
+            socket.connect(new InetSocketAddress(address, port), timeout);
+        } catch (SocketTimeoutException e) {
+            socket.close();
+            throw new ConnectTimeoutException(
+                    "The host did not accept the connection within timeout of " + timeout + " ms",
+                    e);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        return socket;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj != null && obj.getClass() == getClass();
+    }
+
+    @Override
+    public int hashCode() {
+        return getClass().hashCode();
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.network;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.zaproxy.zap.utils.Stats;
+
+/**
+ * A cache of the addresses of the hosts, shared by the proxy and the senders of the messages.
+ * <p>
+ * Successful and failed lookups are cached for their own TTL. The addresses of a host can also be pinned, for example, while
+ * it's being scanned, in which case the same addresses are used until unpinned, regardless of the TTL.
+ * <p>
+ * The hits and misses are recorded in the {@link Stats}.
+ *
+ * @since TODO add version
+ */
+public final class DnsCache {
+
+    /**
+     * The key of the statistic with the number of lookups answered by the cache.
+     */
+    public static final String STATS_HITS = "stats.network.dns.hits";
+
+    /**
+     * The key of the statistic with the number of lookups done by the resolver.
+     */
+    public static final String STATS_MISSES = "stats.network.dns.misses";
+
+    /**
+     * The key of the statistic with the number of lookups done by the resolver that failed.
+     */
+    public static final String STATS_FAILURES = "stats.network.dns.failures";
+
+    /**
+     * The maximum number of cached hosts, the cache is purged when exceeded.
+     */
+    private static final int MAX_ENTRIES = 10000;
+
+    private static final DnsCache DEFAULT = new DnsCache(InetAddress::getAllByName);
+
+    private final Resolver resolver;
+    private final LongSupplier clock;
+    private final Map<String, Entry> entries;
+    private final Map<String, Pin> pins;
+
+    private volatile long ttl;
+    private volatile long negativeTtl;
+
+    /**
+     * Constructs a {@code DnsCache} with the given resolver.
+     * <p>
+     * The successful lookups are cached for 30 seconds and the failed lookups for 10 seconds.
+     *
+     * @param resolver the resolver of the hosts.
+     * @throws IllegalArgumentException if the given resolver is {@code null}.
+     */
+    public DnsCache(Resolver resolver) {
+        this(resolver, System::currentTimeMillis);
+    }
+
+    DnsCache(Resolver resolver, LongSupplier clock) {
+        if (resolver == null) {
+            throw new IllegalArgumentException("Parameter resolver must not be null.");
+        }
+        this.resolver = resolver;
+        this.clock = clock;
+        this.entries = new ConcurrentHashMap<>();
+        this.pins = new ConcurrentHashMap<>();
+        this.ttl = TimeUnit.SECONDS.toMillis(30);
+        this.negativeTtl = TimeUnit.SECONDS.toMillis(10);
+    }
+
+    /**
+     * Gets the cache shared by the proxy and the senders of the messages.
+     *
+     * @return the default cache, never {@code null}.
+     */
+    public static DnsCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Sets the TTL of successful lookups.
+     * <p>
+     * Negative number caches forever and zero disables the caching.
+     *
+     * @param ttl the TTL, in seconds.
+     */
+    public void setTtl(int ttl) {
+        this.ttl = toMillis(ttl);
+        entries.clear();
+    }
+
+    /**
+     * Sets the TTL of failed lookups.
+     * <p>
+     * Negative number caches forever and zero disables the caching.
+     *
+     * @param ttl the TTL, in seconds.
+     */
+    public void setNegativeTtl(int ttl) {
+        this.negativeTtl = toMillis(ttl);
+        entries.clear();
+    }
+
+    private static long toMillis(int ttl) {
+        return ttl < 0 ? -1 : TimeUnit.SECONDS.toMillis(ttl);
+    }
+
+    /**
+     * Gets the first address of the given host.
+     *
+     * @param host the name of the host.
+     * @return the address of the host.
+     * @throws UnknownHostException if the host could not be resolved.
+     * @see #getAllByName(String)
+     */
+    public InetAddress getByName(String host) throws UnknownHostException {
+        return lookup(host)[0];
+    }
+
+    /**
+     * Gets all the addresses of the given host, from the cache if available.
+     * <p>
+     * The IP address literals, {@code null} and empty hosts are always given to the resolver, without caching.
+     *
+     * @param host the name of the host.
+     * @return the addresses of the host, never {@code null} nor empty.
+     * @throws UnknownHostException if the host could not be resolved.
+     */
+    public InetAddress[] getAllByName(String host) throws UnknownHostException {
+        return lookup(host).clone();
+    }
+
+    private InetAddress[] lookup(String host) throws UnknownHostException {
+        if (host == null || host.isEmpty() || isAddressLiteral(host)) {
+            return resolver.resolve(host);
+        }
+
+        String key = host.toLowerCase(Locale.ROOT);
+        Pin pin = pins.get(key);
+        if (pin != null) {
+            Stats.incCounter(STATS_HITS);
+            return pin.addresses;
+        }
+
+        long now = clock.getAsLong();
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.isExpired(now)) {
+            Stats.incCounter(STATS_HITS);
+            return entry.getAddresses(host);
+        }
+
+        Stats.incCounter(STATS_MISSES);
+        try {
+            InetAddress[] addresses = resolver.resolve(host);
+            if (addresses == null || addresses.length == 0) {
+                throw new UnknownHostException(host);
+            }
+            put(key, new Entry(addresses, null, expiry(now, ttl)));
+            return addresses;
+        } catch (UnknownHostException e) {
+            Stats.incCounter(STATS_FAILURES);
+            put(key, new Entry(null, e.getMessage(), expiry(now, negativeTtl)));
+            throw e;
+        }
+    }
+
+    private static boolean isAddressLiteral(String host) {
+        if (host.indexOf(':') != -1) {
+            return true;
+        }
+        for (int i = 0; i < host.length(); i++) {
+            char c = host.charAt(i);
+            if (c != '.' && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long expiry(long now, long ttl) {
+        if (ttl < 0) {
+            return Long.MAX_VALUE;
+        }
+        return ttl == 0 ? 0 : now + ttl;
+    }
+
+    private void put(String key, Entry entry) {
+        if (entry.expiry == 0) {
+            return;
+        }
+
+        if (entries.size() >= MAX_ENTRIES) {
+            purge();
+        }
+        entries.put(key, entry);
+    }
+
+    private void purge() {
+        long now = clock.getAsLong();
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+            if (it.next().isExpired(now)) {
+                it.remove();
+            }
+        }
+        if (entries.size() >= MAX_ENTRIES) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Pins the addresses of the given host, the same addresses are used until unpinned.
+     * <p>
+     * The pins are counted, the host needs to be unpinned as many times as pinned.
+     *
+     * @param host the name of the host.
+     * @throws UnknownHostException if the host could not be resolved.
+     * @see #unpin(String)
+     */
+    public void pin(String host) throws UnknownHostException {
+        if (host == null || host.isEmpty() || isAddressLiteral(host)) {
+            return;
+        }
+
+        InetAddress[] addresses = lookup(host);
+        pins.compute(host.toLowerCase(Locale.ROOT), (k, pin) -> pin == null ? new Pin(addresses) : pin.increment());
+    }
+
+    /**
+     * Unpins the addresses of the given host, previously pinned.
+     *
+     * @param host the name of the host.
+     * @see #pin(String)
+     */
+    public void unpin(String host) {
+        if (host == null || host.isEmpty()) {
+            return;
+        }
+        pins.computeIfPresent(host.toLowerCase(Locale.ROOT), (k, pin) -> pin.decrement());
+    }
+
+    /**
+     * Tells whether or not the addresses of the given host are pinned.
+     *
+     * @param host the name of the host.
+     * @return {@code true} if the addresses are pinned, {@code false} otherwise.
+     */
+    public boolean isPinned(String host) {
+        return host != null && pins.containsKey(host.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Removes all the cached lookups, the pinned addresses are kept.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * A resolver of the addresses of the hosts.
+     */
+    @FunctionalInterface
+    public interface Resolver {
+
+        /**
+         * Resolves the addresses of the given host.
+         *
+         * @param host the name of the host.
+         * @return the addresses of the host.
+         * @throws UnknownHostException if the host could not be resolved.
+         * @see InetAddress#getAllByName(String)
+         */
+        InetAddress[] resolve(String host) throws UnknownHostException;
+    }
+
+    private static class Entry {
+
+        private final InetAddress[] addresses;
+        private final String failure;
+        private final long expiry;
+
+        Entry(InetAddress[] addresses, String failure, long expiry) {
+            this.addresses = addresses;
+            this.failure = failure;
+            this.expiry = expiry;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiry;
+        }
+
+        InetAddress[] getAddresses(String host) throws UnknownHostException {
+            if (addresses == null) {
+                throw new UnknownHostException(failure != null ? failure : host);
+            }
+            return addresses;
+        }
+    }
+
+    private static class Pin {
+
+        private final InetAddress[] addresses;
+        private final int count;
+
+        Pin(InetAddress[] addresses) {
+            this(addresses, 1);
+        }
+
+        private Pin(InetAddress[] addresses, int count) {
+            this.addresses = addresses;
+            this.count = count;
+        }
+
+        Pin increment() {
+            return new Pin(addresses, count + 1);
+        }
+
+        Pin decrement() {
+            return count == 1 ? null : new Pin(addresses, count - 1);
+        }
+    }
+}
@@ -0,0 +1,479 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.network;
+
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.httpclient.ConnectTimeoutException;
+import org.parosproxy.paros.network.HttpMessage;
+import org.parosproxy.paros.network.HttpSender;
+import org.parosproxy.paros.network.HttpStatusCode;
+import org.zaproxy.zap.utils.Stats;
+
+/**
+ * A governor of the requests sent to each host, which limits the number of concurrent requests and the requests per second.
+ * <p>
+ * The limits are adjusted from how the hosts are coping (AIMD): the limits are increased additively while the responses
+ * are received in time and decreased multiplicatively on timeouts, {@code 429 Too Many Requests} and
+ * {@code 503 Service Unavailable} responses and when the latency increases considerably. The {@code Retry-After} of those
+ * responses is honoured, up to one minute.
+ * <p>
+ * The average latency decays towards the latest responses, delayed or not, so that a host that stays slower is no longer
+ * considered delayed. The delays of the requests sent by the active scanner and the fuzzer are not considered, their
+ * payloads might delay the responses on purpose (for example, time-based injections).
+ * <p>
+ * The time waiting for the limits and the number of decreases are recorded in the {@link Stats}.
+ *
+ * @since TODO add version
+ * @see #getDefault()
+ */
+public final class HostGovernor {
+
+    /**
+     * The key of the statistic with the time, in milliseconds, waiting for the limits.
+     */
+    public static final String STATS_WAIT_TIME = "stats.network.governor.waittime";
+
+    /**
+     * The key of the statistic with the number of times the limits were decreased.
+     */
+    public static final String STATS_BACKOFFS = "stats.network.governor.backoffs";
+
+    /**
+     * The default maximum number of concurrent requests per host.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 20;
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    /**
+     * The factor over the average latency above which a response is considered delayed.
+     */
+    private static final int LATENCY_FACTOR = 4;
+
+    /**
+     * The latency below which a response is never considered delayed.
+     */
+    private static final long MIN_DELAYED_LATENCY = TimeUnit.MILLISECONDS.toNanos(500);
+
+    /**
+     * The minimum time between decreases of the limits, so that the responses to the requests already sent do not lead to
+     * further decreases.
+     */
+    private static final long MIN_BACKOFF_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private static final double MIN_REQUESTS_PER_SECOND = 1;
+
+    private static final long MAX_RETRY_AFTER = TimeUnit.MINUTES.toNanos(1);
+
+    private static final HostGovernor DEFAULT = new HostGovernor();
+
+    private final Map<String, Host> hosts;
+
+    private volatile boolean enabled;
+    private volatile int maxConcurrentRequests;
+    private volatile int maxRequestsPerSecond;
+
+    /**
+     * Constructs a {@code HostGovernor}, not enabled and with default limits.
+     */
+    public HostGovernor() {
+        hosts = new ConcurrentHashMap<>();
+        maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+    }
+
+    /**
+     * Gets the governor shared by all {@link org.parosproxy.paros.network.HttpSender HttpSender}s.
+     *
+     * @return the default governor, never {@code null}.
+     */
+    public static HostGovernor getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Tells whether or not the governor is enabled.
+     *
+     * @return {@code true} if enabled, {@code false} otherwise.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets whether or not the governor is enabled.
+     * <p>
+     * The limits of the hosts are discarded when disabled.
+     *
+     * @param enabled {@code true} if the governor should be enabled, {@code false} otherwise.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            hosts.clear();
+        }
+    }
+
+    /**
+     * Sets the maximum number of concurrent requests per host, the limits are never increased above it.
+     * <p>
+     * The current limits of the hosts are discarded.
+     *
+     * @param maxConcurrentRequests the maximum number of concurrent requests, must be greater than zero.
+     * @throws IllegalArgumentException if the given value is not greater than zero.
+     */
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        if (maxConcurrentRequests <= 0) {
+            throw new IllegalArgumentException("Parameter maxConcurrentRequests must be greater than zero.");
+        }
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        hosts.clear();
+    }
+
+    /**
+     * Sets the maximum number of requests per second per host, the limits are never increased above it.
+     * <p>
+     * The current limits of the hosts are discarded.
+     *
+     * @param maxRequestsPerSecond the maximum requests per second, zero or negative if not limited.
+     */
+    public void setMaxRequestsPerSecond(int maxRequestsPerSecond) {
+        this.maxRequestsPerSecond = Math.max(0, maxRequestsPerSecond);
+        hosts.clear();
+    }
+
+    /**
+     * Acquires a permit to send the request of the given message, waiting for the limits of the host if needed.
+     *
+     * @param msg the message that will be sent.
+     * @return the permit, to release once the response is received, or {@code null} if the governor is not enabled.
+     * @throws InterruptedIOException if interrupted while waiting.
+     * @see #acquire(HttpMessage, int)
+     * @see Permit#release(HttpMessage, Exception)
+     */
+    public Permit acquire(HttpMessage msg) throws InterruptedIOException {
+        return acquire(msg, -1);
+    }
+
+    /**
+     * Acquires a permit to send the request of the given message, sent by the given initiator, waiting for the limits of the
+     * host if needed.
+     * <p>
+     * The delays of the responses to the requests sent by the active scanner and the fuzzer do not decrease the limits.
+     *
+     * @param msg the message that will be sent.
+     * @param initiator the initiator of the request, for example, {@link HttpSender#ACTIVE_SCANNER_INITIATOR}.
+     * @return the permit, to release once the response is received, or {@code null} if the governor is not enabled.
+     * @throws InterruptedIOException if interrupted while waiting.
+     * @see Permit#release(HttpMessage, Exception)
+     */
+    public Permit acquire(HttpMessage msg, int initiator) throws InterruptedIOException {
+        if (!enabled) {
+            return null;
+        }
+        return getHost(msg).acquire(!isDelayedOnPurpose(initiator));
+    }
+
+    private static boolean isDelayedOnPurpose(int initiator) {
+        return initiator == HttpSender.ACTIVE_SCANNER_INITIATOR || initiator == HttpSender.FUZZER_INITIATOR;
+    }
+
+    private Host getHost(HttpMessage msg) {
+        String hostname = msg.getRequestHeader().getHostName();
+        String key = (hostname != null ? hostname.toLowerCase(Locale.ROOT) : "") + ":" + msg.getRequestHeader().getHostPort();
+        return hosts.computeIfAbsent(key, Host::new);
+    }
+
+    /**
+     * Gets the current limits of the hosts.
+     *
+     * @return the limits of the hosts, never {@code null}.
+     */
+    public List<Limits> getLimits() {
+        List<Limits> limits = new ArrayList<>(hosts.size());
+        for (Host host : hosts.values()) {
+            limits.add(host.getLimits());
+        }
+        return limits;
+    }
+
+    /**
+     * Discards the limits of all hosts, they start again from the maximums.
+     */
+    public void reset() {
+        hosts.clear();
+    }
+
+    private static boolean isOverloadResponse(HttpMessage msg) {
+        int statusCode = msg.getResponseHeader().getStatusCode();
+        return statusCode == TOO_MANY_REQUESTS || statusCode == HttpStatusCode.SERVICE_UNAVAILABLE;
+    }
+
+    private static long getRetryAfter(HttpMessage msg) {
+        String value = msg.getResponseHeader().getHeader("Retry-After");
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.min(TimeUnit.SECONDS.toNanos(Long.parseLong(value.trim())), MAX_RETRY_AFTER);
+        } catch (NumberFormatException e) {
+            // HTTP-date, not worth parsing.
+            return 0;
+        }
+    }
+
+    /**
+     * The limits of a host.
+     */
+    public static final class Limits {
+
+        private final String host;
+        private final int concurrentRequests;
+        private final int inFlightRequests;
+        private final double requestsPerSecond;
+        private final long latency;
+
+        Limits(String host, int concurrentRequests, int inFlightRequests, double requestsPerSecond, long latency) {
+            this.host = host;
+            this.concurrentRequests = concurrentRequests;
+            this.inFlightRequests = inFlightRequests;
+            this.requestsPerSecond = requestsPerSecond;
+            this.latency = latency;
+        }
+
+        /**
+         * Gets the host, in the form {@code hostname:port}.
+         *
+         * @return the host.
+         */
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * Gets the current limit of concurrent requests.
+         *
+         * @return the limit of concurrent requests.
+         */
+        public int getConcurrentRequests() {
+            return concurrentRequests;
+        }
+
+        /**
+         * Gets the number of requests being sent.
+         *
+         * @return the number of requests in flight.
+         */
+        public int getInFlightRequests() {
+            return inFlightRequests;
+        }
+
+        /**
+         * Gets the current limit of requests per second.
+         *
+         * @return the limit of requests per second, zero if not limited.
+         */
+        public double getRequestsPerSecond() {
+            return requestsPerSecond;
+        }
+
+        /**
+         * Gets the average latency of the responses.
+         *
+         * @return the average latency, in milliseconds.
+         */
+        public long getLatency() {
+            return latency;
+        }
+    }
+
+    /**
+     * A permit to send a request, to release once the response is received.
+     * <p>
+     * Not thread-safe, it should be used by the thread that acquired it.
+     */
+    public static final class Permit {
+
+        private final Host host;
+        private final long start;
+        private final boolean delaysConsidered;
+        private long responseReceived;
+
+        private Permit(Host host, long start, boolean delaysConsidered) {
+            this.host = host;
+            this.start = start;
+            this.delaysConsidered = delaysConsidered;
+        }
+
+        /**
+         * Notifies that the response header was received, to measure the latency without the time reading the body.
+         */
+        public void responseReceived() {
+            responseReceived = System.nanoTime();
+        }
+
+        /**
+         * Releases the permit.
+         *
+         * @param msg the message sent.
+         * @param error the error that occurred while sending, {@code null} if none.
+         */
+        public void release(HttpMessage msg, Exception error) {
+            host.release(this, msg, error);
+        }
+    }
+
+    private class Host {
+
+        private final String name;
+
+        private double concurrencyLimit;
+        private int inFlight;
+
+        /**
+         * The current limit of requests per second, zero if not limited.
+         */
+        private double rateLimit;
+        private long nextStart;
+        private long blockedUntil;
+
+        private long averageLatency;
+        private long lastBackoff;
+
+        Host(String name) {
+            this.name = name;
+            this.concurrencyLimit = maxConcurrentRequests;
+            this.rateLimit = maxRequestsPerSecond;
+            this.lastBackoff = System.nanoTime() - MIN_BACKOFF_INTERVAL;
+        }
+
+        synchronized Permit acquire(boolean delaysConsidered) throws InterruptedIOException {
+            long waitStart = System.nanoTime();
+            try {
+                while (true) {
+                    long now = System.nanoTime();
+                    long startAt = Math.max(nextStart, blockedUntil);
+                    if (inFlight < (int) concurrencyLimit && now - startAt >= 0) {
+                        inFlight++;
+                        nextStart = rateLimit > 0 ? Math.max(now, nextStart) + (long) (1_000_000_000L / rateLimit) : now;
+                        return new Permit(this, now, delaysConsidered);
+                    }
+
+                    if (inFlight >= (int) concurrencyLimit) {
+                        wait();
+                    } else {
+                        long waitNanos = startAt - now;
+                        TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the limits of " + name);
+            } finally {
+                long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waitStart);
+                if (waited > 0) {
+                    Stats.incCounter(STATS_WAIT_TIME, waited);
+                }
+            }
+        }
+
+        synchronized void release(Permit permit, HttpMessage msg, Exception error) {
+            inFlight--;
+            long now = System.nanoTime();
+            long latency = (permit.responseReceived != 0 ? permit.responseReceived : now) - permit.start;
+
+            if (error instanceof SocketTimeoutException || error instanceof ConnectTimeoutException) {
+                backoff(now, 0);
+            } else if (error == null && isOverloadResponse(msg)) {
+                backoff(now, getRetryAfter(msg));
+            } else if (error == null) {
+                boolean delayed = isDelayed(latency);
+                if (!delayed || permit.delaysConsidered) {
+                    // Include the delayed responses, the average adapts to a host that stays slower.
+                    averageLatency = averageLatency == 0 ? latency : (averageLatency * 7 + latency) / 8;
+                }
+                if (!delayed) {
+                    increase();
+                } else if (permit.delaysConsidered) {
+                    backoff(now, 0);
+                }
+            }
+            notifyAll();
+        }
+
+        private boolean isDelayed(long latency) {
+            return averageLatency != 0 && latency > MIN_DELAYED_LATENCY && latency > averageLatency * LATENCY_FACTOR;
+        }
+
+        private void increase() {
+            int maxConcurrency = maxConcurrentRequests;
+            concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1 / concurrencyLimit);
+
+            if (rateLimit == 0) {
+                return;
+            }
+            rateLimit += 1 / rateLimit;
+            int maxRate = maxRequestsPerSecond;
+            if (maxRate > 0) {
+                rateLimit = Math.min(maxRate, rateLimit);
+            } else if (averageLatency != 0 && rateLimit > 2 * concurrencyLimit * TimeUnit.SECONDS.toNanos(1) / averageLatency) {
+                // No longer limiting, the concurrency limit allows less requests per second.
+                rateLimit = 0;
+            }
+        }
+
+        private void backoff(long now, long retryAfter) {
+            if (retryAfter > 0) {
+                blockedUntil = now + retryAfter;
+            }
+            if (now - lastBackoff < Math.max(MIN_BACKOFF_INTERVAL, averageLatency)) {
+                return;
+            }
+            lastBackoff = now;
+            Stats.incCounter(STATS_BACKOFFS);
+
+            concurrencyLimit = Math.max(1, concurrencyLimit / 2);
+            if (rateLimit == 0) {
+                // Start from the requests per second allowed by the concurrency limit with the current latency.
+                long latency = Math.max(averageLatency, TimeUnit.MILLISECONDS.toNanos(1));
+                rateLimit = concurrencyLimit * TimeUnit.SECONDS.toNanos(1) / latency;
+            } else {
+                rateLimit /= 2;
+            }
+            rateLimit = Math.max(MIN_REQUESTS_PER_SECOND, rateLimit);
+        }
+
+        synchronized Limits getLimits() {
+            return new Limits(
+                    name,
+                    (int) concurrencyLimit,
+                    inFlight,
+                    rateLimit,
+                    TimeUnit.NANOSECONDS.toMillis(averageLatency));
+        }
+    }
+}
@@ -0,0 +1,364 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.apache.log4j.Logger;
+import org.parosproxy.paros.network.HttpBody;
+import org.parosproxy.paros.network.HttpHeader;
+import org.parosproxy.paros.network.HttpMessage;
+import org.zaproxy.zap.utils.Stats;
+
+/**
+ * A decoder of the content encodings {@code gzip} and {@code deflate} (and the {@code x-} variants) of HTTP responses.
+ * <p>
+ * The encoded body is inflated directly into the new body, in chunks, without intermediate streams. The {@link Inflater}s and
+ * the buffers are reused between decodings, which avoids the cost of allocating them (and the native memory of the
+ * inflaters) for each response.
+ * <p>
+ * The size of the decoded body can be limited, to not exhaust the memory with highly compressed responses (for example,
+ * decompression bombs). The number of bytes decoded and produced is recorded in the {@link Stats}.
+ *
+ * @since TODO add version
+ */
+public final class HttpContentDecoder {
+
+    /**
+     * The statistic with the number of encoded bytes, of the responses successfully decoded.
+     */
+    public static final String STATS_BYTES_IN = "stats.network.decode.bytesin";
+
+    /**
+     * The statistic with the number of decoded bytes, of the responses successfully decoded.
+     */
+    public static final String STATS_BYTES_OUT = "stats.network.decode.bytesout";
+
+    /**
+     * The statistic with the number of responses not decoded because the decoded body would exceed the maximum size.
+     */
+    public static final String STATS_TOO_BIG = "stats.network.decode.toobig";
+
+    private static final Logger LOGGER = Logger.getLogger(HttpContentDecoder.class);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int MAX_POOLED_CONTEXTS = 16;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int GZIP_HEADER_LENGTH = 10;
+    private static final int GZIP_TRAILER_LENGTH = 8;
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private static final Queue<Context> CONTEXTS = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED_CONTEXTS = new AtomicInteger();
+
+    private HttpContentDecoder() {
+    }
+
+    /**
+     * Tells whether or not the given content encoding is supported.
+     *
+     * @param encoding the content encoding, might be {@code null}.
+     * @return {@code true} if the encoding is supported, {@code false} otherwise.
+     */
+    public static boolean isSupported(String encoding) {
+        return getEncoding(encoding) != null;
+    }
+
+    /**
+     * Decodes the response body of the given message, if encoded with a supported content encoding.
+     * <p>
+     * If decoded, the {@code Content-Encoding} header is removed and the {@code Content-Length} header, if present, updated.
+     * The message is left unchanged if not decoded.
+     *
+     * @param msg the message whose response should be decoded.
+     * @param maxDecodedSize the maximum size of the decoded body, zero or negative if unlimited.
+     * @return {@code true} if the response was decoded, {@code false} if not encoded, the encoding is not supported, or the
+     *         decoded body would exceed the maximum size.
+     * @throws IOException if the encoded body is malformed.
+     */
+    public static boolean decodeResponseBody(HttpMessage msg, int maxDecodedSize) throws IOException {
+        String header = msg.getResponseHeader().getHeader(HttpHeader.CONTENT_ENCODING);
+        if (header == null || header.equalsIgnoreCase(HttpHeader.IDENTITY)) {
+            return false;
+        }
+
+        String encoding = getEncoding(header);
+        if (encoding == null) {
+            LOGGER.debug("Unsupported content encoding method: " + header);
+            return false;
+        }
+
+        byte[] encoded = msg.getResponseBody().getBytes();
+        HttpResponseBody decoded = decode(encoding, encoded, maxDecodedSize);
+        if (decoded == null) {
+            Stats.incCounter(STATS_TOO_BIG);
+            LOGGER.warn(
+                    "Not decoding the response from " + msg.getRequestHeader().getURI() + ", the decoded body exceeds "
+                            + maxDecodedSize + " bytes.");
+            return false;
+        }
+
+        Stats.incCounter(STATS_BYTES_IN, encoded.length);
+        Stats.incCounter(STATS_BYTES_OUT, decoded.length());
+
+        msg.setResponseBody(decoded);
+        msg.getResponseHeader().setHeader(HttpHeader.CONTENT_ENCODING, null);
+        if (msg.getResponseHeader().getHeader(HttpHeader.CONTENT_LENGTH) != null) {
+            msg.getResponseHeader().setContentLength(decoded.length());
+        }
+        return true;
+    }
+
+    private static String getEncoding(String header) {
+        if (header == null) {
+            return null;
+        }
+        String encoding = header.trim().toLowerCase(Locale.ROOT);
+        if (encoding.startsWith("x-")) {
+            encoding = encoding.substring(2);
+        }
+        if (HttpHeader.GZIP.equals(encoding)) {
+            return HttpHeader.GZIP;
+        }
+        if (HttpHeader.DEFLATE.equals(encoding)) {
+            return HttpHeader.DEFLATE;
+        }
+        return null;
+    }
+
+    private static HttpResponseBody decode(String encoding, byte[] encoded, int maxDecodedSize) throws IOException {
+        Context context = acquireContext();
+        try {
+            if (HttpHeader.GZIP.equals(encoding)) {
+                return context.gunzip(encoded, maxDecodedSize);
+            }
+            return context.inflate(encoded, maxDecodedSize);
+        } finally {
+            releaseContext(context);
+        }
+    }
+
+    private static Context acquireContext() {
+        Context context = CONTEXTS.poll();
+        if (context == null) {
+            return new Context();
+        }
+        POOLED_CONTEXTS.decrementAndGet();
+        return context;
+    }
+
+    private static void releaseContext(Context context) {
+        if (POOLED_CONTEXTS.incrementAndGet() <= MAX_POOLED_CONTEXTS) {
+            context.reset();
+            CONTEXTS.offer(context);
+        } else {
+            POOLED_CONTEXTS.decrementAndGet();
+            context.end();
+        }
+    }
+
+    private static int readUnsignedShort(byte[] data, int offset) {
+        return (data[offset] & 0xff) | ((data[offset + 1] & 0xff) << 8);
+    }
+
+    private static long readUnsignedInt(byte[] data, int offset) {
+        return (readUnsignedShort(data, offset) | ((long) readUnsignedShort(data, offset + 2) << 16)) & 0xffffffffL;
+    }
+
+    /**
+     * The state reused between decodings, used by one thread at a time.
+     */
+    private static class Context {
+
+        private final Inflater rawInflater = new Inflater(true);
+        private final Inflater zlibInflater = new Inflater();
+        private final CRC32 crc = new CRC32();
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        /**
+         * Inflates the given {@code deflate} encoded data, either with the zlib format or just the raw deflate data, as sent
+         * by some servers.
+         */
+        HttpResponseBody inflate(byte[] encoded, int maxDecodedSize) throws IOException {
+            Inflater inflater = isZlibHeader(encoded) ? zlibInflater : rawInflater;
+            HttpResponseBody decoded = createBody(Math.min(encoded.length * 4, HttpBody.LIMIT_INITIAL_CAPACITY));
+            inflater.setInput(encoded);
+            if (!inflate(inflater, decoded, maxDecodedSize, false)) {
+                return null;
+            }
+            return decoded;
+        }
+
+        /**
+         * Creates an empty body, with the given initial capacity.
+         */
+        private static HttpResponseBody createBody(int capacity) {
+            HttpResponseBody body = new HttpResponseBody(capacity);
+            body.setLength(0);
+            return body;
+        }
+
+        private static boolean isZlibHeader(byte[] data) {
+            return data.length >= 2 && (data[0] & 0x0f) == 8 && (((data[0] & 0xff) << 8) | (data[1] & 0xff)) % 31 == 0;
+        }
+
+        /**
+         * Decodes the given {@code gzip} encoded data, with one or more members.
+         */
+        HttpResponseBody gunzip(byte[] encoded, int maxDecodedSize) throws IOException {
+            HttpResponseBody decoded = createBody(getInitialCapacity(encoded, maxDecodedSize));
+            int offset = 0;
+            do {
+                offset = readGzipHeader(encoded, offset);
+                crc.reset();
+                rawInflater.reset();
+                rawInflater.setInput(encoded, offset, encoded.length - offset);
+                int start = decoded.length();
+                if (!inflate(rawInflater, decoded, maxDecodedSize, true)) {
+                    return null;
+                }
+                offset = encoded.length - rawInflater.getRemaining();
+                if (encoded.length - offset < GZIP_TRAILER_LENGTH) {
+                    throw new EOFException("Unexpected end of gzip trailer.");
+                }
+                if (readUnsignedInt(encoded, offset) != crc.getValue()) {
+                    throw new ZipException("Corrupt gzip trailer, mismatched CRC.");
+                }
+                if (readUnsignedInt(encoded, offset + 4) != ((decoded.length() - start) & 0xffffffffL)) {
+                    throw new ZipException("Corrupt gzip trailer, mismatched size.");
+                }
+                offset += GZIP_TRAILER_LENGTH;
+            } while (encoded.length - offset >= GZIP_HEADER_LENGTH && readUnsignedShort(encoded, offset) == GZIP_MAGIC);
+            return decoded;
+        }
+
+        /**
+         * Gets the initial capacity of the decoded body, from the size of the (last) member, bounded by the maximum size.
+         */
+        private static int getInitialCapacity(byte[] encoded, int maxDecodedSize) {
+            long size = encoded.length >= GZIP_HEADER_LENGTH + GZIP_TRAILER_LENGTH
+                    ? readUnsignedInt(encoded, encoded.length - 4)
+                    : 0;
+            if (maxDecodedSize > 0) {
+                size = Math.min(size, maxDecodedSize);
+            }
+            return (int) Math.min(size, HttpBody.LIMIT_INITIAL_CAPACITY);
+        }
+
+        private static int readGzipHeader(byte[] data, int offset) throws IOException {
+            if (data.length - offset < GZIP_HEADER_LENGTH) {
+                throw new EOFException("Unexpected end of gzip header.");
+            }
+            if (readUnsignedShort(data, offset) != GZIP_MAGIC) {
+                throw new ZipException("Not in gzip format.");
+            }
+            if (data[offset + 2] != 8) {
+                throw new ZipException("Unsupported gzip compression method.");
+            }
+            int flags = data[offset + 3] & 0xff;
+            int pos = offset + GZIP_HEADER_LENGTH;
+            if ((flags & FEXTRA) != 0) {
+                if (data.length - pos < 2) {
+                    throw new EOFException("Unexpected end of gzip header.");
+                }
+                pos += 2 + readUnsignedShort(data, pos);
+            }
+            if ((flags & FNAME) != 0) {
+                pos = skipZeroTerminated(data, pos);
+            }
+            if ((flags & FCOMMENT) != 0) {
+                pos = skipZeroTerminated(data, pos);
+            }
+            if ((flags & FHCRC) != 0) {
+                pos += 2;
+            }
+            if (pos > data.length) {
+                throw new EOFException("Unexpected end of gzip header.");
+            }
+            return pos;
+        }
+
+        private static int skipZeroTerminated(byte[] data, int pos) throws IOException {
+            while (pos < data.length) {
+                if (data[pos++] == 0) {
+                    return pos;
+                }
+            }
+            throw new EOFException("Unexpected end of gzip header.");
+        }
+
+        /**
+         * Inflates the input of the given inflater into the given body, until the end of the compressed data.
+         *
+         * @return {@code true} if inflated, {@code false} if the maximum size was exceeded.
+         */
+        private boolean inflate(Inflater inflater, HttpBody decoded, int maxDecodedSize, boolean updateCrc)
+                throws IOException {
+            try {
+                while (!inflater.finished()) {
+                    int len = inflater.inflate(buffer);
+                    if (len == 0) {
+                        if (inflater.needsDictionary()) {
+                            throw new ZipException("Compressed data requires a dictionary.");
+                        }
+                        if (inflater.needsInput()) {
+                            throw new EOFException("Unexpected end of compressed data.");
+                        }
+                        continue;
+                    }
+                    if (maxDecodedSize > 0 && decoded.length() + len > maxDecodedSize) {
+                        return false;
+                    }
+                    if (updateCrc) {
+                        crc.update(buffer, 0, len);
+                    }
+                    decoded.append(buffer, len);
+                }
+                return true;
+            } catch (DataFormatException e) {
+                throw new ZipException(e.getMessage());
+            }
+        }
+
+        void reset() {
+            rawInflater.reset();
+            zlibInflater.reset();
+        }
+
+        void end() {
+            rawInflater.end();
+            zlibInflater.end();
+        }
+    }
+}
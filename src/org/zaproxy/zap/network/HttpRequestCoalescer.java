@@ -0,0 +1,274 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.network;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.parosproxy.paros.network.HttpHeader;
+import org.parosproxy.paros.network.HttpMessage;
+import org.parosproxy.paros.network.HttpRequestHeader;
+import org.parosproxy.paros.network.HttpResponseHeader;
+
+/**
+ * Coalesces identical {@code GET} and {@code HEAD} requests, sending just one of them and copying its response to the
+ * others.
+ * <p>
+ * The requests are identical if they have the same context (for example, the initiator and the user) and the same bytes.
+ * The requests that arrive while an identical request is being sent wait for its response, the responses are also kept
+ * for a short time to answer the identical requests that arrive after.
+ * <p>
+ * Intended to be used by a single scan, it should not be shared with senders whose requests should always reach the
+ * server.
+ *
+ * @since TODO add version
+ * @see org.parosproxy.paros.network.HttpSender#setRequestCoalescer(HttpRequestCoalescer)
+ */
+public final class HttpRequestCoalescer {
+
+    /**
+     * The maximum number of cached responses, the cache is purged when exceeded.
+     */
+    private static final int MAX_CACHED_RESPONSES = 1000;
+
+    private final long ttl;
+    private final Map<Key, CompletableFuture<Response>> inFlight;
+    private final Map<Key, Response> cache;
+    private final AtomicInteger requestsSaved;
+
+    /**
+     * Constructs a {@code HttpRequestCoalescer} that keeps the responses for the given time.
+     *
+     * @param ttl the time to keep the responses, in milliseconds, zero or negative to not keep them.
+     */
+    public HttpRequestCoalescer(long ttl) {
+        this.ttl = TimeUnit.MILLISECONDS.toNanos(Math.max(0, ttl));
+        this.inFlight = new ConcurrentHashMap<>();
+        this.cache = new ConcurrentHashMap<>();
+        this.requestsSaved = new AtomicInteger();
+    }
+
+    /**
+     * Tells whether or not the request of the given message can be coalesced.
+     * <p>
+     * Only {@code GET} and {@code HEAD} requests, without connection upgrade, can be coalesced.
+     *
+     * @param msg the message to check.
+     * @return {@code true} if the request can be coalesced, {@code false} otherwise.
+     */
+    public static boolean isCoalescable(HttpMessage msg) {
+        String method = msg.getRequestHeader().getMethod();
+        if (!HttpRequestHeader.GET.equalsIgnoreCase(method) && !HttpRequestHeader.HEAD.equalsIgnoreCase(method)) {
+            return false;
+        }
+        String connection = msg.getRequestHeader().getHeader(HttpHeader.CONNECTION);
+        return connection == null || !connection.toLowerCase(Locale.ROOT).contains("upgrade");
+    }
+
+    /**
+     * Sends the request of the given message, unless an identical request is being sent or its response was recently
+     * received, in which case the response is copied to the message.
+     * <p>
+     * If the identical request fails, or its response can not be copied, the request is sent with the given sender.
+     *
+     * @param msg the message to send.
+     * @param context the context of the request, for example, the initiator and the user.
+     * @param sender the sender of the request.
+     * @throws IOException if an error occurred while sending the request.
+     * @see #isCoalescable(HttpMessage)
+     */
+    public void send(HttpMessage msg, Object context, Sender sender) throws IOException {
+        Key key = new Key(context, msg.getRequestHeader().toString(), msg.getRequestBody().getBytes());
+
+        Response cached = cache.get(key);
+        if (cached != null) {
+            if (System.nanoTime() - cached.expiry < 0) {
+                cached.copyTo(msg);
+                requestsSaved.incrementAndGet();
+                return;
+            }
+            cache.remove(key, cached);
+        }
+
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        CompletableFuture<Response> other = inFlight.putIfAbsent(key, future);
+        if (other != null) {
+            Response response = await(other);
+            if (response != null) {
+                response.copyTo(msg);
+                requestsSaved.incrementAndGet();
+                return;
+            }
+            sender.send(msg);
+            return;
+        }
+
+        Response response = null;
+        try {
+            sender.send(msg);
+            response = Response.of(msg, System.nanoTime() + ttl);
+        } finally {
+            inFlight.remove(key, future);
+            future.complete(response);
+        }
+
+        if (response != null && ttl > 0) {
+            if (cache.size() >= MAX_CACHED_RESPONSES) {
+                purge();
+            }
+            cache.put(key, response);
+        }
+    }
+
+    private static Response await(CompletableFuture<Response> future) throws InterruptedIOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the response of identical request.");
+        } catch (ExecutionException e) {
+            // Not completed exceptionally.
+            return null;
+        }
+    }
+
+    private void purge() {
+        long now = System.nanoTime();
+        for (Iterator<Response> it = cache.values().iterator(); it.hasNext();) {
+            if (now - it.next().expiry >= 0) {
+                it.remove();
+            }
+        }
+        if (cache.size() >= MAX_CACHED_RESPONSES) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * Gets the number of requests that were not sent, answered with the response of an identical request.
+     *
+     * @return the number of requests saved.
+     */
+    public int getRequestsSaved() {
+        return requestsSaved.get();
+    }
+
+    /**
+     * Removes all the cached responses.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * A sender of requests.
+     */
+    @FunctionalInterface
+    public interface Sender {
+
+        /**
+         * Sends the request of the given message.
+         *
+         * @param msg the message to send.
+         * @throws IOException if an error occurred while sending the request.
+         */
+        void send(HttpMessage msg) throws IOException;
+    }
+
+    private static class Key {
+
+        private final Object context;
+        private final String requestHeader;
+        private final byte[] requestBody;
+        private final int hashCode;
+
+        Key(Object context, String requestHeader, byte[] requestBody) {
+            this.context = context;
+            this.requestHeader = requestHeader;
+            this.requestBody = requestBody;
+            this.hashCode = 31 * (31 * Objects.hashCode(context) + requestHeader.hashCode()) + Arrays.hashCode(requestBody);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hashCode == other.hashCode
+                    && Objects.equals(context, other.context)
+                    && requestHeader.equals(other.requestHeader)
+                    && Arrays.equals(requestBody, other.requestBody);
+        }
+    }
+
+    private static class Response {
+
+        private final String responseHeader;
+        private final byte[] responseBody;
+        private final long expiry;
+
+        private Response(String responseHeader, byte[] responseBody, long expiry) {
+            this.responseHeader = responseHeader;
+            this.responseBody = responseBody;
+            this.expiry = expiry;
+        }
+
+        /**
+         * Creates the response of the given message, if it can be copied to other messages.
+         *
+         * @param msg the message sent.
+         * @param expiry the time when the response expires, in nanoseconds.
+         * @return the response, or {@code null} if it can not be copied.
+         */
+        static Response of(HttpMessage msg, long expiry) {
+            if (!msg.isResponseFromTargetHost() || msg.isEventStream()) {
+                return null;
+            }
+            return new Response(msg.getResponseHeader().toString(), msg.getResponseBody().getBytes(), expiry);
+        }
+
+        void copyTo(HttpMessage msg) throws IOException {
+            HttpResponseHeader header = new HttpResponseHeader(responseHeader);
+            msg.setResponseHeader(header);
+            msg.getResponseBody().setCharset(header.getCharset());
+            msg.getResponseBody().setBody(responseBody);
+            msg.setResponseFromTargetHost(true);
+        }
+    }
+}
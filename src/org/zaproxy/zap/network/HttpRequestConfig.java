@@ -39,16 +39,19 @@ public class HttpRequestConfig {
     private final HttpRedirectionValidator redirectionValidator;
     private final boolean notifyListeners;
     private final int soTimeout;
+    private final HttpResponseBodyStreamer responseBodyStreamer;
 
     HttpRequestConfig(
             boolean followRedirects,
             HttpRedirectionValidator redirectionValidator,
             boolean notifyListeners,
-            int soTimeout) {
+            int soTimeout,
+            HttpResponseBodyStreamer responseBodyStreamer) {
         this.followRedirects = followRedirects;
         this.redirectionValidator = redirectionValidator;
         this.notifyListeners = notifyListeners;
         this.soTimeout = soTimeout;
+        this.responseBodyStreamer = responseBodyStreamer;
     }
 
     /**
@@ -100,6 +103,18 @@ public class HttpRequestConfig {
         return soTimeout;
     }
 
+    /**
+     * Gets the streamer of the response bodies.
+     * <p>
+     * Default value: {@code null}, the response bodies are read into the messages.
+     *
+     * @return the streamer of the response bodies, might be {@code null}.
+     * @since TODO add version
+     */
+    public HttpResponseBodyStreamer getResponseBodyStreamer() {
+        return responseBodyStreamer;
+    }
+
     /**
      * Gets a new HTTP request configuration builder.
      *
@@ -132,6 +147,7 @@ public class HttpRequestConfig {
         private HttpRedirectionValidator redirectionValidator;
         private boolean notifyListeners;
         private int soTimeout;
+        private HttpResponseBodyStreamer responseBodyStreamer;
 
         private Builder() {
             this.followRedirects = false;
@@ -144,6 +160,7 @@ public class HttpRequestConfig {
             this.followRedirects = config.isFollowRedirects();
             this.redirectionValidator = config.getRedirectionValidator();
             this.notifyListeners = config.isNotifyListeners();
+            this.responseBodyStreamer = config.getResponseBodyStreamer();
         }
 
         /**
@@ -209,13 +226,34 @@ public class HttpRequestConfig {
             return this;
         }
 
+        /**
+         * Sets the streamer of the response bodies.
+         * <p>
+         * The streamer is used for all the responses received, including the ones of the redirections followed, if any.
+         * The response bodies are not streamed if the {@link org.zaproxy.zap.network.HttpSenderListener HttpSenderListener}s
+         * are notified, nor when resending the message to re-authenticate the user.
+         *
+         * @param responseBodyStreamer the streamer of the response bodies, {@code null} to read the bodies into the messages.
+         * @return the builder.
+         * @since TODO add version
+         */
+        public Builder setResponseBodyStreamer(HttpResponseBodyStreamer responseBodyStreamer) {
+            this.responseBodyStreamer = responseBodyStreamer;
+            return this;
+        }
+
         /**
          * Builds a new {@code HttpRequestConfig}, with the configurations previously set.
          *
          * @return a new {@code HttpRequestConfig}.
          */
         public HttpRequestConfig build() {
-            return new HttpRequestConfig(followRedirects, redirectionValidator, notifyListeners, soTimeout);
+            return new HttpRequestConfig(
+                    followRedirects,
+                    redirectionValidator,
+                    notifyListeners,
+                    soTimeout,
+                    responseBodyStreamer);
         }
     }
 }
@@ -0,0 +1,59 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.parosproxy.paros.network.HttpMessage;
+
+/**
+ * A streamer of response bodies, allows to process the body while it's being read from the server instead of having the
+ * sender read it all into the message.
+ * <p>
+ * The streamer is called after the response header was set into the message.
+ *
+ * @since TODO add version
+ * @see HttpRequestConfig.Builder#setResponseBodyStreamer(HttpResponseBodyStreamer)
+ */
+public interface HttpResponseBodyStreamer {
+
+    /**
+     * Tells whether or not the response body of the given message should be streamed.
+     * <p>
+     * If {@code false} the sender reads the whole body into the message, as usual.
+     *
+     * @param message the message with the response header already set.
+     * @return {@code true} if the body should be streamed, {@code false} otherwise.
+     */
+    boolean isStreamable(HttpMessage message);
+
+    /**
+     * Streams the response body of the given message.
+     * <p>
+     * The streamer is responsible to set into the message the (part of the) body that should be kept, if any. The given input
+     * stream should be read until the end, it's closed by the sender afterwards.
+     *
+     * @param message the message with the response header already set.
+     * @param body the stream of the response body, as sent by the server (without transfer encoding).
+     * @throws IOException if an error occurred while reading or streaming the body.
+     */
+    void stream(HttpMessage message, InputStream body) throws IOException;
+}
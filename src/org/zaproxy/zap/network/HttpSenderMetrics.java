@@ -0,0 +1,368 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.network;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.httpclient.URIException;
+import org.parosproxy.paros.network.HttpMessage;
+import org.zaproxy.zap.model.SessionStructure;
+import org.zaproxy.zap.utils.Stats;
+
+/**
+ * The latencies and connection metrics of the requests sent by the {@link org.parosproxy.paros.network.HttpSender
+ * HttpSender}s.
+ * <p>
+ * Keeps, per host, histograms of the time to first byte and of the total time of the requests, per initiator, and of the
+ * time to connect and to do the TLS handshake, along with the number of requests sent and connections opened, from which
+ * the reuse of the connections is derived. The connection metrics are kept for the target host, even if the connections
+ * are opened to an outgoing proxy.
+ * <p>
+ * The times and counts are also recorded in the {@link Stats}, per site where known.
+ *
+ * @since TODO add version
+ * @see #getDefault()
+ */
+public final class HttpSenderMetrics {
+
+    /**
+     * The key of the statistic with the number of requests sent.
+     */
+    public static final String STATS_REQUESTS = "stats.network.requests";
+
+    /**
+     * The key of the statistic with the time, in milliseconds, to receive the response headers.
+     */
+    public static final String STATS_TIME_TO_FIRST_BYTE = "stats.network.time.ttfb";
+
+    /**
+     * The key of the statistic with the time, in milliseconds, to send the requests and receive the responses.
+     */
+    public static final String STATS_TIME_TOTAL = "stats.network.time.total";
+
+    /**
+     * The key of the statistic with the number of connections opened.
+     */
+    public static final String STATS_CONNECTIONS_OPENED = "stats.network.connections.opened";
+
+    /**
+     * The key of the statistic with the time, in milliseconds, to open the connections.
+     */
+    public static final String STATS_TIME_CONNECT = "stats.network.time.connect";
+
+    /**
+     * The key of the statistic with the time, in milliseconds, to do the TLS handshakes.
+     */
+    public static final String STATS_TIME_TLS_HANDSHAKE = "stats.network.time.tls";
+
+    /**
+     * The maximum number of hosts with metrics, the metrics of further hosts are recorded just in the {@code Stats}.
+     */
+    private static final int MAX_HOSTS = 1000;
+
+    private static final HttpSenderMetrics DEFAULT = new HttpSenderMetrics();
+
+    private final Map<String, Host> hosts;
+
+    /**
+     * Constructs a {@code HttpSenderMetrics} without metrics.
+     */
+    public HttpSenderMetrics() {
+        hosts = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Gets the metrics shared by all {@link org.parosproxy.paros.network.HttpSender HttpSender}s.
+     *
+     * @return the default metrics, never {@code null}.
+     */
+    public static HttpSenderMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Records the times of the request of the given message.
+     *
+     * @param msg the message sent.
+     * @param initiator the initiator of the request.
+     * @param timeToFirstByte the time to receive the response headers, in nanoseconds, negative if not received.
+     * @param total the time to send the request and receive the response, in nanoseconds.
+     */
+    public void recordRequest(HttpMessage msg, int initiator, long timeToFirstByte, long total) {
+        String hostname = msg.getRequestHeader().getHostName();
+        Host host = getHost(hostname, msg.getRequestHeader().getHostPort());
+        if (host != null) {
+            host.requests.increment();
+            Latencies latencies = host.getLatencies(initiator);
+            if (timeToFirstByte >= 0) {
+                latencies.timeToFirstByte.record(TimeUnit.NANOSECONDS.toMicros(timeToFirstByte));
+            }
+            latencies.total.record(TimeUnit.NANOSECONDS.toMicros(total));
+        }
+
+        String site = getSite(msg);
+        incCounter(site, STATS_REQUESTS, 1);
+        if (timeToFirstByte >= 0) {
+            incCounter(site, STATS_TIME_TO_FIRST_BYTE, TimeUnit.NANOSECONDS.toMillis(timeToFirstByte));
+        }
+        incCounter(site, STATS_TIME_TOTAL, TimeUnit.NANOSECONDS.toMillis(total));
+    }
+
+    private static String getSite(HttpMessage msg) {
+        try {
+            return SessionStructure.getHostName(msg);
+        } catch (URIException e) {
+            return null;
+        }
+    }
+
+    private static void incCounter(String site, String key, long inc) {
+        if (site != null) {
+            Stats.incCounter(site, key, inc);
+        } else {
+            Stats.incCounter(key, inc);
+        }
+    }
+
+    /**
+     * Records the time to open a connection to the given target host.
+     *
+     * @param hostname the name of the target host, not of the outgoing proxy.
+     * @param port the port of the target host.
+     * @param time the time to connect, in nanoseconds.
+     */
+    public void recordConnect(String hostname, int port, long time) {
+        Host host = getHost(hostname, port);
+        if (host != null) {
+            host.connectionsOpened.increment();
+            host.connect.record(TimeUnit.NANOSECONDS.toMicros(time));
+        }
+        Stats.incCounter(STATS_CONNECTIONS_OPENED);
+        Stats.incCounter(STATS_TIME_CONNECT, TimeUnit.NANOSECONDS.toMillis(time));
+    }
+
+    /**
+     * Records the time to do a TLS handshake with the given target host, directly or through a tunnel.
+     *
+     * @param hostname the name of the target host.
+     * @param port the port of the target host.
+     * @param time the time of the handshake, in nanoseconds.
+     */
+    public void recordTlsHandshake(String hostname, int port, long time) {
+        Host host = getHost(hostname, port);
+        if (host != null) {
+            host.tlsHandshake.record(TimeUnit.NANOSECONDS.toMicros(time));
+        }
+        Stats.incCounter(STATS_TIME_TLS_HANDSHAKE, TimeUnit.NANOSECONDS.toMillis(time));
+    }
+
+    private Host getHost(String hostname, int port) {
+        String key = (hostname != null ? hostname.toLowerCase(Locale.ROOT) : "") + ":" + port;
+        Host host = hosts.get(key);
+        if (host == null && hosts.size() < MAX_HOSTS) {
+            host = hosts.computeIfAbsent(key, Host::new);
+        }
+        return host;
+    }
+
+    /**
+     * Gets the metrics of the hosts.
+     *
+     * @return the metrics of the hosts, never {@code null}.
+     */
+    public List<HostMetrics> getHostMetrics() {
+        List<HostMetrics> metrics = new ArrayList<>(hosts.size());
+        for (Host host : hosts.values()) {
+            metrics.add(host.getMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * Discards the metrics of all hosts.
+     */
+    public void clear() {
+        hosts.clear();
+    }
+
+    private static class Latencies {
+
+        private final LatencyHistogram timeToFirstByte = new LatencyHistogram();
+        private final LatencyHistogram total = new LatencyHistogram();
+    }
+
+    private static class Host {
+
+        private final String name;
+        private final Map<Integer, Latencies> initiators;
+        private final LatencyHistogram connect;
+        private final LatencyHistogram tlsHandshake;
+        private final LongAdder requests;
+        private final LongAdder connectionsOpened;
+
+        Host(String name) {
+            this.name = name;
+            this.initiators = new ConcurrentHashMap<>();
+            this.connect = new LatencyHistogram();
+            this.tlsHandshake = new LatencyHistogram();
+            this.requests = new LongAdder();
+            this.connectionsOpened = new LongAdder();
+        }
+
+        Latencies getLatencies(int initiator) {
+            Latencies latencies = initiators.get(initiator);
+            if (latencies == null) {
+                latencies = initiators.computeIfAbsent(initiator, k -> new Latencies());
+            }
+            return latencies;
+        }
+
+        HostMetrics getMetrics() {
+            Map<Integer, LatencyHistogram> timesToFirstByte = new TreeMap<>();
+            Map<Integer, LatencyHistogram> totals = new TreeMap<>();
+            for (Map.Entry<Integer, Latencies> entry : initiators.entrySet()) {
+                timesToFirstByte.put(entry.getKey(), entry.getValue().timeToFirstByte);
+                totals.put(entry.getKey(), entry.getValue().total);
+            }
+            return new HostMetrics(
+                    name,
+                    requests.sum(),
+                    connectionsOpened.sum(),
+                    connect,
+                    tlsHandshake,
+                    timesToFirstByte,
+                    totals);
+        }
+    }
+
+    /**
+     * The metrics of a host.
+     */
+    public static final class HostMetrics {
+
+        private final String host;
+        private final long requests;
+        private final long connectionsOpened;
+        private final LatencyHistogram connect;
+        private final LatencyHistogram tlsHandshake;
+        private final Map<Integer, LatencyHistogram> timesToFirstByte;
+        private final Map<Integer, LatencyHistogram> totals;
+
+        HostMetrics(
+                String host,
+                long requests,
+                long connectionsOpened,
+                LatencyHistogram connect,
+                LatencyHistogram tlsHandshake,
+                Map<Integer, LatencyHistogram> timesToFirstByte,
+                Map<Integer, LatencyHistogram> totals) {
+            this.host = host;
+            this.requests = requests;
+            this.connectionsOpened = connectionsOpened;
+            this.connect = connect;
+            this.tlsHandshake = tlsHandshake;
+            this.timesToFirstByte = Collections.unmodifiableMap(timesToFirstByte);
+            this.totals = Collections.unmodifiableMap(totals);
+        }
+
+        /**
+         * Gets the host, in the form {@code hostname:port}.
+         *
+         * @return the host.
+         */
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * Gets the number of requests sent to the host.
+         *
+         * @return the number of requests.
+         */
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * Gets the number of connections opened to the host.
+         *
+         * @return the number of connections opened.
+         */
+        public long getConnectionsOpened() {
+            return connectionsOpened;
+        }
+
+        /**
+         * Gets the ratio of requests sent in connections already open.
+         *
+         * @return the ratio, between {@code 0} and {@code 1}, zero if no requests were sent.
+         */
+        public double getConnectionReuseRatio() {
+            if (requests == 0) {
+                return 0;
+            }
+            return Math.max(0, 1 - (double) connectionsOpened / requests);
+        }
+
+        /**
+         * Gets the histogram of the times to open the connections.
+         *
+         * @return the histogram, never {@code null}.
+         */
+        public LatencyHistogram getConnect() {
+            return connect;
+        }
+
+        /**
+         * Gets the histogram of the times of the TLS handshakes.
+         *
+         * @return the histogram, never {@code null}.
+         */
+        public LatencyHistogram getTlsHandshake() {
+            return tlsHandshake;
+        }
+
+        /**
+         * Gets the histograms of the times to receive the response headers, per initiator.
+         *
+         * @return an unmodifiable map with the initiators and the histograms, never {@code null}.
+         */
+        public Map<Integer, LatencyHistogram> getTimesToFirstByte() {
+            return timesToFirstByte;
+        }
+
+        /**
+         * Gets the histograms of the times to send the requests and receive the responses, per initiator.
+         *
+         * @return an unmodifiable map with the initiators and the histograms, never {@code null}.
+         */
+        public Map<Integer, LatencyHistogram> getTotals() {
+            return totals;
+        }
+    }
+}
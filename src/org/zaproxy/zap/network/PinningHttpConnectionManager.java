@@ -0,0 +1,212 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.HttpException;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+
+/**
+ * An {@link HttpConnectionManager} that obtains the connections from a shared {@link MultiThreadedHttpConnectionManager} and
+ * keeps them, one per host configuration, until shut down.
+ * <p>
+ * Used by a client connection of the proxy, all its requests to a host are sent through the same upstream connection, as
+ * required by connection-based authentication schemes (for example, NTLM and Negotiate), while the upstream connections are
+ * still reused by other client connections once the client connection is closed.
+ * <p>
+ * The connections requested while the connection kept for the host is in use are obtained from, and released to, the
+ * shared connection manager.
+ *
+ * @since TODO add version
+ * @see PooledHttpConnectionManager
+ */
+public class PinningHttpConnectionManager implements HttpConnectionManager {
+
+    private final MultiThreadedHttpConnectionManager sharedConnectionManager;
+    private final Map<HostConfiguration, PinnedConnection> connections;
+    private boolean shutdown;
+
+    /**
+     * Constructs a {@code PinningHttpConnectionManager} with the given shared connection manager.
+     *
+     * @param sharedConnectionManager the connection manager where the connections are obtained from.
+     * @throws IllegalArgumentException if {@code sharedConnectionManager} is {@code null}.
+     */
+    public PinningHttpConnectionManager(MultiThreadedHttpConnectionManager sharedConnectionManager) {
+        if (sharedConnectionManager == null) {
+            throw new IllegalArgumentException("Parameter sharedConnectionManager must not be null.");
+        }
+        this.sharedConnectionManager = sharedConnectionManager;
+        this.connections = new HashMap<>();
+    }
+
+    @Override
+    public HttpConnection getConnection(HostConfiguration hostConfiguration) {
+        try {
+            return getConnectionWithTimeout(hostConfiguration, 0);
+        } catch (ConnectionPoolTimeoutException e) {
+            // Does not happen, no timeout.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    @Deprecated
+    public HttpConnection getConnection(HostConfiguration hostConfiguration, long timeout) throws HttpException {
+        try {
+            return getConnectionWithTimeout(hostConfiguration, timeout);
+        } catch (ConnectionPoolTimeoutException e) {
+            throw new HttpException(e.getMessage());
+        }
+    }
+
+    @Override
+    public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout)
+            throws ConnectionPoolTimeoutException {
+        synchronized (this) {
+            PinnedConnection pinnedConnection = connections.get(hostConfiguration);
+            if (pinnedConnection != null && !pinnedConnection.inUse) {
+                pinnedConnection.inUse = true;
+                return pinnedConnection.connection;
+            }
+        }
+
+        HttpConnection connection = sharedConnectionManager.getConnectionWithTimeout(hostConfiguration, timeout);
+        synchronized (this) {
+            if (!shutdown && !connections.containsKey(hostConfiguration)) {
+                // Release the connection to this manager, to keep it.
+                connection.setHttpConnectionManager(this);
+                connections.put(new HostConfiguration(hostConfiguration), new PinnedConnection(connection));
+            }
+        }
+        return connection;
+    }
+
+    @Override
+    public synchronized void releaseConnection(HttpConnection connection) {
+        finishLastResponse(connection);
+
+        for (Iterator<Map.Entry<HostConfiguration, PinnedConnection>> it = connections.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<HostConfiguration, PinnedConnection> entry = it.next();
+            PinnedConnection pinnedConnection = entry.getValue();
+            if (pinnedConnection.inUse && isSameConnection(entry.getKey(), pinnedConnection, connection)) {
+                if (shutdown) {
+                    it.remove();
+                    break;
+                }
+                // The connection given out is replaced by the one released, the former might be just a wrapper.
+                pinnedConnection.connection = connection;
+                pinnedConnection.inUse = false;
+                return;
+            }
+        }
+
+        releaseToSharedConnectionManager(connection);
+    }
+
+    private static boolean isSameConnection(
+            HostConfiguration hostConfiguration,
+            PinnedConnection pinnedConnection,
+            HttpConnection connection) {
+        return pinnedConnection.connection == connection
+                || (hostConfiguration.hostEquals(connection) && hostConfiguration.proxyEquals(connection));
+    }
+
+    private static void finishLastResponse(HttpConnection connection) {
+        InputStream lastResponse = connection.getLastResponseInputStream();
+        if (lastResponse != null) {
+            connection.setLastResponseInputStream(null);
+            try {
+                lastResponse.close();
+            } catch (IOException e) {
+                connection.close();
+            }
+        }
+    }
+
+    private void releaseToSharedConnectionManager(HttpConnection connection) {
+        connection.setHttpConnectionManager(sharedConnectionManager);
+        sharedConnectionManager.releaseConnection(connection);
+    }
+
+    /**
+     * Gets the number of connections kept, in use or not.
+     *
+     * @return the number of connections kept.
+     */
+    public synchronized int getPinnedConnectionsCount() {
+        return connections.size();
+    }
+
+    @Override
+    public void closeIdleConnections(long idleTimeout) {
+        sharedConnectionManager.closeIdleConnections(idleTimeout);
+    }
+
+    @Override
+    public HttpConnectionManagerParams getParams() {
+        return sharedConnectionManager.getParams();
+    }
+
+    @Override
+    public void setParams(HttpConnectionManagerParams params) {
+        sharedConnectionManager.setParams(params);
+    }
+
+    /**
+     * Releases the connections kept back to the shared connection manager.
+     * <p>
+     * The connections still in use are closed, and released once no longer in use. The connections obtained afterwards are no
+     * longer kept.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        for (Iterator<PinnedConnection> it = connections.values().iterator(); it.hasNext();) {
+            PinnedConnection pinnedConnection = it.next();
+            if (pinnedConnection.inUse) {
+                pinnedConnection.connection.close();
+            } else {
+                it.remove();
+                releaseToSharedConnectionManager(pinnedConnection.connection);
+            }
+        }
+    }
+
+    private static class PinnedConnection {
+
+        private HttpConnection connection;
+        private boolean inUse;
+
+        PinnedConnection(HttpConnection connection) {
+            this.connection = connection;
+            this.inUse = true;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.network;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+
+/**
+ * A {@link MultiThreadedHttpConnectionManager} meant to be shared by several {@code HttpSender}s, for example, all the
+ * connections of a proxy server.
+ * <p>
+ * Allows to limit the number of connections per host, closes the connections that are idle for longer than a given time and
+ * keeps track of the connections reused (hits) and the connections that had to be opened (misses).
+ *
+ * @since TODO add version
+ * @see org.parosproxy.paros.network.HttpSender#HttpSender(org.parosproxy.paros.network.ConnectionParam, boolean, int,
+ *      MultiThreadedHttpConnectionManager)
+ */
+public class PooledHttpConnectionManager extends MultiThreadedHttpConnectionManager {
+
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+
+	private IdleConnectionTimeoutThread idleConnectionsEvictor;
+
+	/**
+	 * Constructs a {@code PooledHttpConnectionManager} with the given limits.
+	 *
+	 * @param maxConnectionsPerHost the maximum number of connections per host.
+	 * @param maxTotalConnections the maximum number of connections, for all hosts.
+	 * @param idleTimeoutInSecs the time, in seconds, that a connection can be idle before being closed, if zero or negative
+	 *            the idle connections are not closed.
+	 * @throws IllegalArgumentException if {@code maxConnectionsPerHost} or {@code maxTotalConnections} are not greater than
+	 *             zero.
+	 */
+	public PooledHttpConnectionManager(int maxConnectionsPerHost, int maxTotalConnections, int idleTimeoutInSecs) {
+		if (maxConnectionsPerHost <= 0) {
+			throw new IllegalArgumentException("Parameter maxConnectionsPerHost must be greater than zero.");
+		}
+		if (maxTotalConnections <= 0) {
+			throw new IllegalArgumentException("Parameter maxTotalConnections must be greater than zero.");
+		}
+
+		hits = new AtomicLong();
+		misses = new AtomicLong();
+
+		getParams().setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+		getParams().setMaxTotalConnections(maxTotalConnections);
+		getParams().setStaleCheckingEnabled(true);
+
+		if (idleTimeoutInSecs > 0) {
+			long idleTimeout = TimeUnit.SECONDS.toMillis(idleTimeoutInSecs);
+			idleConnectionsEvictor = new IdleConnectionTimeoutThread();
+			idleConnectionsEvictor.setName("ZAP-IdleConnectionsEvictor");
+			idleConnectionsEvictor.setConnectionTimeout(idleTimeout);
+			idleConnectionsEvictor.setTimeoutInterval(Math.max(1000, idleTimeout / 2));
+			idleConnectionsEvictor.addConnectionManager(this);
+			idleConnectionsEvictor.start();
+		}
+	}
+
+	@Override
+	public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout)
+			throws ConnectionPoolTimeoutException {
+		HttpConnection connection = super.getConnectionWithTimeout(hostConfiguration, timeout);
+		if (connection.isOpen()) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+		return connection;
+	}
+
+	/**
+	 * Gets the number of times that an already open connection was reused.
+	 *
+	 * @return the number of hits.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the number of times that a connection had to be opened, because none was available to reuse.
+	 *
+	 * @return the number of misses.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	@Override
+	public synchronized void shutdown() {
+		if (idleConnectionsEvictor != null) {
+			idleConnectionsEvictor.shutdown();
+			idleConnectionsEvictor = null;
+		}
+		super.shutdown();
+	}
+}
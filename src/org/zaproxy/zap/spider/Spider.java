@@ -18,9 +18,11 @@
 package org.zaproxy.zap.spider;
 
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
@@ -505,6 +507,8 @@ public class Spider {
 		// handled manually.
 		httpSender.setFollowRedirect(false);
 
+		prewarmConnections();
+
 		// Add the seeds
 		for (URI uri : seedList) {
 			if (log.isDebugEnabled()) {
@@ -516,6 +520,44 @@ public class Spider {
 		initialized = true;
 	}
 
+	/**
+	 * Opens the connections to the hosts of the seeds, if enabled, in one of the threads of the pool so that the crawl is not
+	 * delayed.
+	 * 
+	 * @see HttpSender#prewarmConnections(URI, int)
+	 */
+	private void prewarmConnections() {
+		int count = Math.min(connectionParam.getPrewarmConnections(), spiderParam.getThreadCount());
+		if (count <= 0) {
+			return;
+		}
+
+		Map<String, URI> hosts = new LinkedHashMap<>();
+		for (URI uri : seedList) {
+			try {
+				hosts.putIfAbsent(uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort(), uri);
+			} catch (URIException e) {
+				log.debug("Failed to extract the host of seed " + uri + ": " + e.getMessage());
+			}
+		}
+
+		HttpSender sender = httpSender;
+		threadPool.execute(() -> {
+			for (URI uri : hosts.values()) {
+				if (isStopped()) {
+					return;
+				}
+				try {
+					int open = sender.prewarmConnections(uri, count);
+					log.debug("Pre-warmed " + open + " connection(s) to the host of " + uri);
+				} catch (IllegalArgumentException | IllegalStateException e) {
+					// IllegalStateException if the spider was stopped (and the sender shutdown) meanwhile.
+					log.debug("Failed to pre-warm the connections to the host of " + uri + ": " + e.getMessage());
+				}
+			}
+		});
+	}
+
 	/**
 	 * Filters the seed list using the current fetch filters, preventing any non-valid seed from being accessed.
 	 * 
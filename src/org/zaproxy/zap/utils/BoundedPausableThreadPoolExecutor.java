@@ -0,0 +1,186 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.utils;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link PausableThreadPoolExecutor} with a fixed number of reusable worker threads and a bounded queue of tasks.
+ * <p>
+ * The submission of tasks blocks while all the threads are busy and the queue is full, instead of rejecting them, which
+ * allows to produce the tasks at the pace they are executed.
+ * <p>
+ * The worker threads are daemon threads, and terminate after being idle for some time.
+ *
+ * @since TODO add version
+ */
+public class BoundedPausableThreadPoolExecutor extends PausableThreadPoolExecutor {
+
+    private static final long KEEP_ALIVE_TIME_IN_SECS = 30;
+
+    private final int maxTasks;
+    private final Semaphore taskSlots;
+
+    /**
+     * Constructs a {@code BoundedPausableThreadPoolExecutor} with the given number of threads and queue capacity.
+     *
+     * @param threads the number of worker threads.
+     * @param queueCapacity the number of tasks that can wait for a free thread, zero to wait for a free thread on submission.
+     * @param threadsBaseName the base name of the worker threads, to which is appended the number of the thread.
+     * @throws IllegalArgumentException if {@code threads} is not positive or {@code queueCapacity} is negative.
+     */
+    public BoundedPausableThreadPoolExecutor(int threads, int queueCapacity, String threadsBaseName) {
+        super(
+                threads,
+                threads,
+                KEEP_ALIVE_TIME_IN_SECS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new WorkerThreadFactory(threadsBaseName));
+        if (queueCapacity < 0) {
+            throw new IllegalArgumentException("Parameter queueCapacity must not be negative.");
+        }
+        allowCoreThreadTimeOut(true);
+        this.maxTasks = threads + queueCapacity;
+        this.taskSlots = new Semaphore(maxTasks);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Blocks until the task can be queued.
+     *
+     * @throws RejectedExecutionException if the executor was shutdown or if interrupted while waiting.
+     * @see #execute(Runnable, long, TimeUnit)
+     */
+    @Override
+    public void execute(Runnable command) {
+        try {
+            taskSlots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting to queue the task.", e);
+        }
+        executeAcquired(command);
+    }
+
+    /**
+     * Executes the given task, waiting at most the given time for it to be queued.
+     * <p>
+     * Allows the caller to check if it should continue waiting, for example, if it was stopped.
+     *
+     * @param command the task to execute.
+     * @param timeout the maximum time to wait.
+     * @param unit the unit of the {@code timeout}.
+     * @return {@code true} if the task was queued, {@code false} if the time elapsed.
+     * @throws InterruptedException if interrupted while waiting.
+     * @throws RejectedExecutionException if the executor was shutdown.
+     */
+    public boolean execute(Runnable command, long timeout, TimeUnit unit) throws InterruptedException {
+        if (!taskSlots.tryAcquire(timeout, unit)) {
+            return false;
+        }
+        executeAcquired(command);
+        return true;
+    }
+
+    private void executeAcquired(Runnable command) {
+        try {
+            super.execute(() -> {
+                try {
+                    command.run();
+                } finally {
+                    taskSlots.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            taskSlots.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits, at most the given time, until all the tasks submitted are completed.
+     * <p>
+     * New tasks are not accepted while waiting.
+     *
+     * @param timeout the maximum time to wait.
+     * @param unit the unit of the {@code timeout}.
+     * @return {@code true} if all the tasks are completed, {@code false} if the time elapsed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitTasksCompleted(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!taskSlots.tryAcquire(maxTasks, timeout, unit)) {
+            return false;
+        }
+        taskSlots.release(maxTasks);
+        return true;
+    }
+
+    /**
+     * Gets the number of tasks waiting for a free thread.
+     *
+     * @return the number of tasks in the queue.
+     */
+    public int getQueueSize() {
+        return getQueue().size();
+    }
+
+    /**
+     * Gets the number of threads that are not executing tasks and would not be taken by the tasks already queued.
+     *
+     * @return the number of idle threads.
+     */
+    public int getIdleThreadCount() {
+        return Math.max(0, getMaximumPoolSize() - getActiveCount() - getQueueSize());
+    }
+
+    /**
+     * Gets the ratio of threads executing tasks.
+     *
+     * @return the ratio, between {@code 0} and {@code 1}.
+     */
+    public double getUtilisation() {
+        return (double) getActiveCount() / getMaximumPoolSize();
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final String threadsBaseName;
+        private final AtomicInteger threadNumber;
+
+        WorkerThreadFactory(String threadsBaseName) {
+            this.threadsBaseName = threadsBaseName;
+            this.threadNumber = new AtomicInteger();
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, threadsBaseName + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.core.proxy;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zaproxy.zap.extension.stats.InMemoryStats;
+import org.zaproxy.zap.utils.Stats;
+
+/**
+ * Unit test for {@link SerializationLocks}.
+ */
+public class SerializationLocksUnitTest {
+
+    private static final String HOST_A = "http://a.example.com";
+    private static final String HOST_B = "http://b.example.com";
+
+    private SerializationLocks serializationLocks;
+    private InMemoryStats stats;
+
+    @Before
+    public void setUp() {
+        serializationLocks = new SerializationLocks();
+        stats = new InMemoryStats();
+        Stats.addListener(stats);
+    }
+
+    @After
+    public void tearDown() {
+        Stats.removeListener(stats);
+    }
+
+    @Test
+    public void shouldNotLockIfNoKey() {
+        // Given
+        String key = null;
+        // When
+        SerializationLocks.Permit permit = serializationLocks.acquire(key);
+        permit.release();
+        // Then
+        assertThat(stats.getStat(SerializationLocks.STATS_SERIALIZED), is(nullValue()));
+    }
+
+    @Test
+    public void shouldNotWaitForLockOfOtherKey() throws Exception {
+        // Given
+        SerializationLocks.Permit permit = serializationLocks.acquire(HOST_A);
+        CountDownLatch acquired = new CountDownLatch(1);
+        // When
+        Thread thread = new Thread(() -> {
+            serializationLocks.acquire(HOST_B).release();
+            acquired.countDown();
+        });
+        thread.start();
+        // Then
+        assertThat(acquired.await(5, TimeUnit.SECONDS), is(equalTo(true)));
+        permit.release();
+        thread.join();
+    }
+
+    @Test
+    public void shouldWaitForLockOfSameKey() throws Exception {
+        // Given
+        SerializationLocks.Permit permit = serializationLocks.acquire(HOST_A);
+        CountDownLatch acquired = new CountDownLatch(1);
+        // When
+        Thread thread = new Thread(() -> {
+            serializationLocks.acquire(HOST_A).release();
+            acquired.countDown();
+        });
+        thread.start();
+        // Then
+        assertThat(acquired.await(200, TimeUnit.MILLISECONDS), is(equalTo(false)));
+        permit.release();
+        assertThat(acquired.await(5, TimeUnit.SECONDS), is(equalTo(true)));
+        thread.join();
+    }
+
+    @Test
+    public void shouldDiscardLockOnceReleased() {
+        // Given
+        SerializationLocks.Permit permit = serializationLocks.acquire(HOST_A);
+        // When
+        permit.release();
+        // Then
+        assertThat(serializationLocks.getUsers(HOST_A), is(equalTo(0)));
+    }
+
+    @Test
+    public void shouldRecordWaitTimePerSite() {
+        // Given
+        String key = HOST_A;
+        // When
+        serializationLocks.acquire(key).release();
+        // Then
+        assertThat(stats.getStat(HOST_A, SerializationLocks.STATS_SERIALIZED), is(notNullValue()));
+        assertThat(stats.getStat(HOST_A, SerializationLocks.STATS_WAIT_TIME), is(greaterThanOrEqualTo(0L)));
+        assertThat(stats.getStat(SerializationLocks.STATS_SERIALIZED), is(nullValue()));
+    }
+
+    @Test
+    public void shouldRecordWaitTimeGloballyForGlobalKey() {
+        // Given
+        String key = SerializationLocks.GLOBAL_KEY;
+        // When
+        serializationLocks.acquire(key).release();
+        // Then
+        assertThat(stats.getStat(SerializationLocks.STATS_SERIALIZED), is(notNullValue()));
+        assertThat(stats.getStat(SerializationLocks.STATS_WAIT_TIME), is(greaterThanOrEqualTo(0L)));
+    }
+}
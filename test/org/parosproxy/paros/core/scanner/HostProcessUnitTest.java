@@ -0,0 +1,238 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.core.scanner;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.httpclient.URI;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.parosproxy.paros.Constant;
+import org.parosproxy.paros.network.ConnectionParam;
+import org.parosproxy.paros.network.HttpMessage;
+import org.parosproxy.paros.network.HttpResponseHeader;
+import org.zaproxy.zap.extension.ascan.ScanPolicy;
+import org.zaproxy.zap.utils.BoundedPausableThreadPoolExecutor;
+import org.zaproxy.zap.utils.I18N;
+import org.zaproxy.zap.utils.ZapXmlConfiguration;
+
+/**
+ * Unit test for {@link HostProcess}.
+ */
+public class HostProcessUnitTest {
+
+    private static final List<String> SCANNED = Collections.synchronizedList(new ArrayList<>());
+
+    private ScannerParam scannerParam;
+    private BoundedPausableThreadPoolExecutor testsExecutor;
+
+    @Before
+    public void setUp() throws Exception {
+        I18N i18n = mock(I18N.class);
+        given(i18n.getString(anyString())).willReturn("");
+        given(i18n.getString(anyString(), anyObject())).willReturn("");
+        Constant.messages = i18n;
+
+        scannerParam = new ScannerParam();
+        scannerParam.load(new ZapXmlConfiguration());
+        scannerParam.setMaxRuleDurationInMins(1);
+        scannerParam.setThreadPerHost(1);
+
+        testsExecutor = new BoundedPausableThreadPoolExecutor(1, 1, "ZAP-HostProcessUnitTest-");
+        SCANNED.clear();
+    }
+
+    @After
+    public void tearDown() {
+        testsExecutor.shutdownNow();
+    }
+
+    @Test
+    public void shouldSkipPluginStartedLongerThanMaxRuleDuration() throws Exception {
+        // Given
+        scannerParam.setNodeBatchSize(0);
+        Plugin plugin = createPluginStartedTwoMinutesAgo();
+        HostProcess hostProcess = createHostProcess(plugin);
+        // When
+        boolean skipped = hostProcess.isSkipped(plugin);
+        // Then
+        assertThat(skipped, is(equalTo(true)));
+        assertThat(hostProcess.getPluginStats(plugin.getId()).isSkipped(), is(equalTo(true)));
+    }
+
+    @Test
+    public void shouldNotSkipPluginWaitingForOtherPluginsWhenScanningNodesInBatches() throws Exception {
+        // Given
+        scannerParam.setNodeBatchSize(10);
+        Plugin plugin = createPluginStartedTwoMinutesAgo();
+        HostProcess hostProcess = createHostProcess(plugin);
+        // When
+        boolean skipped = hostProcess.isSkipped(plugin);
+        // Then
+        assertThat(skipped, is(equalTo(false)));
+        assertThat(hostProcess.getPluginStats(plugin.getId()).isSkipped(), is(equalTo(false)));
+    }
+
+    @Test
+    public void shouldScanEachBatchOfNodesWithAllPluginsBeforeTheNextBatch() throws Exception {
+        // Given
+        scannerParam.setNodeBatchSize(2);
+        Plugin pluginA = createPlugin(new PluginA());
+        Plugin pluginB = createPlugin(new PluginB());
+        HostProcess hostProcess = createHostProcess(pluginA, pluginB);
+        for (int i = 1; i <= 3; i++) {
+            hostProcess.addMessageToScan(i, createMessage("/" + i));
+        }
+        // When
+        hostProcess.scanNodeBatches(Arrays.asList(pluginA, pluginB), 2);
+        // Then
+        assertThat(SCANNED, contains("A /1", "A /2", "B /1", "B /2", "A /3", "B /3"));
+        assertThat(hostProcess.getPluginStats(PluginA.ID).getProgress(), is(equalTo(3)));
+        assertThat(hostProcess.getPluginStats(PluginB.ID).getProgress(), is(equalTo(3)));
+        assertThat(hostProcess.getPluginStats(PluginA.ID).isSkipped(), is(equalTo(false)));
+    }
+
+    private static Plugin createPluginStartedTwoMinutesAgo() {
+        Plugin plugin = mock(Plugin.class);
+        given(plugin.getId()).willReturn(1);
+        given(plugin.getName()).willReturn("Plugin");
+        given(plugin.getTimeStarted()).willReturn(new Date(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(2)));
+        return plugin;
+    }
+
+    private static Plugin createPlugin(AbstractPlugin plugin) {
+        plugin.setConfig(new ZapXmlConfiguration());
+        return plugin;
+    }
+
+    private static HttpMessage createMessage(String path) throws Exception {
+        HttpMessage msg = new HttpMessage(new URI("http://example.com" + path, true));
+        msg.setResponseHeader(new HttpResponseHeader("HTTP/1.1 200 OK\r\n"));
+        return msg;
+    }
+
+    private HostProcess createHostProcess(Plugin... plugins) throws Exception {
+        PluginFactory pluginFactory = mock(PluginFactory.class);
+        given(pluginFactory.getPending()).willReturn(Arrays.asList(plugins));
+        given(pluginFactory.getDependentPlugins(any(Plugin.class))).willReturn(Collections.<Plugin> emptyList());
+        ScanPolicy scanPolicy = mock(ScanPolicy.class);
+        PluginFactory policyPluginFactory = mock(PluginFactory.class);
+        given(policyPluginFactory.clone()).willReturn(pluginFactory);
+        given(scanPolicy.getPluginFactory()).willReturn(policyPluginFactory);
+        Scanner scanner = mock(Scanner.class);
+        given(scanner.getTestsExecutor()).willReturn(testsExecutor);
+
+        ConnectionParam connectionParam = new ConnectionParam();
+        connectionParam.load(new ZapXmlConfiguration());
+
+        HostProcess hostProcess = new HostProcess(
+                "example.com:80",
+                scanner,
+                scannerParam,
+                connectionParam,
+                scanPolicy,
+                null);
+        hostProcess.initPluginStats();
+        return hostProcess;
+    }
+
+    /**
+     * A plugin that records the nodes scanned.
+     */
+    private abstract static class RecordingPlugin extends AbstractAppPlugin {
+
+        private final int id;
+        private final String name;
+
+        RecordingPlugin(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getDescription() {
+            return null;
+        }
+
+        @Override
+        public int getCategory() {
+            return 0;
+        }
+
+        @Override
+        public String getSolution() {
+            return null;
+        }
+
+        @Override
+        public String getReference() {
+            return null;
+        }
+
+        @Override
+        public void scan() {
+            SCANNED.add(name + " " + getBaseMsg().getRequestHeader().getURI().getEscapedPath());
+        }
+    }
+
+    public static class PluginA extends RecordingPlugin {
+
+        static final int ID = 1;
+
+        public PluginA() {
+            super(ID, "A");
+        }
+    }
+
+    public static class PluginB extends RecordingPlugin {
+
+        static final int ID = 2;
+
+        public PluginB() {
+            super(ID, "B");
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.core.scanner;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.parosproxy.paros.network.HttpMessage;
+import org.parosproxy.paros.network.HttpRequestHeader;
+
+/**
+ * Unit test for {@link InputVectors}.
+ */
+public class InputVectorsUnitTest {
+
+    @Test
+    public void shouldParseVariantOnceAndShareIt() throws Exception {
+        // Given
+        InputVectors inputVectors = new InputVectors();
+        HttpMessage message = createMessageWithCookies();
+        VariantCookie variant = new VariantCookie();
+        AtomicInteger exclusionChecks = new AtomicInteger();
+        InputVectors.ParsedVariant first = inputVectors.getVariant(variant, message, param -> {
+            exclusionChecks.incrementAndGet();
+            return false;
+        });
+        // When
+        InputVectors.ParsedVariant second = inputVectors.getVariant(new VariantCookie(), message, param -> true);
+        // Then
+        assertThat(second, is(sameInstance(first)));
+        assertThat(second.getVariant(), is(sameInstance(variant)));
+        assertThat(variant.getParamList().size(), is(equalTo(2)));
+        assertThat(exclusionChecks.get(), is(equalTo(2)));
+    }
+
+    @Test
+    public void shouldKeepExcludedParameters() throws Exception {
+        // Given
+        InputVectors inputVectors = new InputVectors();
+        // When
+        InputVectors.ParsedVariant parsedVariant = inputVectors
+                .getVariant(new VariantCookie(), createMessageWithCookies(), param -> "a".equals(param.getName()));
+        // Then
+        assertThat(parsedVariant.isExcluded(0), is(equalTo(true)));
+        assertThat(parsedVariant.isExcluded(1), is(equalTo(false)));
+    }
+
+    @Test
+    public void shouldNotShareVariantsThatChangeWhenSettingParameters() throws Exception {
+        // Given
+        InputVectors inputVectors = new InputVectors();
+        Variant variant = mock(Variant.class);
+        // When
+        InputVectors.ParsedVariant parsedVariant = inputVectors.getVariant(variant, createMessageWithCookies(), param -> false);
+        // Then
+        assertThat(InputVectors.isShareable(variant), is(equalTo(false)));
+        assertThat(parsedVariant, is(nullValue()));
+    }
+
+    private static HttpMessage createMessageWithCookies() throws Exception {
+        return new HttpMessage(new HttpRequestHeader("GET / HTTP/1.1\r\nHost: example.com\r\nCookie: a=1; b=2\r\n\r\n"));
+    }
+}
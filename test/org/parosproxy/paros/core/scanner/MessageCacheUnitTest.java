@@ -0,0 +1,140 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.core.scanner;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import org.parosproxy.paros.network.HttpMessage;
+import org.parosproxy.paros.network.HttpRequestHeader;
+
+/**
+ * Unit test for {@link MessageCache}.
+ */
+public class MessageCacheUnitTest {
+
+    private static final String REQUEST_HEADER = "GET / HTTP/1.1\r\nHost: example.com\r\n\r\n";
+
+    @Test
+    public void shouldGetCachedMessage() throws Exception {
+        // Given
+        MessageCache cache = new MessageCache(1024);
+        HttpMessage message = createMessage("Body");
+        // When
+        cache.put(1, message);
+        // Then
+        assertThat(cache.get(1), is(sameInstance(message)));
+        assertThat(cache.get(2), is(nullValue()));
+        assertThat(cache.getCount(), is(equalTo(1)));
+    }
+
+    @Test
+    public void shouldNotCacheMessageLargerThanMaxSize() throws Exception {
+        // Given
+        MessageCache cache = new MessageCache(10);
+        // When
+        cache.put(1, createMessage("Body"));
+        // Then
+        assertThat(cache.get(1), is(nullValue()));
+        assertThat(cache.getSize(), is(equalTo(0L)));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyAddedMessagesWhenFull() throws Exception {
+        // Given
+        HttpMessage message = createMessage("Body");
+        long messageSize = sizeOf(message);
+        MessageCache cache = new MessageCache(messageSize * 2);
+        cache.put(1, createMessage("Body"));
+        cache.put(2, message);
+        // When
+        cache.put(3, createMessage("Body"));
+        // Then
+        assertThat(cache.get(1), is(nullValue()));
+        assertThat(cache.get(2), is(sameInstance(message)));
+        assertThat(cache.get(3), is(notNullValue()));
+        assertThat(cache.getCount(), is(equalTo(2)));
+        assertThat(cache.getSize(), is(equalTo(messageSize * 2)));
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedMessagesWhenFull() throws Exception {
+        // Given
+        HttpMessage message = createMessage("Body");
+        long messageSize = sizeOf(message);
+        MessageCache cache = new MessageCache(messageSize * 2);
+        cache.put(1, message);
+        cache.put(2, createMessage("Body"));
+        cache.get(1);
+        // When
+        cache.put(3, createMessage("Body"));
+        // Then
+        assertThat(cache.get(1), is(sameInstance(message)));
+        assertThat(cache.get(2), is(nullValue()));
+        assertThat(cache.get(3), is(notNullValue()));
+        assertThat(cache.getCount(), is(equalTo(2)));
+    }
+
+    @Test
+    public void shouldRemoveMessage() throws Exception {
+        // Given
+        MessageCache cache = new MessageCache(1024);
+        cache.put(1, createMessage("Body"));
+        cache.put(2, createMessage("Body"));
+        long size = cache.getSize();
+        // When
+        cache.remove(1);
+        // Then
+        assertThat(cache.get(1), is(nullValue()));
+        assertThat(cache.get(2), is(notNullValue()));
+        assertThat(cache.getCount(), is(equalTo(1)));
+        assertThat(cache.getSize(), is(equalTo(size / 2)));
+    }
+
+    @Test
+    public void shouldRemoveAllMessagesOnClear() throws Exception {
+        // Given
+        MessageCache cache = new MessageCache(1024);
+        cache.put(1, createMessage("Body"));
+        // When
+        cache.clear();
+        // Then
+        assertThat(cache.get(1), is(nullValue()));
+        assertThat(cache.getCount(), is(equalTo(0)));
+        assertThat(cache.getSize(), is(equalTo(0L)));
+    }
+
+    private static long sizeOf(HttpMessage message) {
+        MessageCache cache = new MessageCache(Long.MAX_VALUE);
+        cache.put(1, message);
+        return cache.getSize();
+    }
+
+    private static HttpMessage createMessage(String body) throws Exception {
+        HttpMessage message = new HttpMessage(new HttpRequestHeader(REQUEST_HEADER));
+        message.setRequestBody(body);
+        return message;
+    }
+}
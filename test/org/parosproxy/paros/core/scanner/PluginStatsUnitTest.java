@@ -0,0 +1,90 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.core.scanner;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link PluginStats}.
+ */
+public class PluginStatsUnitTest {
+
+    private static final long DELAY = 100;
+
+    @Test
+    public void shouldHaveNoRunTimeIfNoTestsRun() {
+        // Given
+        PluginStats pluginStats = new PluginStats("Plugin");
+        pluginStats.start();
+        // When
+        long runTime = pluginStats.getRunTime();
+        // Then
+        assertThat(runTime, is(equalTo(0L)));
+    }
+
+    @Test
+    public void shouldCountRunTimeWhileTestsRun() throws Exception {
+        // Given
+        PluginStats pluginStats = new PluginStats("Plugin");
+        pluginStats.testStarted();
+        // When
+        Thread.sleep(DELAY);
+        long runningTime = pluginStats.getRunTime();
+        pluginStats.testFinished();
+        // Then
+        assertThat(runningTime, is(greaterThanOrEqualTo(DELAY)));
+        assertThat(pluginStats.getRunTime(), is(greaterThanOrEqualTo(runningTime)));
+    }
+
+    @Test
+    public void shouldCountRunTimeOfConcurrentTestsOnce() throws Exception {
+        // Given
+        PluginStats pluginStats = new PluginStats("Plugin");
+        // When
+        pluginStats.testStarted();
+        pluginStats.testStarted();
+        Thread.sleep(DELAY);
+        pluginStats.testFinished();
+        pluginStats.testFinished();
+        // Then
+        assertThat(pluginStats.getRunTime(), is(greaterThanOrEqualTo(DELAY)));
+        assertThat(pluginStats.getRunTime(), is(lessThan(2 * DELAY)));
+    }
+
+    @Test
+    public void shouldNotCountTimeWithoutTestsRunning() throws Exception {
+        // Given
+        PluginStats pluginStats = new PluginStats("Plugin");
+        pluginStats.testStarted();
+        pluginStats.testFinished();
+        // When
+        Thread.sleep(DELAY);
+        pluginStats.testStarted();
+        pluginStats.testFinished();
+        // Then
+        assertThat(pluginStats.getRunTime(), is(lessThan(DELAY)));
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.extension.history;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.parosproxy.paros.db.DatabaseException;
+import org.parosproxy.paros.db.RecordHistory;
+import org.parosproxy.paros.db.TableAlert;
+import org.parosproxy.paros.db.TableHistory;
+import org.parosproxy.paros.db.TableTag;
+import org.parosproxy.paros.model.HistoryReference;
+import org.parosproxy.paros.model.Session;
+import org.parosproxy.paros.network.HttpMessage;
+import org.parosproxy.paros.network.HttpRequestHeader;
+
+/**
+ * Unit test for {@link HistoryBatchWriter}.
+ */
+public class HistoryBatchWriterUnitTest {
+
+    private static final long SESSION_ID = 1234;
+
+    private TableHistory tableHistory;
+    private Session session;
+    private HistoryBatchWriter writer;
+
+    @Before
+    public void setUp() throws Exception {
+        tableHistory = mock(TableHistory.class);
+        when(tableHistory.write(anyLong(), any(int[].class), any(HttpMessage[].class))).thenAnswer(new Answer<int[]>() {
+
+            private int lastId;
+
+            @Override
+            public int[] answer(InvocationOnMock invocation) throws Throwable {
+                int[] ids = new int[((int[]) invocation.getArguments()[1]).length];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = ++lastId;
+                }
+                return ids;
+            }
+        });
+        HistoryReference.setTableHistory(tableHistory);
+        HistoryReference.setTableTag(mock(TableTag.class));
+        HistoryReference.setTableAlert(mock(TableAlert.class));
+
+        session = mock(Session.class);
+        when(session.getSessionId()).thenReturn(SESSION_ID);
+    }
+
+    @After
+    public void tearDown() {
+        if (writer != null) {
+            writer.stop();
+        }
+        HistoryReference.setTableHistory(null);
+        HistoryReference.setTableTag(null);
+        HistoryReference.setTableAlert(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailToCreateWithNonPositiveQueueSize() {
+        // Given
+        int queueSize = 0;
+        // When
+        new HistoryBatchWriter("Test", queueSize, 10);
+        // Then = IllegalArgumentException
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailToCreateWithNonPositiveBatchSize() {
+        // Given
+        int batchSize = 0;
+        // When
+        new HistoryBatchWriter("Test", 10, batchSize);
+        // Then = IllegalArgumentException
+    }
+
+    @Test
+    public void shouldPersistMessagesAndNotifyCallbacksInOrder() throws Exception {
+        // Given
+        writer = new HistoryBatchWriter("Test");
+        List<HttpMessage> messages = createMessages(50);
+        List<Integer> historyIds = Collections.synchronizedList(new ArrayList<Integer>());
+        List<HttpMessage> persistedMessages = Collections.synchronizedList(new ArrayList<HttpMessage>());
+        // When
+        for (HttpMessage message : messages) {
+            writer.write(session, HistoryReference.TYPE_PROXIED, message, (historyRef, msg) -> {
+                historyIds.add(historyRef.getHistoryId());
+                persistedMessages.add(msg);
+            });
+        }
+        writer.stop();
+        // Then
+        assertThat(persistedMessages, is(equalTo(messages)));
+        for (int i = 0; i < historyIds.size(); i++) {
+            assertThat(historyIds.get(i), is(equalTo(i + 1)));
+            assertThat(messages.get(i).getHistoryRef().getHistoryId(), is(equalTo(i + 1)));
+        }
+        verify(tableHistory, atLeastOnce()).write(anyLong(), any(int[].class), any(HttpMessage[].class));
+    }
+
+    @Test
+    public void shouldPersistAllQueuedMessagesOnFlush() throws Exception {
+        // Given
+        writer = new HistoryBatchWriter("Test", 5, 2);
+        List<HttpMessage> messages = createMessages(20);
+        // When
+        for (HttpMessage message : messages) {
+            writer.write(session, HistoryReference.TYPE_PROXIED, message, null);
+        }
+        writer.flush();
+        // Then
+        for (HttpMessage message : messages) {
+            assertThat(message.getHistoryRef().getSessionId(), is(equalTo(SESSION_ID)));
+        }
+    }
+
+    @Test
+    public void shouldPersistMessagesOneByOneIfBatchFails() throws Exception {
+        // Given
+        doThrow(new DatabaseException("Batch failed.")).when(tableHistory)
+                .write(anyLong(), any(int[].class), any(HttpMessage[].class));
+        HttpMessage message = createMessages(1).get(0);
+        RecordHistory recordHistory = mock(RecordHistory.class);
+        when(recordHistory.getHistoryId()).thenReturn(42);
+        when(recordHistory.getHistoryType()).thenReturn(HistoryReference.TYPE_PROXIED);
+        when(tableHistory.write(anyLong(), anyInt(), any(HttpMessage.class))).thenReturn(recordHistory);
+        List<HistoryReference> historyRefs = Collections.synchronizedList(new ArrayList<HistoryReference>());
+        writer = new HistoryBatchWriter("Test");
+        // When
+        writer.write(session, HistoryReference.TYPE_PROXIED, message, (historyRef, msg) -> historyRefs.add(historyRef));
+        writer.stop();
+        // Then
+        assertThat(historyRefs.size(), is(equalTo(1)));
+        assertThat(historyRefs.get(0).getHistoryId(), is(equalTo(42)));
+        assertThat(message.getHistoryRef(), is(sameInstance(historyRefs.get(0))));
+    }
+
+    @Test
+    public void shouldRestartAfterStopped() throws Exception {
+        // Given
+        writer = new HistoryBatchWriter("Test");
+        writer.stop();
+        HttpMessage message = createMessages(1).get(0);
+        List<Integer> historyIds = Collections.synchronizedList(new ArrayList<Integer>());
+        // When
+        writer.write(session, HistoryReference.TYPE_PROXIED, message, (historyRef, msg) -> historyIds.add(historyRef.getHistoryId()));
+        writer.stop();
+        // Then
+        assertThat(historyIds, contains(1));
+    }
+
+    private static List<HttpMessage> createMessages(int count) throws Exception {
+        List<HttpMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            messages.add(new HttpMessage(new HttpRequestHeader("GET http://example.com/" + i + " HTTP/1.1")));
+        }
+        return messages;
+    }
+}
@@ -27,8 +27,10 @@ import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
+import org.junit.After;
 import org.junit.Test;
 import org.zaproxy.zap.network.HttpBodyTestUtils;
 
@@ -37,6 +39,11 @@ import org.zaproxy.zap.network.HttpBodyTestUtils;
  */
 public class HttpBodyUnitTest extends HttpBodyTestUtils {
 
+    @After
+    public void tearDown() {
+        HttpBody.setSpillThreshold(0);
+    }
+
     @Test
     public void shouldHaveZeroLengthByDefault() {
         // Given
@@ -639,6 +646,65 @@ public class HttpBodyUnitTest extends HttpBodyTestUtils {
         assertThat(httpBody.toString(), is(equalTo("")));
     }
 
+    @Test
+    public void shouldAppendManyByteArrayChunks() {
+        // Given
+        HttpBody httpBody = new HttpBodyImpl();
+        byte[] chunk = { 1, 2, 3 };
+        byte[] expectedBytes = new byte[chunk.length * 1000];
+        for (int i = 0; i < 1000; i++) {
+            System.arraycopy(chunk, 0, expectedBytes, i * chunk.length, chunk.length);
+        }
+        // When
+        for (int i = 0; i < 1000; i++) {
+            httpBody.append(chunk);
+        }
+        // Then
+        assertThat(httpBody.length(), is(equalTo(expectedBytes.length)));
+        assertThat(httpBody.getBytes(), is(equalTo(expectedBytes)));
+        assertThat(httpBody.getBytes().length, is(equalTo(expectedBytes.length)));
+    }
+
+    @Test
+    public void shouldReturnSameBytesInstanceOnConsecutiveCalls() {
+        // Given
+        HttpBody httpBody = new HttpBodyImpl();
+        httpBody.append(new byte[] { 1, 2, 3 });
+        httpBody.append(new byte[] { 4, 5 });
+        // When
+        byte[] bytes1 = httpBody.getBytes();
+        byte[] bytes2 = httpBody.getBytes();
+        // Then
+        assertThat(bytes2, is(sameInstance(bytes1)));
+    }
+
+    @Test
+    public void shouldAppendAfterGettingBytes() {
+        // Given
+        HttpBody httpBody = new HttpBodyImpl();
+        httpBody.append(new byte[] { 1, 2, 3 });
+        httpBody.getBytes();
+        // When
+        httpBody.append(new byte[] { 4, 5 });
+        // Then
+        assertThat(httpBody.length(), is(equalTo(5)));
+        assertThat(httpBody.getBytes(), is(equalTo(new byte[] { 1, 2, 3, 4, 5 })));
+    }
+
+    @Test
+    public void shouldExpandWithZerosAfterTruncatingAppendedBody() {
+        // Given
+        HttpBody httpBody = new HttpBodyImpl();
+        httpBody.append(new byte[] { 1, 2, 3, 4, 5 });
+        httpBody.setLength(2);
+        // When
+        httpBody.setLength(4);
+        // Then
+        assertThat(httpBody.length(), is(equalTo(4)));
+        assertThat(httpBody.getBytes(), is(equalTo(new byte[] { 1, 2, 0, 0 })));
+        assertThat(httpBody.toString(), is(equalTo("\1\2")));
+    }
+
     @Test
     public void shouldReturnSameInstanceStringRepresentationOnConsecutiveCalls() {
         // Given
@@ -688,6 +754,60 @@ public class HttpBodyUnitTest extends HttpBodyTestUtils {
         assertThat(httpBody, is(not(equalTo(otherDifferentHttpBody))));
     }
 
+    @Test
+    public void shouldKeepContentsInMemoryIfSpillThresholdNotSet() {
+        // Given
+        HttpBody httpBody = new HttpBodyImpl();
+        // When
+        httpBody.append(new byte[1024]);
+        // Then
+        assertThat(httpBody.isSpilled(), is(equalTo(false)));
+    }
+
+    @Test
+    public void shouldSpillContentsAppendedBeyondThreshold() {
+        // Given
+        HttpBody.setSpillThreshold(4);
+        HttpBody httpBody = new HttpBodyImpl();
+        // When
+        httpBody.append("ABC");
+        boolean spilledBefore = httpBody.isSpilled();
+        httpBody.append("DEF");
+        // Then
+        assertThat(spilledBefore, is(equalTo(false)));
+        assertThat(httpBody.isSpilled(), is(equalTo(true)));
+        assertThat(httpBody.length(), is(equalTo(6)));
+        assertThat(httpBody.getBytes(), is(equalTo("ABCDEF".getBytes(StandardCharsets.ISO_8859_1))));
+        assertThat(httpBody.toString(), is(equalTo("ABCDEF")));
+    }
+
+    @Test
+    public void shouldTruncateSpilledContents() {
+        // Given
+        HttpBody.setSpillThreshold(1);
+        HttpBody httpBody = new HttpBodyImpl();
+        httpBody.append("ABCDEF");
+        // When
+        httpBody.setLength(2);
+        // Then
+        assertThat(httpBody.isSpilled(), is(equalTo(true)));
+        assertThat(httpBody.getBytes(), is(equalTo("AB".getBytes(StandardCharsets.ISO_8859_1))));
+        assertThat(httpBody.toString(), is(equalTo("AB")));
+    }
+
+    @Test
+    public void shouldKeepContentsInMemoryAfterSettingBody() {
+        // Given
+        HttpBody.setSpillThreshold(1);
+        HttpBody httpBody = new HttpBodyImpl();
+        httpBody.append("ABCDEF");
+        // When
+        httpBody.setBody("XYZ");
+        // Then
+        assertThat(httpBody.isSpilled(), is(equalTo(false)));
+        assertThat(httpBody.toString(), is(equalTo("XYZ")));
+    }
+
     @Test
     public void shouldNotBeEqualToDifferentHttpBodyImplementation() {
         // Given
@@ -716,6 +836,49 @@ public class HttpBodyUnitTest extends HttpBodyTestUtils {
         assertThat(httpBody.hashCode(), is(not(equalTo(otherHttpBody.hashCode()))));
     }
 
+    @Test
+    public void shouldNotChangeOtherBodyWhenSharingItsContents() {
+        // Given
+        HttpBody other = new HttpBodyImpl();
+        other.append(new byte[] { 1, 2 });
+        other.append(new byte[] { 3 });
+        HttpBody httpBody = new HttpBodyImpl();
+        // When
+        httpBody.setSharedBody(other);
+        httpBody.append(new byte[] { 4 });
+        // Then
+        assertThat(httpBody.getBytes(), is(equalTo(new byte[] { 1, 2, 3, 4 })));
+        assertThat(other.length(), is(equalTo(3)));
+        assertThat(other.getBytes(), is(equalTo(new byte[] { 1, 2, 3 })));
+    }
+
+    @Test
+    public void shouldCopyContentsOnModificationAfterBeingShared() {
+        // Given
+        HttpBody httpBody = new HttpBodyImpl(new byte[] { 1, 2, 3 });
+        HttpBody other = new HttpBodyImpl();
+        other.setSharedBody(httpBody);
+        // When
+        httpBody.setLength(2);
+        httpBody.append(new byte[] { 9 });
+        // Then
+        assertThat(httpBody.getBytes(), is(equalTo(new byte[] { 1, 2, 9 })));
+        assertThat(other.getBytes(), is(equalTo(new byte[] { 1, 2, 3 })));
+    }
+
+    @Test
+    public void shouldNotGetContentsSharedWithOtherBody() {
+        // Given
+        HttpBody other = new HttpBodyImpl(new byte[] { 1, 2, 3 });
+        HttpBody httpBody = new HttpBodyImpl();
+        httpBody.setSharedBody(other);
+        // When
+        httpBody.getBytes()[0] = 9;
+        // Then
+        assertThat(httpBody.getBytes(), is(equalTo(new byte[] { 9, 2, 3 })));
+        assertThat(other.getBytes(), is(equalTo(new byte[] { 1, 2, 3 })));
+    }
+
     private static class HttpBodyImpl extends HttpBody {
 
         private boolean determineCharsetCalled;
@@ -0,0 +1,252 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.network;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link HttpHeader}.
+ */
+public class HttpHeaderUnitTest {
+
+    private static final String STATUS_LINE = "HTTP/1.1 200 OK";
+
+    @Test
+    public void shouldKeepOrderOfParsedHeaders() throws Exception {
+        // Given
+        HttpHeader header = createHeader("B: 1", "A: 2", "C: 3");
+        // When
+        String headers = header.getHeadersAsString();
+        // Then
+        assertThat(headers, is(equalTo("B: 1\r\nA: 2\r\nC: 3\r\n")));
+        assertThat(names(header.getHeaders()), contains("B", "A", "C"));
+    }
+
+    @Test
+    public void shouldGetHeaderIgnoringCase() throws Exception {
+        // Given
+        HttpHeader header = createHeader("Content-Type: text/html", "x-custom: value");
+        // When / Then
+        assertThat(header.getHeader("content-type"), is(equalTo("text/html")));
+        assertThat(header.getHeader(HttpHeader.CONTENT_TYPE), is(equalTo("text/html")));
+        assertThat(header.getHeader("X-Custom"), is(equalTo("value")));
+        assertThat(header.getHeader("X-Missing"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldAddHeaderToTheEnd() throws Exception {
+        // Given
+        HttpHeader header = createHeader("A: 1", "B: 2");
+        header.getHeadersAsString();
+        // When
+        header.addHeader("A", "3");
+        // Then
+        assertThat(header.getHeadersAsString(), is(equalTo("A: 1\r\nB: 2\r\nA: 3\r\n")));
+        assertThat(header.getHeaders("A"), contains("1", "3"));
+    }
+
+    @Test
+    public void shouldReplaceHeaderInPlace() throws Exception {
+        // Given
+        HttpHeader header = createHeader("A: 1", "B: 2", "C: 3");
+        header.getHeadersAsString();
+        // When
+        header.setHeader("b", "new");
+        // Then
+        assertThat(header.getHeadersAsString(), is(equalTo("A: 1\r\nb: new\r\nC: 3\r\n")));
+        assertThat(header.getHeader("B"), is(equalTo("new")));
+        assertThat(header.toString(), is(equalTo(STATUS_LINE + "\r\nA: 1\r\nb: new\r\nC: 3\r\n\r\n")));
+    }
+
+    @Test
+    public void shouldReplaceAllOccurrencesOfHeader() throws Exception {
+        // Given
+        HttpHeader header = createHeader("A: 1", "B: 2", "a: 3");
+        // When
+        header.setHeader("A", "new");
+        // Then
+        assertThat(header.getHeadersAsString(), is(equalTo("A: new\r\nB: 2\r\nA: new\r\n")));
+        assertThat(header.getHeaders("A"), contains("new"));
+    }
+
+    @Test
+    public void shouldAppendHeaderSetIfNotPresent() throws Exception {
+        // Given
+        HttpHeader header = createHeader("A: 1");
+        // When
+        header.setHeader("B", "2");
+        // Then
+        assertThat(header.getHeadersAsString(), is(equalTo("A: 1\r\nB: 2\r\n")));
+    }
+
+    @Test
+    public void shouldRemoveAllOccurrencesOfHeaderSetToNull() throws Exception {
+        // Given
+        HttpHeader header = createHeader("A: 1", "Transfer-Encoding: chunked", "B: 2", "transfer-encoding: gzip");
+        header.getHeadersAsString();
+        // When
+        header.setHeader(HttpHeader.TRANSFER_ENCODING, null);
+        // Then
+        assertThat(header.getHeadersAsString(), is(equalTo("A: 1\r\nB: 2\r\n")));
+        assertThat(header.getHeader(HttpHeader.TRANSFER_ENCODING), is(nullValue()));
+    }
+
+    @Test
+    public void shouldIgnoreRemovalOfHeaderNotPresent() throws Exception {
+        // Given
+        HttpHeader header = createHeader("A: 1");
+        // When
+        header.setHeader("B", null);
+        // Then
+        assertThat(header.getHeadersAsString(), is(equalTo("A: 1\r\n")));
+        assertThat(header.getHeader("B"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldUpdateContentLengthInPlace() throws Exception {
+        // Given
+        HttpHeader header = createHeader("Content-Length: 10", "A: 1");
+        // When
+        header.setContentLength(20);
+        // Then
+        assertThat(header.getContentLength(), is(equalTo(20)));
+        assertThat(header.getHeadersAsString(), is(equalTo("Content-Length: 20\r\nA: 1\r\n")));
+    }
+
+    @Test
+    public void shouldHaveNoHeadersAfterClear() throws Exception {
+        // Given
+        HttpHeader header = createHeader("A: 1");
+        // When
+        header.clear();
+        // Then
+        assertThat(header.getHeadersAsString(), is(equalTo("")));
+        assertThat(header.getHeaders().size(), is(equalTo(0)));
+        assertThat(header.getHeader("A"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldReturnCopyOfHeaderValues() throws Exception {
+        // Given
+        HttpHeader header = createHeader("A: 1");
+        // When
+        Vector<String> values = header.getHeaders("A");
+        values.add("2");
+        // Then
+        assertThat(header.getHeaders("A"), contains("1"));
+        assertThat(header.getHeadersAsString(), is(equalTo("A: 1\r\n")));
+    }
+
+    @Test
+    public void shouldNotChangeCopyWhenModifyingOriginal() throws Exception {
+        // Given
+        HttpResponseHeader header = createHeader("A: 1", "B: 2");
+        HttpResponseHeader copy = new HttpResponseHeader(header);
+        // When
+        header.setHeader("A", "changed");
+        header.addHeader("B", "3");
+        // Then
+        assertThat(copy.getHeadersAsString(), is(equalTo("A: 1\r\nB: 2\r\n")));
+        assertThat(copy.getHeaders("B"), contains("2"));
+        assertThat(header.getHeadersAsString(), is(equalTo("A: changed\r\nB: 2\r\nB: 3\r\n")));
+    }
+
+    @Test
+    public void shouldNotChangeOriginalWhenModifyingCopy() throws Exception {
+        // Given
+        HttpResponseHeader header = createHeader("A: 1", "B: 2");
+        HttpResponseHeader copy = new HttpResponseHeader(header);
+        // When
+        copy.setHeader("A", null);
+        copy.addHeader("C", "3");
+        // Then
+        assertThat(header.getHeadersAsString(), is(equalTo("A: 1\r\nB: 2\r\n")));
+        assertThat(header.getHeader("C"), is(nullValue()));
+        assertThat(copy.getHeadersAsString(), is(equalTo("B: 2\r\nC: 3\r\n")));
+        assertThat(copy.getHeader("A"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldCopyAndModifyHeaderConcurrently() throws Exception {
+        // Given
+        HttpResponseHeader header = createHeader("A: 1", "B: 2");
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<String>> results = new ArrayList<>();
+        // When
+        for (int i = 0; i < threads; i++) {
+            String value = Integer.toString(i);
+            results.add(executor.submit(new Callable<String>() {
+
+                @Override
+                public String call() throws Exception {
+                    String headers = null;
+                    for (int j = 0; j < 1000; j++) {
+                        HttpResponseHeader copy = new HttpResponseHeader(header);
+                        copy.getHeaders("A");
+                        copy.setHeader("A", value);
+                        copy.addHeader("C", value);
+                        headers = copy.getHeadersAsString();
+                    }
+                    return headers;
+                }
+            }));
+        }
+        executor.shutdown();
+        // Then
+        for (int i = 0; i < threads; i++) {
+            assertThat(results.get(i).get(5, TimeUnit.SECONDS), is(equalTo("A: " + i + "\r\nB: 2\r\nC: " + i + "\r\n")));
+        }
+        assertThat(header.getHeadersAsString(), is(equalTo("A: 1\r\nB: 2\r\n")));
+        assertThat(header.getHeaders("A"), contains("1"));
+        assertThat(header.getHeader("C"), is(nullValue()));
+    }
+
+    private static HttpResponseHeader createHeader(String... fields) throws Exception {
+        StringBuilder strBuilder = new StringBuilder(STATUS_LINE).append("\r\n");
+        for (String field : fields) {
+            strBuilder.append(field).append("\r\n");
+        }
+        return new HttpResponseHeader(strBuilder.append("\r\n").toString());
+    }
+
+    private static List<String> names(List<HttpHeaderField> fields) {
+        List<String> names = new ArrayList<>(fields.size());
+        for (HttpHeaderField field : fields) {
+            names.add(field.getName());
+        }
+        return names;
+    }
+}
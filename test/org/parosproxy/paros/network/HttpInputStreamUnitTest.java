@@ -0,0 +1,150 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.network;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link HttpInputStream}.
+ */
+public class HttpInputStreamUnitTest {
+
+    @Test
+    public void shouldReadHeaderWithCrLfLineSeparators() throws Exception {
+        // Given
+        String header = "GET http://example.com/ HTTP/1.1\r\nHost: example.com\r\n\r\n";
+        HttpInputStream httpIn = createHttpInputStream(header);
+        // When
+        String readHeader = httpIn.readHeader();
+        // Then
+        assertThat(readHeader, is(equalTo(header)));
+    }
+
+    @Test
+    public void shouldReadHeaderWithLfLineSeparators() throws Exception {
+        // Given
+        String header = "GET http://example.com/ HTTP/1.1\nHost: example.com\n\n";
+        HttpInputStream httpIn = createHttpInputStream(header);
+        // When
+        String readHeader = httpIn.readHeader();
+        // Then
+        assertThat(readHeader, is(equalTo(header)));
+    }
+
+    @Test
+    public void shouldNotReadBodyAfterHeader() throws Exception {
+        // Given
+        String header = "HTTP/1.1 200 OK\r\nContent-Length: 4\r\n\r\n";
+        HttpInputStream httpIn = createHttpInputStream(header + "Body\r\n\r\nMore");
+        // When
+        String readHeader = httpIn.readHeader();
+        // Then
+        assertThat(readHeader, is(equalTo(header)));
+        byte[] body = new byte[4];
+        assertThat(httpIn.read(body), is(equalTo(4)));
+        assertThat(new String(body, StandardCharsets.US_ASCII), is(equalTo("Body")));
+    }
+
+    @Test
+    public void shouldReadConsecutiveHeaders() throws Exception {
+        // Given
+        String header1 = "GET http://example.com/1 HTTP/1.1\r\n\r\n";
+        String header2 = "GET http://example.com/2 HTTP/1.1\r\n\r\n";
+        HttpInputStream httpIn = createHttpInputStream(header1 + header2);
+        // When
+        String readHeader1 = httpIn.readHeader();
+        String readHeader2 = httpIn.readHeader();
+        // Then
+        assertThat(readHeader1, is(equalTo(header1)));
+        assertThat(readHeader2, is(equalTo(header2)));
+    }
+
+    @Test
+    public void shouldReadHeaderLargerThanBuffer() throws Exception {
+        // Given
+        StringBuilder strBuilder = new StringBuilder("HTTP/1.1 200 OK\r\n");
+        for (int i = 0; i < 1000; i++) {
+            strBuilder.append("X-Header-").append(i).append(": Value ").append(i).append("\r\n");
+        }
+        String header = strBuilder.append("\r\n").toString();
+        HttpInputStream httpIn = createHttpInputStream(header + "Body");
+        // When
+        String readHeader = httpIn.readHeader();
+        // Then
+        assertThat(readHeader, is(equalTo(header)));
+    }
+
+    @Test
+    public void shouldReadHeaderReceivedInParts() throws Exception {
+        // Given
+        String header = "HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n";
+        InputStream parts = new SequenceInputStream(
+                new ByteArrayInputStream(header.substring(0, 17).getBytes(StandardCharsets.ISO_8859_1)),
+                new ByteArrayInputStream(header.substring(17).getBytes(StandardCharsets.ISO_8859_1)));
+        HttpInputStream httpIn = createHttpInputStream(parts);
+        // When
+        String readHeader = httpIn.readHeader();
+        // Then
+        assertThat(readHeader, is(equalTo(header)));
+    }
+
+    @Test
+    public void shouldReadHeaderWithNonAsciiCharacters() throws Exception {
+        // Given
+        String header = "HTTP/1.1 200 OK\r\nX-Header: \u00e9\u00ff\r\n\r\n";
+        HttpInputStream httpIn = createHttpInputStream(header);
+        // When
+        String readHeader = httpIn.readHeader();
+        // Then
+        assertThat(readHeader, is(equalTo(header)));
+    }
+
+    @Test
+    public void shouldReturnEmptyHeaderIfEndOfStreamBeforeEndOfHeader() throws Exception {
+        // Given
+        HttpInputStream httpIn = createHttpInputStream("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n");
+        // When
+        String readHeader = httpIn.readHeader();
+        // Then
+        assertThat(readHeader, is(equalTo("")));
+    }
+
+    private static HttpInputStream createHttpInputStream(String data) throws Exception {
+        return createHttpInputStream(new ByteArrayInputStream(data.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    private static HttpInputStream createHttpInputStream(InputStream is) throws Exception {
+        Socket socket = mock(Socket.class);
+        given(socket.getInputStream()).willReturn(is);
+        return new HttpInputStream(socket);
+    }
+}
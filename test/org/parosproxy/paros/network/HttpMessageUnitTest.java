@@ -162,6 +162,56 @@ public class HttpMessageUnitTest {
         assertThat(copy.isResponseFromTargetHost(), is(equalTo(false)));
     }
 
+    @Test
+    public void shouldNotChangeOriginalWhenModifyingClonedRequest() throws Exception {
+        // Given
+        HttpMessage message = newHttpMessage();
+        HttpMessage clone = message.cloneRequest();
+        // When
+        clone.getRequestHeader().setHeader("X-Header", "Value");
+        clone.getRequestHeader().setHeader(HttpRequestHeader.HOST, "example.org");
+        clone.getRequestHeader().getURI().setQuery("a=b");
+        clone.getRequestBody().append("-Changed");
+        // Then
+        assertThat(message.getRequestHeader().toString(), is(equalTo("GET http://example.com/ HTTP/1.1\r\nHost: example.com\r\n\r\n")));
+        assertThat(message.getRequestBody().toString(), is(equalTo("Request Body")));
+        assertThat(
+                clone.getRequestHeader().toString(),
+                is(equalTo("GET http://example.com/?a=b HTTP/1.1\r\nHost: example.org\r\nX-Header: Value\r\n\r\n")));
+        assertThat(clone.getRequestBody().toString(), is(equalTo("Request Body-Changed")));
+    }
+
+    @Test
+    public void shouldNotChangeClonedRequestWhenModifyingOriginal() throws Exception {
+        // Given
+        HttpMessage message = newHttpMessage();
+        HttpMessage clone = message.cloneRequest();
+        // When
+        message.getRequestHeader().addHeader("X-Header", "Value");
+        message.getRequestBody().setLength(7);
+        message.getRequestBody().append("Changed");
+        // Then
+        assertThat(clone.getRequestHeader().toString(), is(equalTo("GET http://example.com/ HTTP/1.1\r\nHost: example.com\r\n\r\n")));
+        assertThat(clone.getRequestHeader().getHeaders("X-Header"), is(nullValue()));
+        assertThat(clone.getRequestBody().toString(), is(equalTo("Request Body")));
+        assertThat(message.getRequestBody().toString(), is(equalTo("RequestChanged")));
+    }
+
+    @Test
+    public void shouldShareContentsWithClonedRequestUntilModified() throws Exception {
+        // Given
+        HttpMessage message = newHttpMessage();
+        // When
+        HttpMessage clone = message.cloneRequest();
+        clone.getRequestHeader().getHeaders(HttpRequestHeader.HOST);
+        clone.getRequestHeader().getHeader(HttpRequestHeader.HOST);
+        clone.getRequestBody().getBytes()[0] = 'X';
+        // Then
+        assertThat(clone.getRequestBody().toString(), is(equalTo("Xequest Body")));
+        assertThat(message.getRequestBody().toString(), is(equalTo("Request Body")));
+        assertThat(clone.getRequestHeader().toString(), is(equalTo(message.getRequestHeader().toString())));
+    }
+
     private static HttpMessage newHttpMessage() throws Exception {
         HttpMessage message = new HttpMessage(
                 new HttpRequestHeader("GET / HTTP/1.1\r\nHost: example.com\r\n\r\n"),
@@ -65,6 +65,29 @@ public class HttpRequestHeaderUnitTest {
         assertThat(empty, is(equalTo(false)));
     }
 
+    @Test
+    public void shouldParseHeadersWithMixedLineSeparators() throws Exception {
+        // Given
+        String data = "GET http://example.com/ HTTP/1.1\nHost: example.com\r\n  X-Header  :  value \n\nContent-Length: 5\r\n\r\n";
+        // When
+        HttpRequestHeader header = new HttpRequestHeader(data);
+        // Then
+        assertThat(header.getPrimeHeader(), is(equalTo("GET http://example.com/ HTTP/1.1")));
+        assertThat(header.getHeader("X-Header"), is(equalTo("value")));
+        assertThat(header.getContentLength(), is(equalTo(5)));
+        assertThat(header.getHeadersAsString(),
+                is(equalTo("Host: example.com\r\nX-Header: value\r\nContent-Length: 5\r\n")));
+    }
+
+    @Test(expected = HttpMalformedHeaderException.class)
+    public void shouldFailToParseHeaderLineWithoutColon() throws Exception {
+        // Given
+        String data = "GET / HTTP/1.1\r\nHost example.com\r\nX-Header: a:b\r\n\r\n";
+        // When
+        new HttpRequestHeader(data);
+        // Then = HttpMalformedHeaderException
+    }
+
     @Test
     public void shouldNotBeImageIfItHasNoRequestUri() {
         // Given
@@ -0,0 +1,384 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.network;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.httpclient.URI;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zaproxy.zap.network.HttpRequestConfig;
+import org.zaproxy.zap.network.HttpResponseBodyStreamer;
+import org.zaproxy.zap.network.HttpSenderListener;
+import org.zaproxy.zap.network.HttpSenderMetrics;
+import org.zaproxy.zap.utils.ZapXmlConfiguration;
+
+/**
+ * Unit test for {@link HttpSender}.
+ */
+public class HttpSenderUnitTest {
+
+    private static final int TIMEOUT_SECS = 5;
+
+    private ConnectionParam connectionParam;
+    private HttpSender httpSender;
+    private Server server;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        connectionParam = new ConnectionParam();
+        connectionParam.load(new ZapXmlConfiguration());
+        server = new Server();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (listener != null) {
+            HttpSender.removeListener(listener);
+        }
+        if (httpSender != null) {
+            httpSender.shutdown();
+        }
+        server.close();
+    }
+
+    @Test
+    public void shouldSendMessageAsynchronously() throws Exception {
+        // Given
+        httpSender = createHttpSender();
+        HttpMessage message = createMessage(server.getPort());
+        // When
+        HttpMessage sent = httpSender.sendAndReceiveAsync(message).get(TIMEOUT_SECS, TimeUnit.SECONDS);
+        // Then
+        assertThat(sent, is(sameInstance(message)));
+        assertThat(message.getResponseHeader().getStatusCode(), is(equalTo(200)));
+        assertThat(server.getRequestsCount(), is(equalTo(1)));
+    }
+
+    @Test
+    public void shouldNotifyListenersOfMessagesSentAsynchronously() throws Exception {
+        // Given
+        httpSender = createHttpSender();
+        listener = new RecordingListener();
+        HttpSender.addListener(listener);
+        HttpMessage message = createMessage(server.getPort());
+        // When
+        httpSender.sendAndReceiveAsync(message).get(TIMEOUT_SECS, TimeUnit.SECONDS);
+        // Then
+        assertThat(listener.getRequests(), is(equalTo(Collections.singletonList(message))));
+        assertThat(listener.getResponses(), is(equalTo(Collections.singletonList(message))));
+    }
+
+    @Test
+    public void shouldNotNotifyListenersOfMessagesSentAsynchronouslyByListeners() throws Exception {
+        // Given
+        httpSender = createHttpSender();
+        HttpMessage message = createMessage(server.getPort());
+        HttpMessage listenerMessage = createMessage(server.getPort());
+        List<CompletableFuture<HttpMessage>> listenerFutures = new ArrayList<>();
+        listener = new RecordingListener() {
+
+            @Override
+            public void onHttpRequestSend(HttpMessage msg, int initiator, HttpSender sender) {
+                super.onHttpRequestSend(msg, initiator, sender);
+                listenerFutures.add(sender.sendAndReceiveAsync(listenerMessage));
+            }
+        };
+        HttpSender.addListener(listener);
+        // When
+        httpSender.sendAndReceiveAsync(message).get(TIMEOUT_SECS, TimeUnit.SECONDS);
+        listenerFutures.get(0).get(TIMEOUT_SECS, TimeUnit.SECONDS);
+        // Then
+        assertThat(listenerFutures.size(), is(equalTo(1)));
+        assertThat(listener.getRequests(), is(equalTo(Collections.singletonList(message))));
+        assertThat(listener.getResponses(), is(equalTo(Collections.singletonList(message))));
+        assertThat(server.getRequestsCount(), is(equalTo(2)));
+    }
+
+    @Test
+    public void shouldNotSendMessageCancelledBeforeBeingSent() throws Exception {
+        // Given
+        connectionParam.setAsyncMaxThreads(1);
+        httpSender = createHttpSender();
+        CountDownLatch release = server.blockResponses();
+        CompletableFuture<HttpMessage> inFlight = httpSender.sendAndReceiveAsync(createMessage(server.getPort()));
+        CompletableFuture<HttpMessage> waiting = httpSender.sendAndReceiveAsync(createMessage(server.getPort()));
+        // When
+        boolean cancelled = waiting.cancel(false);
+        release.countDown();
+        inFlight.get(TIMEOUT_SECS, TimeUnit.SECONDS);
+        // The thread is reused in order, after the cancelled message.
+        httpSender.sendAndReceiveAsync(createMessage(server.getPort())).get(TIMEOUT_SECS, TimeUnit.SECONDS);
+        // Then
+        assertThat(cancelled, is(equalTo(true)));
+        assertThat(waiting.isCancelled(), is(equalTo(true)));
+        assertThat(server.getRequestsCount(), is(equalTo(2)));
+    }
+
+    @Test
+    public void shouldCompleteExceptionallyIfFailedToSendMessage() throws Exception {
+        // Given
+        httpSender = createHttpSender();
+        int port = server.getPort();
+        server.close();
+        HttpMessage message = createMessage(port);
+        // When
+        CompletableFuture<HttpMessage> future = httpSender.sendAndReceiveAsync(message);
+        // Then
+        try {
+            future.get(TIMEOUT_SECS, TimeUnit.SECONDS);
+            fail("Expected ExecutionException.");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(instanceOf(IOException.class)));
+        }
+        assertThat(future.isCompletedExceptionally(), is(equalTo(true)));
+    }
+
+    @Test
+    public void shouldRejectMessagesOverTheQueueLimit() throws Exception {
+        // Given
+        connectionParam.setAsyncMaxThreads(1);
+        connectionParam.setAsyncMaxQueuedRequests(1);
+        httpSender = createHttpSender();
+        CountDownLatch release = server.blockResponses();
+        CompletableFuture<HttpMessage> inFlight = httpSender.sendAndReceiveAsync(createMessage(server.getPort()));
+        server.awaitRequest();
+        CompletableFuture<HttpMessage> queued = httpSender.sendAndReceiveAsync(createMessage(server.getPort()));
+        // When
+        CompletableFuture<HttpMessage> rejected = httpSender.sendAndReceiveAsync(createMessage(server.getPort()));
+        // Then
+        try {
+            rejected.getNow(null);
+            fail("Expected CompletionException.");
+        } catch (Exception e) {
+            assertThat(e.getCause(), is(instanceOf(RejectedExecutionException.class)));
+        }
+        release.countDown();
+        inFlight.get(TIMEOUT_SECS, TimeUnit.SECONDS);
+        queued.get(TIMEOUT_SECS, TimeUnit.SECONDS);
+        assertThat(server.getRequestsCount(), is(equalTo(2)));
+    }
+
+    @Test
+    public void shouldRecordConnectionsForTargetHostEvenIfProxied() throws Exception {
+        // Given
+        connectionParam.setProxyChainName("127.0.0.1");
+        connectionParam.setProxyChainPort(server.getPort());
+        connectionParam.setUseProxyChain(true);
+        httpSender = createHttpSender();
+        HttpSenderMetrics.getDefault().clear();
+        HttpMessage message = new HttpMessage(new URI("http://target.example.org/", true));
+        // When
+        httpSender.sendAndReceive(message);
+        // Then
+        List<HttpSenderMetrics.HostMetrics> metrics = HttpSenderMetrics.getDefault().getHostMetrics();
+        assertThat(metrics, hasSize(1));
+        assertThat(metrics.get(0).getHost(), is(equalTo("target.example.org:80")));
+        assertThat(metrics.get(0).getRequests(), is(equalTo(1L)));
+        assertThat(metrics.get(0).getConnectionsOpened(), is(equalTo(1L)));
+        assertThat(metrics.get(0).getConnect().getCount(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void shouldStreamResponseBodyIfNoListeners() throws Exception {
+        // Given
+        httpSender = createHttpSender();
+        HttpMessage message = createMessage(server.getPort());
+        RecordingStreamer streamer = new RecordingStreamer();
+        HttpRequestConfig requestConfig = HttpRequestConfig.builder().setResponseBodyStreamer(streamer).build();
+        // When
+        httpSender.sendAndReceive(message, requestConfig);
+        // Then
+        assertThat(streamer.getStreamed(), is(equalTo(1)));
+    }
+
+    @Test
+    public void shouldNotStreamResponseBodyIfListenersAreNotified() throws Exception {
+        // Given
+        httpSender = createHttpSender();
+        listener = new RecordingListener();
+        HttpSender.addListener(listener);
+        HttpMessage message = createMessage(server.getPort());
+        RecordingStreamer streamer = new RecordingStreamer();
+        HttpRequestConfig requestConfig = HttpRequestConfig.builder().setResponseBodyStreamer(streamer).build();
+        // When
+        httpSender.sendAndReceive(message, requestConfig);
+        // Then
+        assertThat(streamer.getStreamed(), is(equalTo(0)));
+        assertThat(listener.getResponses(), is(equalTo(Collections.singletonList(message))));
+    }
+
+    private HttpSender createHttpSender() {
+        return new HttpSender(connectionParam, false, HttpSender.MANUAL_REQUEST_INITIATOR);
+    }
+
+    private static HttpMessage createMessage(int port) throws Exception {
+        return new HttpMessage(new URI("http://127.0.0.1:" + port + "/", true));
+    }
+
+    private static class RecordingStreamer implements HttpResponseBodyStreamer {
+
+        private final AtomicInteger streamed = new AtomicInteger();
+
+        @Override
+        public boolean isStreamable(HttpMessage message) {
+            return true;
+        }
+
+        @Override
+        public void stream(HttpMessage message, InputStream body) throws IOException {
+            streamed.incrementAndGet();
+            while (body.read() != -1) {
+                // Consume the body.
+            }
+        }
+
+        int getStreamed() {
+            return streamed.get();
+        }
+    }
+
+    private static class RecordingListener implements HttpSenderListener {
+
+        private final List<HttpMessage> requests = Collections.synchronizedList(new ArrayList<>());
+        private final List<HttpMessage> responses = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public int getListenerOrder() {
+            return 0;
+        }
+
+        @Override
+        public void onHttpRequestSend(HttpMessage msg, int initiator, HttpSender sender) {
+            requests.add(msg);
+        }
+
+        @Override
+        public void onHttpResponseReceive(HttpMessage msg, int initiator, HttpSender sender) {
+            responses.add(msg);
+        }
+
+        List<HttpMessage> getRequests() {
+            return new ArrayList<>(requests);
+        }
+
+        List<HttpMessage> getResponses() {
+            return new ArrayList<>(responses);
+        }
+    }
+
+    /**
+     * A minimal HTTP server, that answers all requests with an empty 200 response and closes the connection.
+     */
+    private static class Server implements Runnable {
+
+        private final ServerSocket serverSocket;
+        private final AtomicInteger requestsCount;
+        private final CountDownLatch requestReceived;
+        private volatile CountDownLatch release;
+
+        Server() throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            requestsCount = new AtomicInteger();
+            requestReceived = new CountDownLatch(1);
+            Thread thread = new Thread(this, "ZAP-HttpSenderUnitTest-Server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        int getRequestsCount() {
+            return requestsCount.get();
+        }
+
+        CountDownLatch blockResponses() {
+            release = new CountDownLatch(1);
+            return release;
+        }
+
+        void awaitRequest() throws InterruptedException {
+            requestReceived.await(TIMEOUT_SECS, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void run() {
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept()) {
+                    BufferedReader reader = new BufferedReader(
+                            new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                    String line;
+                    while ((line = reader.readLine()) != null && !line.isEmpty()) {
+                        // Read the request header.
+                    }
+                    requestsCount.incrementAndGet();
+                    requestReceived.countDown();
+                    CountDownLatch latch = release;
+                    if (latch != null) {
+                        latch.await(TIMEOUT_SECS, TimeUnit.SECONDS);
+                    }
+                    OutputStream os = socket.getOutputStream();
+                    os.write(
+                            "HTTP/1.1 200 OK\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+                                    .getBytes(StandardCharsets.US_ASCII));
+                    os.flush();
+                } catch (IOException e) {
+                    // Closed.
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.network;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import javax.net.ssl.SSLSocketFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.parosproxy.paros.security.CachedSslCertifificateServiceImpl;
+import org.zaproxy.zap.extension.dynssl.SslCertificateUtils;
+import org.zaproxy.zap.extension.stats.InMemoryStats;
+import org.zaproxy.zap.utils.Stats;
+
+/**
+ * Unit test for {@link SSLConnector}.
+ */
+public class SSLConnectorUnitTest {
+
+    private static SSLConnector sslConnector;
+
+    private InMemoryStats stats;
+
+    @BeforeClass
+    public static void setUpClass() {
+        sslConnector = new SSLConnector();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        CachedSslCertifificateServiceImpl.getService().initializeRootCA(SslCertificateUtils.createRootCA());
+        stats = new InMemoryStats();
+        Stats.addListener(stats);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Stats.removeListener(stats);
+        SSLConnector.clearTunnelSslSocketFactories();
+        CachedSslCertifificateServiceImpl.getService().initializeRootCA(null);
+    }
+
+    @Test
+    public void shouldReuseTunnelSslSocketFactoryOfSameHost() {
+        // Given
+        SSLSocketFactory factory = sslConnector.getTunnelSSLSocketFactory("example.com");
+        // When
+        SSLSocketFactory otherFactory = sslConnector.getTunnelSSLSocketFactory("example.com");
+        // Then
+        assertThat(otherFactory, is(sameInstance(factory)));
+        assertThat(stats.getStat(SSLConnector.STATS_TUNNEL_FACTORY_MISSES), is(notNullValue()));
+        assertThat(stats.getStat(SSLConnector.STATS_TUNNEL_FACTORY_HITS), is(notNullValue()));
+    }
+
+    @Test
+    public void shouldNotReuseTunnelSslSocketFactoryOfOtherHost() {
+        // Given
+        SSLSocketFactory factory = sslConnector.getTunnelSSLSocketFactory("example.com");
+        // When
+        SSLSocketFactory otherFactory = sslConnector.getTunnelSSLSocketFactory("example.org");
+        // Then
+        assertThat(otherFactory, is(not(sameInstance(factory))));
+    }
+
+    @Test
+    public void shouldNotReuseTunnelSslSocketFactoryAfterRootCaChanged() throws Exception {
+        // Given
+        SSLSocketFactory factory = sslConnector.getTunnelSSLSocketFactory("example.com");
+        // When
+        CachedSslCertifificateServiceImpl.getService().initializeRootCA(SslCertificateUtils.createRootCA());
+        SSLSocketFactory otherFactory = sslConnector.getTunnelSSLSocketFactory("example.com");
+        // Then
+        assertThat(otherFactory, is(not(sameInstance(factory))));
+    }
+
+    @Test
+    public void shouldNotCacheTunnelSslSocketFactoryWithoutHostname() {
+        // Given
+        SSLSocketFactory factory = sslConnector.getTunnelSSLSocketFactory(null);
+        // When
+        SSLSocketFactory otherFactory = sslConnector.getTunnelSSLSocketFactory(null);
+        // Then
+        assertThat(otherFactory, is(not(sameInstance(factory))));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.security;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zaproxy.zap.extension.dynssl.SslCertificateUtils;
+
+/**
+ * Unit test for {@link CachedSslCertifificateServiceImpl}.
+ */
+public class CachedSslCertifificateServiceImplUnitTest {
+
+    private static final String HOSTNAME = "example.com";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private SslCertificateService service;
+
+    @Before
+    public void setUp() {
+        service = CachedSslCertifificateServiceImpl.getService();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        CachedSslCertifificateServiceImpl.setStoreDirectory(null);
+        service.initializeRootCA(null);
+    }
+
+    @Test
+    public void shouldReturnSameCertificateForSameHost() throws Exception {
+        // Given
+        service.initializeRootCA(SslCertificateUtils.createRootCA());
+        KeyStore ks = service.createCertForHost(HOSTNAME);
+        // When
+        KeyStore otherKs = service.createCertForHost(HOSTNAME);
+        // Then
+        assertThat(otherKs, is(sameInstance(ks)));
+    }
+
+    @Test
+    public void shouldCreateCertificateJustOnceWhenRequestedConcurrently() throws Exception {
+        // Given
+        service.initializeRootCA(SslCertificateUtils.createRootCA());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Callable<KeyStore>> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tasks.add(() -> service.createCertForHost(HOSTNAME));
+        }
+        // When
+        List<Future<KeyStore>> results = executor.invokeAll(tasks);
+        // Then
+        executor.shutdown();
+        KeyStore ks = results.get(0).get();
+        for (Future<KeyStore> result : results) {
+            assertThat(result.get(), is(sameInstance(ks)));
+        }
+    }
+
+    @Test
+    public void shouldReuseStoredCertificateAfterRestart() throws Exception {
+        // Given
+        KeyStore rootCa = SslCertificateUtils.createRootCA();
+        CachedSslCertifificateServiceImpl.setStoreDirectory(tempFolder.getRoot().toPath());
+        service.initializeRootCA(rootCa);
+        Certificate cert = getCertificate(service.createCertForHost(HOSTNAME));
+        // When
+        service.initializeRootCA(rootCa);
+        Certificate storedCert = getCertificate(service.createCertForHost(HOSTNAME));
+        // Then
+        assertThat(storedCert, is(equalTo(cert)));
+    }
+
+    @Test
+    public void shouldNotReuseStoredCertificateOfOtherRootCa() throws Exception {
+        // Given
+        Path storeDirectory = tempFolder.getRoot().toPath();
+        CachedSslCertifificateServiceImpl.setStoreDirectory(storeDirectory);
+        service.initializeRootCA(SslCertificateUtils.createRootCA());
+        Certificate cert = getCertificate(service.createCertForHost(HOSTNAME));
+        // When
+        service.initializeRootCA(SslCertificateUtils.createRootCA());
+        Certificate otherCert = getCertificate(service.createCertForHost(HOSTNAME));
+        // Then
+        assertThat(otherCert, is(not(equalTo(cert))));
+        try (Stream<Path> dirs = Files.list(storeDirectory)) {
+            assertThat(dirs.count(), is(equalTo(2L)));
+        }
+    }
+
+    @Test
+    public void shouldDeleteStoredCertificatesOfOtherRootCas() throws Exception {
+        // Given
+        Path storeDirectory = tempFolder.getRoot().toPath();
+        Path otherDirectory = Files.createDirectory(storeDirectory.resolve("other"));
+        CachedSslCertifificateServiceImpl.setStoreDirectory(storeDirectory);
+        service.initializeRootCA(SslCertificateUtils.createRootCA());
+        service.createCertForHost(HOSTNAME);
+        KeyStore rootCa = SslCertificateUtils.createRootCA();
+        service.initializeRootCA(rootCa);
+        Certificate cert = getCertificate(service.createCertForHost(HOSTNAME));
+        // When
+        CachedSslCertifificateServiceImpl.deleteStoredCertificatesOfOtherRootCas();
+        // Then
+        try (Stream<Path> dirs = Files.list(storeDirectory)) {
+            assertThat(dirs.count(), is(equalTo(2L)));
+        }
+        assertThat(Files.isDirectory(otherDirectory), is(equalTo(true)));
+        service.initializeRootCA(rootCa);
+        assertThat(getCertificate(service.createCertForHost(HOSTNAME)), is(equalTo(cert)));
+    }
+
+    private static Certificate getCertificate(KeyStore ks) throws Exception {
+        return ks.getCertificate(SslCertificateService.ZAPROXY_JKS_ALIAS);
+    }
+}
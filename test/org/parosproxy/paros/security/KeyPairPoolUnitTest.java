@@ -0,0 +1,113 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.security;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.security.KeyPair;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zaproxy.zap.extension.stats.InMemoryStats;
+import org.zaproxy.zap.utils.Stats;
+
+/**
+ * Unit test for {@link KeyPairPool}.
+ */
+public class KeyPairPoolUnitTest {
+
+    private InMemoryStats stats;
+    private KeyPairPool pool;
+
+    @Before
+    public void setUp() {
+        stats = new InMemoryStats();
+        Stats.addListener(stats);
+    }
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+        Stats.removeListener(stats);
+    }
+
+    @Test
+    public void shouldFillPoolInBackground() throws Exception {
+        // Given
+        int size = 3;
+        // When
+        pool = new KeyPairPool(() -> new KeyPair(null, null), size);
+        // Then
+        waitForSize(size);
+        assertThat(pool.size(), is(equalTo(size)));
+    }
+
+    @Test
+    public void shouldTakePooledKeyPairAndRefill() throws Exception {
+        // Given
+        pool = new KeyPairPool(() -> new KeyPair(null, null), 2);
+        waitForSize(2);
+        // When
+        KeyPair keyPair = pool.take();
+        // Then
+        assertThat(keyPair, is(notNullValue()));
+        assertThat(stats.getStat(KeyPairPool.STATS_GENERATED_INLINE), is(nullValue()));
+        assertThat(stats.getStat(KeyPairPool.STATS_TAKEN), is(notNullValue()));
+        waitForSize(2);
+    }
+
+    @Test
+    public void shouldGenerateKeyPairIfPoolEmpty() throws Exception {
+        // Given
+        CountDownLatch backgroundGeneration = new CountDownLatch(1);
+        pool = new KeyPairPool(() -> {
+            if (Thread.currentThread().getName().equals("ZAP-KeyPairPool")) {
+                try {
+                    backgroundGeneration.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return new KeyPair(null, null);
+        }, 1);
+        // When
+        KeyPair keyPair = pool.take();
+        // Then
+        backgroundGeneration.countDown();
+        assertThat(keyPair, is(notNullValue()));
+        assertThat(stats.getStat(KeyPairPool.STATS_GENERATED_INLINE), is(notNullValue()));
+    }
+
+    private void waitForSize(int size) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pool.size() < size && System.nanoTime() < end) {
+            Thread.sleep(10);
+        }
+    }
+}
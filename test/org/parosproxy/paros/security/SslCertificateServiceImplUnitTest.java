@@ -0,0 +1,100 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.parosproxy.paros.security;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zaproxy.zap.extension.dynssl.SslCertificateUtils;
+
+/**
+ * Unit test for {@link SslCertificateServiceImpl}.
+ */
+public class SslCertificateServiceImplUnitTest {
+
+    private SslCertificateService service;
+    private KeyStore rootCa;
+
+    @Before
+    public void setUp() throws Exception {
+        service = SslCertificateServiceImpl.getService();
+        rootCa = SslCertificateUtils.createRootCA();
+        service.initializeRootCA(rootCa);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        SslCertificateServiceImpl.setUseEcKeys(false);
+        SslCertificateServiceImpl.setKeyPairPoolSize(0);
+        service.initializeRootCA(null);
+    }
+
+    @Test
+    public void shouldCreateCertificateWithRsaKeyByDefault() throws Exception {
+        // Given
+        String hostname = "example.com";
+        // When
+        KeyStore ks = service.createCertForHost(hostname);
+        // Then
+        X509Certificate cert = getCertificate(ks);
+        assertThat(cert.getPublicKey().getAlgorithm(), is(equalTo("RSA")));
+        cert.verify(getRootCaCertificate().getPublicKey());
+    }
+
+    @Test
+    public void shouldCreateCertificateWithEcKeySignedByRootCa() throws Exception {
+        // Given
+        SslCertificateServiceImpl.setUseEcKeys(true);
+        // When
+        KeyStore ks = service.createCertForHost("example.com");
+        // Then
+        X509Certificate cert = getCertificate(ks);
+        assertThat(cert.getPublicKey().getAlgorithm(), is(equalTo("EC")));
+        cert.verify(getRootCaCertificate().getPublicKey());
+    }
+
+    @Test
+    public void shouldCreateCertificateWithPooledKeyPair() throws Exception {
+        // Given
+        SslCertificateServiceImpl.setUseEcKeys(true);
+        SslCertificateServiceImpl.setKeyPairPoolSize(1);
+        // When
+        KeyStore ks = service.createCertForHost("example.com");
+        // Then
+        X509Certificate cert = getCertificate(ks);
+        assertThat(cert.getPublicKey().getAlgorithm(), is(equalTo("EC")));
+        cert.verify(getRootCaCertificate().getPublicKey());
+    }
+
+    private X509Certificate getRootCaCertificate() throws Exception {
+        return (X509Certificate) rootCa.getCertificate(SslCertificateService.ZAPROXY_JKS_ALIAS);
+    }
+
+    private static X509Certificate getCertificate(KeyStore ks) throws Exception {
+        return (X509Certificate) ks.getCertificate(SslCertificateService.ZAPROXY_JKS_ALIAS);
+    }
+}
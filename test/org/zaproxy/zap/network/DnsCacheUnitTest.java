@@ -0,0 +1,216 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.network;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zaproxy.zap.extension.stats.InMemoryStats;
+import org.zaproxy.zap.utils.Stats;
+
+/**
+ * Unit test for {@link DnsCache}.
+ */
+public class DnsCacheUnitTest {
+
+    private static final String HOST = "example.com";
+
+    private LocalResolver resolver;
+    private long time;
+    private DnsCache dnsCache;
+    private InMemoryStats stats;
+
+    @Before
+    public void setUp() {
+        resolver = new LocalResolver();
+        time = 0;
+        dnsCache = new DnsCache(resolver, () -> time);
+        stats = new InMemoryStats();
+        Stats.addListener(stats);
+    }
+
+    @After
+    public void tearDown() {
+        Stats.removeListener(stats);
+    }
+
+    @Test
+    public void shouldResolveSameHostJustOnceWithinTtl() throws Exception {
+        // Given
+        resolver.add(HOST, "192.0.2.1");
+        dnsCache.setTtl(30);
+        dnsCache.getByName(HOST);
+        time += 29_000;
+        // When
+        InetAddress address = dnsCache.getByName(HOST);
+        // Then
+        assertThat(address, is(equalTo(address("192.0.2.1"))));
+        assertThat(resolver.lookups.get(), is(equalTo(1)));
+        assertThat(stats.getStat(DnsCache.STATS_HITS), is(notNullValue()));
+        assertThat(stats.getStat(DnsCache.STATS_MISSES), is(notNullValue()));
+    }
+
+    @Test
+    public void shouldResolveAgainAfterTtl() throws Exception {
+        // Given
+        resolver.add(HOST, "192.0.2.1");
+        dnsCache.setTtl(30);
+        dnsCache.getByName(HOST);
+        resolver.add(HOST, "192.0.2.2");
+        time += 30_000;
+        // When
+        InetAddress address = dnsCache.getByName(HOST);
+        // Then
+        assertThat(address, is(equalTo(address("192.0.2.2"))));
+        assertThat(resolver.lookups.get(), is(equalTo(2)));
+    }
+
+    @Test
+    public void shouldNotCacheIfTtlIsZero() throws Exception {
+        // Given
+        resolver.add(HOST, "192.0.2.1");
+        dnsCache.setTtl(0);
+        dnsCache.getByName(HOST);
+        // When
+        dnsCache.getByName(HOST);
+        // Then
+        assertThat(resolver.lookups.get(), is(equalTo(2)));
+    }
+
+    @Test
+    public void shouldCacheFailedLookupsWithinNegativeTtl() throws Exception {
+        // Given
+        dnsCache.setNegativeTtl(10);
+        lookupUnknownHost();
+        resolver.add(HOST, "192.0.2.1");
+        time += 9_000;
+        // When
+        lookupUnknownHost();
+        // Then
+        assertThat(resolver.lookups.get(), is(equalTo(1)));
+        assertThat(stats.getStat(DnsCache.STATS_FAILURES), is(notNullValue()));
+    }
+
+    @Test
+    public void shouldResolveAgainAfterNegativeTtl() throws Exception {
+        // Given
+        dnsCache.setNegativeTtl(10);
+        lookupUnknownHost();
+        resolver.add(HOST, "192.0.2.1");
+        time += 10_000;
+        // When
+        InetAddress address = dnsCache.getByName(HOST);
+        // Then
+        assertThat(address, is(equalTo(address("192.0.2.1"))));
+    }
+
+    @Test
+    public void shouldKeepPinnedAddressesUntilUnpinned() throws Exception {
+        // Given
+        resolver.add(HOST, "192.0.2.1");
+        dnsCache.setTtl(30);
+        dnsCache.pin(HOST);
+        dnsCache.pin(HOST);
+        resolver.add(HOST, "192.0.2.2");
+        time += 60_000;
+        // When
+        InetAddress pinnedAddress = dnsCache.getByName(HOST);
+        dnsCache.unpin(HOST);
+        InetAddress stillPinnedAddress = dnsCache.getByName(HOST);
+        dnsCache.unpin(HOST);
+        InetAddress address = dnsCache.getByName(HOST);
+        // Then
+        assertThat(pinnedAddress, is(equalTo(address("192.0.2.1"))));
+        assertThat(stillPinnedAddress, is(equalTo(address("192.0.2.1"))));
+        assertThat(address, is(equalTo(address("192.0.2.2"))));
+        assertThat(dnsCache.isPinned(HOST), is(equalTo(false)));
+    }
+
+    @Test
+    public void shouldIgnoreCaseOfHosts() throws Exception {
+        // Given
+        resolver.add(HOST, "192.0.2.1");
+        dnsCache.getByName(HOST);
+        // When
+        dnsCache.getByName(HOST.toUpperCase(Locale.ROOT));
+        // Then
+        assertThat(resolver.lookups.get(), is(equalTo(1)));
+    }
+
+    @Test
+    public void shouldNotCacheAddressLiterals() throws Exception {
+        // Given
+        dnsCache.getByName("192.0.2.1");
+        // When
+        InetAddress address = dnsCache.getByName("192.0.2.1");
+        // Then
+        assertThat(address, is(equalTo(address("192.0.2.1"))));
+        assertThat(resolver.lookups.get(), is(equalTo(2)));
+    }
+
+    private void lookupUnknownHost() {
+        try {
+            dnsCache.getByName(HOST);
+            fail("Expected UnknownHostException.");
+        } catch (UnknownHostException e) {
+            // Expected.
+        }
+    }
+
+    private static InetAddress address(String address) throws UnknownHostException {
+        return InetAddress.getByName(address);
+    }
+
+    private static class LocalResolver implements DnsCache.Resolver {
+
+        private final Map<String, String> hosts = new HashMap<>();
+        private final AtomicInteger lookups = new AtomicInteger();
+
+        void add(String host, String address) {
+            hosts.put(host, address);
+        }
+
+        @Override
+        public InetAddress[] resolve(String host) throws UnknownHostException {
+            lookups.incrementAndGet();
+            if (host.matches("[0-9.]+")) {
+                return new InetAddress[] { address(host) };
+            }
+            String address = hosts.get(host.toLowerCase(Locale.ROOT));
+            if (address == null) {
+                throw new UnknownHostException(host);
+            }
+            return new InetAddress[] { InetAddress.getByAddress(host, address(address).getAddress()) };
+        }
+    }
+}
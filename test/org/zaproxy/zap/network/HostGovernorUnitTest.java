@@ -0,0 +1,180 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.network;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.httpclient.URI;
+import org.junit.Before;
+import org.junit.Test;
+import org.parosproxy.paros.network.HttpMessage;
+import org.parosproxy.paros.network.HttpResponseHeader;
+import org.parosproxy.paros.network.HttpSender;
+
+/**
+ * Unit test for {@link HostGovernor}.
+ */
+public class HostGovernorUnitTest {
+
+    private static final long DELAY = 550;
+    private static final long LATENCY_FACTOR = 4;
+
+    private HostGovernor governor;
+
+    @Before
+    public void setUp() {
+        governor = new HostGovernor();
+        governor.setEnabled(true);
+        governor.setMaxConcurrentRequests(4);
+    }
+
+    @Test
+    public void shouldNotLimitIfNotEnabled() throws Exception {
+        // Given
+        governor.setEnabled(false);
+        // When
+        HostGovernor.Permit permit = governor.acquire(createMessage());
+        // Then
+        assertThat(permit, is(nullValue()));
+        assertThat(governor.getLimits(), hasSize(0));
+    }
+
+    @Test
+    public void shouldLimitConcurrentRequests() throws Exception {
+        // Given
+        governor.setMaxConcurrentRequests(1);
+        HttpMessage msg = createMessage();
+        HostGovernor.Permit permit = governor.acquire(msg);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        // When
+        Future<HostGovernor.Permit> otherPermit = executor.submit(() -> governor.acquire(createMessage()));
+        // Then
+        assertWaiting(otherPermit);
+        permit.release(msg, null);
+        assertThat(otherPermit.get(5, TimeUnit.SECONDS), is(notNullValue()));
+        executor.shutdown();
+    }
+
+    @Test
+    public void shouldDecreaseLimitsOnTooManyRequests() throws Exception {
+        // Given
+        HttpMessage msg = createMessage();
+        msg.setResponseHeader(new HttpResponseHeader("HTTP/1.1 429 Too Many Requests\r\n"));
+        // When
+        governor.acquire(msg).release(msg, null);
+        // Then
+        HostGovernor.Limits limits = governor.getLimits().get(0);
+        assertThat(limits.getHost(), is(equalTo("example.com:80")));
+        assertThat(limits.getConcurrentRequests(), is(equalTo(2)));
+        assertThat(limits.getRequestsPerSecond(), is(greaterThan(0.0)));
+    }
+
+    @Test
+    public void shouldDecreaseLimitsOnTimeout() throws Exception {
+        // Given
+        HttpMessage msg = createMessage();
+        // When
+        governor.acquire(msg).release(msg, new SocketTimeoutException());
+        // Then
+        assertThat(governor.getLimits().get(0).getConcurrentRequests(), is(equalTo(2)));
+    }
+
+    @Test
+    public void shouldIncreaseLimitsAfterSuccessfulResponses() throws Exception {
+        // Given
+        HttpMessage msg = createMessage();
+        msg.setResponseHeader(new HttpResponseHeader("HTTP/1.1 503 Service Unavailable\r\n"));
+        governor.acquire(msg).release(msg, null);
+        msg.setResponseHeader(new HttpResponseHeader("HTTP/1.1 200 OK\r\n"));
+        // When
+        for (int i = 0; i < 10; i++) {
+            governor.acquire(msg).release(msg, null);
+        }
+        // Then
+        assertThat(governor.getLimits().get(0).getConcurrentRequests(), is(equalTo(4)));
+    }
+
+    @Test
+    public void shouldNotDecreaseLimitsOnDelayedResponsesToActiveScanner() throws Exception {
+        // Given
+        HttpMessage msg = createOkMessage();
+        governor.acquire(msg, HttpSender.ACTIVE_SCANNER_INITIATOR).release(msg, null);
+        // When
+        sendDelayed(msg, HttpSender.ACTIVE_SCANNER_INITIATOR);
+        // Then
+        HostGovernor.Limits limits = governor.getLimits().get(0);
+        assertThat(limits.getConcurrentRequests(), is(equalTo(4)));
+        assertThat(limits.getLatency(), is(lessThan(DELAY)));
+    }
+
+    @Test
+    public void shouldIncreaseLimitsAgainIfHostStaysSlower() throws Exception {
+        // Given
+        HttpMessage msg = createOkMessage();
+        governor.acquire(msg, HttpSender.PROXY_INITIATOR).release(msg, null);
+        // When
+        for (int i = 0; i < 6; i++) {
+            sendDelayed(msg, HttpSender.PROXY_INITIATOR);
+        }
+        // Then
+        HostGovernor.Limits limits = governor.getLimits().get(0);
+        assertThat(limits.getConcurrentRequests(), is(greaterThan(1)));
+        assertThat(limits.getLatency(), is(greaterThan(DELAY / LATENCY_FACTOR)));
+    }
+
+    private void sendDelayed(HttpMessage msg, int initiator) throws Exception {
+        HostGovernor.Permit permit = governor.acquire(msg, initiator);
+        Thread.sleep(DELAY);
+        permit.release(msg, null);
+    }
+
+    private static HttpMessage createOkMessage() throws Exception {
+        HttpMessage msg = createMessage();
+        msg.setResponseHeader(new HttpResponseHeader("HTTP/1.1 200 OK\r\n"));
+        return msg;
+    }
+
+    private static void assertWaiting(Future<?> future) throws Exception {
+        try {
+            future.get(200, TimeUnit.MILLISECONDS);
+            throw new AssertionError("Expected to be waiting.");
+        } catch (TimeoutException e) {
+            // Expected.
+        }
+    }
+
+    private static HttpMessage createMessage() throws Exception {
+        return new HttpMessage(new URI("http://example.com/", true));
+    }
+}
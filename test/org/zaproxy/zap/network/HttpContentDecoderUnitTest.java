@@ -0,0 +1,218 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.network;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.parosproxy.paros.network.HttpHeader;
+import org.parosproxy.paros.network.HttpMessage;
+import org.parosproxy.paros.network.HttpResponseHeader;
+import org.zaproxy.zap.extension.stats.InMemoryStats;
+import org.zaproxy.zap.utils.Stats;
+
+/**
+ * Unit test for {@link HttpContentDecoder}.
+ */
+public class HttpContentDecoderUnitTest {
+
+    private static final String CONTENT = "Lorem ipsum dolor sit amet, Lorem ipsum dolor sit amet, Lorem ipsum dolor sit amet.";
+
+    private InMemoryStats stats;
+
+    @Before
+    public void setUp() {
+        stats = new InMemoryStats();
+        Stats.addListener(stats);
+    }
+
+    @After
+    public void tearDown() {
+        Stats.removeListener(stats);
+    }
+
+    @Test
+    public void shouldDecodeGzip() throws Exception {
+        // Given
+        HttpMessage msg = createMessage("gzip", gzip(CONTENT));
+        // When
+        boolean decoded = HttpContentDecoder.decodeResponseBody(msg, 0);
+        // Then
+        assertDecoded(decoded, msg, CONTENT);
+        assertThat(stats.getStat(HttpContentDecoder.STATS_BYTES_IN), is(notNullValue()));
+        assertThat(stats.getStat(HttpContentDecoder.STATS_BYTES_OUT), is(notNullValue()));
+    }
+
+    @Test
+    public void shouldDecodeXGzip() throws Exception {
+        // Given
+        HttpMessage msg = createMessage("X-GZIP", gzip(CONTENT));
+        // When
+        boolean decoded = HttpContentDecoder.decodeResponseBody(msg, 0);
+        // Then
+        assertDecoded(decoded, msg, CONTENT);
+    }
+
+    @Test
+    public void shouldDecodeGzipWithMultipleMembers() throws Exception {
+        // Given
+        HttpMessage msg = createMessage("gzip", concat(gzip("Part 1"), gzip("Part 2")));
+        // When
+        boolean decoded = HttpContentDecoder.decodeResponseBody(msg, 0);
+        // Then
+        assertDecoded(decoded, msg, "Part 1Part 2");
+    }
+
+    @Test
+    public void shouldDecodeDeflateWithZlibFormat() throws Exception {
+        // Given
+        HttpMessage msg = createMessage("deflate", deflate(CONTENT, false));
+        // When
+        boolean decoded = HttpContentDecoder.decodeResponseBody(msg, 0);
+        // Then
+        assertDecoded(decoded, msg, CONTENT);
+    }
+
+    @Test
+    public void shouldDecodeRawDeflate() throws Exception {
+        // Given
+        HttpMessage msg = createMessage("deflate", deflate(CONTENT, true));
+        // When
+        boolean decoded = HttpContentDecoder.decodeResponseBody(msg, 0);
+        // Then
+        assertDecoded(decoded, msg, CONTENT);
+    }
+
+    @Test
+    public void shouldDecodeConsecutiveResponses() throws Exception {
+        // Given
+        HttpMessage msg1 = createMessage("gzip", gzip("Response 1"));
+        HttpMessage msg2 = createMessage("deflate", deflate("Response 2", true));
+        // When
+        HttpContentDecoder.decodeResponseBody(msg1, 0);
+        HttpContentDecoder.decodeResponseBody(msg2, 0);
+        // Then
+        assertThat(msg1.getResponseBody().toString(), is(equalTo("Response 1")));
+        assertThat(msg2.getResponseBody().toString(), is(equalTo("Response 2")));
+    }
+
+    @Test
+    public void shouldNotDecodeIfDecodedSizeExceedsMaximum() throws Exception {
+        // Given
+        byte[] encoded = gzip(CONTENT);
+        HttpMessage msg = createMessage("gzip", encoded);
+        // When
+        boolean decoded = HttpContentDecoder.decodeResponseBody(msg, CONTENT.length() - 1);
+        // Then
+        assertThat(decoded, is(equalTo(false)));
+        assertThat(msg.getResponseBody().getBytes(), is(equalTo(encoded)));
+        assertThat(msg.getResponseHeader().getHeader(HttpHeader.CONTENT_ENCODING), is(equalTo("gzip")));
+        assertThat(stats.getStat(HttpContentDecoder.STATS_TOO_BIG), is(notNullValue()));
+        assertThat(stats.getStat(HttpContentDecoder.STATS_BYTES_OUT), is(nullValue()));
+    }
+
+    @Test
+    public void shouldNotDecodeUnsupportedEncoding() throws Exception {
+        // Given
+        byte[] encoded = CONTENT.getBytes(StandardCharsets.US_ASCII);
+        HttpMessage msg = createMessage("br", encoded);
+        // When
+        boolean decoded = HttpContentDecoder.decodeResponseBody(msg, 0);
+        // Then
+        assertThat(decoded, is(equalTo(false)));
+        assertThat(msg.getResponseBody().getBytes(), is(equalTo(encoded)));
+        assertThat(HttpContentDecoder.isSupported("br"), is(equalTo(false)));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailToDecodeTruncatedGzip() throws Exception {
+        // Given
+        byte[] encoded = gzip(CONTENT);
+        HttpMessage msg = createMessage("gzip", Arrays.copyOf(encoded, encoded.length - 10));
+        // When
+        HttpContentDecoder.decodeResponseBody(msg, 0);
+        // Then = IOException
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailToDecodeCorruptGzip() throws Exception {
+        // Given
+        byte[] encoded = gzip(CONTENT);
+        encoded[encoded.length - 5]++;
+        HttpMessage msg = createMessage("gzip", encoded);
+        // When
+        HttpContentDecoder.decodeResponseBody(msg, 0);
+        // Then = IOException
+    }
+
+    private static void assertDecoded(boolean decoded, HttpMessage msg, String content) {
+        assertThat(decoded, is(equalTo(true)));
+        assertThat(msg.getResponseBody().toString(), is(equalTo(content)));
+        assertThat(msg.getResponseHeader().getHeader(HttpHeader.CONTENT_ENCODING), is(nullValue()));
+        assertThat(msg.getResponseHeader().getContentLength(), is(equalTo(content.length())));
+    }
+
+    private static HttpMessage createMessage(String encoding, byte[] body) throws Exception {
+        HttpMessage msg = new HttpMessage();
+        msg.setResponseHeader(
+                new HttpResponseHeader(
+                        "HTTP/1.1 200 OK\r\nContent-Encoding: " + encoding + "\r\nContent-Length: " + body.length
+                                + "\r\n\r\n"));
+        msg.setResponseBody(body);
+        return msg;
+    }
+
+    private static byte[] gzip(String content) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(baos)) {
+            gzip.write(content.getBytes(StandardCharsets.US_ASCII));
+        }
+        return baos.toByteArray();
+    }
+
+    private static byte[] deflate(String content, boolean raw) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        deflater.setInput(content.getBytes(StandardCharsets.US_ASCII));
+        deflater.finish();
+        byte[] buffer = new byte[1024];
+        int len = deflater.deflate(buffer);
+        deflater.end();
+        return Arrays.copyOf(buffer, len);
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.network;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.httpclient.URI;
+import org.junit.Test;
+import org.parosproxy.paros.network.HttpMessage;
+import org.parosproxy.paros.network.HttpRequestHeader;
+import org.parosproxy.paros.network.HttpResponseHeader;
+
+/**
+ * Unit test for {@link HttpRequestCoalescer}.
+ */
+public class HttpRequestCoalescerUnitTest {
+
+    private static final String RESPONSE_BODY = "Response Body";
+
+    @Test
+    public void shouldCoalesceGetAndHeadRequestsOnly() throws Exception {
+        assertThat(HttpRequestCoalescer.isCoalescable(createMessage(HttpRequestHeader.GET)), is(equalTo(true)));
+        assertThat(HttpRequestCoalescer.isCoalescable(createMessage(HttpRequestHeader.HEAD)), is(equalTo(true)));
+        assertThat(HttpRequestCoalescer.isCoalescable(createMessage(HttpRequestHeader.POST)), is(equalTo(false)));
+    }
+
+    @Test
+    public void shouldSendConcurrentIdenticalRequestsJustOnce() throws Exception {
+        // Given
+        HttpRequestCoalescer coalescer = new HttpRequestCoalescer(0);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger sent = new AtomicInteger();
+        HttpRequestCoalescer.Sender sender = msg -> {
+            sent.incrementAndGet();
+            await(release);
+            setResponse(msg);
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<HttpMessage> messages = new ArrayList<>();
+        List<Future<?>> results = new ArrayList<>();
+        // When
+        for (int i = 0; i < 4; i++) {
+            HttpMessage msg = createMessage(HttpRequestHeader.GET);
+            messages.add(msg);
+            results.add(executor.submit(() -> {
+                coalescer.send(msg, "context", sender);
+                return null;
+            }));
+        }
+        Thread.sleep(200);
+        release.countDown();
+        for (Future<?> result : results) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        // Then
+        assertThat(sent.get(), is(equalTo(1)));
+        assertThat(coalescer.getRequestsSaved(), is(equalTo(3)));
+        for (HttpMessage msg : messages) {
+            assertThat(msg.getResponseHeader().getStatusCode(), is(equalTo(200)));
+            assertThat(msg.getResponseBody().toString(), is(equalTo(RESPONSE_BODY)));
+        }
+    }
+
+    @Test
+    public void shouldAnswerIdenticalRequestWithCachedResponse() throws Exception {
+        // Given
+        HttpRequestCoalescer coalescer = new HttpRequestCoalescer(60000);
+        AtomicInteger sent = new AtomicInteger();
+        HttpRequestCoalescer.Sender sender = msg -> {
+            sent.incrementAndGet();
+            setResponse(msg);
+        };
+        coalescer.send(createMessage(HttpRequestHeader.GET), "context", sender);
+        HttpMessage msg = createMessage(HttpRequestHeader.GET);
+        // When
+        coalescer.send(msg, "context", sender);
+        // Then
+        assertThat(sent.get(), is(equalTo(1)));
+        assertThat(msg.getResponseBody().toString(), is(equalTo(RESPONSE_BODY)));
+    }
+
+    @Test
+    public void shouldNotAnswerRequestOfOtherContext() throws Exception {
+        // Given
+        HttpRequestCoalescer coalescer = new HttpRequestCoalescer(60000);
+        AtomicInteger sent = new AtomicInteger();
+        HttpRequestCoalescer.Sender sender = msg -> {
+            sent.incrementAndGet();
+            setResponse(msg);
+        };
+        coalescer.send(createMessage(HttpRequestHeader.GET), "context", sender);
+        // When
+        coalescer.send(createMessage(HttpRequestHeader.GET), "other context", sender);
+        // Then
+        assertThat(sent.get(), is(equalTo(2)));
+        assertThat(coalescer.getRequestsSaved(), is(equalTo(0)));
+    }
+
+    @Test
+    public void shouldNotCacheResponseIfSendFailed() throws Exception {
+        // Given
+        HttpRequestCoalescer coalescer = new HttpRequestCoalescer(60000);
+        AtomicInteger sent = new AtomicInteger();
+        try {
+            coalescer.send(createMessage(HttpRequestHeader.GET), "context", msg -> {
+                sent.incrementAndGet();
+                throw new IOException();
+            });
+        } catch (IOException e) {
+            // Expected.
+        }
+        // When
+        coalescer.send(createMessage(HttpRequestHeader.GET), "context", msg -> {
+            sent.incrementAndGet();
+            setResponse(msg);
+        });
+        // Then
+        assertThat(sent.get(), is(equalTo(2)));
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void setResponse(HttpMessage msg) throws IOException {
+        msg.setResponseHeader(new HttpResponseHeader("HTTP/1.1 200 OK\r\n"));
+        msg.setResponseBody(RESPONSE_BODY);
+        msg.setResponseFromTargetHost(true);
+    }
+
+    private static HttpMessage createMessage(String method) throws Exception {
+        HttpMessage msg = new HttpMessage(new URI("http://example.com/", true));
+        msg.getRequestHeader().setMethod(method);
+        return msg;
+    }
+}
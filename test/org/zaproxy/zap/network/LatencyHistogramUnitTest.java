@@ -0,0 +1,87 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.network;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramUnitTest {
+
+    @Test
+    public void shouldBeEmptyByDefault() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+        // When / Then
+        assertThat(histogram.getCount(), is(equalTo(0L)));
+        assertThat(histogram.getMean(), is(equalTo(0L)));
+        assertThat(histogram.getMax(), is(equalTo(0L)));
+        assertThat(histogram.getPercentile(50), is(equalTo(0L)));
+    }
+
+    @Test
+    public void shouldRecordSmallValuesExactly() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+        // When
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+        // Then
+        assertThat(histogram.getCount(), is(equalTo(10L)));
+        assertThat(histogram.getMean(), is(equalTo(5L)));
+        assertThat(histogram.getMax(), is(equalTo(10L)));
+        assertThat(histogram.getPercentile(50), is(equalTo(5L)));
+        assertThat(histogram.getPercentile(100), is(equalTo(10L)));
+    }
+
+    @Test
+    public void shouldRecordLargeValuesWithBoundedError() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+        // When
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        // Then
+        assertThat(histogram.getMax(), is(equalTo(1_000_000L)));
+        assertThat(histogram.getPercentile(50), is(allOf(greaterThanOrEqualTo(500_000L), lessThanOrEqualTo(562_500L))));
+        assertThat(histogram.getPercentile(99), is(allOf(greaterThanOrEqualTo(990_000L), lessThanOrEqualTo(1_000_000L))));
+    }
+
+    @Test
+    public void shouldRecordNegativeValuesAsZero() {
+        // Given
+        LatencyHistogram histogram = new LatencyHistogram();
+        // When
+        histogram.record(-5);
+        // Then
+        assertThat(histogram.getCount(), is(equalTo(1L)));
+        assertThat(histogram.getMax(), is(equalTo(0L)));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.network;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link PinningHttpConnectionManager}.
+ */
+public class PinningHttpConnectionManagerUnitTest {
+
+    private MultiThreadedHttpConnectionManager sharedConnectionManager;
+    private HostConfiguration hostConfiguration;
+
+    @Before
+    public void setUp() {
+        sharedConnectionManager = new MultiThreadedHttpConnectionManager();
+        sharedConnectionManager.getParams().setDefaultMaxConnectionsPerHost(10);
+        hostConfiguration = new HostConfiguration();
+        hostConfiguration.setHost("localhost", 8080);
+    }
+
+    @After
+    public void tearDown() {
+        sharedConnectionManager.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailToCreateWithNullSharedConnectionManager() {
+        // Given
+        MultiThreadedHttpConnectionManager sharedConnectionManager = null;
+        // When
+        new PinningHttpConnectionManager(sharedConnectionManager);
+        // Then = IllegalArgumentException
+    }
+
+    @Test
+    public void shouldKeepConnectionOfHostAfterRelease() throws Exception {
+        // Given
+        PinningHttpConnectionManager connectionManager = new PinningHttpConnectionManager(sharedConnectionManager);
+        connectionManager.getConnectionWithTimeout(hostConfiguration, 0).releaseConnection();
+        // When
+        HttpConnection connection = connectionManager.getConnectionWithTimeout(hostConfiguration, 0);
+        HttpConnection otherConnection = new PinningHttpConnectionManager(sharedConnectionManager)
+                .getConnectionWithTimeout(hostConfiguration, 0);
+        // Then
+        assertThat(connectionManager.getPinnedConnectionsCount(), is(equalTo(1)));
+        assertThat(connection == otherConnection, is(equalTo(false)));
+        assertThat(sharedConnectionManager.getConnectionsInPool(hostConfiguration), is(equalTo(2)));
+    }
+
+    @Test
+    public void shouldKeepOneConnectionPerHost() throws Exception {
+        // Given
+        PinningHttpConnectionManager connectionManager = new PinningHttpConnectionManager(sharedConnectionManager);
+        HostConfiguration otherHostConfiguration = new HostConfiguration();
+        otherHostConfiguration.setHost("example.com", 80);
+        // When
+        connectionManager.getConnectionWithTimeout(hostConfiguration, 0).releaseConnection();
+        connectionManager.getConnectionWithTimeout(otherHostConfiguration, 0).releaseConnection();
+        connectionManager.getConnectionWithTimeout(hostConfiguration, 0).releaseConnection();
+        // Then
+        assertThat(connectionManager.getPinnedConnectionsCount(), is(equalTo(2)));
+        assertThat(sharedConnectionManager.getConnectionsInPool(hostConfiguration), is(equalTo(1)));
+        assertThat(sharedConnectionManager.getConnectionsInPool(otherHostConfiguration), is(equalTo(1)));
+    }
+
+    @Test
+    public void shouldUseSharedConnectionIfKeptConnectionInUse() throws Exception {
+        // Given
+        PinningHttpConnectionManager connectionManager = new PinningHttpConnectionManager(sharedConnectionManager);
+        HttpConnection connection = connectionManager.getConnectionWithTimeout(hostConfiguration, 0);
+        // When
+        HttpConnection otherConnection = connectionManager.getConnectionWithTimeout(hostConfiguration, 0);
+        otherConnection.releaseConnection();
+        connection.releaseConnection();
+        new PinningHttpConnectionManager(sharedConnectionManager).getConnectionWithTimeout(hostConfiguration, 0);
+        // Then
+        assertThat(connectionManager.getPinnedConnectionsCount(), is(equalTo(1)));
+        assertThat(sharedConnectionManager.getConnectionsInPool(hostConfiguration), is(equalTo(2)));
+    }
+
+    @Test
+    public void shouldReleaseKeptConnectionsOnShutdown() throws Exception {
+        // Given
+        PinningHttpConnectionManager connectionManager = new PinningHttpConnectionManager(sharedConnectionManager);
+        connectionManager.getConnectionWithTimeout(hostConfiguration, 0).releaseConnection();
+        // When
+        connectionManager.shutdown();
+        HttpConnection otherConnection = new PinningHttpConnectionManager(sharedConnectionManager)
+                .getConnectionWithTimeout(hostConfiguration, 0);
+        // Then
+        assertThat(connectionManager.getPinnedConnectionsCount(), is(equalTo(0)));
+        assertThat(sharedConnectionManager.getConnectionsInPool(hostConfiguration), is(equalTo(1)));
+        assertThat(otherConnection.isOpen(), is(equalTo(false)));
+    }
+
+    @Test
+    public void shouldReleaseConnectionInUseOnceReleasedAfterShutdown() throws Exception {
+        // Given
+        PinningHttpConnectionManager connectionManager = new PinningHttpConnectionManager(sharedConnectionManager);
+        HttpConnection connection = connectionManager.getConnectionWithTimeout(hostConfiguration, 0);
+        connectionManager.shutdown();
+        // When
+        connection.releaseConnection();
+        new PinningHttpConnectionManager(sharedConnectionManager).getConnectionWithTimeout(hostConfiguration, 0);
+        // Then
+        assertThat(connectionManager.getPinnedConnectionsCount(), is(equalTo(0)));
+        assertThat(sharedConnectionManager.getConnectionsInPool(hostConfiguration), is(equalTo(1)));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.network;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link PooledHttpConnectionManager}.
+ */
+public class PooledHttpConnectionManagerUnitTest {
+
+	private ServerSocket serverSocket;
+	private PooledHttpConnectionManager connectionManager;
+
+	@Before
+	public void setUp() throws Exception {
+		serverSocket = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (connectionManager != null) {
+			connectionManager.shutdown();
+		}
+		serverSocket.close();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldFailToCreateWithNonPositiveMaxConnectionsPerHost() {
+		// Given
+		int maxConnectionsPerHost = 0;
+		// When
+		connectionManager = new PooledHttpConnectionManager(maxConnectionsPerHost, 10, 0);
+		// Then = IllegalArgumentException
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldFailToCreateWithNonPositiveMaxTotalConnections() {
+		// Given
+		int maxTotalConnections = 0;
+		// When
+		connectionManager = new PooledHttpConnectionManager(10, maxTotalConnections, 0);
+		// Then = IllegalArgumentException
+	}
+
+	@Test
+	public void shouldApplyConnectionLimits() {
+		// Given / When
+		connectionManager = new PooledHttpConnectionManager(5, 50, 0);
+		// Then
+		assertThat(connectionManager.getParams().getDefaultMaxConnectionsPerHost(), is(equalTo(5)));
+		assertThat(connectionManager.getParams().getMaxTotalConnections(), is(equalTo(50)));
+	}
+
+	@Test
+	public void shouldHaveNoHitsNorMissesByDefault() {
+		// Given / When
+		connectionManager = new PooledHttpConnectionManager(5, 50, 0);
+		// Then
+		assertThat(connectionManager.getHits(), is(equalTo(0L)));
+		assertThat(connectionManager.getMisses(), is(equalTo(0L)));
+	}
+
+	@Test
+	public void shouldCountMissWhenConnectionNotOpen() throws Exception {
+		// Given
+		connectionManager = new PooledHttpConnectionManager(5, 50, 0);
+		// When
+		HttpConnection connection = connectionManager.getConnectionWithTimeout(createHostConfiguration(), 0);
+		connection.releaseConnection();
+		// Then
+		assertThat(connectionManager.getHits(), is(equalTo(0L)));
+		assertThat(connectionManager.getMisses(), is(equalTo(1L)));
+	}
+
+	@Test
+	public void shouldCountHitWhenReusingOpenConnection() throws Exception {
+		// Given
+		connectionManager = new PooledHttpConnectionManager(5, 50, 0);
+		HostConfiguration hostConfiguration = createHostConfiguration();
+		HttpConnection connection = connectionManager.getConnectionWithTimeout(hostConfiguration, 0);
+		connection.open();
+		Socket socket = serverSocket.accept();
+		try {
+			connection.releaseConnection();
+			// When
+			connection = connectionManager.getConnectionWithTimeout(hostConfiguration, 0);
+			connection.releaseConnection();
+		} finally {
+			socket.close();
+		}
+		// Then
+		assertThat(connectionManager.getHits(), is(equalTo(1L)));
+		assertThat(connectionManager.getMisses(), is(equalTo(1L)));
+	}
+
+	private HostConfiguration createHostConfiguration() {
+		HostConfiguration hostConfiguration = new HostConfiguration();
+		hostConfiguration.setHost(serverSocket.getInetAddress().getHostAddress(), serverSocket.getLocalPort());
+		return hostConfiguration;
+	}
+}
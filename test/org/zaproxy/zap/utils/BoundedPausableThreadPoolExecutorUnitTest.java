@@ -0,0 +1,148 @@
+/*
+ * Zed Attack Proxy (ZAP) and its related class files.
+ *
+ * ZAP is an HTTP/HTTPS proxy for assessing web application security.
+ *
+ * Copyright 2018 The ZAP Development Team
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.zaproxy.zap.utils;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link BoundedPausableThreadPoolExecutor}.
+ */
+public class BoundedPausableThreadPoolExecutorUnitTest {
+
+    private BoundedPausableThreadPoolExecutor executor;
+
+    @After
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailToCreateWithNegativeQueueCapacity() {
+        // Given
+        int queueCapacity = -1;
+        // When
+        new BoundedPausableThreadPoolExecutor(1, queueCapacity, "Thread-");
+        // Then = IllegalArgumentException
+    }
+
+    @Test
+    public void shouldNotQueueMoreTasksThanCapacity() throws Exception {
+        // Given
+        executor = new BoundedPausableThreadPoolExecutor(1, 1, "Thread-");
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        executor.execute(() -> {
+            running.countDown();
+            await(release);
+        });
+        running.await(5, TimeUnit.SECONDS);
+        // When
+        boolean queued = executor.execute(() -> {}, 50, TimeUnit.MILLISECONDS);
+        boolean queuedFull = executor.execute(() -> {}, 50, TimeUnit.MILLISECONDS);
+        // Then
+        assertThat(queued, is(equalTo(true)));
+        assertThat(queuedFull, is(equalTo(false)));
+        assertThat(executor.getQueueSize(), is(equalTo(1)));
+        assertThat(executor.getUtilisation(), is(equalTo(1.0)));
+        release.countDown();
+    }
+
+    @Test
+    public void shouldCountIdleThreads() throws Exception {
+        // Given
+        executor = new BoundedPausableThreadPoolExecutor(3, 3, "Thread-");
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        int idleThreadsBefore = executor.getIdleThreadCount();
+        // When
+        executor.execute(() -> {
+            running.countDown();
+            await(release);
+        });
+        running.await(5, TimeUnit.SECONDS);
+        // Then
+        assertThat(idleThreadsBefore, is(equalTo(3)));
+        assertThat(executor.getIdleThreadCount(), is(equalTo(2)));
+        release.countDown();
+    }
+
+    @Test
+    public void shouldWaitUntilAllTasksCompleted() throws Exception {
+        // Given
+        executor = new BoundedPausableThreadPoolExecutor(2, 2, "Thread-");
+        AtomicInteger completed = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            executor.execute(() -> {
+                sleep(10);
+                completed.incrementAndGet();
+            });
+        }
+        // When
+        boolean allCompleted = executor.awaitTasksCompleted(5, TimeUnit.SECONDS);
+        // Then
+        assertThat(allCompleted, is(equalTo(true)));
+        assertThat(completed.get(), is(equalTo(10)));
+        assertThat(executor.getQueueSize(), is(equalTo(0)));
+    }
+
+    @Test
+    public void shouldNotRunQueuedTasksWhilePaused() throws Exception {
+        // Given
+        executor = new BoundedPausableThreadPoolExecutor(1, 1, "Thread-");
+        AtomicInteger completed = new AtomicInteger();
+        executor.pause();
+        executor.execute(completed::incrementAndGet);
+        // When
+        boolean completedWhilePaused = executor.awaitTasksCompleted(100, TimeUnit.MILLISECONDS);
+        executor.resume();
+        boolean completedAfterResume = executor.awaitTasksCompleted(5, TimeUnit.SECONDS);
+        // Then
+        assertThat(completedWhilePaused, is(equalTo(false)));
+        assertThat(completedAfterResume, is(equalTo(true)));
+        assertThat(completed.get(), is(equalTo(1)));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}